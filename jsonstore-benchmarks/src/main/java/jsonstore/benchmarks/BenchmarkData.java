@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore.benchmarks;
+
+import java.io.File;
+import java.util.Random;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+import krati.core.segment.ChannelSegmentFactory;
+import krati.core.segment.MappedSegmentFactory;
+import krati.core.segment.MemorySegmentFactory;
+import krati.core.segment.WriteBufferSegmentFactory;
+
+import jsonstore.JSONObjectStore;
+import jsonstore.JSONRepository;
+
+/**
+ * BenchmarkData creates the values and the temporary stores used by the benchmarks.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class BenchmarkData {
+    /**
+     * The source of the benchmark store.
+     */
+    public static final String SOURCE = "bench";
+    
+    private BenchmarkData() {}
+    
+    /**
+     * Creates a value resembling a news item, whose JSON text is about the specified size.
+     * 
+     * @param size - the approximate JSON text size in bytes
+     * @param seed - the random seed
+     */
+    public static JSONObject createValue(int size, long seed) {
+        Random random = new Random(seed);
+        JSONObject json = new JSONObject();
+        try {
+            json.put("id", seed);
+            json.put("timestamp", 1350000000000L + random.nextInt(1000000000));
+            json.put("title", words(random, 8));
+            json.put("active", random.nextBoolean());
+            
+            JSONArray tags = new JSONArray();
+            for(int i = 0; i < 3; i++) {
+                tags.put(WORDS[random.nextInt(WORDS.length)]);
+            }
+            json.put("tags", tags);
+            
+            int length = json.toString().length();
+            if(size > length) {
+                json.put("summary", words(random, (size - length) / 7));
+            }
+        } catch(JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        return json;
+    }
+    
+    private static final String[] WORDS = {
+        "store", "value", "json", "index", "news", "report", "market", "sports",
+        "weather", "update", "world", "local", "review", "latest", "today", "data"
+    };
+    
+    private static String words(Random random, int count) {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < count; i++) {
+            if(i > 0) {
+                sb.append(' ');
+            }
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Gets the Krati segment factory class of the specified short name.
+     * 
+     * @param name - <code>WriteBuffer</code>, <code>Mapped</code>, <code>Channel</code> or <code>Memory</code>
+     */
+    public static String getSegmentFactoryClass(String name) {
+        if("WriteBuffer".equals(name)) {
+            return WriteBufferSegmentFactory.class.getName();
+        }
+        if("Mapped".equals(name)) {
+            return MappedSegmentFactory.class.getName();
+        }
+        if("Channel".equals(name)) {
+            return ChannelSegmentFactory.class.getName();
+        }
+        if("Memory".equals(name)) {
+            return MemorySegmentFactory.class.getName();
+        }
+        throw new IllegalArgumentException("unknown segment factory " + name);
+    }
+    
+    /**
+     * Creates a repository in a new temporary directory with a store of the specified configuration.
+     * 
+     * @param segmentFactory - the short name of the segment factory
+     * @param capacity       - the initial capacity of the store
+     * @param valueCodec     - the value codec
+     */
+    public static JSONRepository createRepository(String segmentFactory, int capacity, String valueCodec) throws Exception {
+        return createRepository(segmentFactory, capacity, valueCodec, 0);
+    }
+    
+    /**
+     * Creates a repository in a new temporary directory with a store of the specified configuration.
+     * 
+     * @param segmentFactory  - the short name of the segment factory
+     * @param capacity        - the initial capacity of the store
+     * @param valueCodec      - the value codec
+     * @param cacheMaxEntries - the maximum number of values cached, or <code>0</code> for no cache
+     */
+    public static JSONRepository createRepository(String segmentFactory, int capacity, String valueCodec, int cacheMaxEntries) throws Exception {
+        File homeDir = File.createTempFile("jsonstore-bench", "");
+        homeDir.delete();
+        homeDir.mkdirs();
+        
+        JSONObject config = new JSONObject();
+        config.put("initialCapacity", capacity);
+        config.put("segmentFileSizeMB", 32);
+        config.put("segmentFactoryClass", getSegmentFactoryClass(segmentFactory));
+        config.put("valueCodec", valueCodec);
+        config.put("cacheMaxEntries", cacheMaxEntries);
+        
+        JSONRepository repository = new JSONRepository(homeDir, 3600);
+        repository.putConfig(SOURCE, config.toString());
+        repository.create(SOURCE);
+        return repository;
+    }
+    
+    /**
+     * Puts the values of keys from <code>0</code> to <code>count - 1</code>.
+     */
+    public static void load(JSONObjectStore<String> jsonStore, int count, int valueSize) throws Exception {
+        for(int i = 0; i < count; i++) {
+            jsonStore.put(Integer.toString(i), createValue(valueSize, i));
+        }
+        jsonStore.persist();
+    }
+    
+    /**
+     * Closes the repository, which stops its threads, and deletes the repository directory.
+     */
+    public static void destroy(JSONRepository repository) throws Exception {
+        File homeDir = repository.getHomeDir();
+        repository.close();
+        delete(homeDir);
+    }
+    
+    static void delete(File file) {
+        File[] files = file.listFiles();
+        if(files != null) {
+            for(File f : files) {
+                delete(f);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore.benchmarks;
+
+import java.util.Random;
+
+/**
+ * KeyGenerator draws keys from <code>0</code> to <code>count - 1</code> following a distribution.
+ * A generator is shared by all the client threads, each passing its own {@link Random}.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public abstract class KeyGenerator {
+    protected final int count;
+    
+    protected KeyGenerator(int count) {
+        this.count = count;
+    }
+    
+    /**
+     * @return the next key index.
+     */
+    public abstract int next(Random random);
+    
+    /**
+     * Creates a key generator.
+     * 
+     * @param distribution - <code>uniform</code> or <code>zipfian</code>
+     * @param count        - the number of keys
+     * @param theta        - the zipfian skew, between 0 and 1 (exclusive)
+     * @throws IllegalArgumentException if the distribution is unknown.
+     */
+    public static KeyGenerator create(String distribution, int count, double theta) {
+        if("uniform".equals(distribution)) {
+            return new Uniform(count);
+        }
+        if("zipfian".equals(distribution)) {
+            return new Zipfian(count, theta);
+        }
+        throw new IllegalArgumentException("unknown key distribution " + distribution);
+    }
+    
+    static final class Uniform extends KeyGenerator {
+        Uniform(int count) {
+            super(count);
+        }
+        
+        @Override
+        public int next(Random random) {
+            return random.nextInt(count);
+        }
+    }
+    
+    /**
+     * Zipfian keys after Gray et al., "Quickly Generating Billion-Record Synthetic Databases".
+     * The ranks are scrambled by a hash, so the hot keys are spread over the key space rather
+     * than clustered at its start.
+     */
+    static final class Zipfian extends KeyGenerator {
+        private final double theta;
+        private final double alpha;
+        private final double zetan;
+        private final double eta;
+        
+        Zipfian(int count, double theta) {
+            super(count);
+            if(theta <= 0 || theta >= 1) {
+                throw new IllegalArgumentException("zipfian theta must be between 0 and 1: " + theta);
+            }
+            this.theta = theta;
+            this.alpha = 1.0 / (1.0 - theta);
+            this.zetan = zeta(count, theta);
+            this.eta = (1 - Math.pow(2.0 / count, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+        }
+        
+        private static double zeta(long n, double theta) {
+            double sum = 0;
+            for(long i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+        
+        @Override
+        public int next(Random random) {
+            double u = random.nextDouble();
+            double uz = u * zetan;
+            long rank;
+            if(uz < 1.0) {
+                rank = 0;
+            } else if(uz < 1.0 + Math.pow(0.5, theta)) {
+                rank = 1;
+            } else {
+                rank = (long)(count * Math.pow(eta * u - eta + 1, alpha));
+            }
+            return (int)((fnv(Math.min(rank, count - 1)) & Long.MAX_VALUE) % count);
+        }
+        
+        private static long fnv(long value) {
+            long hash = 0xcbf29ce484222325L;
+            for(int i = 0; i < 8; i++) {
+                hash ^= value & 0xff;
+                hash *= 0x100000001b3L;
+                value >>>= 8;
+            }
+            return hash;
+        }
+    }
+}
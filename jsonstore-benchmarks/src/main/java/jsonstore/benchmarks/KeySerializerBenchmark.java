@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import krati.io.Serializer;
+
+import jsonstore.PathKeyLongSerializer;
+import jsonstore.PathKeyStringSerializer;
+
+/**
+ * KeySerializerBenchmark compares {@link PathKeyLongSerializer} and {@link PathKeyStringSerializer}
+ * on the numeric keys from the REST path.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeySerializerBenchmark {
+    @Param({"Long", "String"})
+    public String keySerializer;
+    
+    @Param({"7", "1350000000123"})
+    public String key;
+    
+    private Serializer<String> serializer;
+    private byte[] bytes;
+    
+    @Setup
+    public void setup() {
+        serializer = "Long".equals(keySerializer) ? new PathKeyLongSerializer() : new PathKeyStringSerializer();
+        bytes = serializer.serialize(key);
+    }
+    
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(key);
+    }
+    
+    @Benchmark
+    public String deserialize() {
+        return serializer.deserialize(bytes);
+    }
+}
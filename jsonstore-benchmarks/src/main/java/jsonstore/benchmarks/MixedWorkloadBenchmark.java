@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jettison.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jsonstore.JSONObjectStore;
+import jsonstore.JSONRepository;
+
+/**
+ * MixedWorkloadBenchmark measures the throughput of concurrent readers and writers sharing one store.
+ * The <code>readHeavy</code> group runs 6 readers with 2 writers, and the <code>writeHeavy</code>
+ * group runs 2 readers with 6 writers. Use <code>-tg</code> to run other thread mixes.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MixedWorkloadBenchmark {
+    @Param({"WriteBuffer", "Mapped"})
+    public String segmentFactory;
+    
+    @Param({"100000"})
+    public int recordCount;
+    
+    @Param({"1024"})
+    public int valueSize;
+    
+    private JSONRepository repository;
+    private JSONObjectStore<String> jsonStore;
+    private JSONObject[] values;
+    
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        repository = BenchmarkData.createRepository(segmentFactory, recordCount * 2, "gzip");
+        jsonStore = repository.get(BenchmarkData.SOURCE);
+        BenchmarkData.load(jsonStore, recordCount, valueSize);
+        
+        values = new JSONObject[64];
+        for(int i = 0; i < values.length; i++) {
+            values[i] = BenchmarkData.createValue(valueSize, recordCount + i);
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchmarkData.destroy(repository);
+    }
+    
+    private JSONObject read() {
+        return jsonStore.get(Integer.toString(ThreadLocalRandom.current().nextInt(recordCount)));
+    }
+    
+    private boolean write() throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return jsonStore.put(Integer.toString(random.nextInt(recordCount)), values[random.nextInt(values.length)]);
+    }
+    
+    @Benchmark
+    @Group("readHeavy")
+    @GroupThreads(6)
+    public JSONObject readHeavyGet() {
+        return read();
+    }
+    
+    @Benchmark
+    @Group("readHeavy")
+    @GroupThreads(2)
+    public boolean readHeavyPut() throws Exception {
+        return write();
+    }
+    
+    @Benchmark
+    @Group("writeHeavy")
+    @GroupThreads(2)
+    public JSONObject writeHeavyGet() {
+        return read();
+    }
+    
+    @Benchmark
+    @Group("writeHeavy")
+    @GroupThreads(6)
+    public boolean writeHeavyPut() throws Exception {
+        return write();
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+import jsonstore.LatencyHistogram;
+
+/**
+ * RestLoadGenerator drives a mix of get, put, multi-get and delete requests against the REST API
+ * from many concurrent clients, and reports the throughput and latency percentiles of each operation.
+ * Unless a <code>-url</code> is given, the webapp resources are started in-process on an ephemeral
+ * port with a repository in a temporary directory.
+ * 
+ * <p>
+ * Each client sends its next request when the previous one completes, so the latencies are those
+ * seen at the achieved throughput. Options are given as <code>-name value</code>:
+ * </p>
+ * 
+ * <pre>
+ *   -url           base URL of a running webapp, e.g. http://localhost:9010/jsonstore/ (in-process by default)
+ *   -source        store name (load)
+ *   -records       number of keys loaded before the run (100000)
+ *   -valueSize     approximate value size in bytes (1024)
+ *   -clients       number of concurrent clients (32)
+ *   -serverThreads number of in-process request threads (64)
+ *   -warmup        warm-up seconds, not measured (10)
+ *   -duration      measured seconds (30)
+ *   -mix           operation weights (get:70,put:20,mget:5,delete:5)
+ *   -mgetSize      keys per multi-get (10)
+ *   -keys          key distribution: uniform or zipfian (uniform)
+ *   -theta         zipfian skew (0.99)
+ *   -gzip          whether clients accept gzip'd values (true)
+ *   -output        file to write the results in JSON
+ * </pre>
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class RestLoadGenerator {
+    static final String GET = "get";
+    static final String PUT = "put";
+    static final String MGET = "mget";
+    static final String DELETE = "delete";
+    
+    private final Map<String, String> options;
+    private final String source;
+    private final int records;
+    private final int clients;
+    private final int mgetSize;
+    private final boolean acceptGzip;
+    private final KeyGenerator keys;
+    private final String[] ops;
+    private final int[] weights;
+    private final byte[][] values;
+    private final Map<String, LatencyHistogram> histograms = new LinkedHashMap<String, LatencyHistogram>();
+    private final Map<String, AtomicLong> errors = new HashMap<String, AtomicLong>();
+    
+    private String baseURL;
+    private volatile boolean measuring = false;
+    private volatile boolean stopped = false;
+    
+    public RestLoadGenerator(Map<String, String> options) {
+        this.options = options;
+        this.source = option("source", "load");
+        this.records = Integer.parseInt(option("records", "100000"));
+        this.clients = Integer.parseInt(option("clients", "32"));
+        this.mgetSize = Integer.parseInt(option("mgetSize", "10"));
+        this.acceptGzip = Boolean.parseBoolean(option("gzip", "true"));
+        
+        // Keep a connection alive per client, rather than the 5 by default
+        if(System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", Integer.toString(Math.max(5, clients)));
+        }
+        this.keys = KeyGenerator.create(option("keys", "uniform"), records, Double.parseDouble(option("theta", "0.99")));
+        
+        String[] mix = option("mix", "get:70,put:20,mget:5,delete:5").split(",");
+        this.ops = new String[mix.length];
+        this.weights = new int[mix.length];
+        int total = 0;
+        for(int i = 0; i < mix.length; i++) {
+            String[] pair = mix[i].trim().split(":");
+            ops[i] = pair[0];
+            if(!GET.equals(ops[i]) && !PUT.equals(ops[i]) && !MGET.equals(ops[i]) && !DELETE.equals(ops[i])) {
+                throw new IllegalArgumentException("unknown operation " + ops[i]);
+            }
+            total += Integer.parseInt(pair[1]);
+            weights[i] = total;
+            histograms.put(ops[i], new LatencyHistogram());
+            errors.put(ops[i], new AtomicLong());
+        }
+        if(total <= 0) {
+            throw new IllegalArgumentException("invalid mix " + option("mix", ""));
+        }
+        
+        int valueSize = Integer.parseInt(option("valueSize", "1024"));
+        this.values = new byte[64][];
+        for(int i = 0; i < values.length; i++) {
+            values[i] = utf8(BenchmarkData.createValue(valueSize, i).toString());
+        }
+    }
+    
+    private String option(String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+    
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        for(int i = 0; i + 1 < args.length; i += 2) {
+            if(!args[i].startsWith("-")) {
+                throw new IllegalArgumentException("invalid option " + args[i]);
+            }
+            options.put(args[i].substring(1), args[i + 1]);
+        }
+        
+        JSONObject result = new RestLoadGenerator(options).run();
+        String output = options.get("output");
+        if(output != null) {
+            OutputStream out = new FileOutputStream(output);
+            try {
+                out.write(utf8(result.toString(2)));
+            } finally {
+                out.close();
+            }
+        }
+        System.exit(0);
+    }
+    
+    /**
+     * Loads the store, runs the warm-up and the measured period, and prints the report.
+     * 
+     * @return the results in JSON.
+     */
+    public JSONObject run() throws Exception {
+        RestServer server = null;
+        File homeDir = null;
+        baseURL = options.get("url");
+        try {
+            if(baseURL == null) {
+                homeDir = File.createTempFile("jsonstore-load", "");
+                homeDir.delete();
+                homeDir.mkdirs();
+                server = new RestServer(homeDir, Integer.parseInt(option("serverThreads", "64")));
+                server.start();
+                baseURL = server.getBaseURL();
+            } else if(!baseURL.endsWith("/")) {
+                baseURL += "/";
+            }
+            
+            createStore();
+            long loadStart = System.currentTimeMillis();
+            load();
+            System.out.println("loaded " + records + " records in " + (System.currentTimeMillis() - loadStart) + " ms");
+            
+            List<Thread> threads = new ArrayList<Thread>(clients);
+            for(int i = 0; i < clients; i++) {
+                final Random random = new Random(i);
+                Thread t = new Thread("client-" + i) {
+                    @Override
+                    public void run() {
+                        while(!stopped) {
+                            request(random);
+                        }
+                    }
+                };
+                t.start();
+                threads.add(t);
+            }
+            
+            Thread.sleep(Long.parseLong(option("warmup", "10")) * 1000);
+            measuring = true;
+            long startNanos = System.nanoTime();
+            Thread.sleep(Long.parseLong(option("duration", "30")) * 1000);
+            measuring = false;
+            long elapsedNanos = System.nanoTime() - startNanos;
+            stopped = true;
+            for(Thread t : threads) {
+                t.join();
+            }
+            
+            JSONObject result = report(elapsedNanos);
+            print(result);
+            return result;
+        } finally {
+            if(server != null) {
+                server.stop();
+            }
+            if(homeDir != null) {
+                BenchmarkData.delete(homeDir);
+            }
+        }
+    }
+    
+    private void createStore() throws IOException, JSONException {
+        JSONObject config = new JSONObject();
+        config.put("initialCapacity", Math.max(records * 2, 1000));
+        config.put("segmentFileSizeMB", 64);
+        send("POST", baseURL + source, utf8(config.toString()));
+    }
+    
+    private void load() throws Exception {
+        List<Thread> threads = new ArrayList<Thread>(clients);
+        for(int i = 0; i < clients; i++) {
+            final int first = i;
+            Thread t = new Thread("load-" + i) {
+                @Override
+                public void run() {
+                    for(int k = first; k < records; k += clients) {
+                        try {
+                            send("PUT", baseURL + source + "/" + k, values[k % values.length]);
+                        } catch(IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }
+            };
+            t.start();
+            threads.add(t);
+        }
+        for(Thread t : threads) {
+            t.join();
+        }
+    }
+    
+    private void request(Random random) {
+        String op = ops[ops.length - 1];
+        int pick = random.nextInt(weights[weights.length - 1]);
+        for(int i = 0; i < weights.length; i++) {
+            if(pick < weights[i]) {
+                op = ops[i];
+                break;
+            }
+        }
+        
+        long startNanos = System.nanoTime();
+        boolean ok;
+        try {
+            if(GET.equals(op)) {
+                ok = send("GET", baseURL + source + "/" + keys.next(random), null);
+            } else if(PUT.equals(op)) {
+                ok = send("PUT", baseURL + source + "/" + keys.next(random), values[random.nextInt(values.length)]);
+            } else if(DELETE.equals(op)) {
+                ok = send("DELETE", baseURL + source + "/" + keys.next(random), null);
+            } else {
+                JSONArray array = new JSONArray();
+                for(int i = 0; i < mgetSize; i++) {
+                    array.put(Integer.toString(keys.next(random)));
+                }
+                ok = send("POST", baseURL + source + "/_mget", utf8("{\"keys\":" + array + "}"));
+            }
+        } catch(IOException e) {
+            ok = false;
+        }
+        
+        if(measuring) {
+            histograms.get(op).recordSince(startNanos);
+            if(!ok) {
+                errors.get(op).incrementAndGet();
+            }
+        }
+    }
+    
+    /**
+     * Sends a request and reads the whole response, so that the connection is kept alive.
+     * 
+     * @return <code>true</code> if the response status is 2xx.
+     */
+    private boolean send(String method, String url, byte[] body) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection)new URL(url).openConnection();
+        conn.setRequestMethod(method);
+        conn.setRequestProperty("Accept", "application/json");
+        if(acceptGzip) {
+            conn.setRequestProperty("Accept-Encoding", "gzip");
+        }
+        if(body != null) {
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", "application/json");
+            conn.setFixedLengthStreamingMode(body.length);
+            OutputStream out = conn.getOutputStream();
+            out.write(body);
+            out.close();
+        }
+        
+        int code = conn.getResponseCode();
+        InputStream in = code < 400 ? conn.getInputStream() : conn.getErrorStream();
+        if(in != null) {
+            byte[] buffer = new byte[8192];
+            while(in.read(buffer) >= 0);
+            in.close();
+        }
+        return code >= 200 && code < 300;
+    }
+    
+    private JSONObject report(long elapsedNanos) throws JSONException {
+        double seconds = elapsedNanos / 1e9;
+        JSONObject result = new JSONObject();
+        JSONObject config = new JSONObject();
+        for(Map.Entry<String, String> e : options.entrySet()) {
+            config.put(e.getKey(), e.getValue());
+        }
+        result.put("options", config);
+        result.put("seconds", seconds);
+        
+        long totalCount = 0;
+        JSONObject operations = new JSONObject();
+        for(Map.Entry<String, LatencyHistogram> e : histograms.entrySet()) {
+            LatencyHistogram.Snapshot snapshot = e.getValue().snapshot();
+            JSONObject json = snapshot.toJSON();
+            json.put("throughput", snapshot.getCount() / seconds);
+            json.put("errors", errors.get(e.getKey()).get());
+            operations.put(e.getKey(), json);
+            totalCount += snapshot.getCount();
+        }
+        result.put("operations", operations);
+        result.put("throughput", totalCount / seconds);
+        return result;
+    }
+    
+    private void print(JSONObject result) throws JSONException {
+        System.out.println(String.format("%-8s %10s %10s %10s %10s %10s %10s %8s",
+                "op", "count", "ops/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "errors"));
+        JSONObject operations = result.getJSONObject("operations");
+        for(String op : histograms.keySet()) {
+            JSONObject json = operations.getJSONObject(op);
+            System.out.println(String.format("%-8s %10d %10.0f %10.3f %10.3f %10.3f %10.3f %8d", op,
+                    json.getLong("count"), json.getDouble("throughput"),
+                    json.getDouble("p50Micros") / 1000, json.getDouble("p99Micros") / 1000,
+                    json.getDouble("p999Micros") / 1000, json.getDouble("maxMicros") / 1000,
+                    json.getLong("errors")));
+        }
+        System.out.println(String.format("%-8s %10s %10.0f", "total", "", result.getDouble("throughput")));
+    }
+    
+    private static byte[] utf8(String str) {
+        try {
+            return str.getBytes("UTF-8");
+        } catch(IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
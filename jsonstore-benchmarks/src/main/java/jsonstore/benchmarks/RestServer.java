@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.support.StaticApplicationContext;
+
+import com.sun.jersey.api.container.httpserver.HttpServerFactory;
+import com.sun.jersey.api.core.PackagesResourceConfig;
+import com.sun.jersey.api.core.ResourceConfig;
+import com.sun.jersey.spi.spring.container.SpringComponentProviderFactory;
+import com.sun.net.httpserver.HttpServer;
+
+import jsonstore.JSONRepository;
+
+/**
+ * RestServer runs the jsonstore REST resources in-process on an ephemeral port, wired to a
+ * {@link JSONRepository} through Spring as in the webapp. It uses the HTTP server built into
+ * the JDK instead of Jetty, with the same Jersey resources and JSON providers.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class RestServer {
+    private final JSONRepository repository;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final StaticApplicationContext context;
+    
+    /**
+     * Constructs a new instance of RestServer.
+     * 
+     * @param homeDir    - the repository home directory
+     * @param numThreads - the number of request threads
+     */
+    public RestServer(File homeDir, int numThreads) throws Exception {
+        RootBeanDefinition definition = new RootBeanDefinition(JSONRepository.class);
+        definition.getConstructorArgumentValues().addIndexedArgumentValue(0, homeDir);
+        definition.getConstructorArgumentValues().addIndexedArgumentValue(1, JSONRepository.MIN_SYNC_CYCLE);
+        
+        this.context = new StaticApplicationContext();
+        context.registerBeanDefinition("repository", definition);
+        context.refresh();
+        this.repository = (JSONRepository)context.getBean("repository");
+        
+        // Send responses without waiting for delayed acknowledgements
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        
+        ResourceConfig config = new PackagesResourceConfig("jsonstore.rest.resources");
+        this.server = HttpServerFactory.create("http://localhost:0/jsonstore/", config,
+                new SpringComponentProviderFactory(config, context));
+        this.executor = Executors.newFixedThreadPool(numThreads);
+        server.setExecutor(executor);
+    }
+    
+    public JSONRepository getRepository() {
+        return repository;
+    }
+    
+    /**
+     * @return the base URL of the REST resources, ending with a slash.
+     */
+    public String getBaseURL() {
+        return "http://localhost:" + server.getAddress().getPort() + "/jsonstore/";
+    }
+    
+    public void start() {
+        server.start();
+    }
+    
+    /**
+     * Stops the server and syncs the open stores.
+     */
+    public void stop() throws Exception {
+        server.stop(0);
+        executor.shutdownNow();
+        for(String source : repository.getOpenStores().keySet()) {
+            repository.close(source);
+        }
+        context.close();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codehaus.jettison.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jsonstore.JSONObjectStore;
+import jsonstore.JSONRepository;
+
+/**
+ * StoreBenchmark measures single-threaded get, put and delete on a {@link JSONObjectStore}
+ * created by {@link JSONRepository#create(String)} in a temporary directory, with each Krati
+ * segment factory, without and with the value cache.
+ * 
+ * <p>
+ * Deleted keys are put back after each iteration so that every delete removes a value.
+ * </p>
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoreBenchmark {
+    @Param({"WriteBuffer", "Mapped", "Channel", "Memory"})
+    public String segmentFactory;
+    
+    @Param({"100000"})
+    public int recordCount;
+    
+    @Param({"1024"})
+    public int valueSize;
+    
+    @Param({"gzip"})
+    public String valueCodec;
+    
+    @Param({"0", "10000"})
+    public int cacheMaxEntries;
+    
+    private JSONRepository repository;
+    private JSONObjectStore<String> jsonStore;
+    private JSONObject[] values;
+    private final AtomicInteger deleteCursor = new AtomicInteger();
+    
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        repository = BenchmarkData.createRepository(segmentFactory, recordCount * 2, valueCodec, cacheMaxEntries);
+        jsonStore = repository.get(BenchmarkData.SOURCE);
+        BenchmarkData.load(jsonStore, recordCount, valueSize);
+        
+        values = new JSONObject[64];
+        for(int i = 0; i < values.length; i++) {
+            values[i] = BenchmarkData.createValue(valueSize, recordCount + i);
+        }
+    }
+    
+    @TearDown(Level.Iteration)
+    public void restoreDeleted() throws Exception {
+        int count = Math.min(deleteCursor.getAndSet(0), recordCount);
+        for(int i = 0; i < count; i++) {
+            jsonStore.put(Integer.toString(i), BenchmarkData.createValue(valueSize, i));
+        }
+        jsonStore.persist();
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchmarkData.destroy(repository);
+    }
+    
+    @Benchmark
+    public JSONObject get() {
+        return jsonStore.get(Integer.toString(ThreadLocalRandom.current().nextInt(recordCount)));
+    }
+    
+    @Benchmark
+    public boolean put() throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return jsonStore.put(Integer.toString(random.nextInt(recordCount)), values[random.nextInt(values.length)]);
+    }
+    
+    @Benchmark
+    public boolean delete() throws Exception {
+        return jsonStore.delete(Integer.toString(deleteCursor.getAndIncrement() % recordCount));
+    }
+}
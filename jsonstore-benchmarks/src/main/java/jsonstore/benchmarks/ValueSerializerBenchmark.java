@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jettison.json.JSONObject;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import krati.io.Serializer;
+
+import jsonstore.JSONObjectSerializer;
+import jsonstore.JSONObjectSmileSerializer;
+
+/**
+ * ValueSerializerBenchmark measures {@link JSONObjectSerializer} with each value codec and
+ * {@link JSONObjectSmileSerializer} across value sizes. The size of the serialized value is
+ * reported by the <code>size</code> benchmark as <code>serializedBytes</code>.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValueSerializerBenchmark {
+    @Param({"128", "1024", "8192"})
+    public int valueSize;
+    
+    /**
+     * <code>JSONObjectSerializer</code> with the value codec after the colon, or <code>JSONObjectSmileSerializer</code>.
+     */
+    @Param({"JSONObjectSerializer:none", "JSONObjectSerializer:gzip", "JSONObjectSerializer:lz", "JSONObjectSmileSerializer"})
+    public String valueSerializer;
+    
+    private Serializer<JSONObject> serializer;
+    private JSONObject value;
+    private byte[] bytes;
+    
+    @Setup
+    public void setup() {
+        serializer = createSerializer(valueSerializer);
+        value = BenchmarkData.createValue(valueSize, 1);
+        bytes = serializer.serialize(value);
+    }
+    
+    private static Serializer<JSONObject> createSerializer(String name) {
+        if(name.equals(JSONObjectSmileSerializer.class.getSimpleName())) {
+            return new JSONObjectSmileSerializer();
+        }
+        
+        String prefix = JSONObjectSerializer.class.getSimpleName() + ":";
+        if(name.startsWith(prefix)) {
+            JSONObjectSerializer serializer = new JSONObjectSerializer();
+            serializer.setValueCodec(name.substring(prefix.length()));
+            return serializer;
+        }
+        throw new IllegalArgumentException("unknown value serializer " + name);
+    }
+    
+    /**
+     * The size of the serialized value.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class SerializedSize {
+        public long serializedBytes;
+    }
+    
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(value);
+    }
+    
+    @Benchmark
+    public JSONObject deserialize() {
+        return serializer.deserialize(bytes);
+    }
+    
+    /**
+     * Reports the size of the serialized value as <code>serializedBytes</code>. It is measured
+     * in one short iteration, since JMH sums event counters over the iterations.
+     */
+    @Benchmark
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+    public byte[] size(SerializedSize size) {
+        byte[] b = serializer.serialize(value);
+        size.serializedBytes = b.length;
+        return b;
+    }
+}
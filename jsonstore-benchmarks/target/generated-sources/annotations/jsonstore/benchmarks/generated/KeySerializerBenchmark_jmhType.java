@@ -0,0 +1,4 @@
+package jsonstore.benchmarks.generated;
+public class KeySerializerBenchmark_jmhType extends KeySerializerBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package jsonstore.benchmarks.generated;
+public class MixedWorkloadBenchmark_jmhType extends MixedWorkloadBenchmark_jmhType_B3 {
+}
+
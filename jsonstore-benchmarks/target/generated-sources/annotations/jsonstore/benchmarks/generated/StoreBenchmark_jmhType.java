@@ -0,0 +1,4 @@
+package jsonstore.benchmarks.generated;
+public class StoreBenchmark_jmhType extends StoreBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package jsonstore.benchmarks.generated;
+public class ValueSerializerBenchmark_SerializedSize_jmhType extends ValueSerializerBenchmark_SerializedSize_jmhType_B3 {
+}
+
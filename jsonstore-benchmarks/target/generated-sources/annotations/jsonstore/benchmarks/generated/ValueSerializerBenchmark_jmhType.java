@@ -0,0 +1,4 @@
+package jsonstore.benchmarks.generated;
+public class ValueSerializerBenchmark_jmhType extends ValueSerializerBenchmark_jmhType_B3 {
+}
+
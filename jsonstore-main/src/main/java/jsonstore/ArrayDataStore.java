@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.IOException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+
+import krati.store.DataStore;
+import krati.store.DynamicDataArray;
+import krati.util.IndexedIterator;
+
+/**
+ * ArrayDataStore stores the values of dense numeric keys in a Krati {@link DynamicDataArray},
+ * where a key is the index of its value. There is no hash index to look up, no collisions
+ * and no keys stored with the values, and the array grows as larger keys are written.
+ * 
+ * <p>
+ * Keys are the big-endian bytes written by {@link PathKeyLongSerializer} or {@link PathKeyIntSerializer}
+ * and must be between <code>0</code> and {@link Integer#MAX_VALUE}. Values are only put below the maximum capacity,
+ * so that a single large key cannot grow the array and its files to any id. Iterators visit keys in ascending order,
+ * and each key is a bucket of the iterator index, so that scan cursors and splits are key ranges.
+ * </p>
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public class ArrayDataStore implements DataStore<byte[], byte[]> {
+    /**
+     * The default maximum capacity.
+     */
+    public static final int DEFAULT_MAX_CAPACITY = 1 << 24;
+    
+    private final DynamicDataArray array;
+    private final int keyLength;
+    private final int maxCapacity;
+    private long scn;
+    
+    /**
+     * Constructs a new instance of ArrayDataStore.
+     * 
+     * @param array       - the underlying data array
+     * @param keyLength   - the length of key bytes, <code>8</code> for long keys or <code>4</code> for int keys
+     * @param maxCapacity - the number of keys from <code>0</code> which values can be put at, raised to the
+     *                      capacity of the array if larger
+     */
+    public ArrayDataStore(DynamicDataArray array, int keyLength, int maxCapacity) {
+        if(keyLength != 4 && keyLength != 8) {
+            throw new IllegalArgumentException("Invalid key length: " + keyLength);
+        }
+        if(maxCapacity < 1) {
+            throw new IllegalArgumentException("Invalid max capacity: " + maxCapacity);
+        }
+        this.array = array;
+        this.keyLength = keyLength;
+        this.maxCapacity = Math.max(maxCapacity, array.capacity());
+        this.scn = array.getHWMark();
+    }
+    
+    /**
+     * @return the underlying data array.
+     */
+    public DynamicDataArray getArray() {
+        return array;
+    }
+    
+    /**
+     * Gets the array index of the specified key bytes.
+     * 
+     * @throws IllegalArgumentException if the key is not a valid array index.
+     */
+    private int indexOf(byte[] key) {
+        if(key == null || key.length != keyLength) {
+            throw new IllegalArgumentException("Invalid key length: " + (key == null ? 0 : key.length));
+        }
+        
+        long value = 0;
+        for(byte b : key) {
+            value = (value << 8) | (b & 0xFF);
+        }
+        if(keyLength == 4) {
+            value = (int)value;
+        }
+        if(value < 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Key out of array range: " + value);
+        }
+        return (int)value;
+    }
+    
+    /**
+     * @return the number of keys from <code>0</code> which values can be put at.
+     */
+    public int getMaxCapacity() {
+        return maxCapacity;
+    }
+    
+    /**
+     * Checks that a value can be put at the specified key bytes.
+     * 
+     * @param key - the key bytes
+     * @throws IllegalArgumentException if the key is not a valid array index or not below the maximum capacity.
+     */
+    public void checkKey(byte[] key) {
+        checkCapacity(indexOf(key));
+    }
+    
+    private int checkCapacity(int index) {
+        if(index >= maxCapacity) {
+            throw new IllegalArgumentException("Key " + index + " exceeds array max capacity " + maxCapacity);
+        }
+        return index;
+    }
+    
+    /**
+     * Gets the key bytes of the specified array index.
+     */
+    private byte[] keyOf(int index) {
+        byte[] key = new byte[keyLength];
+        for(int i = keyLength - 1, v = index; i >= 0 && v != 0; i--, v >>>= 8) {
+            key[i] = (byte)v;
+        }
+        return key;
+    }
+    
+    private synchronized long nextScn() {
+        return ++scn;
+    }
+    
+    @Override
+    public int capacity() {
+        return array.capacity();
+    }
+    
+    @Override
+    public int getLength(byte[] key) {
+        int index = indexOf(key);
+        return array.hasIndex(index) ? array.getLength(index) : -1;
+    }
+    
+    @Override
+    public byte[] get(byte[] key) {
+        int index = indexOf(key);
+        return array.hasIndex(index) ? array.get(index) : null;
+    }
+    
+    @Override
+    public boolean put(byte[] key, byte[] value) throws Exception {
+        if(value == null) {
+            return delete(key);
+        }
+        
+        // The dynamic array expands its capacity to the index if needed
+        array.set(checkCapacity(indexOf(key)), value, nextScn());
+        return true;
+    }
+    
+    @Override
+    public boolean delete(byte[] key) throws Exception {
+        int index = indexOf(key);
+        if(!array.hasIndex(index) || !array.hasData(index)) {
+            return false;
+        }
+        array.delete(index, nextScn());
+        return true;
+    }
+    
+    @Override
+    public void sync() throws IOException {
+        array.sync();
+    }
+    
+    @Override
+    public void persist() throws IOException {
+        array.persist();
+    }
+    
+    @Override
+    public void clear() throws IOException {
+        array.clear();
+    }
+    
+    @Override
+    public boolean isOpen() {
+        return array.isOpen();
+    }
+    
+    @Override
+    public void open() throws IOException {
+        array.open();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        array.close();
+    }
+    
+    @Override
+    public IndexedIterator<byte[]> keyIterator() {
+        return new ArrayIterator<byte[]>() {
+            @Override
+            byte[] next(int index) {
+                return keyOf(index);
+            }
+        };
+    }
+    
+    @Override
+    public IndexedIterator<Entry<byte[], byte[]>> iterator() {
+        return new ArrayIterator<Entry<byte[], byte[]>>() {
+            @Override
+            Entry<byte[], byte[]> next(int index) {
+                return new SimpleImmutableEntry<byte[], byte[]>(keyOf(index), array.get(index));
+            }
+        };
+    }
+    
+    /**
+     * ArrayIterator visits the indexes holding data in ascending order. As with the buckets
+     * of a hash store, its index moves past an array index once <code>hasNext</code> loads it.
+     */
+    private abstract class ArrayIterator<E> implements IndexedIterator<E> {
+        private int index = 0;
+        private int loaded = -1;
+        
+        abstract E next(int index);
+        
+        @Override
+        public boolean hasNext() {
+            if(loaded >= 0) {
+                return true;
+            }
+            
+            int capacity = array.capacity();
+            for(int i = index; i < capacity; i++) {
+                if(array.hasData(i)) {
+                    loaded = i;
+                    index = i + 1;
+                    return true;
+                }
+            }
+            index = Math.max(index, capacity);
+            return false;
+        }
+        
+        @Override
+        public E next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int i = loaded;
+            loaded = -1;
+            return next(i);
+        }
+        
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+        
+        @Override
+        public int index() {
+            return index;
+        }
+        
+        @Override
+        public void reset(int index) {
+            this.index = Math.max(0, index);
+            this.loaded = -1;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * DictionaryValueCodec deflates values against the {@link ValueDictionary}s of a store.
+ * Unlike the built-in codecs, an instance belongs to a single store.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class DictionaryValueCodec implements ValueCodec {
+    /**
+     * The dictionaries by id (copy-on-write).
+     */
+    private volatile Map<Integer, ValueDictionary> dictionaries = Collections.emptyMap();
+    
+    /**
+     * The dictionary for compressing new values.
+     */
+    private volatile ValueDictionary current = null;
+    
+    private volatile int level = 6;
+    
+    @Override
+    public byte getId() {
+        return ValueCodecs.DICTIONARY_ID;
+    }
+    
+    @Override
+    public String getName() {
+        return "dictionary";
+    }
+    
+    /**
+     * Sets the compression level (1 to 9).
+     */
+    public void setLevel(int level) {
+        if(level < 1 || level > 9) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        this.level = level;
+    }
+    
+    /**
+     * Loads all the dictionaries from the specified store directory.
+     */
+    public synchronized void load(File storeDir) throws IOException {
+        Map<Integer, ValueDictionary> map = new HashMap<Integer, ValueDictionary>();
+        ValueDictionary last = null;
+        for(ValueDictionary dict : ValueDictionary.loadAll(storeDir)) {
+            map.put(dict.getId(), dict);
+            last = dict;
+        }
+        
+        dictionaries = map;
+        current = last;
+    }
+    
+    /**
+     * Adds a dictionary and starts compressing new values with it.
+     */
+    public synchronized void add(ValueDictionary dict) {
+        Map<Integer, ValueDictionary> map = new HashMap<Integer, ValueDictionary>(dictionaries);
+        map.put(dict.getId(), dict);
+        dictionaries = map;
+        current = dict;
+    }
+    
+    /**
+     * @return the dictionary used for compressing new values, or <code>null</code> if not trained yet.
+     */
+    public ValueDictionary getCurrentDictionary() {
+        return current;
+    }
+    
+    @Override
+    public byte[] encode(byte[] raw, int off, int len) {
+        ValueDictionary dict = current;
+        byte[] buf = ValueCodecs.buffer(ValueCodecs.deflateBound(len) + 11);
+        buf[0] = ValueCodecs.DICTIONARY_ID;
+        int pos = ValueCodecs.writeVarInt(dict == null ? 0 : dict.getId(), buf, 1);
+        pos = ValueCodecs.writeVarInt(len, buf, pos);
+        
+        Deflater deflater = ValueCodecs.acquireDeflater(level);
+        try {
+            if(dict != null) {
+                deflater.setDictionary(dict.getBytes());
+            }
+            pos = ValueCodecs.deflate(deflater, raw, off, len, buf, pos);
+        } finally {
+            ValueCodecs.release(deflater, level);
+        }
+        return Arrays.copyOf(buf, pos);
+    }
+    
+    @Override
+    public byte[] decode(byte[] value) throws IOException {
+        int[] pos = new int[] { 1 };
+        int dictId = ValueCodecs.readVarInt(value, pos);
+        byte[] raw = new byte[ValueCodecs.readVarInt(value, pos)];
+        
+        Inflater inflater = ValueCodecs.acquireInflater();
+        try {
+            if(dictId > 0) {
+                ValueDictionary dict = dictionaries.get(dictId);
+                if(dict == null) {
+                    throw new IOException("dictionary " + dictId + " not found");
+                }
+                inflater.setDictionary(dict.getBytes());
+            }
+            ValueCodecs.inflate(inflater, value, pos[0], value.length - pos[0], raw);
+        } finally {
+            ValueCodecs.release(inflater);
+        }
+        return raw;
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * JSONBulkLoader applies a stream of NDJSON records to a {@link JSONObjectStore}.
+ * Each line is one of the records below, where <code>"op"</code> defaults to
+ * <code>put</code>. Blank lines are skipped.
+ * 
+ * <pre>
+ *   {"op":"put","key":"12345","value":{...}}
+ *   {"op":"delete","key":"12345"}
+ * </pre>
+ * 
+ * <p>
+ * Records are read and parsed one chunk at a time, where the chunk size is the batch size
+ * of the store, and then applied in order. A record that cannot be parsed or applied is
+ * reported as a failure without stopping the load.
+ * </p>
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class JSONBulkLoader {
+    /**
+     * The maximum number of failures reported in detail.
+     */
+    public static final int MAX_REPORTED_FAILURES = 1000;
+    
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    
+    private final JSONObjectStore<String> jsonStore;
+    private final int chunkSize;
+    
+    private int lineNumber = 0;
+    private int putCount = 0;
+    private int deleteCount = 0;
+    private int failureCount = 0;
+    private final JSONArray failures = new JSONArray();
+    
+    /**
+     * Constructs a new instance of JSONBulkLoader.
+     * 
+     * @param jsonStore - the JSON store to load
+     * @param chunkSize - the number of records applied at a time
+     */
+    public JSONBulkLoader(JSONObjectStore<String> jsonStore, int chunkSize) {
+        this.jsonStore = jsonStore;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+    
+    /**
+     * Loads all the records from the specified NDJSON stream.
+     * 
+     * @param in - the UTF-8 NDJSON stream
+     * @return the load result
+     * @throws IOException if the stream cannot be read.
+     */
+    public JSONObject load(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"), 64 * 1024);
+        List<Record> chunk = new ArrayList<Record>(chunkSize);
+        
+        String line;
+        while((line = reader.readLine()) != null) {
+            lineNumber++;
+            if(line.trim().length() == 0) {
+                continue;
+            }
+            
+            try {
+                chunk.add(parse(line));
+            } catch(Exception e) {
+                fail(lineNumber, null, e);
+            }
+            
+            if(chunk.size() >= chunkSize) {
+                apply(chunk);
+            }
+        }
+        apply(chunk);
+        
+        return getResult();
+    }
+    
+    /**
+     * @return the load result of records applied so far.
+     */
+    public JSONObject getResult() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("lines", lineNumber);
+            json.put("puts", putCount);
+            json.put("deletes", deleteCount);
+            json.put("failed", failureCount);
+            json.put("failures", failures);
+        } catch(JSONException e) {}
+        
+        return json;
+    }
+    
+    private void apply(List<Record> chunk) {
+        for(Record r : chunk) {
+            try {
+                if(r.value != null) {
+                    jsonStore.put(r.key, r.value);
+                    putCount++;
+                } else {
+                    jsonStore.delete(r.key);
+                    deleteCount++;
+                }
+            } catch(Exception e) {
+                fail(r.line, r.key, e);
+            }
+        }
+        chunk.clear();
+    }
+    
+    private Record parse(String line) throws IOException {
+        String op = null;
+        String key = null;
+        JSONObject value = null;
+        
+        JsonParser parser = jsonFactory.createJsonParser(line);
+        try {
+            if(parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Record is not a JSON object");
+            }
+            
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if(name.equals("op")) {
+                    op = parser.getText();
+                } else if(name.equals("key")) {
+                    key = (token == JsonToken.VALUE_NULL) ? null : parser.getText();
+                } else if(name.equals("value") && token == JsonToken.START_OBJECT) {
+                    value = JSONStreaming.readObject(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } finally {
+            parser.close();
+        }
+        
+        if(key == null) {
+            throw new IOException("Missing key");
+        }
+        if(op == null || op.equals("put")) {
+            if(value == null) {
+                throw new IOException("Missing value");
+            }
+        } else if(op.equals("delete")) {
+            value = null;
+        } else {
+            throw new IOException("Unknown op: " + op);
+        }
+        
+        return new Record(lineNumber, key, value);
+    }
+    
+    private void fail(int line, String key, Exception e) {
+        failureCount++;
+        if(failures.length() < MAX_REPORTED_FAILURES) {
+            JSONObject json = new JSONObject();
+            try {
+                json.put("line", line);
+                if(key != null) {
+                    json.put("key", key);
+                }
+                json.put("error", String.valueOf(e.getMessage()));
+            } catch(JSONException ex) {}
+            failures.put(json);
+        }
+    }
+    
+    private static final class Record {
+        final int line;
+        final String key;
+        final JSONObject value;
+        
+        Record(int line, String key, JSONObject value) {
+            this.line = line;
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+/**
+ * JSONETag computes the entity tags of stored values and evaluates the HTTP
+ * <code>If-Match</code> and <code>If-None-Match</code> preconditions against them.
+ * An entity tag is a 64-bit FNV-1a hash of the stored value bytes, so it changes
+ * whenever a value is rewritten with different content or a different codec.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class JSONETag {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    
+    private JSONETag() {}
+    
+    /**
+     * Computes the quoted entity tag of the specified stored value.
+     * 
+     * @param bytes - the stored value bytes
+     * @return the entity tag or <code>null</code> if <code>bytes</code> is <code>null</code>.
+     */
+    public static String of(byte[] bytes) {
+        if(bytes == null) {
+            return null;
+        }
+        
+        long hash = FNV_OFFSET;
+        for(byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        
+        String hex = Long.toHexString(hash);
+        StringBuilder sb = new StringBuilder(18).append('"');
+        for(int i = hex.length(); i < 16; i++) {
+            sb.append('0');
+        }
+        return sb.append(hex).append('"').toString();
+    }
+    
+    /**
+     * Evaluates an <code>If-Match</code> header, which uses the strong comparison.
+     * 
+     * @param ifMatch - the header value or <code>null</code>
+     * @param etag    - the entity tag of the current value or <code>null</code> if there is no value
+     * @return <code>true</code> if the header is absent or matches the current value.
+     */
+    public static boolean ifMatch(String ifMatch, String etag) {
+        if(ifMatch == null) {
+            return true;
+        }
+        return etag != null && matches(ifMatch, etag, false);
+    }
+    
+    /**
+     * Evaluates an <code>If-None-Match</code> header, which uses the weak comparison.
+     * 
+     * @param ifNoneMatch - the header value or <code>null</code>
+     * @param etag        - the entity tag of the current value or <code>null</code> if there is no value
+     * @return <code>true</code> if the header is absent or matches none of the current value.
+     */
+    public static boolean ifNoneMatch(String ifNoneMatch, String etag) {
+        if(ifNoneMatch == null) {
+            return true;
+        }
+        return etag == null || !matches(ifNoneMatch, etag, true);
+    }
+    
+    private static boolean matches(String header, String etag, boolean weak) {
+        for(String tag : header.split(",")) {
+            tag = tag.trim();
+            if(tag.equals("*")) {
+                return true;
+            }
+            if(tag.startsWith("W/")) {
+                if(!weak) {
+                    continue;
+                }
+                tag = tag.substring(2);
+            }
+            if(tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
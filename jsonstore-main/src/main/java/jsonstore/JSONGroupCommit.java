@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * JSONGroupCommit makes writes to a {@link JSONObjectStore} durable by syncing the store,
+ * where concurrent writers waiting for durability share one sync. The first writer to
+ * arrive while no sync is running becomes the leader: it waits up to the commit window
+ * for more writers, then syncs all the writes counted so far on their behalf. Writers
+ * arriving during a sync wait for it and are covered by the next one.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class JSONGroupCommit {
+    private final JSONObjectStore<?> jsonStore;
+    private volatile long windowMillis;
+    
+    /**
+     * The number of writes made durable, and whether a sync is running (guarded by this).
+     */
+    private long syncedCount = 0;
+    private boolean syncing = false;
+    
+    private long syncs = 0;
+    private long commits = 0;
+    
+    /**
+     * Constructs a new instance of JSONGroupCommit.
+     * 
+     * @param jsonStore - the JSON store to sync
+     */
+    public JSONGroupCommit(JSONObjectStore<?> jsonStore) {
+        this.jsonStore = jsonStore;
+    }
+    
+    /**
+     * @return the milliseconds a leader waits for more writers before syncing.
+     */
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+    
+    /**
+     * Sets the milliseconds a leader waits for more writers before syncing. With no window,
+     * writes are still grouped while the previous sync is running.
+     */
+    public void setWindowMillis(long windowMillis) {
+        this.windowMillis = Math.max(0, windowMillis);
+    }
+    
+    /**
+     * Waits until the first <code>writeCount</code> writes of the store are synced.
+     * 
+     * @param writeCount - the write count of the store taken after the write to commit
+     * @throws IOException if the store cannot be synced.
+     */
+    public void commit(long writeCount) throws IOException {
+        synchronized(this) {
+            commits++;
+            while(syncedCount < writeCount) {
+                if(!syncing) {
+                    syncing = true;
+                    break;
+                }
+                waitInterruptibly(0);
+            }
+            if(syncedCount >= writeCount) {
+                return;
+            }
+            
+            // Lead the next sync, letting more writers join within the window
+            long deadline = System.currentTimeMillis() + windowMillis;
+            long remaining;
+            while((remaining = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    waitInterruptibly(remaining);
+                } catch(IOException e) {
+                    syncing = false;
+                    notifyAll();
+                    throw e;
+                }
+            }
+        }
+        
+        long count = jsonStore.getWriteCount();
+        boolean synced = false;
+        try {
+            jsonStore.sync();
+            synced = true;
+        } finally {
+            synchronized(this) {
+                syncing = false;
+                if(synced) {
+                    syncedCount = Math.max(syncedCount, count);
+                    syncs++;
+                }
+                notifyAll();
+            }
+        }
+    }
+    
+    private void waitInterruptibly(long timeoutMillis) throws IOException {
+        try {
+            wait(timeoutMillis);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for group commit");
+        }
+    }
+    
+    /**
+     * @return the group commit statistics in JSON.
+     */
+    public synchronized JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("windowMillis", windowMillis);
+            json.put("commits", commits);
+            json.put("syncs", syncs);
+        } catch(JSONException e) {}
+        
+        return json;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * JSONHashIndex indexes a <code>string</code> (or <code>boolean</code>) property for equality queries.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public class JSONHashIndex extends JSONIndex {
+    private final String type;
+    
+    public JSONHashIndex(String property, String type) {
+        super(property, new ConcurrentHashMap<Object, Object>());
+        this.type = type;
+    }
+    
+    @Override
+    public String getType() {
+        return type;
+    }
+    
+    @Override
+    protected Object normalize(Object value) {
+        if(value == null || value == JSONObject.NULL || value instanceof JSONObject || value instanceof JSONArray) {
+            return null;
+        }
+        return value.toString();
+    }
+    
+    @Override
+    protected void writeValue(DataOutputStream out, Object value) throws IOException {
+        byte[] b = ((String)value).getBytes("UTF-8");
+        out.writeInt(b.length);
+        out.write(b);
+    }
+    
+    @Override
+    protected Object readValue(DataInputStream in) throws IOException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return new String(b, "UTF-8");
+    }
+}
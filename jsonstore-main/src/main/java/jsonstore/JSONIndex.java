@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * JSONIndex is an in-memory secondary index on a top-level property of the JSON objects
+ * in a store. It maps property values to keys and keeps the indexed value of every key,
+ * so that updates and deletes can remove the old entry without reading the store.
+ * 
+ * <p>
+ * Updates of different keys run concurrently, relying on the store to order the updates
+ * of each key. The keys of a property value are changed under one of a fixed set of locks
+ * picked by the value, and queries read the postings without locking.
+ * </p>
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ * @see JSONSortedIndex
+ * @see JSONHashIndex
+ */
+public abstract class JSONIndex {
+    private static final int MAGIC = 0x4a534958;
+    
+    /**
+     * The marker of keys deleted while the index is being built.
+     */
+    private static final Object DELETED = new Object();
+    
+    private static final int NUM_LOCKS = 64;
+    
+    protected final String property;
+    
+    /**
+     * The indexed value by key.
+     */
+    private final Map<String, Object> values = new ConcurrentHashMap<String, Object>();
+    
+    /**
+     * The key or the concurrent set of keys by indexed value.
+     */
+    protected final ConcurrentMap<Object, Object> postings;
+    
+    /**
+     * The locks ordering the changes to the keys of each indexed value.
+     */
+    private final Object[] postingLocks = new Object[NUM_LOCKS];
+    
+    private volatile boolean building = false;
+    
+    protected JSONIndex(String property, ConcurrentMap<Object, Object> postings) {
+        this.property = property;
+        this.postings = postings;
+        for(int i = 0; i < NUM_LOCKS; i++) {
+            postingLocks[i] = new Object();
+        }
+    }
+    
+    /**
+     * @return the indexed property.
+     */
+    public final String getProperty() {
+        return property;
+    }
+    
+    /**
+     * @return the index type, which is the schema type of the indexed property.
+     */
+    public abstract String getType();
+    
+    /**
+     * Converts a property value or a query parameter to an indexed value.
+     * 
+     * @return the indexed value or <code>null</code> if the value cannot be indexed.
+     */
+    protected abstract Object normalize(Object value);
+    
+    protected abstract void writeValue(DataOutputStream out, Object value) throws IOException;
+    
+    protected abstract Object readValue(DataInputStream in) throws IOException;
+    
+    /**
+     * @return the number of indexed keys.
+     */
+    public int size() {
+        return values.size();
+    }
+    
+    /**
+     * Checks if putting the specified value of a key (or deleting it if <code>json</code> is <code>null</code>)
+     * would change this index. An index being built is always changed.
+     */
+    boolean changes(String key, JSONObject json) {
+        if(building) {
+            return true;
+        }
+        Object value = json == null ? null : normalize(json.opt(property));
+        Object old = values.get(key);
+        return value == null ? old != null : !value.equals(old);
+    }
+    
+    /**
+     * Updates the index after a key is put (or deleted if <code>json</code> is <code>null</code>).
+     * The updates of a key must not run concurrently.
+     */
+    public void update(String key, JSONObject json) {
+        Object value = json == null ? null : normalize(json.opt(property));
+        apply(key, value);
+        
+        // Applied again in order with the keys loaded by a build, which may have started meanwhile
+        if(building) {
+            synchronized(this) {
+                if(building) {
+                    apply(key, value);
+                    if(value == null) {
+                        values.put(key, DELETED);
+                    }
+                }
+            }
+        }
+    }
+    
+    private void apply(String key, Object value) {
+        Object old = values.get(key);
+        if(old != null && old != DELETED && !old.equals(value)) {
+            removePosting(old, key);
+        }
+        
+        if(value != null) {
+            values.put(key, value);
+            addPosting(value, key);
+        } else {
+            values.remove(key);
+        }
+    }
+    
+    /**
+     * @return <code>true</code> if the index is being built.
+     */
+    boolean isBuilding() {
+        return building;
+    }
+    
+    /**
+     * Starts building the index from the store while it receives updates.
+     */
+    synchronized void beginBuild() {
+        building = true;
+    }
+    
+    /**
+     * Adds a key read from the store unless it has been updated since the build began.
+     */
+    synchronized void load(String key, JSONObject json) {
+        if(!values.containsKey(key)) {
+            Object value = normalize(json.opt(property));
+            if(value != null) {
+                values.put(key, value);
+                addPosting(value, key);
+            }
+        }
+    }
+    
+    /**
+     * Completes building the index.
+     */
+    synchronized void endBuild() {
+        Iterator<Object> iter = values.values().iterator();
+        while(iter.hasNext()) {
+            if(iter.next() == DELETED) {
+                iter.remove();
+            }
+        }
+        building = false;
+    }
+    
+    /**
+     * Removes all the keys.
+     */
+    public void clear() {
+        values.clear();
+        postings.clear();
+    }
+    
+    /**
+     * Gets the keys with the specified property value.
+     * 
+     * @param value - the property value or its string form
+     * @param limit - the maximum number of keys
+     * @return the keys
+     */
+    public List<String> equalTo(Object value, int limit) {
+        List<String> keys = new ArrayList<String>();
+        Object v = normalize(value);
+        if(v != null) {
+            addKeys(postings.get(v), keys, limit);
+        }
+        return keys;
+    }
+    
+    @SuppressWarnings("unchecked")
+    protected static void addKeys(Object posting, List<String> keys, int limit) {
+        if(posting == null || keys.size() >= limit) {
+            return;
+        }
+        if(posting instanceof String) {
+            keys.add((String)posting);
+        } else {
+            for(String key : (Collection<String>)posting) {
+                if(keys.size() >= limit) {
+                    break;
+                }
+                keys.add(key);
+            }
+        }
+    }
+    
+    private Object postingLock(Object value) {
+        return postingLocks[(value.hashCode() & 0x7fffffff) % NUM_LOCKS];
+    }
+    
+    @SuppressWarnings("unchecked")
+    private void addPosting(Object value, String key) {
+        synchronized(postingLock(value)) {
+            Object posting = postings.get(value);
+            if(posting == null) {
+                postings.put(value, key);
+            } else if(posting instanceof String) {
+                if(!posting.equals(key)) {
+                    Set<String> set = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>(4));
+                    set.add((String)posting);
+                    set.add(key);
+                    postings.put(value, set);
+                }
+            } else {
+                ((Set<String>)posting).add(key);
+            }
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private void removePosting(Object value, String key) {
+        synchronized(postingLock(value)) {
+            Object posting = postings.get(value);
+            if(posting instanceof String) {
+                if(posting.equals(key)) {
+                    postings.remove(value);
+                }
+            } else if(posting != null) {
+                Set<String> set = (Set<String>)posting;
+                set.remove(key);
+                if(set.size() == 1) {
+                    postings.put(value, set.iterator().next());
+                } else if(set.isEmpty()) {
+                    postings.remove(value);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Writes this index to the specified temporary file, which is renamed to the index file by the caller.
+     * The index must not change while it is written.
+     */
+    void write(File tmpFile) throws IOException {
+        FileOutputStream fos = new FileOutputStream(tmpFile);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeUTF(getType());
+            out.writeInt(values.size());
+            for(Map.Entry<String, Object> e : values.entrySet()) {
+                out.writeUTF(e.getKey());
+                writeValue(out, e.getValue());
+            }
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+    }
+    
+    /**
+     * Loads this index from the specified file.
+     * 
+     * @throws IOException if the file is not an index of the same type.
+     */
+    synchronized void load(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        try {
+            if(in.readInt() != MAGIC || !in.readUTF().equals(getType())) {
+                throw new IOException(file.getAbsolutePath() + " is not a " + getType() + " index");
+            }
+            
+            clear();
+            int count = in.readInt();
+            for(int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                Object value = readValue(in);
+                values.put(key, value);
+                addPosting(value, key);
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,523 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.log4j.Logger;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+import krati.util.IndexedIterator;
+
+/**
+ * JSONIndexes holds the secondary indexes of a {@link JSONObjectStore}, one per top-level
+ * schema property declared with <code>"index":true</code>. Properties of type <code>number</code>
+ * or <code>integer</code> get a {@link JSONSortedIndex} and those of type <code>string</code>
+ * or <code>boolean</code> get a {@link JSONHashIndex}. It also holds the optional {@link JSONKeyIndex}
+ * of the store, which is saved, deleted and rebuilt along with the secondary indexes.
+ * 
+ * <p>
+ * The indexes are saved under the <code>secondary</code> directory of the store when the store is
+ * persisted. The saved file of an index is deleted before the first write changing the index after
+ * that, so an index file is present only if it matches the store, and only the indexes changed since
+ * they were last saved are saved again. Missing indexes are rebuilt by a scan of the store.
+ * </p>
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class JSONIndexes {
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(JSONIndexes.class);
+    
+    /**
+     * The file name of the key index, which cannot clash with property index files.
+     */
+    private static final String KEY_INDEX_FILE = "keys.index";
+    
+    private final File indexDir;
+    
+    /**
+     * The optional ordered key index.
+     */
+    private volatile JSONKeyIndex keyIndex;
+    
+    /**
+     * The indexes by property, replaced as a whole on schema changes.
+     */
+    private volatile Map<String, JSONIndex> indexes = Collections.emptyMap();
+    
+    /**
+     * The indexes, either {@link JSONIndex} or {@link JSONKeyIndex}, changed since they were saved.
+     */
+    private final Set<Object> dirty = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+    
+    /**
+     * The gate held shared by writes from before the store is written until the indexes are updated,
+     * and exclusively while the changed indexes are taken to be saved.
+     */
+    private final ReentrantReadWriteLock updateGate = new ReentrantReadWriteLock();
+    
+    /**
+     * Whether the indexes have been configured since the store was opened.
+     */
+    private boolean configured = false;
+    
+    /**
+     * Constructs a new instance of JSONIndexes.
+     * 
+     * @param storeDir - the store directory
+     */
+    public JSONIndexes(File storeDir) {
+        this.indexDir = new File(storeDir, "secondary");
+    }
+    
+    /**
+     * @return <code>true</code> if no property is indexed.
+     */
+    public boolean isEmpty() {
+        return indexes.isEmpty();
+    }
+    
+    /**
+     * Gets the index of the specified property.
+     * 
+     * @param property - the top-level property
+     * @return the index or <code>null</code> if the property is not indexed.
+     */
+    public JSONIndex get(String property) {
+        return indexes.get(property);
+    }
+    
+    /**
+     * @return the ordered key index, or <code>null</code> if keys are not indexed.
+     */
+    public JSONKeyIndex getKeyIndex() {
+        return keyIndex;
+    }
+    
+    /**
+     * Sets the ordered key index, which is loaded or built when the indexes are first configured.
+     * 
+     * @param keyIndex - the key index
+     * @throws IllegalStateException if the indexes have been configured.
+     */
+    public synchronized void setKeyIndex(JSONKeyIndex keyIndex) {
+        if(configured) {
+            throw new IllegalStateException("Key index must be set before the indexes are configured");
+        }
+        this.keyIndex = keyIndex;
+    }
+    
+    /**
+     * @return the index sizes by property in JSON.
+     */
+    public JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        try {
+            for(JSONIndex index : indexes.values()) {
+                JSONObject stats = new JSONObject();
+                stats.put("type", index.getType());
+                stats.put("size", index.size());
+                json.put(index.getProperty(), stats);
+            }
+        } catch(JSONException e) {}
+        
+        return json;
+    }
+    
+    /**
+     * Gets the indexed properties and their types declared in the specified JSON schema.
+     * 
+     * @param schema - the JSON schema or <code>null</code>
+     * @return the types by property
+     */
+    static Map<String, String> getIndexedProperties(JSONObject schema) {
+        Map<String, String> map = new LinkedHashMap<String, String>();
+        JSONObject properties = schema == null ? null : schema.optJSONObject("properties");
+        if(properties != null) {
+            Iterator<?> iter = properties.keys();
+            while(iter.hasNext()) {
+                String property = (String)iter.next();
+                JSONObject json = properties.optJSONObject(property);
+                if(json != null && json.optBoolean("index", false)) {
+                    String type = json.optString("type", "string");
+                    if("integer".equals(type)) {
+                        type = "number";
+                    }
+                    if("number".equals(type) || "string".equals(type) || "boolean".equals(type)) {
+                        map.put(property, type);
+                    } else {
+                        logger.warn("property " + property + " of type " + type + " cannot be indexed");
+                    }
+                }
+            }
+        }
+        return map;
+    }
+    
+    /**
+     * Configures the indexes for the specified JSON schema. Indexes no longer declared are dropped,
+     * and newly declared indexes are loaded from their files or built from the store. The store
+     * remains writable while indexes are built.
+     * 
+     * @param schema    - the JSON schema or <code>null</code>
+     * @param jsonStore - the JSON store
+     * @throws IOException if an index cannot be built.
+     */
+    public synchronized void configure(JSONObject schema, JSONObjectStore<String> jsonStore) throws IOException {
+        Map<String, String> properties = getIndexedProperties(schema);
+        Map<String, JSONIndex> current = indexes;
+        Map<String, JSONIndex> updated = new LinkedHashMap<String, JSONIndex>();
+        Map<String, JSONIndex> added = new LinkedHashMap<String, JSONIndex>();
+        
+        for(Entry<String, String> e : properties.entrySet()) {
+            JSONIndex index = current.get(e.getKey());
+            if(index == null || !index.getType().equals(e.getValue())) {
+                index = "number".equals(e.getValue()) ?
+                        new JSONSortedIndex(e.getKey()) : new JSONHashIndex(e.getKey(), e.getValue());
+                added.put(e.getKey(), index);
+            }
+            updated.put(e.getKey(), index);
+        }
+        
+        for(JSONIndex index : current.values()) {
+            if(updated.get(index.getProperty()) != index) {
+                getFile(index.getProperty()).delete();
+                dirty.remove(index);
+            }
+        }
+        
+        // Load saved indexes only when opening the store, since they may be stale afterwards
+        for(Iterator<JSONIndex> iter = added.values().iterator(); iter.hasNext();) {
+            JSONIndex index = iter.next();
+            File file = getFile(index.getProperty());
+            if(file.exists()) {
+                if(!configured) {
+                    try {
+                        index.load(file);
+                        iter.remove();
+                        continue;
+                    } catch(IOException e) {
+                        logger.warn("failed to load index " + index.getProperty(), e);
+                        index.clear();
+                    }
+                }
+                file.delete();
+            }
+            index.beginBuild();
+            markDirty(index, file);
+        }
+        
+        // Load the saved key index or build it along with the other indexes
+        JSONKeyIndex addedKeyIndex = null;
+        if(!configured && keyIndex != null) {
+            File file = getKeyIndexFile();
+            if(file.exists()) {
+                try {
+                    keyIndex.load(file);
+                } catch(IOException e) {
+                    logger.warn("failed to load key index", e);
+                    keyIndex.clear();
+                    addedKeyIndex = keyIndex;
+                }
+            } else {
+                addedKeyIndex = keyIndex;
+            }
+            if(addedKeyIndex != null) {
+                addedKeyIndex.beginBuild();
+                markDirty(addedKeyIndex, file);
+            }
+        }
+        
+        if(!configured) {
+            // Remove the files of indexes no longer declared
+            File[] files = indexDir.listFiles();
+            if(files != null) {
+                for(File file : files) {
+                    if(!isIndexFile(file, updated.keySet())) {
+                        file.delete();
+                    }
+                }
+            }
+            configured = true;
+        }
+        
+        indexes = Collections.unmodifiableMap(updated);
+        if(addedKeyIndex != null) {
+            buildKeyIndex(addedKeyIndex, jsonStore);
+        }
+        if(added.isEmpty()) {
+            return;
+        }
+        
+        // Build the missing indexes while they receive updates
+        long startTime = System.currentTimeMillis();
+        try {
+            IndexedIterator<Entry<String, JSONObject>> iter = jsonStore.iterator();
+            while(iter.hasNext()) {
+                Entry<String, JSONObject> e = iter.next();
+                if(e != null && e.getValue() != null) {
+                    for(JSONIndex index : added.values()) {
+                        index.load(e.getKey(), e.getValue());
+                    }
+                }
+            }
+        } catch(RuntimeException e) {
+            throw new IOException("failed to build indexes " + added.keySet(), e);
+        } finally {
+            for(JSONIndex index : added.values()) {
+                index.endBuild();
+            }
+        }
+        
+        logger.info("built indexes " + added.keySet() + " in " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+    
+    /**
+     * Builds the key index from the keys of the store while it receives updates.
+     */
+    private void buildKeyIndex(JSONKeyIndex index, JSONObjectStore<String> jsonStore) throws IOException {
+        long startTime = System.currentTimeMillis();
+        try {
+            IndexedIterator<String> iter = jsonStore.keyIterator();
+            while(iter.hasNext()) {
+                String key = iter.next();
+                if(key != null) {
+                    index.load(key);
+                }
+            }
+        } catch(RuntimeException e) {
+            throw new IOException("failed to build key index", e);
+        } finally {
+            index.endBuild();
+        }
+        
+        logger.info("built key index of " + index.size() + " keys in " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+    
+    /**
+     * Passes the update gate before the specified key is put (or deleted if <code>json</code> is <code>null</code>),
+     * and deletes the saved indexes the write changes. It must be called before the store is written, and
+     * followed by {@link #endUpdate()} once the indexes are updated.
+     */
+    void beginUpdate(String key, JSONObject json) {
+        updateGate.readLock().lock();
+        try {
+            for(JSONIndex index : indexes.values()) {
+                if(index.changes(key, json)) {
+                    markDirty(index, getFile(index.getProperty()));
+                }
+            }
+            JSONKeyIndex k = keyIndex;
+            if(k != null && k.changes(key, json != null)) {
+                markDirty(k, getKeyIndexFile());
+            }
+        } catch(RuntimeException e) {
+            updateGate.readLock().unlock();
+            throw e;
+        }
+    }
+    
+    /**
+     * Passes the update gate before the store is cleared, and deletes all the saved indexes.
+     * It must be followed by {@link #endUpdate()} once the indexes are cleared.
+     */
+    void beginClear() {
+        updateGate.readLock().lock();
+        for(JSONIndex index : indexes.values()) {
+            markDirty(index, getFile(index.getProperty()));
+        }
+        JSONKeyIndex k = keyIndex;
+        if(k != null) {
+            markDirty(k, getKeyIndexFile());
+        }
+    }
+    
+    void endUpdate() {
+        updateGate.readLock().unlock();
+    }
+    
+    /**
+     * Updates the indexes after the specified key is put (or deleted if <code>json</code> is <code>null</code>).
+     */
+    void update(String key, JSONObject json) {
+        for(JSONIndex index : indexes.values()) {
+            index.update(key, json);
+        }
+        JSONKeyIndex k = keyIndex;
+        if(k != null) {
+            k.update(key, json != null);
+        }
+    }
+    
+    /**
+     * Removes all the keys from the indexes.
+     */
+    void clear() {
+        for(JSONIndex index : indexes.values()) {
+            index.clear();
+        }
+        JSONKeyIndex k = keyIndex;
+        if(k != null) {
+            k.clear();
+        }
+    }
+    
+    /**
+     * Deletes the saved file of an index unless it has been deleted since the index was last saved.
+     */
+    private void markDirty(Object index, File file) {
+        if(!dirty.contains(index)) {
+            synchronized(dirty) {
+                if(dirty.add(index)) {
+                    file.delete();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Takes the indexes changed since they were last saved, at a point where no write is between
+     * the store and the indexes. It must be called before the store is persisted, and the indexes
+     * taken must be saved by {@link #save(List)} after, so that the saved indexes match the persisted
+     * store. Indexes being built are left to the next save.
+     * 
+     * @return the indexes to save.
+     */
+    List<Object> takeChanged() {
+        List<Object> changed = new ArrayList<Object>();
+        if(dirty.isEmpty()) {
+            return changed;
+        }
+        
+        updateGate.writeLock().lock();
+        try {
+            for(JSONIndex index : indexes.values()) {
+                if(!index.isBuilding() && dirty.remove(index)) {
+                    changed.add(index);
+                }
+            }
+            JSONKeyIndex k = keyIndex;
+            if(k != null && !k.isBuilding() && dirty.remove(k)) {
+                changed.add(k);
+            }
+        } finally {
+            updateGate.writeLock().unlock();
+        }
+        return changed;
+    }
+    
+    /**
+     * Saves the indexes taken by {@link #takeChanged()} after the store is persisted. An index
+     * changed meanwhile is not saved, since the persisted store may not have the change.
+     * 
+     * @param changed - the indexes to save
+     * @throws IOException if an index cannot be saved.
+     */
+    void save(List<Object> changed) throws IOException {
+        if(changed.isEmpty()) {
+            return;
+        }
+        if(!indexDir.exists()) {
+            indexDir.mkdirs();
+        }
+        
+        for(Object index : changed) {
+            File file;
+            if(index instanceof JSONIndex) {
+                JSONIndex idx = (JSONIndex)index;
+                if(indexes.get(idx.getProperty()) != idx) {
+                    continue;
+                }
+                file = getFile(idx.getProperty());
+            } else if(index == keyIndex) {
+                file = getKeyIndexFile();
+            } else {
+                continue;
+            }
+            
+            File tmpFile = new File(file.getPath() + ".tmp");
+            try {
+                if(index instanceof JSONIndex) {
+                    ((JSONIndex)index).write(tmpFile);
+                } else {
+                    ((JSONKeyIndex)index).write(tmpFile);
+                }
+                synchronized(dirty) {
+                    if(!dirty.contains(index) && !tmpFile.renameTo(file)) {
+                        throw new IOException(file.getAbsolutePath() + " not saved");
+                    }
+                }
+            } catch(IOException e) {
+                dirty.add(index);
+                throw e;
+            } finally {
+                tmpFile.delete();
+            }
+        }
+    }
+    
+    /**
+     * Saves the indexes changed since they were last saved. It must be called after the store
+     * is persisted and while the store is not written, such as once it is closed.
+     * 
+     * @throws IOException if an index cannot be saved.
+     */
+    public void save() throws IOException {
+        save(takeChanged());
+    }
+    
+    private boolean isIndexFile(File file, Iterable<String> properties) {
+        if(keyIndex != null && getKeyIndexFile().equals(file)) {
+            return true;
+        }
+        for(String property : properties) {
+            if(getFile(property).equals(file)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private File getKeyIndexFile() {
+        return new File(indexDir, KEY_INDEX_FILE);
+    }
+    
+    private File getFile(String property) {
+        try {
+            return new File(indexDir, URLEncoder.encode(property, "UTF-8") + ".idx");
+        } catch(IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JSONKeyIndex keeps the keys of a store in order, so that key ranges and key prefixes can be
+ * listed without a full scan of the hash-indexed store. Numeric keys, as stored by
+ * {@link PathKeyLongSerializer} and {@link PathKeyIntSerializer}, are ordered by value and other
+ * keys are ordered as strings. Keys are held in memory in a concurrent skip list, so updates
+ * of different keys do not block one another and listings see them as they happen. The list
+ * is not bounded and takes about 60 bytes per numeric key, and about 75 bytes plus two per
+ * character for each string key, on a 64-bit JVM with compressed pointers.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ * @see JSONIndexes
+ */
+public final class JSONKeyIndex {
+    private static final int MAGIC = 0x4a534b58;
+    
+    private final boolean numeric;
+    private final ConcurrentSkipListSet<Object> keys = new ConcurrentSkipListSet<Object>();
+    private final AtomicInteger size = new AtomicInteger();
+    
+    /**
+     * The keys updated while the index is being built, or <code>null</code> if not building.
+     */
+    private volatile Set<Object> updated = null;
+    
+    /**
+     * Constructs a new instance of JSONKeyIndex.
+     * 
+     * @param numeric - whether keys are numbers ordered by value rather than strings
+     */
+    public JSONKeyIndex(boolean numeric) {
+        this.numeric = numeric;
+    }
+    
+    /**
+     * @return <code>true</code> if keys are numbers ordered by value.
+     */
+    public boolean isNumeric() {
+        return numeric;
+    }
+    
+    /**
+     * @return the index type, <code>number</code> or <code>string</code>.
+     */
+    public String getType() {
+        return numeric ? "number" : "string";
+    }
+    
+    /**
+     * @return the number of indexed keys.
+     */
+    public int size() {
+        return size.get();
+    }
+    
+    private Object toKey(String key) {
+        if(!numeric) {
+            return key;
+        }
+        try {
+            return Long.parseLong(key);
+        } catch(NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + key);
+        }
+    }
+    
+    private void add(Object key) {
+        if(keys.add(key)) {
+            size.incrementAndGet();
+        }
+    }
+    
+    private void remove(Object key) {
+        if(keys.remove(key)) {
+            size.decrementAndGet();
+        }
+    }
+    
+    /**
+     * Checks if putting or deleting a key would change this index. An index being built is always changed.
+     * 
+     * @throws IllegalArgumentException if the key is not a number for numeric keys.
+     */
+    boolean changes(String key, boolean exists) {
+        return updated != null || keys.contains(toKey(key)) != exists;
+    }
+    
+    /**
+     * Updates the index after a key is put or deleted. The updates of a key must not run concurrently.
+     * 
+     * @param key    - the key
+     * @param exists - <code>true</code> if the key is put or <code>false</code> if it is deleted
+     */
+    public void update(String key, boolean exists) {
+        Object k = toKey(key);
+        apply(k, exists);
+        
+        // Applied again in order with the keys loaded by a build, which may have started meanwhile
+        if(updated != null) {
+            synchronized(this) {
+                if(updated != null) {
+                    updated.add(k);
+                    apply(k, exists);
+                }
+            }
+        }
+    }
+    
+    private void apply(Object k, boolean exists) {
+        if(exists) {
+            add(k);
+        } else {
+            remove(k);
+        }
+    }
+    
+    /**
+     * @return <code>true</code> if the index is being built.
+     */
+    boolean isBuilding() {
+        return updated != null;
+    }
+    
+    /**
+     * Starts building the index from the store while it receives updates.
+     */
+    synchronized void beginBuild() {
+        updated = new HashSet<Object>();
+    }
+    
+    /**
+     * Adds a key read from the store unless it has been updated since the build began.
+     */
+    synchronized void load(String key) {
+        Object k = toKey(key);
+        if(!updated.contains(k)) {
+            add(k);
+        }
+    }
+    
+    /**
+     * Completes building the index.
+     */
+    synchronized void endBuild() {
+        updated = null;
+    }
+    
+    /**
+     * Removes all the keys.
+     */
+    public void clear() {
+        keys.clear();
+        size.set(0);
+    }
+    
+    /**
+     * Lists the keys in the specified range and with the specified prefix in ascending order.
+     * Keys put or deleted while the listing is iterated may or may not be seen.
+     * 
+     * @param from   - the lowest key (inclusive), or <code>null</code> for no lower bound
+     * @param to     - the highest key (exclusive), or <code>null</code> for no upper bound
+     * @param prefix - the key prefix, or <code>null</code> for any key
+     * @return the iterator over the keys.
+     * @throws IllegalArgumentException if a bound is not a number for numeric keys,
+     * or a prefix is given for numeric keys.
+     */
+    public Iterator<String> range(String from, String to, String prefix) {
+        Object lo = from == null ? null : toKey(from);
+        Object hi = to == null ? null : toKey(to);
+        if(prefix != null) {
+            if(numeric) {
+                throw new IllegalArgumentException("prefix is not supported for numeric keys");
+            }
+            if(lo == null || prefix.compareTo((String)lo) > 0) {
+                lo = prefix;
+            }
+        }
+        
+        NavigableSet<Object> set = keys;
+        if(lo != null && hi != null) {
+            if(compare(lo, hi) >= 0) {
+                return Collections.<String>emptySet().iterator();
+            }
+            set = keys.subSet(lo, true, hi, false);
+        } else if(lo != null) {
+            set = keys.tailSet(lo, true);
+        } else if(hi != null) {
+            set = keys.headSet(hi, false);
+        }
+        
+        return new RangeIterator(set.iterator(), prefix);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static int compare(Object k1, Object k2) {
+        return ((Comparable<Object>)k1).compareTo(k2);
+    }
+    
+    /**
+     * Writes this index to the specified temporary file, which is renamed to the index file by the caller.
+     * The index must not change while it is written.
+     */
+    void write(File tmpFile) throws IOException {
+        FileOutputStream fos = new FileOutputStream(tmpFile);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeUTF(getType());
+            out.writeInt(size.get());
+            for(Object key : keys) {
+                if(numeric) {
+                    out.writeLong((Long)key);
+                } else {
+                    out.writeUTF((String)key);
+                }
+            }
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+    }
+    
+    /**
+     * Loads this index from the specified file.
+     * 
+     * @throws IOException if the file is not a key index of the same type.
+     */
+    synchronized void load(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        try {
+            if(in.readInt() != MAGIC || !in.readUTF().equals(getType())) {
+                throw new IOException(file.getAbsolutePath() + " is not a " + getType() + " key index");
+            }
+            
+            clear();
+            int count = in.readInt();
+            for(int i = 0; i < count; i++) {
+                add(numeric ? (Object)in.readLong() : (Object)in.readUTF());
+            }
+        } finally {
+            in.close();
+        }
+    }
+    
+    /**
+     * RangeIterator renders keys as strings and stops at the first key without the prefix.
+     */
+    private static final class RangeIterator implements Iterator<String> {
+        private final Iterator<Object> iter;
+        private final String prefix;
+        private String next;
+        
+        RangeIterator(Iterator<Object> iter, String prefix) {
+            this.iter = iter;
+            this.prefix = prefix;
+            this.next = advance();
+        }
+        
+        private String advance() {
+            if(!iter.hasNext()) {
+                return null;
+            }
+            String key = iter.next().toString();
+            return prefix == null || key.startsWith(prefix) ? key : null;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+        
+        @Override
+        public String next() {
+            if(next == null) {
+                throw new NoSuchElementException();
+            }
+            String key = next;
+            next = advance();
+            return key;
+        }
+        
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
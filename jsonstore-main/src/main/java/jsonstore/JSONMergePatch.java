@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.util.Iterator;
+
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * JSONMergePatch applies a JSON Merge Patch (RFC 7396) to a JSON object: members of the patch
+ * set the members of the target, <code>null</code> members remove them, and nested objects are
+ * merged recursively. Arrays and other values replace the target members as a whole.
+ * 
+ * <p>
+ * The target is never modified, since it may be shared through the value cache. The result is
+ * a new object sharing the members left untouched by the patch.
+ * </p>
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class JSONMergePatch {
+    
+    private JSONMergePatch() {}
+    
+    /**
+     * Applies the specified patch.
+     * 
+     * @param target - the target object or <code>null</code> if there is none
+     * @param patch  - the merge patch
+     * @return the patched object.
+     * @throws JSONException if the patch cannot be applied.
+     */
+    public static JSONObject apply(JSONObject target, JSONObject patch) throws JSONException {
+        JSONObject result = copy(target);
+        
+        Iterator<?> iter = patch.keys();
+        while(iter.hasNext()) {
+            String name = (String)iter.next();
+            Object value = patch.opt(name);
+            if(value == null || JSONObject.NULL.equals(value)) {
+                result.remove(name);
+            } else if(value instanceof JSONObject) {
+                Object member = result.opt(name);
+                result.put(name, apply(member instanceof JSONObject ? (JSONObject)member : null, (JSONObject)value));
+            } else {
+                result.put(name, value);
+            }
+        }
+        
+        return result;
+    }
+    
+    private static JSONObject copy(JSONObject json) throws JSONException {
+        JSONObject copy = new JSONObject();
+        if(json != null) {
+            Iterator<?> iter = json.keys();
+            while(iter.hasNext()) {
+                String name = (String)iter.next();
+                copy.put(name, json.opt(name));
+            }
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.log4j.Logger;
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * JSONMultiGet fetches a number of keys from a {@link JSONObjectStore} in parallel and
+ * streams them out as <code>{"source":{"key1":value1,"key2":value2,...}}</code> in the
+ * order of the keys. At most <code>fanOut</code> keys are fetched ahead of the output,
+ * so neither the response nor the pending reads grow with the number of keys.
+ * Keys not found are rendered as <code>null</code> and keys failed to read are left out.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class JSONMultiGet {
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(JSONMultiGet.class);
+    
+    /**
+     * The value of keys not found.
+     */
+    private static final JSONRawValue NULL = new JSONRawValue(new byte[] { 'n', 'u', 'l', 'l' }, 0, 4, false);
+    
+    private final String source;
+    private final JSONObjectStore<String> jsonStore;
+    private final Collection<String> keys;
+    private final JSONProjection projection;
+    private final ExecutorService executor;
+    private final int fanOut;
+    
+    /**
+     * Constructs a new instance of JSONMultiGet.
+     * 
+     * @param source     - the source (i.e., store name)
+     * @param jsonStore  - the JSON store
+     * @param keys       - the keys to get, where duplicates are fetched once
+     * @param projection - the fields to get, or <code>null</code> to get whole values
+     * @param executor   - the executor for reading values
+     * @param fanOut     - the maximum number of keys read ahead of the output
+     */
+    public JSONMultiGet(String source, JSONObjectStore<String> jsonStore, Collection<String> keys, JSONProjection projection, ExecutorService executor, int fanOut) {
+        this.source = source;
+        this.jsonStore = jsonStore;
+        this.keys = new LinkedHashSet<String>(keys);
+        this.projection = projection;
+        this.executor = executor;
+        this.fanOut = Math.max(1, fanOut);
+    }
+    
+    /**
+     * Writes the values of all the keys to the specified stream.
+     * 
+     * @param out - the output stream
+     * @throws IOException if the output stream cannot be written.
+     */
+    public void write(OutputStream out) throws IOException {
+        BufferedOutputStream bout = new BufferedOutputStream(out, 8192);
+        ArrayDeque<String> pendingKeys = new ArrayDeque<String>(fanOut);
+        ArrayDeque<Future<JSONRawValue>> pending = new ArrayDeque<Future<JSONRawValue>>(fanOut);
+        Iterator<String> iter = keys.iterator();
+        boolean parallel = executor != null && fanOut > 1 && keys.size() > 1;
+        
+        try {
+            bout.write(('{' + JSONObject.quote(source) + ":{").getBytes("UTF-8"));
+            
+            boolean first = true;
+            while(true) {
+                // Keep up to fanOut reads in flight
+                while(parallel && pending.size() < fanOut && iter.hasNext()) {
+                    String key = iter.next();
+                    pendingKeys.add(key);
+                    try {
+                        pending.add(executor.submit(new Fetch(key)));
+                    } catch(RejectedExecutionException e) {
+                        // Read here once the read queue is full, since the response has started
+                        FutureTask<JSONRawValue> task = new FutureTask<JSONRawValue>(new Fetch(key));
+                        task.run();
+                        pending.add(task);
+                    }
+                }
+                
+                String key;
+                JSONRawValue value;
+                if(parallel) {
+                    if(pending.isEmpty()) {
+                        break;
+                    }
+                    key = pendingKeys.poll();
+                    value = await(key, pending.poll());
+                } else {
+                    if(!iter.hasNext()) {
+                        break;
+                    }
+                    key = iter.next();
+                    value = fetch(key);
+                }
+                
+                if(value == null) {
+                    continue;
+                }
+                
+                if(!first) {
+                    bout.write(',');
+                }
+                first = false;
+                bout.write(JSONObject.quote(key).getBytes("UTF-8"));
+                bout.write(':');
+                value.writeTo(bout);
+            }
+            
+            bout.write('}');
+            bout.write('}');
+            bout.flush();
+        } finally {
+            for(Future<JSONRawValue> f : pending) {
+                f.cancel(false);
+            }
+        }
+    }
+    
+    private JSONRawValue await(String key, Future<JSONRawValue> future) throws IOException {
+        try {
+            return future.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading " + source + "/" + key);
+        } catch(ExecutionException e) {
+            logger.warn("failed to read " + source + "/" + key, e.getCause());
+            return null;
+        }
+    }
+    
+    /**
+     * Reads the JSON text of a key, or returns <code>null</code> if the key cannot be read.
+     */
+    private JSONRawValue fetch(String key) {
+        try {
+            JSONRawValue value = jsonStore.getRawValue(key, projection);
+            return value == null ? NULL : value.toText();
+        } catch(Exception e) {
+            logger.warn("failed to read " + source + "/" + key, e);
+            return null;
+        }
+    }
+    
+    private final class Fetch implements Callable<JSONRawValue> {
+        private final String key;
+        
+        Fetch(String key) {
+            this.key = key;
+        }
+        
+        @Override
+        public JSONRawValue call() {
+            return fetch(key);
+        }
+    }
+}
@@ -0,0 +1,470 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+import krati.io.Serializer;
+
+/**
+ * JSONObjectCache is a bounded cache of stored values. Each entry keeps the stored bytes,
+ * from which raw and projected reads are served without reading the store, and the JSON
+ * object deserialized from them on the first object read. It is split into segments, each
+ * of which is an LRU list guarded by its own lock. The size is bounded by the number of
+ * entries and/or the total length of the stored (serialized) values.
+ * 
+ * <p>
+ * With the <code>frequency</code> policy, a new entry is only admitted if it has been
+ * accessed more often than the least recently used entry it would evict, according to
+ * a small count-min sketch that is halved periodically. This keeps one-off reads of cold
+ * keys from flushing hot keys out of the cache.
+ * </p>
+ * 
+ * <p>
+ * Writers must call {@link #invalidate(Object)} after updating the store. Readers take a
+ * {@link #version(Object)} before reading the store, and {@link #put(Object, Entry, long)}
+ * drops the value if the key was invalidated in between, so stale values are never cached.
+ * </p>
+ * 
+ * <p>
+ * Cached values are shared by all readers and must not be modified.
+ * </p>
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class JSONObjectCache<K> {
+    public static final String POLICY_LRU = "lru";
+    public static final String POLICY_FREQUENCY = "frequency";
+    
+    private final Segment<K>[] segments;
+    private final int segmentMask;
+    private final String policy;
+    private final int maxEntries;
+    private final long maxBytes;
+    
+    /**
+     * Constructs a new instance of JSONObjectCache.
+     * 
+     * @param maxEntries - the maximum number of entries, or 0 for no limit
+     * @param maxBytes   - the maximum total length of stored values, or 0 for no limit
+     * @param policy     - the admission policy: <code>lru</code> or <code>frequency</code>
+     */
+    @SuppressWarnings("unchecked")
+    public JSONObjectCache(int maxEntries, long maxBytes, String policy) {
+        if(maxEntries <= 0 && maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache must be bounded by entries or bytes");
+        }
+        if(!POLICY_LRU.equals(policy) && !POLICY_FREQUENCY.equals(policy)) {
+            throw new IllegalArgumentException("Unknown cache policy: " + policy);
+        }
+        
+        // Small caches use fewer segments to keep the LRU order meaningful
+        int count = 16;
+        while(count > 1 && maxEntries > 0 && maxEntries / count < 64) {
+            count >>= 1;
+        }
+        
+        this.policy = policy;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.segmentMask = count - 1;
+        this.segments = (Segment<K>[])new Segment<?>[count];
+        
+        int segmentEntries = maxEntries > 0 ? Math.max(1, maxEntries / count) : 0;
+        long segmentBytes = maxBytes > 0 ? Math.max(1, maxBytes / count) : 0;
+        int sketchWidth = segmentEntries > 0 ? segmentEntries : (int)Math.min(1 << 16, Math.max(64, segmentBytes / 256));
+        for(int i = 0; i < count; i++) {
+            segments[i] = new Segment<K>(segmentEntries, segmentBytes,
+                    POLICY_FREQUENCY.equals(policy) ? new FrequencySketch(sketchWidth) : null);
+        }
+    }
+    
+    /**
+     * Creates the cache from the store configuration parameters <code>"cacheMaxEntries"</code>,
+     * <code>"cacheMaxBytes"</code> and <code>"cachePolicy"</code> (default lru).
+     * 
+     * @param config - the store configuration
+     * @return the cache or <code>null</code> if caching is not configured.
+     */
+    public static <K> JSONObjectCache<K> create(JSONObject config) {
+        int maxEntries = config.optInt("cacheMaxEntries", 0);
+        long maxBytes = config.optLong("cacheMaxBytes", 0);
+        if(maxEntries <= 0 && maxBytes <= 0) {
+            return null;
+        }
+        return new JSONObjectCache<K>(maxEntries, maxBytes, config.optString("cachePolicy", POLICY_LRU));
+    }
+    
+    private Segment<K> segmentFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return segments[h & segmentMask];
+    }
+    
+    /**
+     * Gets the cached entry of the specified key.
+     * 
+     * @return the cached entry or <code>null</code> on a miss.
+     */
+    public Entry get(K key) {
+        return segmentFor(key).get(key);
+    }
+    
+    /**
+     * Gets the version of the specified key, which must be taken before reading the store.
+     */
+    public long version(K key) {
+        return segmentFor(key).version();
+    }
+    
+    /**
+     * Caches a value read from the store unless the key was invalidated since the specified version.
+     * 
+     * @param key     - the key
+     * @param entry   - the stored value
+     * @param version - the version taken before reading the store
+     * @return <code>true</code> if the value is cached.
+     */
+    public boolean put(K key, Entry entry, long version) {
+        return segmentFor(key).put(key, entry, version);
+    }
+    
+    /**
+     * Removes the specified key after its value is updated or deleted in the store.
+     */
+    public void invalidate(K key) {
+        segmentFor(key).invalidate(key);
+    }
+    
+    /**
+     * Removes all the keys after the store is cleared.
+     */
+    public void invalidateAll() {
+        for(Segment<K> s : segments) {
+            s.invalidateAll();
+        }
+    }
+    
+    public String getPolicy() {
+        return policy;
+    }
+    
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+    
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+    
+    public int size() {
+        int size = 0;
+        for(Segment<K> s : segments) {
+            synchronized(s) {
+                size += s.map.size();
+            }
+        }
+        return size;
+    }
+    
+    /**
+     * @return the total length of the stored values that are cached.
+     */
+    public long getBytes() {
+        long bytes = 0;
+        for(Segment<K> s : segments) {
+            synchronized(s) {
+                bytes += s.bytes;
+            }
+        }
+        return bytes;
+    }
+    
+    public long getHitCount() {
+        long cnt = 0;
+        for(Segment<K> s : segments) {
+            synchronized(s) {
+                cnt += s.hitCount;
+            }
+        }
+        return cnt;
+    }
+    
+    public long getMissCount() {
+        long cnt = 0;
+        for(Segment<K> s : segments) {
+            synchronized(s) {
+                cnt += s.missCount;
+            }
+        }
+        return cnt;
+    }
+    
+    public long getEvictionCount() {
+        long cnt = 0;
+        for(Segment<K> s : segments) {
+            synchronized(s) {
+                cnt += s.evictionCount;
+            }
+        }
+        return cnt;
+    }
+    
+    /**
+     * @return the number of values not admitted by the <code>frequency</code> policy.
+     */
+    public long getRejectionCount() {
+        long cnt = 0;
+        for(Segment<K> s : segments) {
+            synchronized(s) {
+                cnt += s.rejectionCount;
+            }
+        }
+        return cnt;
+    }
+    
+    /**
+     * @return the cache statistics in JSON.
+     */
+    public JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        try {
+            long hits = getHitCount();
+            long misses = getMissCount();
+            json.put("policy", policy);
+            json.put("maxEntries", maxEntries);
+            json.put("maxBytes", maxBytes);
+            json.put("entries", size());
+            json.put("bytes", getBytes());
+            json.put("hits", hits);
+            json.put("misses", misses);
+            json.put("hitRatio", hits + misses == 0 ? 0.0 : (double)hits / (hits + misses));
+            json.put("evictions", getEvictionCount());
+            json.put("rejections", getRejectionCount());
+        } catch(JSONException e) {}
+        
+        return json;
+    }
+    
+    /**
+     * Entry holds the stored bytes of a value, and the JSON object and the entity tag
+     * computed from them on first use.
+     */
+    public static final class Entry {
+        private final byte[] bytes;
+        private volatile JSONObject value;
+        private volatile String etag;
+        
+        /**
+         * Constructs a new instance of Entry.
+         * 
+         * @param bytes - the stored bytes
+         * @param value - the deserialized value, or <code>null</code> to deserialize it on first use
+         */
+        Entry(byte[] bytes, JSONObject value) {
+            this.bytes = bytes;
+            this.value = value;
+        }
+        
+        /**
+         * @return the stored bytes, which must not be modified.
+         */
+        public byte[] getBytes() {
+            return bytes;
+        }
+        
+        /**
+         * Gets the deserialized value, which must not be modified.
+         * 
+         * @param serializer - the value serializer of the store
+         */
+        public JSONObject getValue(Serializer<JSONObject> serializer) {
+            JSONObject v = value;
+            if(v == null) {
+                v = serializer.deserialize(bytes);
+                value = v;
+            }
+            return v;
+        }
+        
+        /**
+         * @return the entity tag of the stored value.
+         */
+        public String getETag() {
+            String t = etag;
+            if(t == null) {
+                t = JSONETag.of(bytes);
+                etag = t;
+            }
+            return t;
+        }
+        
+        int length() {
+            return bytes.length;
+        }
+    }
+    
+    private static final class Segment<K> {
+        final LinkedHashMap<K, Entry> map = new LinkedHashMap<K, Entry>(16, 0.75f, true);
+        final int maxEntries;
+        final long maxBytes;
+        final FrequencySketch sketch;
+        
+        long version;
+        long bytes;
+        long hitCount;
+        long missCount;
+        long evictionCount;
+        long rejectionCount;
+        
+        Segment(int maxEntries, long maxBytes, FrequencySketch sketch) {
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+            this.sketch = sketch;
+        }
+        
+        synchronized Entry get(K key) {
+            if(sketch != null) {
+                sketch.increment(key.hashCode());
+            }
+            
+            Entry e = map.get(key);
+            if(e == null) {
+                missCount++;
+                return null;
+            }
+            hitCount++;
+            return e;
+        }
+        
+        synchronized long version() {
+            return version;
+        }
+        
+        synchronized boolean put(K key, Entry entry, long ver) {
+            int length = entry.length();
+            if(ver != version || (maxBytes > 0 && length > maxBytes)) {
+                return false;
+            }
+            
+            if(sketch != null && isFull(length) && !map.isEmpty()) {
+                K victim = map.keySet().iterator().next();
+                if(sketch.frequency(key.hashCode()) <= sketch.frequency(victim.hashCode())) {
+                    rejectionCount++;
+                    return false;
+                }
+            }
+            
+            Entry old = map.put(key, entry);
+            if(old != null) {
+                bytes -= old.length();
+            }
+            bytes += length;
+            
+            // Evict the least recently used entries
+            Iterator<Map.Entry<K, Entry>> iter = map.entrySet().iterator();
+            while(iter.hasNext() && (maxEntries > 0 && map.size() > maxEntries || maxBytes > 0 && bytes > maxBytes)) {
+                Map.Entry<K, Entry> eldest = iter.next();
+                if(eldest.getKey().equals(key)) {
+                    continue;
+                }
+                bytes -= eldest.getValue().length();
+                iter.remove();
+                evictionCount++;
+            }
+            return true;
+        }
+        
+        private boolean isFull(int length) {
+            return (maxEntries > 0 && map.size() >= maxEntries) || (maxBytes > 0 && bytes + length > maxBytes);
+        }
+        
+        synchronized void invalidate(K key) {
+            version++;
+            Entry e = map.remove(key);
+            if(e != null) {
+                bytes -= e.length();
+            }
+        }
+        
+        synchronized void invalidateAll() {
+            version++;
+            map.clear();
+            bytes = 0;
+        }
+    }
+    
+    /**
+     * A count-min sketch of 4 rows with counters saturating at 15. All the counters are
+     * halved after every 10 * width increments so that the frequencies follow recent traffic.
+     */
+    private static final class FrequencySketch {
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = { 0x97cb3127, 0xb7c65c23, 0x5bd1e995, 0x2f9be6b1 };
+        
+        private final byte[][] rows;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+        
+        FrequencySketch(int width) {
+            int size = Integer.highestOneBit(Math.max(16, width - 1) << 1);
+            this.rows = new byte[SEEDS.length][size];
+            this.mask = size - 1;
+            this.sampleSize = 10 * size;
+        }
+        
+        void increment(int hash) {
+            for(int i = 0; i < rows.length; i++) {
+                int idx = index(hash, i);
+                if(rows[i][idx] < MAX_COUNT) {
+                    rows[i][idx]++;
+                }
+            }
+            
+            if(++additions >= sampleSize) {
+                for(byte[] row : rows) {
+                    for(int j = 0; j < row.length; j++) {
+                        row[j] >>= 1;
+                    }
+                }
+                additions /= 2;
+            }
+        }
+        
+        int frequency(int hash) {
+            int min = MAX_COUNT;
+            for(int i = 0; i < rows.length; i++) {
+                min = Math.min(min, rows[i][index(hash, i)]);
+            }
+            return min;
+        }
+        
+        private int index(int hash, int i) {
+            int h = hash * SEEDS[i];
+            return (h ^ (h >>> 17)) & mask;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+/**
+ * JSONObjectDictionarySerializer deflates JSON text against a {@link ValueDictionary}
+ * trained from the store itself. Small JSON values repeating the same field names
+ * compress far better than with per-value gzip, which also pays an 18-byte header.
+ * 
+ * <p>
+ * It is a {@link JSONObjectSerializer} defaulting to the <code>dictionary</code> codec
+ * ({@link DictionaryValueCodec}). Values are compressed without a dictionary until one is trained.
+ * </p>
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public class JSONObjectDictionarySerializer extends JSONObjectSerializer {
+    
+    public JSONObjectDictionarySerializer() {
+        super("dictionary");
+    }
+}
@@ -16,28 +16,162 @@
 
 package jsonstore;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
+import org.apache.log4j.Logger;
 import org.codehaus.jettison.json.JSONObject;
 
 import krati.io.SerializationException;
 import krati.io.Serializer;
 
 /**
- * JSONObjectSerializer
+ * JSONObjectSerializer stores JSON text encoded by a {@link ValueCodec}, which is selected
+ * per store via <code>"valueCodec"</code> (default <code>gzip</code>). Every value names its
+ * codec in the leading byte, so the codec can be changed at any time: new and rewritten values
+ * use the new codec while the others remain readable. Plain gzip values written before codecs
+ * were introduced remain readable too.
+ * 
+ * <p>
+ * Optional store configuration:
+ * <code>"valueCodec"</code> (default gzip),
+ * <code>"compressionLevel"</code> (default 6, for the deflate and dictionary codecs),
+ * <code>"dictionaryMaxBytes"</code> (default 16384) and
+ * <code>"dictionarySampleSize"</code> (default 1000).
+ * </p>
  * 
  * @author jwu
  * @since 04/20, 2012
  */
-public class JSONObjectSerializer implements Serializer<JSONObject> {
+public class JSONObjectSerializer implements Serializer<JSONObject>, StoreConfigurable, RawValueDecoder {
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(JSONObjectSerializer.class);
+    
+    /**
+     * The codec compressing values against trained dictionaries.
+     */
+    private final DictionaryValueCodec dictionaryCodec = new DictionaryValueCodec();
+    
+    /**
+     * The codec for new values.
+     */
+    private volatile ValueCodec codec;
+    
+    private File storeDir;
+    private int compressionLevel = 6;
+    private int dictionaryMaxBytes = 16384;
+    private int dictionarySampleSize = 1000;
     
-    public JSONObjectSerializer() {}
+    public JSONObjectSerializer() {
+        this(ValueCodecs.GZIP.getName());
+    }
+    
+    /**
+     * Constructs a new instance of JSONObjectSerializer.
+     * 
+     * @param codecName - the name of the default codec
+     */
+    protected JSONObjectSerializer(String codecName) {
+        this.codec = getCodec(codecName);
+    }
+    
+    @Override
+    public synchronized void configure(File storeDir, JSONObject config) throws Exception {
+        this.storeDir = storeDir;
+        this.compressionLevel = config.optInt("compressionLevel", compressionLevel);
+        this.dictionaryMaxBytes = config.optInt("dictionaryMaxBytes", dictionaryMaxBytes);
+        this.dictionarySampleSize = config.optInt("dictionarySampleSize", dictionarySampleSize);
+        
+        dictionaryCodec.setLevel(compressionLevel);
+        dictionaryCodec.load(storeDir);
+        setValueCodec(config.optString("valueCodec", codec.getName()));
+    }
+    
+    /**
+     * Gets the codec with the specified name, which is either <code>dictionary</code>
+     * or the name of a built-in codec. The name <code>deflate</code> refers to deflate
+     * at the configured compression level.
+     * 
+     * @param name - the codec name
+     * @throws IllegalArgumentException if the codec name is unknown.
+     */
+    public ValueCodec getCodec(String name) {
+        if(name.equals(dictionaryCodec.getName())) {
+            return dictionaryCodec;
+        }
+        
+        ValueCodec c = ValueCodecs.forName(name.equals("deflate") ? "deflate-" + compressionLevel : name);
+        if(c == null) {
+            throw new IllegalArgumentException("Unknown value codec: " + name);
+        }
+        return c;
+    }
+    
+    /**
+     * @return the codec for new values.
+     */
+    public ValueCodec getValueCodec() {
+        return codec;
+    }
+    
+    /**
+     * Sets the codec for new values. Existing values are converted only when rewritten.
+     * 
+     * @param name - the codec name
+     * @throws IllegalArgumentException if the codec name is unknown.
+     */
+    public void setValueCodec(String name) {
+        this.codec = getCodec(name);
+    }
+    
+    /**
+     * @return the dictionary used by the <code>dictionary</code> codec, or <code>null</code> if not trained yet.
+     */
+    public ValueDictionary getCurrentDictionary() {
+        return dictionaryCodec.getCurrentDictionary();
+    }
+    
+    /**
+     * @return the number of sample values to train a dictionary from.
+     */
+    public int getDictionarySampleSize() {
+        return dictionarySampleSize;
+    }
+    
+    /**
+     * Trains a new dictionary from the specified sample values, saves it in the store directory
+     * and starts compressing new values with it. Existing dictionaries are kept for reading.
+     * 
+     * @param samples - the sample values
+     * @return the new dictionary or <code>null</code> if the samples have nothing in common.
+     * @throws IOException
+     */
+    public synchronized ValueDictionary train(List<JSONObject> samples) throws IOException {
+        if(storeDir == null) {
+            throw new IllegalStateException("Store directory not configured");
+        }
+        
+        List<byte[]> texts = new ArrayList<byte[]>(samples.size());
+        for(JSONObject json : samples) {
+            texts.add(json.toString().getBytes("UTF-8"));
+        }
+        
+        ValueDictionary current = dictionaryCodec.getCurrentDictionary();
+        int id = current == null ? 1 : current.getId() + 1;
+        ValueDictionary dict = ValueDictionary.train(id, texts, dictionaryMaxBytes);
+        if(dict == null) {
+            return null;
+        }
+        dict.save(storeDir);
+        dictionaryCodec.add(dict);
+        
+        logger.info("dictionary " + id + " trained from " + samples.size() + " values: " + dict.getBytes().length + " bytes");
+        return dict;
+    }
     
     @Override
     public JSONObject deserialize(byte[] bytes) throws SerializationException {
@@ -46,9 +180,11 @@ public class JSONObjectSerializer implements Serializer<JSONObject> {
         }
         
         try {
-            bytes = decompress(bytes);
-            String jsonStr = new String(bytes);
-            return new JSONObject(jsonStr);
+            if(ValueCodecs.isGzip(bytes)) {
+                // Values written before codecs were introduced
+                return new JSONObject(new String(decompress(bytes)));
+            }
+            return new JSONObject(new String(decode(bytes), "UTF-8"));
         } catch (Exception e) {
             throw new SerializationException("Failed to deserialize", e);
         }
@@ -61,45 +197,61 @@ public class JSONObjectSerializer implements Serializer<JSONObject> {
         }
         
         try {
-            byte[] bytes = json.toString().getBytes();
-            return compress(bytes);
+            byte[] bytes = json.toString().getBytes("UTF-8");
+            return codec.encode(bytes, 0, bytes.length);
         } catch (Exception e) {
             throw new SerializationException("Failed to serialize", e);
         }
     }
-
-    public static byte[] decompress(byte[] bytes) throws IOException {
-        ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-        GZIPInputStream gzis = new GZIPInputStream(bais);
-        List<byte[]> list = new LinkedList<byte[]>();
-        byte[] buf = new byte[2048];
-        
-        int len = gzis.read(buf, 0, 2048);
-        int total = 0;
-        while (len > 0) {
-            byte[] b1 = new byte[len];
-            System.arraycopy(buf, 0, b1, 0, len);
-            list.add(b1);
-            total += len;
-            len = gzis.read(buf, 0, 2048);
+    
+    /**
+     * Decodes a value into its raw bytes, i.e., the UTF-8 JSON text.
+     * 
+     * @param bytes - the value starting with the codec id
+     * @throws IOException if the codec is unknown or the value is corrupted.
+     */
+    public byte[] decode(byte[] bytes) throws IOException {
+        if(bytes.length == 0) {
+            throw new IOException("Empty value");
+        }
+        if(bytes[0] == ValueCodecs.DICTIONARY_ID) {
+            return dictionaryCodec.decode(bytes);
         }
-        gzis.close();
         
-        byte[] whole = new byte[total];
-        int start = 0;
-        for (byte[] part : list) {
-            System.arraycopy(part, 0, whole, start, part.length);
-            start += part.length;
+        ValueCodec c = ValueCodecs.forId(bytes[0]);
+        if(c == null) {
+            throw new IOException("Unknown value codec: " + bytes[0]);
+        }
+        return c.decode(bytes);
+    }
+    
+    /**
+     * Converts a value to its wire form. The gzip members of the <code>gzip</code> codec
+     * and plain gzip values are sliced out as is, while other values are decoded to JSON text.
+     */
+    @Override
+    public JSONRawValue toRawValue(byte[] bytes) throws IOException {
+        if(ValueCodecs.isGzip(bytes)) {
+            return new JSONRawValue(bytes, 0, bytes.length, true);
+        }
+        if(bytes.length > 0 && bytes[0] == ValueCodecs.GZIP_ID) {
+            return new JSONRawValue(bytes, 1, bytes.length - 1, true);
         }
         
-        return whole;
+        byte[] text = decode(bytes);
+        return new JSONRawValue(text, 0, text.length, false);
+    }
+    
+    @Override
+    public JSONRawValue toRawValue(byte[] bytes, JSONProjection projection) throws IOException {
+        return projection.project(toRawValue(bytes));
+    }
+    
+    public static byte[] decompress(byte[] bytes) throws IOException {
+        return ValueCodecs.gunzip(bytes, 0);
     }
     
     public static byte[] compress(byte[] bytes) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        GZIPOutputStream gzos = new GZIPOutputStream(baos);
-        gzos.write(bytes);
-        gzos.close();
-        return baos.toByteArray();
+        return ValueCodecs.gzip(bytes, 0, bytes.length);
     }
 }
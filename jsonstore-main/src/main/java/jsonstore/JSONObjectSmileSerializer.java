@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.smile.SmileFactory;
+import org.codehaus.jackson.smile.SmileGenerator;
+import org.codehaus.jettison.json.JSONObject;
+
+import krati.io.SerializationException;
+import krati.io.Serializer;
+
+/**
+ * JSONObjectSmileSerializer stores JSON objects in the binary Smile format,
+ * avoiding the text rendering, gzip and re-parsing done by {@link JSONObjectSerializer}.
+ * 
+ * <p>
+ * It is selected per store via <code>"valueSerializerClass": "jsonstore.JSONObjectSmileSerializer"</code>.
+ * Stores must not switch between value serializers once they hold data.
+ * </p>
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public class JSONObjectSmileSerializer implements Serializer<JSONObject>, RawValueDecoder {
+    /**
+     * The shared Smile factory (thread-safe).
+     */
+    private static final SmileFactory smileFactory = new SmileFactory();
+    
+    static {
+        smileFactory.configure(SmileGenerator.Feature.WRITE_HEADER, true);
+        smileFactory.configure(SmileGenerator.Feature.CHECK_SHARED_NAMES, true);
+        smileFactory.configure(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES, true);
+    }
+    
+    /**
+     * The shared JSON text factory (thread-safe).
+     */
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    
+    public JSONObjectSmileSerializer() {}
+    
+    @Override
+    public JSONObject deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null) {
+            return null;
+        }
+        
+        try {
+            JsonParser parser = smileFactory.createJsonParser(bytes);
+            try {
+                if(parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new SerializationException("Not a JSON object");
+                }
+                return JSONStreaming.readObject(parser);
+            } finally {
+                parser.close();
+            }
+        } catch (SerializationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SerializationException("Failed to deserialize", e);
+        }
+    }
+    
+    @Override
+    public byte[] serialize(JSONObject json) throws SerializationException {
+        if (json == null) {
+            return null;
+        }
+        
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+            JsonGenerator gen = smileFactory.createJsonGenerator(baos);
+            JSONStreaming.writeObject(gen, json);
+            gen.close();
+            return baos.toByteArray();
+        } catch (Exception e) {
+            throw new SerializationException("Failed to serialize", e);
+        }
+    }
+    
+    /**
+     * Transcodes a Smile value into UTF-8 JSON text without building a JSON object.
+     */
+    @Override
+    public JSONRawValue toRawValue(byte[] bytes) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(bytes.length * 2);
+        JsonParser parser = smileFactory.createJsonParser(bytes);
+        try {
+            JsonGenerator gen = jsonFactory.createJsonGenerator(baos, JsonEncoding.UTF8);
+            if(parser.nextToken() != null) {
+                gen.copyCurrentStructure(parser);
+            }
+            gen.close();
+        } finally {
+            parser.close();
+        }
+        
+        byte[] text = baos.toByteArray();
+        return new JSONRawValue(text, 0, text.length, false);
+    }
+    
+    /**
+     * Projects a Smile value straight into UTF-8 JSON text, skipping the members left out.
+     */
+    @Override
+    public JSONRawValue toRawValue(byte[] bytes, JSONProjection projection) throws IOException {
+        byte[] text = projection.project(smileFactory.createJsonParser(bytes));
+        return new JSONRawValue(text, 0, text.length, false);
+    }
+    
+    /**
+     * @return the Smile factory shared by all instances.
+     */
+    public static SmileFactory getSmileFactory() {
+        return smileFactory;
+    }
+}
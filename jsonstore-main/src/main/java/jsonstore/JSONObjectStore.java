@@ -17,8 +17,15 @@
 package jsonstore;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.codehaus.jettison.json.JSONException;
 import org.codehaus.jettison.json.JSONObject;
 
 import krati.io.Serializer;
@@ -39,6 +46,80 @@ public class JSONObjectStore<K> implements ObjectStore<K, JSONObject> {
      */
     private final SerializableObjectStore<K, JSONObject> baseStore;
     
+    /**
+     * The optional cache of stored and deserialized values.
+     */
+    private volatile JSONObjectCache<K> cache;
+    
+    /**
+     * The optional secondary indexes.
+     */
+    private volatile JSONIndexes indexes;
+    
+    /**
+     * The number of writes, and those written before the last persist started.
+     */
+    private final AtomicLong writeCount = new AtomicLong();
+    private volatile long persistedWriteCount = 0;
+    
+    private volatile long lastPersistTime = System.currentTimeMillis();
+    private volatile long lastPersistMillis = -1;
+    
+    /**
+     * The operation latencies and value sizes.
+     */
+    private final JSONStoreMetrics metrics = new JSONStoreMetrics();
+    
+    /**
+     * The optional queue of writes applied in the background.
+     */
+    private volatile JSONWriteBehind<K> writeBehind;
+    
+    /**
+     * The group commit of durable writes, and whether writes are durable by default.
+     */
+    private final JSONGroupCommit groupCommit = new JSONGroupCommit(this);
+    private volatile boolean durableWrites = false;
+    
+    /**
+     * The segment statistics and compaction control of the underlying store.
+     */
+    private final JSONStoreCompaction compaction;
+    
+    private static final int NUM_LOCKS = 256;
+    
+    /**
+     * The striped locks ordering the writes of each key.
+     */
+    private final Object[] locks = new Object[NUM_LOCKS];
+    
+    /**
+     * The lock held by persist, sync and close, so that the store is never closed while being persisted.
+     */
+    private final Object persistLock = new Object();
+    
+    /**
+     * The gate held shared by writes and exclusively while a rebuild swaps in its new store.
+     */
+    private final ReentrantReadWriteLock writeGate = new ReentrantReadWriteLock();
+    
+    /**
+     * Whether this JSONObjectStore has been replaced by a rebuilt store and rejects writes.
+     */
+    private volatile boolean retired = false;
+    
+    /**
+     * The rebuild copying this JSONObjectStore, which is told of every write.
+     */
+    private volatile JSONStoreRebuild<K> rebuild;
+    
+    /**
+     * The number of readers holding this JSONObjectStore, and whether new readers are turned away
+     * so that it can be closed once they are done.
+     */
+    private final AtomicInteger readers = new AtomicInteger();
+    private volatile boolean draining = false;
+    
     /**
      * Constructs a new instance of JSONObjectStore.
      * 
@@ -50,15 +131,306 @@ public class JSONObjectStore<K> implements ObjectStore<K, JSONObject> {
                            Serializer<K> keySerializer,
                            Serializer<JSONObject> valueSerializer) {
         baseStore = new SerializableObjectStore<K, JSONObject>(store, keySerializer, valueSerializer);
+        compaction = new JSONStoreCompaction(store);
+        for(int i = 0; i < NUM_LOCKS; i++) {
+            locks[i] = new Object();
+        }
+    }
+    
+    /**
+     * Sets the cache of stored and deserialized values, or <code>null</code> to disable caching.
+     * 
+     * @param cache - the cache
+     */
+    public void setCache(JSONObjectCache<K> cache) {
+        this.cache = cache;
+    }
+    
+    /**
+     * @return the cache of stored and deserialized values, or <code>null</code> if caching is disabled.
+     */
+    public JSONObjectCache<K> getCache() {
+        return cache;
+    }
+    
+    /**
+     * Sets the secondary indexes maintained on writes, or <code>null</code> to disable indexing.
+     * 
+     * @param indexes - the secondary indexes
+     */
+    public void setIndexes(JSONIndexes indexes) {
+        this.indexes = indexes;
+    }
+    
+    /**
+     * @return the secondary indexes, or <code>null</code> if indexing is disabled.
+     */
+    public JSONIndexes getIndexes() {
+        return indexes;
+    }
+    
+    /**
+     * Sets the queue of writes applied in the background, or <code>null</code> to write synchronously.
+     * 
+     * @param writeBehind - the write-behind queue
+     */
+    public void setWriteBehind(JSONWriteBehind<K> writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+    
+    /**
+     * @return the write-behind queue, or <code>null</code> if writes are synchronous.
+     */
+    public JSONWriteBehind<K> getWriteBehind() {
+        return writeBehind;
+    }
+    
+    /**
+     * @return <code>true</code> if this JSONObjectStore has been written since the last persist started.
+     */
+    public boolean isDirty() {
+        return getUnpersistedWrites() > 0;
+    }
+    
+    /**
+     * @return the number of writes since this JSONObjectStore was opened.
+     */
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+    
+    /**
+     * @return <code>true</code> if writes should be acknowledged only once they are synced,
+     * unless a write requests otherwise.
+     */
+    public boolean isDurableWrites() {
+        return durableWrites;
+    }
+    
+    public void setDurableWrites(boolean durableWrites) {
+        this.durableWrites = durableWrites;
+    }
+    
+    /**
+     * @return the group commit syncing the durable writes of this JSONObjectStore.
+     */
+    public JSONGroupCommit getGroupCommit() {
+        return groupCommit;
+    }
+    
+    /**
+     * @return the underlying data store of key and value bytes.
+     */
+    DataStore<byte[], byte[]> getDataStore() {
+        return baseStore.getStore();
+    }
+    
+    /**
+     * @return the segment statistics and compaction control of this JSONObjectStore.
+     */
+    public JSONStoreCompaction getCompaction() {
+        return compaction;
+    }
+    
+    /**
+     * Waits until all the writes completed by the calling thread are synced, sharing
+     * the sync with other threads waiting at the same time.
+     * 
+     * @throws IOException if this JSONObjectStore cannot be synced.
+     */
+    public void awaitDurable() throws IOException {
+        groupCommit.commit(writeCount.get());
+    }
+    
+    /**
+     * @return the number of writes since the last persist started.
+     */
+    public long getUnpersistedWrites() {
+        return writeCount.get() - persistedWriteCount;
+    }
+    
+    /**
+     * @return the time in milliseconds when the last persist completed, or when this JSONObjectStore was created.
+     */
+    public long getLastPersistTime() {
+        return lastPersistTime;
+    }
+    
+    /**
+     * @return the duration in milliseconds of the last persist, or -1 if it has never been persisted.
+     */
+    public long getLastPersistMillis() {
+        return lastPersistMillis;
+    }
+    
+    /**
+     * @return the operation latencies and value sizes of this JSONObjectStore.
+     */
+    public JSONStoreMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * @return the statistics of this JSONObjectStore in JSON.
+     */
+    public JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("capacity", capacity());
+            if(baseStore.getStore() instanceof PartitionedDataStore) {
+                json.put("partitions", ((PartitionedDataStore)baseStore.getStore()).getPartitionCount());
+            }
+            json.put("storeType", baseStore.getStore() instanceof ArrayDataStore ?
+                    JSONRepository.STORE_TYPE_ARRAY : JSONRepository.STORE_TYPE_HASH);
+            
+            JSONObject persist = new JSONObject();
+            persist.put("unpersistedWrites", getUnpersistedWrites());
+            persist.put("lastPersistTime", lastPersistTime);
+            persist.put("lastPersistMillis", lastPersistMillis);
+            json.put("persist", persist);
+            json.put("groupCommit", groupCommit.getStats());
+            json.put("compaction", compaction.getStats());
+            json.put("metrics", metrics.toJSON());
+            json.put("readers", readers.get());
+            
+            JSONObjectCache<K> c = cache;
+            if(c != null) {
+                json.put("cache", c.getStats());
+            }
+            JSONIndexes idx = indexes;
+            if(idx != null && !idx.isEmpty()) {
+                json.put("indexes", idx.getStats());
+            }
+            if(idx != null && idx.getKeyIndex() != null) {
+                JSONObject keyIndex = new JSONObject();
+                keyIndex.put("type", idx.getKeyIndex().getType());
+                keyIndex.put("size", idx.getKeyIndex().size());
+                json.put("keyIndex", keyIndex);
+            }
+            JSONWriteBehind<K> wb = writeBehind;
+            if(wb != null) {
+                json.put("writeBehind", wb.getStats());
+            }
+            JSONStoreRebuild<K> r = rebuild;
+            if(r != null) {
+                json.put("rebuild", r.getStats());
+            }
+        } catch(JSONException e) {}
+        
+        return json;
+    }
+    
+    /**
+     * @return the key serializer of this JSONObjectStore.
+     */
+    public Serializer<K> getKeySerializer() {
+        return baseStore.getKeySerializer();
+    }
+    
+    /**
+     * @return the value serializer of this JSONObjectStore.
+     */
+    public Serializer<JSONObject> getValueSerializer() {
+        return baseStore.getValueSerializer();
+    }
+    
+    /**
+     * Samples up to <code>count</code> values spread evenly over this JSONObjectStore.
+     * 
+     * @param count - the number of values to sample
+     * @return the sampled values
+     */
+    public List<JSONObject> sample(int count) {
+        List<JSONObject> samples = new ArrayList<JSONObject>(count);
+        IndexedIterator<Entry<K, JSONObject>> iter = baseStore.iterator();
+        
+        int capacity = capacity();
+        int step = Math.max(1, capacity / Math.max(1, count));
+        int index = 0;
+        while(index < capacity && samples.size() < count) {
+            iter.reset(index);
+            if(!iter.hasNext()) {
+                break;
+            }
+            
+            samples.add(iter.next().getValue());
+            index = Math.max(index + step, iter.index());
+        }
+        
+        return samples;
+    }
+    
+    /**
+     * Gets the value of the specified key in its wire form, skipping JSON parsing where possible.
+     * 
+     * @param key - the key
+     * @return the raw JSON value or <code>null</code> if the key is not found.
+     * @throws Exception if the value cannot be read or decoded.
+     */
+    public JSONRawValue getRawValue(K key) throws Exception {
+        return getRawValue(key, null);
+    }
+    
+    /**
+     * Gets the selected fields of the value of a key as JSON text. The entity tag
+     * is that of the stored value.
+     * 
+     * @param key        - the key
+     * @param projection - the fields to select, or <code>null</code> to get the whole value
+     * @return the raw projected value, or <code>null</code> if the key is not found.
+     * @throws Exception if the value cannot be read.
+     * @see JSONProjection
+     */
+    public JSONRawValue getRawValue(K key, JSONProjection projection) throws Exception {
+        long startNanos = System.nanoTime();
+        try {
+            JSONObjectCache.Entry e = key == null ? null : read(key);
+            if(e == null) {
+                return null;
+            }
+            
+            Serializer<JSONObject> valueSerializer = baseStore.getValueSerializer();
+            if(valueSerializer instanceof RawValueDecoder) {
+                RawValueDecoder decoder = (RawValueDecoder)valueSerializer;
+                JSONRawValue value = projection == null ? decoder.toRawValue(e.getBytes()) : decoder.toRawValue(e.getBytes(), projection);
+                return value.withETag(e.getETag());
+            }
+            
+            byte[] text = e.getValue(valueSerializer).toString().getBytes("UTF-8");
+            JSONRawValue value = new JSONRawValue(text, 0, text.length, false);
+            return (projection == null ? value : projection.project(value)).withETag(e.getETag());
+        } finally {
+            metrics.getGetLatency().recordSince(startNanos);
+        }
     }
     
+    /**
+     * Gets the stored bytes of a key, or those of its pending write if there is one.
+     */
     @Override
     public byte[] getBytes(K key) {
+        JSONWriteBehind<K> wb = writeBehind;
+        if(wb != null && key != null) {
+            JSONWriteBehind.Write<K> w = wb.getPending(key);
+            if(w != null) {
+                return w.getBytes();
+            }
+        }
         return baseStore.getBytes(key);
     }
     
+    /**
+     * Gets the stored bytes of a serialized key, or those of its pending write if there is one.
+     */
     @Override
     public byte[] getBytes(byte[] keyBytes) {
+        JSONWriteBehind<K> wb = writeBehind;
+        if(wb != null && keyBytes != null && wb.hasPending()) {
+            JSONWriteBehind.Write<K> w = wb.getPending(baseStore.getKeySerializer().deserialize(keyBytes));
+            if(w != null) {
+                return w.getBytes();
+            }
+        }
         return baseStore.getBytes(keyBytes);
     }
     
@@ -67,49 +439,678 @@ public class JSONObjectStore<K> implements ObjectStore<K, JSONObject> {
         return baseStore.capacity();
     }
     
+    /**
+     * Gets the length of the stored bytes of a key, or that of its pending write if there is one.
+     * 
+     * @return the length, or <code>-1</code> if the key is not found or its deletion is pending.
+     */
     @Override
     public int getLength(K key) {
+        JSONWriteBehind<K> wb = writeBehind;
+        if(wb != null && key != null) {
+            JSONWriteBehind.Write<K> w = wb.getPending(key);
+            if(w != null) {
+                return w.getBytes() == null ? -1 : w.getBytes().length;
+            }
+        }
         return baseStore.getLength(key);
     }
     
     @Override
     public JSONObject get(K key) {
-        return baseStore.get(key);
+        long startNanos = System.nanoTime();
+        try {
+            return doGet(key);
+        } finally {
+            metrics.getGetLatency().recordSince(startNanos);
+        }
+    }
+    
+    private JSONObject doGet(K key) {
+        if(key == null) {
+            return baseStore.get(key);
+        }
+        
+        JSONObjectCache.Entry e = read(key);
+        return e == null ? null : e.getValue(baseStore.getValueSerializer());
+    }
+    
+    /**
+     * Reads the stored value of a key from its pending write, the cache or the store, in that order.
+     * A value read from the store is cached as stored bytes, and deserialized on the first object read.
+     */
+    private JSONObjectCache.Entry read(K key) {
+        // Read your own writes while they are queued
+        JSONWriteBehind<K> wb = writeBehind;
+        if(wb != null) {
+            JSONWriteBehind.Write<K> w = wb.getPending(key);
+            if(w != null) {
+                return new JSONObjectCache.Entry(w.getBytes(), w.getValue());
+            }
+        }
+        
+        JSONObjectCache<K> c = cache;
+        long version = 0;
+        if(c != null) {
+            JSONObjectCache.Entry e = c.get(key);
+            if(e != null) {
+                return e;
+            }
+            
+            // Take the version before reading so that a concurrent write drops the stale value
+            version = c.version(key);
+        }
+        
+        byte[] bytes = baseStore.getBytes(key);
+        if(bytes == null) {
+            return null;
+        }
+        metrics.recordRead(bytes.length);
+        
+        JSONObjectCache.Entry e = new JSONObjectCache.Entry(bytes, null);
+        if(c != null) {
+            c.put(key, e, version);
+        }
+        return e;
     }
     
     @Override
     public boolean put(K key, JSONObject value) throws Exception {
-        return baseStore.put(key, value);
+        long startNanos = System.nanoTime();
+        try {
+            awaitWriteBehind(key);
+            enterWrite();
+            try {
+                return doPut(key, value, serialize(key, value));
+            } finally {
+                exitWrite();
+            }
+        } finally {
+            metrics.getPutLatency().recordSince(startNanos);
+        }
+    }
+    
+    /**
+     * Queues a put to be applied in the background. The value is served to reads until it is written.
+     * 
+     * @param key   - the key
+     * @param value - the value
+     * @return the entity tag of the value.
+     * @throws IllegalArgumentException if the store does not accept the key.
+     * @throws RejectedExecutionException if the write-behind queue is full.
+     * @throws IllegalStateException if this JSONObjectStore has no write-behind queue.
+     * @throws JSONStoreRetiredException if this JSONObjectStore has been closed or replaced by a rebuilt store.
+     */
+    public String putBehind(K key, JSONObject value) {
+        if(key == null || value == null) {
+            throw new NullPointerException();
+        }
+        
+        // Keys the store would reject are rejected before the write is acknowledged
+        if(baseStore.getStore() instanceof ArrayDataStore) {
+            ((ArrayDataStore)baseStore.getStore()).checkKey(baseStore.getKeySerializer().serialize(key));
+        }
+        
+        byte[] bytes = serialize(key, value);
+        enterWrite();
+        try {
+            getWriteBehindQueue().offer(key, value, bytes);
+        } finally {
+            exitWrite();
+        }
+        return JSONETag.of(bytes);
+    }
+    
+    /**
+     * Queues a delete to be applied in the background. Reads find no value from now on.
+     * 
+     * @param key - the key
+     * @throws RejectedExecutionException if the write-behind queue is full.
+     * @throws IllegalStateException if this JSONObjectStore has no write-behind queue.
+     * @throws JSONStoreRetiredException if this JSONObjectStore has been closed or replaced by a rebuilt store.
+     */
+    public void deleteBehind(K key) {
+        if(key == null) {
+            throw new NullPointerException();
+        }
+        enterWrite();
+        try {
+            getWriteBehindQueue().offer(key, null, null);
+        } finally {
+            exitWrite();
+        }
+    }
+    
+    /**
+     * Waits until all the writes queued so far are applied.
+     * 
+     * @throws IOException if interrupted while waiting.
+     */
+    public void awaitWriteBehind() throws IOException {
+        JSONWriteBehind<K> wb = writeBehind;
+        if(wb != null) {
+            wb.awaitAll();
+        }
+    }
+    
+    /**
+     * Waits until the queued write of a key, if any, is applied, so that a synchronous write
+     * is neither overwritten by an older queued write nor checked against a stale value.
+     */
+    private void awaitWriteBehind(K key) throws IOException {
+        JSONWriteBehind<K> wb = writeBehind;
+        if(wb != null && key != null) {
+            wb.awaitApplied(key);
+        }
+    }
+    
+    private JSONWriteBehind<K> getWriteBehindQueue() {
+        JSONWriteBehind<K> wb = writeBehind;
+        if(wb == null) {
+            throw new IllegalStateException("No write-behind queue");
+        }
+        return wb;
+    }
+    
+    /**
+     * Applies a write taken from the write-behind queue. The write passed the write gate when
+     * it was queued, so it is applied even while a rebuild holds the gate to drain the queue.
+     * 
+     * @param value - the value, or <code>null</code> to delete the key
+     * @param bytes - the serialized value, or <code>null</code> to delete the key
+     */
+    void applyWrite(K key, JSONObject value, byte[] bytes) throws Exception {
+        long startNanos = System.nanoTime();
+        if(value == null) {
+            try {
+                doDelete(key);
+            } finally {
+                metrics.getDeleteLatency().recordSince(startNanos);
+            }
+        } else {
+            try {
+                doPut(key, value, bytes);
+            } finally {
+                metrics.getPutLatency().recordSince(startNanos);
+            }
+        }
+    }
+    
+    /**
+     * Puts a value if the current value matches the specified <code>If-Match</code> precondition.
+     * The precondition check, the write and the read of the previous value are atomic with respect
+     * to the other writes of the same key.
+     * 
+     * @param key     - the key
+     * @param value   - the value
+     * @param ifMatch - the <code>If-Match</code> header value, or <code>null</code> to put unconditionally
+     * @return the result holding the previous value and the entity tag of the new value.
+     * @throws Exception if the value cannot be put.
+     */
+    public JSONWriteResult putIfMatch(K key, JSONObject value, String ifMatch) throws Exception {
+        if(key == null || value == null) {
+            throw new NullPointerException();
+        }
+        
+        long startNanos = System.nanoTime();
+        try {
+            awaitWriteBehind(key);
+            byte[] bytes = serialize(key, value);
+            byte[] previous;
+            enterWrite();
+            try {
+                synchronized(lockFor(key)) {
+                    previous = baseStore.getBytes(key);
+                    if(!JSONETag.ifMatch(ifMatch, JSONETag.of(previous))) {
+                        return new JSONWriteResult(false, null, null, JSONETag.of(previous));
+                    }
+                    doPut(key, value, bytes);
+                }
+            } finally {
+                exitWrite();
+            }
+            return new JSONWriteResult(true, deserialize(previous), value, JSONETag.of(bytes));
+        } finally {
+            metrics.getPutLatency().recordSince(startNanos);
+        }
+    }
+    
+    /**
+     * Applies a JSON Merge Patch to the value of a key if the current value matches the specified
+     * <code>If-Match</code> precondition. A missing value is patched as an empty object. The read,
+     * the patch and the write are atomic with respect to the other writes of the same key.
+     * 
+     * @param key     - the key
+     * @param patch   - the merge patch
+     * @param ifMatch - the <code>If-Match</code> header value, or <code>null</code> to patch unconditionally
+     * @return the result holding the previous value, the patched value and its entity tag.
+     * @throws Exception if the value cannot be patched.
+     * @see JSONMergePatch
+     */
+    public JSONWriteResult patchIfMatch(K key, JSONObject patch, String ifMatch) throws Exception {
+        if(key == null || patch == null) {
+            throw new NullPointerException();
+        }
+        
+        long startNanos = System.nanoTime();
+        try {
+            awaitWriteBehind(key);
+            enterWrite();
+            try {
+                synchronized(lockFor(key)) {
+                    byte[] previous = baseStore.getBytes(key);
+                    if(!JSONETag.ifMatch(ifMatch, JSONETag.of(previous))) {
+                        return new JSONWriteResult(false, null, null, JSONETag.of(previous));
+                    }
+                    
+                    JSONObject previousValue = deserialize(previous);
+                    JSONObject value = JSONMergePatch.apply(previousValue, patch);
+                    byte[] bytes = serialize(key, value);
+                    doPut(key, value, bytes);
+                    return new JSONWriteResult(true, previousValue, value, JSONETag.of(bytes));
+                }
+            } finally {
+                exitWrite();
+            }
+        } finally {
+            metrics.getPutLatency().recordSince(startNanos);
+        }
+    }
+    
+    private byte[] serialize(K key, JSONObject value) {
+        return key == null || value == null ? null : baseStore.getValueSerializer().serialize(value);
+    }
+    
+    private JSONObject deserialize(byte[] bytes) {
+        if(bytes == null) {
+            return null;
+        }
+        metrics.recordRead(bytes.length);
+        return baseStore.getValueSerializer().deserialize(bytes);
+    }
+    
+    /**
+     * Writes a value to the base store, counting its stored size.
+     * 
+     * @param bytes - the serialized value, or <code>null</code> if the key or the value is <code>null</code>
+     */
+    private boolean write(K key, JSONObject value, byte[] bytes) throws Exception {
+        if(bytes == null) {
+            return baseStore.put(key, value);
+        }
+        
+        boolean updated = baseStore.getStore().put(baseStore.getKeySerializer().serialize(key), bytes);
+        metrics.recordWrite(bytes.length, value);
+        return updated;
+    }
+    
+    /**
+     * Gets the lock that orders the writes of the specified key, so that conditional writes
+     * are atomic and index updates are applied in the order of the store writes.
+     */
+    Object lockFor(Object key) {
+        return locks[(key.hashCode() & 0x7fffffff) % NUM_LOCKS];
+    }
+    
+    /**
+     * Passes the write gate, which is taken before any key lock and released after the write
+     * has been reported to a running rebuild.
+     * 
+     * @throws JSONStoreRetiredException if this JSONObjectStore has been replaced by a rebuilt store.
+     */
+    private void enterWrite() {
+        writeGate.readLock().lock();
+        if(retired) {
+            writeGate.readLock().unlock();
+            throw new JSONStoreRetiredException("Store has been rebuilt, retry the write");
+        }
+    }
+    
+    private void exitWrite() {
+        writeGate.readLock().unlock();
+    }
+    
+    /**
+     * Attaches the rebuild to tell of writes, or <code>null</code> to detach it.
+     */
+    void setRebuild(JSONStoreRebuild<K> rebuild) {
+        this.rebuild = rebuild;
+    }
+    
+    /**
+     * Waits for the writes in progress and holds off new writes until {@link #openWriteGate()}.
+     * Queued writes are still applied by the write-behind queue.
+     */
+    void closeWriteGate() {
+        writeGate.writeLock().lock();
+    }
+    
+    void openWriteGate() {
+        writeGate.writeLock().unlock();
+    }
+    
+    /**
+     * Rejects all the writes from now on, once a rebuilt store has replaced this JSONObjectStore.
+     * Reads are still served until it is closed.
+     */
+    void retire() {
+        retired = true;
+    }
+    
+    /**
+     * @return <code>true</code> if this JSONObjectStore has been replaced by a rebuilt store.
+     */
+    public boolean isRetired() {
+        return retired;
+    }
+    
+    /**
+     * Holds this JSONObjectStore open for a reader until {@link #unpin()}, which must follow
+     * a successful pin. Reads streamed out of the store should pin it, since a store replaced
+     * by a rebuild or closed for being idle is closed only once its readers are done.
+     * 
+     * @return <code>false</code> if this JSONObjectStore is being closed and the reader should get the store again.
+     */
+    public boolean pin() {
+        readers.incrementAndGet();
+        if(draining || !isOpen()) {
+            unpin();
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Releases this JSONObjectStore held by {@link #pin()}.
+     */
+    public void unpin() {
+        if(readers.decrementAndGet() == 0 && draining) {
+            synchronized(readers) {
+                readers.notifyAll();
+            }
+        }
+    }
+    
+    /**
+     * @return the number of readers holding this JSONObjectStore.
+     */
+    public int getReaders() {
+        return readers.get();
+    }
+    
+    /**
+     * Turns away new readers and waits for the readers holding this JSONObjectStore.
+     * 
+     * @param timeoutMillis - the maximum number of milliseconds to wait
+     * @return <code>true</code> if no reader holds this JSONObjectStore.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    boolean drainReaders(long timeoutMillis) throws InterruptedException {
+        draining = true;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized(readers) {
+            while(readers.get() > 0) {
+                long wait = deadline - System.currentTimeMillis();
+                if(wait <= 0) {
+                    return false;
+                }
+                readers.wait(wait);
+            }
+        }
+        return true;
+    }
+    
+    private boolean doPut(K key, JSONObject value, byte[] bytes) throws Exception {
+        if(key == null) {
+            try {
+                return write(key, value, bytes);
+            } finally {
+                writeCount.incrementAndGet();
+            }
+        }
+        
+        synchronized(lockFor(key)) {
+            JSONIndexes idx = indexes;
+            if(idx != null) {
+                idx.beginUpdate(key.toString(), value);
+            }
+            try {
+                boolean updated = write(key, value, bytes);
+                if(idx != null) {
+                    idx.update(key.toString(), value);
+                }
+                return updated;
+            } finally {
+                invalidate(key);
+                if(idx != null) {
+                    idx.endUpdate();
+                }
+                writeCount.incrementAndGet();
+                JSONStoreRebuild<K> r = rebuild;
+                if(r != null) {
+                    r.changed(key);
+                }
+            }
+        }
     }
     
     @Override
     public boolean delete(K key) throws Exception {
-        return baseStore.delete(key);
+        long startNanos = System.nanoTime();
+        try {
+            awaitWriteBehind(key);
+            enterWrite();
+            try {
+                return doDelete(key);
+            } finally {
+                exitWrite();
+            }
+        } finally {
+            metrics.getDeleteLatency().recordSince(startNanos);
+        }
+    }
+    
+    /**
+     * Deletes a value if the current value matches the specified <code>If-Match</code> precondition.
+     * The precondition check, the delete and the read of the previous value are atomic with respect
+     * to the other writes of the same key.
+     * 
+     * @param key     - the key
+     * @param ifMatch - the <code>If-Match</code> header value, or <code>null</code> to delete unconditionally
+     * @return the result holding the previous value.
+     * @throws Exception if the value cannot be deleted.
+     */
+    public JSONWriteResult deleteIfMatch(K key, String ifMatch) throws Exception {
+        if(key == null) {
+            throw new NullPointerException();
+        }
+        
+        long startNanos = System.nanoTime();
+        try {
+            awaitWriteBehind(key);
+            byte[] previous;
+            enterWrite();
+            try {
+                synchronized(lockFor(key)) {
+                    previous = baseStore.getBytes(key);
+                    if(!JSONETag.ifMatch(ifMatch, JSONETag.of(previous))) {
+                        return new JSONWriteResult(false, null, null, JSONETag.of(previous));
+                    }
+                    doDelete(key);
+                }
+            } finally {
+                exitWrite();
+            }
+            return new JSONWriteResult(true, deserialize(previous), null, null);
+        } finally {
+            metrics.getDeleteLatency().recordSince(startNanos);
+        }
+    }
+    
+    private boolean doDelete(K key) throws Exception {
+        if(key == null) {
+            try {
+                return baseStore.delete(key);
+            } finally {
+                writeCount.incrementAndGet();
+            }
+        }
+        
+        synchronized(lockFor(key)) {
+            JSONIndexes idx = indexes;
+            if(idx != null) {
+                idx.beginUpdate(key.toString(), null);
+            }
+            try {
+                boolean deleted = baseStore.delete(key);
+                if(idx != null) {
+                    idx.update(key.toString(), null);
+                }
+                return deleted;
+            } finally {
+                invalidate(key);
+                if(idx != null) {
+                    idx.endUpdate();
+                }
+                writeCount.incrementAndGet();
+                JSONStoreRebuild<K> r = rebuild;
+                if(r != null) {
+                    r.changed(key);
+                }
+            }
+        }
     }
     
     @Override
     public void clear() throws IOException {
-        baseStore.clear();
+        enterWrite();
+        try {
+            doClear();
+        } finally {
+            exitWrite();
+        }
+    }
+    
+    private void doClear() throws IOException {
+        JSONIndexes idx = indexes;
+        if(idx != null) {
+            idx.beginClear();
+        }
+        
+        try {
+            baseStore.clear();
+        } finally {
+            JSONObjectCache<K> c = cache;
+            if(c != null) {
+                c.invalidateAll();
+            }
+            if(idx != null) {
+                idx.clear();
+                idx.endUpdate();
+            }
+            writeCount.incrementAndGet();
+            JSONStoreRebuild<K> r = rebuild;
+            if(r != null) {
+                r.cleared();
+            }
+        }
+    }
+    
+    private void invalidate(K key) {
+        JSONObjectCache<K> c = cache;
+        if(c != null && key != null) {
+            c.invalidate(key);
+        }
     }
     
+    /**
+     * Iterates over the stored entries. Writes still in the write-behind queue are seen
+     * once they are applied, so call {@link #awaitWriteBehind()} first to see them.
+     */
     @Override
     public IndexedIterator<Entry<K, JSONObject>> iterator() {
         return baseStore.iterator();
     }
     
+    /**
+     * Iterates over the stored keys. Writes still in the write-behind queue are seen
+     * once they are applied, so call {@link #awaitWriteBehind()} first to see them.
+     */
     @Override
     public IndexedIterator<K> keyIterator() {
         return baseStore.keyIterator();
     }
     
+    /**
+     * @return the iterator over the stored key and value bytes, which are not deserialized.
+     * Like {@link #iterator()}, it sees queued writes once they are applied.
+     */
+    public IndexedIterator<Entry<byte[], byte[]>> rawIterator() {
+        return baseStore.getStore().iterator();
+    }
+    
+    /**
+     * @return the iterator over the stored key bytes, which are not deserialized.
+     * Like {@link #iterator()}, it sees queued writes once they are applied.
+     */
+    public IndexedIterator<byte[]> rawKeyIterator() {
+        return baseStore.getStore().keyIterator();
+    }
+    
     @Override
     public void persist() throws IOException {
-        baseStore.persist();
+        synchronized(persistLock) {
+            // The data of a retired store has been copied and synced to its replacement,
+            // and a closed store has been persisted by close
+            if(retired || !baseStore.isOpen()) {
+                return;
+            }
+            
+            long count = writeCount.get();
+            long startTime = System.currentTimeMillis();
+            long startNanos = System.nanoTime();
+            JSONIndexes idx = indexes;
+            List<Object> changed = idx == null ? null : idx.takeChanged();
+            baseStore.persist();
+            if(idx != null) {
+                idx.save(changed);
+            }
+            metrics.getPersistLatency().recordSince(startNanos);
+            persisted(count, startTime);
+        }
     }
     
     @Override
     public void sync() throws IOException {
-        baseStore.sync();
+        synchronized(persistLock) {
+            if(retired || !baseStore.isOpen()) {
+                return;
+            }
+            
+            long count = writeCount.get();
+            long startTime = System.currentTimeMillis();
+            long startNanos = System.nanoTime();
+            JSONIndexes idx = indexes;
+            List<Object> changed = idx == null ? null : idx.takeChanged();
+            baseStore.sync();
+            if(idx != null) {
+                idx.save(changed);
+            }
+            metrics.getSyncLatency().recordSince(startNanos);
+            persisted(count, startTime);
+        }
+    }
+    
+    /**
+     * Records a completed persist, which covers the writes counted before it started.
+     */
+    private synchronized void persisted(long count, long startTime) {
+        long now = System.currentTimeMillis();
+        if(count > persistedWriteCount) {
+            persistedWriteCount = count;
+        }
+        lastPersistTime = now;
+        lastPersistMillis = now - startTime;
     }
     
     @Override
@@ -120,10 +1121,24 @@ public class JSONObjectStore<K> implements ObjectStore<K, JSONObject> {
     @Override
     public void open() throws IOException {
         baseStore.open();
+        draining = false;
     }
     
     @Override
     public void close() throws IOException {
-        baseStore.close();
+        JSONWriteBehind<K> wb = writeBehind;
+        if(wb != null) {
+            wb.close();
+        }
+        
+        // Waits for a persist or sync in progress
+        synchronized(persistLock) {
+            JSONIndexes idx = baseStore.isOpen() ? indexes : null;
+            List<Object> changed = idx == null ? null : idx.takeChanged();
+            baseStore.close();
+            if(idx != null) {
+                idx.save(changed);
+            }
+        }
     }
 }
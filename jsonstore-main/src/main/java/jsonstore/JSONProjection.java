@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+/**
+ * JSONProjection selects fields of JSON objects by dotted paths such as <code>title,author.name</code>.
+ * It copies the selected members from a streaming parser to JSON text and skips the others
+ * without building JSON objects, so the cost follows the size of the projected value rather
+ * than the size of the stored one. Members not found, and paths through values that are not
+ * objects, are left out of the projection, while the objects on a selected path are kept.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class JSONProjection {
+    /**
+     * The shared JSON text factory (thread-safe).
+     */
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    
+    /**
+     * The selected members by name, or <code>null</code> if the whole value is selected.
+     */
+    private Map<String, JSONProjection> fields;
+    
+    private JSONProjection(Map<String, JSONProjection> fields) {
+        this.fields = fields;
+    }
+    
+    /**
+     * Parses a projection from comma-separated dotted paths.
+     * 
+     * @param fields - the field paths, e.g. <code>title,timestamp,author.name</code>
+     * @return the projection, or <code>null</code> if <code>fields</code> is <code>null</code>.
+     * @throws IllegalArgumentException if a path is empty or has an empty name.
+     */
+    public static JSONProjection parse(String fields) {
+        if(fields == null) {
+            return null;
+        }
+        
+        JSONProjection root = new JSONProjection(new HashMap<String, JSONProjection>());
+        for(String path : fields.split(",")) {
+            path = path.trim();
+            if(path.length() == 0) {
+                throw new IllegalArgumentException("empty field in " + fields);
+            }
+            
+            JSONProjection node = root;
+            String[] names = path.split("\\.", -1);
+            for(int i = 0; i < names.length; i++) {
+                if(names[i].length() == 0) {
+                    throw new IllegalArgumentException("invalid field " + path);
+                }
+                if(node.fields == null) {
+                    // An enclosing member is selected as a whole
+                    break;
+                }
+                
+                JSONProjection child = node.fields.get(names[i]);
+                if(child == null) {
+                    child = new JSONProjection(new HashMap<String, JSONProjection>());
+                    node.fields.put(names[i], child);
+                }
+                if(i == names.length - 1) {
+                    child.fields = null;
+                }
+                node = child;
+            }
+        }
+        
+        return root;
+    }
+    
+    /**
+     * Projects the JSON text of a raw value, which is decompressed if needed.
+     * 
+     * @param value - the raw value
+     * @return the projected value as JSON text, carrying the entity tag of the raw value.
+     * @throws IOException if the value is not valid JSON.
+     */
+    public JSONRawValue project(JSONRawValue value) throws IOException {
+        JSONRawValue text = value.toText();
+        byte[] bytes = project(jsonFactory.createJsonParser(text.getBytes(), text.getOffset(), text.getLength()));
+        return new JSONRawValue(bytes, 0, bytes.length, false).withETag(value.getETag());
+    }
+    
+    /**
+     * Projects the value read from the specified parser, which is closed afterwards.
+     * 
+     * @param parser - the parser positioned before the value
+     * @return the projected value as UTF-8 JSON text.
+     * @throws IOException if the value cannot be parsed.
+     */
+    public byte[] project(JsonParser parser) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+        try {
+            JsonGenerator gen = jsonFactory.createJsonGenerator(baos, JsonEncoding.UTF8);
+            JsonToken token = parser.nextToken();
+            if(token == JsonToken.START_OBJECT) {
+                copyObject(parser, gen, true);
+            } else if(token != null) {
+                gen.copyCurrentStructure(parser);
+            }
+            gen.close();
+        } finally {
+            parser.close();
+        }
+        
+        return baos.toByteArray();
+    }
+    
+    /**
+     * Copies the selected members of the object at the current token.
+     * 
+     * @param root - whether the object is the root value, which is not read past its last selected member
+     */
+    private void copyObject(JsonParser parser, JsonGenerator gen, boolean root) throws IOException {
+        int remaining = fields.size();
+        
+        gen.writeStartObject();
+        while(parser.nextToken() == JsonToken.FIELD_NAME) {
+            if(root && remaining == 0) {
+                break;
+            }
+            
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            JSONProjection child = fields.get(name);
+            if(child == null) {
+                parser.skipChildren();
+            } else if(child.fields == null) {
+                gen.writeFieldName(name);
+                gen.copyCurrentStructure(parser);
+                remaining--;
+            } else if(token == JsonToken.START_OBJECT) {
+                gen.writeFieldName(name);
+                child.copyObject(parser, gen, false);
+                remaining--;
+            } else {
+                parser.skipChildren();
+            }
+        }
+        gen.writeEndObject();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import org.apache.log4j.Logger;
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * JSONRangeScanner streams the keys, optionally with values, of a {@link JSONObjectStore} in key order
+ * from its {@link JSONKeyIndex}, limited to a key range and/or a key prefix. Each record is a line
+ * <code>{"key":...,"value":...}</code> where the value is left out for key-only listings, and the last
+ * line is <code>{"cursor":...}</code> holding the first key of the next page, which is passed as
+ * <code>from</code> to continue, or <code>null</code> once the listing is complete.
+ * 
+ * <p>
+ * Keys deleted after they are listed but before their values are read are left out.
+ * </p>
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class JSONRangeScanner {
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(JSONRangeScanner.class);
+    
+    private final JSONObjectStore<String> jsonStore;
+    private final Iterator<String> keys;
+    private final int limit;
+    private final boolean values;
+    private final JSONProjection projection;
+    
+    private int count = 0;
+    
+    /**
+     * Constructs a new instance of JSONRangeScanner.
+     * 
+     * @param jsonStore  - the JSON store
+     * @param from       - the lowest key (inclusive), or <code>null</code> for no lower bound
+     * @param to         - the highest key (exclusive), or <code>null</code> for no upper bound
+     * @param prefix     - the key prefix, or <code>null</code> for any key
+     * @param limit      - the number of records per page
+     * @param values     - whether to include values
+     * @param projection - the fields of values to include, or <code>null</code> for whole values
+     * @throws IllegalArgumentException if the store has no key index or the range is invalid.
+     */
+    public JSONRangeScanner(JSONObjectStore<String> jsonStore, String from, String to, String prefix,
+                            int limit, boolean values, JSONProjection projection) {
+        JSONIndexes idx = jsonStore.getIndexes();
+        JSONKeyIndex keyIndex = idx == null ? null : idx.getKeyIndex();
+        if(keyIndex == null) {
+            throw new IllegalArgumentException("keys are not indexed");
+        }
+        
+        this.jsonStore = jsonStore;
+        this.keys = keyIndex.range(from, to, prefix);
+        this.limit = Math.max(1, limit);
+        this.values = values;
+        this.projection = projection;
+    }
+    
+    /**
+     * @return the number of records written.
+     */
+    public int getCount() {
+        return count;
+    }
+    
+    /**
+     * Writes a page of records to the specified stream.
+     * 
+     * @param out - the output stream
+     * @return the first key of the next page, or <code>null</code> if the listing is complete.
+     * @throws IOException if the output stream cannot be written.
+     */
+    public String write(OutputStream out) throws IOException {
+        BufferedOutputStream bout = new BufferedOutputStream(out, 64 * 1024);
+        
+        String cursor = null;
+        while(keys.hasNext()) {
+            String key = keys.next();
+            if(count >= limit) {
+                cursor = key;
+                break;
+            }
+            
+            JSONRawValue value = null;
+            if(values) {
+                try {
+                    value = jsonStore.getRawValue(key, projection);
+                } catch(Exception e) {
+                    logger.warn("failed to read " + key, e);
+                    continue;
+                }
+                if(value == null) {
+                    continue;
+                }
+            }
+            
+            bout.write("{\"key\":".getBytes("UTF-8"));
+            bout.write(JSONObject.quote(key).getBytes("UTF-8"));
+            if(value != null) {
+                bout.write(",\"value\":".getBytes("UTF-8"));
+                value.toText().writeTo(bout);
+            }
+            bout.write('}');
+            bout.write('\n');
+            count++;
+        }
+        
+        bout.write(("{\"cursor\":" + (cursor == null ? "null" : JSONObject.quote(cursor)) + "}\n").getBytes("UTF-8"));
+        bout.flush();
+        return cursor;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * JSONRawValue is a JSON value in its wire form: either UTF-8 JSON text or a gzip member
+ * of the JSON text sliced out of the stored bytes, which can be sent to HTTP clients
+ * accepting <code>Content-Encoding: gzip</code> without decompressing or parsing.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class JSONRawValue {
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+    private final boolean gzip;
+    private final String etag;
+    
+    /**
+     * Constructs a new instance of JSONRawValue.
+     * 
+     * @param bytes  - the byte array holding the value
+     * @param offset - the value offset
+     * @param length - the value length
+     * @param gzip   - whether the value is a gzip member of JSON text
+     */
+    public JSONRawValue(byte[] bytes, int offset, int length, boolean gzip) {
+        this(bytes, offset, length, gzip, null);
+    }
+    
+    private JSONRawValue(byte[] bytes, int offset, int length, boolean gzip, String etag) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+        this.gzip = gzip;
+        this.etag = etag;
+    }
+    
+    /**
+     * @return a copy of this value with the specified entity tag.
+     */
+    public JSONRawValue withETag(String etag) {
+        return new JSONRawValue(bytes, offset, length, gzip, etag);
+    }
+    
+    /**
+     * @return the entity tag of the stored value, or <code>null</code> if unknown.
+     */
+    public String getETag() {
+        return etag;
+    }
+    
+    public byte[] getBytes() {
+        return bytes;
+    }
+    
+    public int getOffset() {
+        return offset;
+    }
+    
+    public int getLength() {
+        return length;
+    }
+    
+    /**
+     * @return <code>true</code> if the value is a gzip member of JSON text,
+     * or <code>false</code> if the value is UTF-8 JSON text.
+     */
+    public boolean isGzip() {
+        return gzip;
+    }
+    
+    /**
+     * @return the value as UTF-8 JSON text, which is decompressed if needed.
+     * @throws IOException if the gzip member is corrupted.
+     */
+    public JSONRawValue toText() throws IOException {
+        if(!gzip) {
+            return this;
+        }
+        
+        byte[] text = ValueCodecs.gunzip(bytes, offset);
+        return new JSONRawValue(text, 0, text.length, false, etag);
+    }
+    
+    /**
+     * Writes the value as is to the specified stream.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, offset, length);
+    }
+}
@@ -19,13 +19,32 @@ package jsonstore;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 import org.codehaus.jettison.json.JSONException;
@@ -33,10 +52,12 @@ import org.codehaus.jettison.json.JSONObject;
 
 import krati.core.StoreConfig;
 import krati.core.StoreFactory;
+import krati.core.StoreParams;
 import krati.core.segment.SegmentFactory;
 import krati.core.segment.WriteBufferSegmentFactory;
 import krati.io.Serializer;
 import krati.store.DataStore;
+import krati.store.DynamicDataArray;
 
 /**
  * JSONRepository is configurable via the following parameters:  
@@ -44,8 +65,17 @@ import krati.store.DataStore;
  * <pre>
  *   -Djsonstore.instance.home=&lt;homeDir&gt;
  *   -Djsonstore.instance.sync.seconds=&lt;numSeconds&gt;
+ *   -Djsonstore.instance.read.threads=&lt;numThreads&gt;
+ *   -Djsonstore.instance.read.queue.size=&lt;numReads&gt;
+ *   -Djsonstore.instance.persist.threads=&lt;numThreads&gt;
+ *   -Djsonstore.instance.idle.seconds=&lt;numSeconds&gt;
+ *   -Djsonstore.instance.max.open.stores=&lt;numStores&gt;
  * </pre>
  * 
+ * Stores are opened on first access. Open stores are closed once they have not been accessed
+ * for <code>idle.seconds</code> (default 0, never), and the least recently accessed stores are
+ * closed when more than <code>max.open.stores</code> (default 0, no limit) are open.
+ * 
  * @author jwu
  * @since 04/20, 2012
  */
@@ -66,21 +96,167 @@ public final class JSONRepository {
     private int syncCycle = 60;
     
     /**
-     * Sync scheduler.
+     * The number of threads for persisting stores (default 4 at most).
+     */
+    private int persistThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
+    
+    /**
+     * Persist scheduler.
+     */
+    private JSONStorePersister persister;
+    
+    /**
+     * The number of threads for parallel reads (default the number of processors).
+     */
+    private int readThreads = Runtime.getRuntime().availableProcessors();
+    
+    /**
+     * The maximum number of parallel reads waiting for a read thread (default 1024).
+     */
+    private int readQueueSize = 1024;
+    
+    /**
+     * The executor for parallel reads, created on demand.
+     */
+    private volatile ThreadPoolExecutor readExecutor;
+    
+    /**
+     * The number of seconds after which an open store not accessed is closed (default 0, never).
      */
-    private final Timer syncTimer = new Timer();
+    private int idleSeconds = 0;
     
     /**
-     * The multi-JSONObjectStore repository.
+     * The maximum number of open stores (default 0, no limit).
+     */
+    private int maxOpenStores = 0;
+    
+    /**
+     * Idle store closer, started only if idle stores are closed.
+     */
+    private ScheduledExecutorService evictor;
+    
+    /**
+     * Compaction window checker, started when a store with a compaction window is opened.
+     */
+    private volatile ScheduledExecutorService compactionScheduler;
+    
+    /**
+     * The shutdown hook syncing the open stores, removed when this repository is closed.
+     */
+    private Thread shutdownHook;
+    
+    /**
+     * The multi-JSONObjectStore repository of open stores.
      */
     private final Map<String, JSONObjectStore<String>> repository =
         new ConcurrentHashMap<String, JSONObjectStore<String>>();
     
+    /**
+     * The access times of open stores.
+     */
+    private final Map<String, StoreAccess> accesses = new ConcurrentHashMap<String, StoreAccess>();
+    
+    /**
+     * The sources of all the stores, open or not.
+     */
+    private final Set<String> sources = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    
+    /**
+     * The metadata of stores by source.
+     */
+    private final Map<String, JSONStoreMetadata> metadata = new ConcurrentHashMap<String, JSONStoreMetadata>();
+    
+    /**
+     * The locks ordering the metadata updates of each store.
+     */
+    private final ConcurrentHashMap<String, Object> metadataLocks = new ConcurrentHashMap<String, Object>();
+    
+    /**
+     * The opens in progress by source, which are awaited by concurrent callers of {@link #create(String)}.
+     */
+    private final Map<String, FutureTask<JSONObjectStore<String>>> opening =
+        new HashMap<String, FutureTask<JSONObjectStore<String>>>();
+    
+    /**
+     * The sources of stores being closed for being idle.
+     */
+    private final Set<String> closing = new HashSet<String>();
+    
+    /**
+     * The sources of the stores being rebuilt.
+     */
+    private final Set<String> rebuilding = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    
+    /**
+     * The state of the last rebuild of each store started since the repository was instantiated.
+     */
+    private final Map<String, JSONObject> rebuildStates = new ConcurrentHashMap<String, JSONObject>();
+    
+    /**
+     * The factory of the threads running the rebuilds started by {@link #startRebuild(String, JSONObject)}.
+     */
+    private final ThreadFactory rebuildThreads = new JSONStorePersister.DaemonThreadFactory("jsonstore-rebuild-");
+    
+    /**
+     * Stores accessed within this many milliseconds are never closed for the open store limit.
+     */
+    private static final long MIN_IDLE_MILLIS = 5000;
+    
     /**
      * The minimum sync cycle is 10 seconds.
      */
     public static final int MIN_SYNC_CYCLE = 10;
     
+    /**
+     * The directory name prefix of the partitions of a store with <code>numPartitions</code> above one.
+     */
+    public static final String PARTITION_DIR_PREFIX = "partition-";
+    
+    /**
+     * The store type indexing keys by hash, which is the default.
+     */
+    public static final String STORE_TYPE_HASH = "hash";
+    
+    /**
+     * The store type keeping the values of dense numeric keys in an array indexed by key.
+     */
+    public static final String STORE_TYPE_ARRAY = "array";
+    
+    /**
+     * The directory name of the array of a store with the <code>array</code> store type.
+     */
+    public static final String ARRAY_DIR = "array";
+    
+    /**
+     * The configuration parameter holding the generation of a store, which is incremented by each rebuild.
+     */
+    public static final String GENERATION = "generation";
+    
+    /**
+     * The prefix of generation directories holding the data of rebuilt stores.
+     */
+    public static final String GENERATION_DIR_PREFIX = "gen-";
+    
+    /**
+     * The milliseconds between the warnings logged while a store waits for its readers to be closed.
+     */
+    private static final long DRAIN_WARN_MILLIS = 60000;
+    
+    /**
+     * The maximum number of times a reader gets a store again after it was replaced or closed meanwhile.
+     */
+    private static final int MAX_PIN_ATTEMPTS = 3;
+    
+    /**
+     * The number of written keys left to catch up below which a rebuild pauses writes to swap stores.
+     */
+    private static final int REBUILD_SWAP_PENDING = 1000;
+    
+    /**
+     * The maximum number of catch-up rounds before a rebuild pauses writes to swap stores.
+     */
+    private static final int REBUILD_MAX_ROUNDS = 10;
+    
     /**
      * Constructs a new instance of JSONRepository.
      * 
@@ -89,6 +265,9 @@ public final class JSONRepository {
     public JSONRepository() throws Exception {
         this.initHomeDir();
         this.initSyncCycle();
+        this.initReadThreads();
+        this.initPersistThreads();
+        this.initOpenStores();
         this.initRepository();
     }
     
@@ -105,6 +284,9 @@ public final class JSONRepository {
         }
         this.homeDir = homeDir;
         this.setSyncCycle(syncSeconds);
+        this.initReadThreads();
+        this.initPersistThreads();
+        this.initOpenStores();
         this.initRepository();
     }
     
@@ -135,22 +317,83 @@ public final class JSONRepository {
     }
     
     /**
-     * Initialize the JSONRepository with known JSON stores.
+     * Initialize the number of threads for parallel reads and the size of their queue.
+     */
+    protected void initReadThreads() {
+        String param = System.getProperty("jsonstore.instance.read.threads");
+        if(param != null) {
+            try {
+                readThreads = Math.max(1, Integer.parseInt(param));
+            } catch(Exception e) {
+                e.printStackTrace();
+            }
+        }
+        
+        param = System.getProperty("jsonstore.instance.read.queue.size");
+        if(param != null) {
+            try {
+                readQueueSize = Math.max(1, Integer.parseInt(param));
+            } catch(Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+    
+    /**
+     * Initialize the number of threads for persisting stores.
+     */
+    protected void initPersistThreads() {
+        String param = System.getProperty("jsonstore.instance.persist.threads");
+        if(param != null) {
+            try {
+                persistThreads = Math.max(1, Integer.parseInt(param));
+            } catch(Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+    
+    /**
+     * Initialize the idle period and the maximum number of open stores.
+     */
+    protected void initOpenStores() {
+        String param = System.getProperty("jsonstore.instance.idle.seconds");
+        if(param != null) {
+            try {
+                idleSeconds = Math.max(0, Integer.parseInt(param));
+            } catch(Exception e) {
+                e.printStackTrace();
+            }
+        }
+        
+        param = System.getProperty("jsonstore.instance.max.open.stores");
+        if(param != null) {
+            try {
+                maxOpenStores = Math.max(0, Integer.parseInt(param));
+            } catch(Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+    
+    /**
+     * Initialize the JSONRepository with known JSON stores, which are opened on first access.
      */
     protected void initRepository() throws Exception {
+        persister = new JSONStorePersister(persistThreads);
+        
         File[] files = getHomeDir().listFiles();
         for(File file : files) {
             if(file.isDirectory()) {
-                String source = file.getName();
-                JSONObjectStore<String> jsonStore = create(source);
-                repository.put(source, jsonStore);
+                sources.add(file.getName());
             }
         }
         
         // Add a shutdown hook to sync store changes
-        Runtime.getRuntime().addShutdownHook(new Thread() {
+        shutdownHook = new Thread() {
             @Override
             public synchronized void run() {
+                persister.shutdown();
                 for(String source : repository.keySet()) {
                     try {
                         repository.get(source).sync();
@@ -159,37 +402,163 @@ public final class JSONRepository {
                     }
                 }
             }
-        });
+        };
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
         
-        // Add a timer to persist store changes periodically
-        long period = getSyncCycle() * 1000L;
-        syncTimer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                for(String source : repository.keySet()) {
+        // Persist stores with unpersisted writes periodically
+        persister.start();
+        
+        // Close idle stores periodically
+        if(idleSeconds > 0) {
+            long period = Math.max(1, Math.min(idleSeconds / 2, 60));
+            evictor = Executors.newSingleThreadScheduledExecutor(new JSONStorePersister.DaemonThreadFactory("jsonstore-evictor-"));
+            evictor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
                     try {
-                        repository.get(source).persist();
-                        logger.info(source + " persisted");
-                    } catch (Exception e) {
-                        logger.warn("failed to persist " + source, e);
+                        closeIdleStores(System.currentTimeMillis() - idleSeconds * 1000L);
+                    } catch(Throwable t) {
+                        logger.warn("failed to close idle stores", t);
                     }
                 }
+            }, period, period, TimeUnit.SECONDS);
+        }
+    }
+    
+    /**
+     * Closes the open stores not accessed since the specified time.
+     */
+    void closeIdleStores(long accessedBefore) {
+        for(Map.Entry<String, StoreAccess> e : accesses.entrySet()) {
+            if(e.getValue().time < accessedBefore) {
+                evict(e.getKey(), e.getValue().time);
+            }
+        }
+    }
+    
+    /**
+     * Closes the least recently accessed stores until no more than <code>maxOpenStores</code> are open.
+     */
+    private void closeExcessStores() {
+        while(maxOpenStores > 0 && repository.size() > maxOpenStores) {
+            String lruSource = null;
+            long lruTime = System.currentTimeMillis() - MIN_IDLE_MILLIS;
+            for(Map.Entry<String, StoreAccess> e : accesses.entrySet()) {
+                if(e.getValue().time < lruTime) {
+                    lruSource = e.getKey();
+                    lruTime = e.getValue().time;
+                }
+            }
+            if(lruSource == null || !evict(lruSource, lruTime)) {
+                break;
+            }
+        }
+    }
+    
+    /**
+     * Closes an open store unless it has been accessed since the specified time or is pinned by readers,
+     * bulk loads or rebuilds. The store is closed outside the repository lock once the readers which pinned
+     * it meanwhile are done, and it is not reopened until it is closed.
+     * 
+     * @return <code>true</code> if the store is closed.
+     */
+    private boolean evict(String source, long accessTime) {
+        JSONObjectStore<String> store;
+        synchronized(this) {
+            StoreAccess access = accesses.get(source);
+            store = repository.get(source);
+            if(access == null || access.time > accessTime || store == null || store.getReaders() > 0) {
+                return false;
+            }
+            
+            repository.remove(source);
+            accesses.remove(source);
+            persister.unregister(source);
+            closing.add(source);
+        }
+        
+        try {
+            drainReaders(source, store);
+            store.close();
+            logger.info(source + " closed after " + (System.currentTimeMillis() - accessTime) / 1000 + " seconds idle");
+            return true;
+        } catch(Exception e) {
+            logger.warn("failed to close " + source, e);
+            return false;
+        } finally {
+            synchronized(this) {
+                closing.remove(source);
+                notifyAll();
             }
-        },
-        period, period);
+        }
     }
     
     /**
-     * Checks if there exists an active store for the specified <code>source</code>.
+     * Checks if there exists a store for the specified <code>source</code> which is available, i.e., open or
+     * opened on first access. A store closed by {@link #close(String)} is not available until {@link #open(String)}.
      * 
      * @param source - the source (i.e., store name)
-     * @return <code>true</code> if the specified <code>source</code> is present and the associated store is open.
+     * @return <code>true</code> if the specified <code>source</code> is present.
      * Otherwise, <code>false</code>.
      */
     public boolean has(String source) {
+        return repository.containsKey(source) || sources.contains(source);
+    }
+    
+    /**
+     * Checks if the store for the specified <code>source</code> is open.
+     * 
+     * @param source - the source (i.e., store name)
+     */
+    public boolean isOpen(String source) {
         return repository.containsKey(source);
     }
     
+    /**
+     * @return the number of open stores.
+     */
+    public int getOpenCount() {
+        return repository.size();
+    }
+    
+    /**
+     * @return the number of stores, open or not.
+     */
+    public int getStoreCount() {
+        Set<String> all = new HashSet<String>(sources);
+        all.addAll(repository.keySet());
+        return all.size();
+    }
+    
+    /**
+     * @return the open stores by source, sorted by source.
+     */
+    public Map<String, JSONObjectStore<String>> getOpenStores() {
+        return Collections.unmodifiableMap(new TreeMap<String, JSONObjectStore<String>>(repository));
+    }
+    
+    /**
+     * Gets the metrics of this repository and of each open store. Stores which are not open
+     * are not reported, and their metrics restart when they are opened again.
+     * 
+     * @return the metrics in JSON.
+     */
+    public JSONObject getMetrics() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("openStores", getOpenCount());
+            json.put("stores", getStoreCount());
+            
+            JSONObject stores = new JSONObject();
+            for(Map.Entry<String, JSONObjectStore<String>> e : getOpenStores().entrySet()) {
+                stores.put(e.getKey(), e.getValue().getStats());
+            }
+            json.put("sources", stores);
+        } catch(JSONException e) {}
+        
+        return json;
+    }
+    
     /**
      * Checks if there exists a store for the specified <code>source</code>, regardless the associated store is open or not.
      * 
@@ -212,12 +581,69 @@ public final class JSONRepository {
     }
     
     /**
-     * Gets the store associated with the specified <code>source</code>.
+     * Gets the store associated with the specified <code>source</code>, opening it if needed.
      * 
      * @param source - the source (i.e., store name)
+     * @return the store or <code>null</code> if the specified <code>source</code> is not present.
      */
     public JSONObjectStore<String> get(String source) {
-        return repository.get(source);
+        JSONObjectStore<String> jsonStore = repository.get(source);
+        if(jsonStore == null) {
+            if(!sources.contains(source)) {
+                return null;
+            }
+            try {
+                jsonStore = create(source);
+            } catch(Exception e) {
+                logger.error("failed to open " + source, e);
+                return null;
+            }
+        }
+        
+        touch(source);
+        return jsonStore;
+    }
+    
+    /**
+     * Records an access to the open store of the specified <code>source</code>.
+     */
+    private void touch(String source) {
+        StoreAccess access = accesses.get(source);
+        if(access != null) {
+            access.time = System.currentTimeMillis();
+        }
+    }
+    
+    /**
+     * Gets the store associated with the specified <code>source</code> like {@link #get(String)}, and pins it
+     * for a reader so that it is not closed until {@link JSONObjectStore#unpin()}. The store is got again if it
+     * is replaced by a rebuild or closed meanwhile.
+     * 
+     * @param source - the source (i.e., store name)
+     * @return the pinned store or <code>null</code> if the specified <code>source</code> is not present.
+     * @throws IllegalStateException if the store keeps being closed.
+     */
+    public JSONObjectStore<String> pin(String source) {
+        for(int i = 0; i < MAX_PIN_ATTEMPTS; i++) {
+            JSONObjectStore<String> jsonStore = get(source);
+            if(jsonStore == null || jsonStore.pin()) {
+                return jsonStore;
+            }
+        }
+        throw new IllegalStateException(source + " is closed");
+    }
+    
+    /**
+     * Waits for the readers pinning a store taken out of this repository, before the store is closed.
+     */
+    private static void drainReaders(String source, JSONObjectStore<String> jsonStore) {
+        try {
+            while(!jsonStore.drainReaders(DRAIN_WARN_MILLIS)) {
+                logger.warn(source + " waits for " + jsonStore.getReaders() + " readers to be closed");
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
     
     /**
@@ -228,10 +654,12 @@ public final class JSONRepository {
      */
     public void put(String source, JSONObjectStore<String> jsonStore) {
         repository.put(source, jsonStore);
+        accesses.put(source, new StoreAccess());
+        sources.add(source);
     }
     
     /**
-     * Opens the specified <code>source</code> if it is present..
+     * Opens the specified <code>source</code> if it is present, which makes it available again after {@link #close(String)}.
      * 
      * @param source - the source (i.e., store name)
      * @return <code>true</code> if the specified <code>source</code> is present.
@@ -253,7 +681,9 @@ public final class JSONRepository {
     }
     
     /**
-     * Closes the specified <code>source</code> if it is present..
+     * Closes the specified <code>source</code> if it is present. The store is not available, and not opened
+     * on access, until {@link #open(String)}. It is closed once the readers, bulk loads and rebuilds pinning
+     * it are done.
      * 
      * @param source - the source (i.e., store name)
      * @return <code>true</code> if the specified <code>source</code> is present and the associated store is closed successfully.
@@ -261,12 +691,68 @@ public final class JSONRepository {
      * @throws Exception
      */
     public boolean close(String source) throws Exception {
-        JSONObjectStore<String> store = repository.remove(source);
-        if(store != null) {
+        JSONObjectStore<String> store;
+        synchronized(this) {
+            sources.remove(source);
+            store = repository.remove(source);
+            if(store == null) {
+                return getStoreDir(source, false).exists();
+            }
+            accesses.remove(source);
+            persister.unregister(source);
+            closing.add(source);
+        }
+        
+        try {
+            drainReaders(source, store);
             store.close();
             return true;
-        } else {
-            return getStoreDir(source, false).exists();
+        } finally {
+            synchronized(this) {
+                closing.remove(source);
+                notifyAll();
+            }
+        }
+    }
+    
+    /**
+     * Closes this JSONRepository. Stops persisting stores, closing idle stores, checking compaction
+     * windows and reading in parallel, closes the open stores and removes the shutdown hook.
+     * This repository cannot be used once closed.
+     */
+    public void close() {
+        Thread hook;
+        synchronized(this) {
+            hook = shutdownHook;
+            if(hook == null) {
+                return;
+            }
+            shutdownHook = null;
+        }
+        
+        try {
+            Runtime.getRuntime().removeShutdownHook(hook);
+        } catch(IllegalStateException e) {
+            // The JVM is shutting down and the hook syncs the stores
+        }
+        
+        persister.shutdown();
+        if(evictor != null) {
+            evictor.shutdownNow();
+        }
+        if(compactionScheduler != null) {
+            compactionScheduler.shutdownNow();
+        }
+        if(readExecutor != null) {
+            readExecutor.shutdown();
+        }
+        
+        for(String source : repository.keySet()) {
+            try {
+                close(source);
+            } catch(Exception e) {
+                logger.warn("failed to close " + source, e);
+            }
         }
     }
     
@@ -279,8 +765,12 @@ public final class JSONRepository {
      */
     public void remove(String source) {
         JSONObjectStore<String> store = repository.remove(source);
+        sources.remove(source);
+        accesses.remove(source);
         try {
             if(store != null) {
+                persister.unregister(source);
+                drainReaders(source, store);
                 store.close();
             }
             
@@ -288,6 +778,8 @@ public final class JSONRepository {
             if(storeDir.exists()) {
                 deleteDirectory(storeDir);
             }
+            metadata.remove(source);
+            metadataLocks.remove(source);
         } catch(Exception e) {
             e.printStackTrace();
         }
@@ -319,16 +811,63 @@ public final class JSONRepository {
     }
     
     /**
-     * Gets the JSON store directory.
-     * 
-     * @param source - the source (i.e., store name)
-     * @param create - whether create the store directory
-     * @return the JSON store directory
-     * @throws IOException
+     * Gets the number of threads for persisting stores.
      */
-    protected File getStoreDir(String source, boolean create) throws IOException {
-        File storeDir = new File(getHomeDir(), source);
-        if(create && !storeDir.exists()) {
+    public final int getPersistThreads() {
+        return persistThreads;
+    }
+    
+    /**
+     * Gets the number of threads for parallel reads, which is also the fan-out of a single multi-get.
+     */
+    public final int getReadThreads() {
+        return readThreads;
+    }
+    
+    /**
+     * Gets the maximum number of parallel reads waiting for a read thread.
+     */
+    public final int getReadQueueSize() {
+        return readQueueSize;
+    }
+    
+    /**
+     * Gets the executor for parallel reads shared by all the stores. Its threads are daemons
+     * so that they never keep the JVM from exiting, and reads submitted while its queue is
+     * full are rejected with {@link RejectedExecutionException}.
+     */
+    public ExecutorService getReadExecutor() {
+        if(readExecutor == null) {
+            synchronized(this) {
+                if(readExecutor == null) {
+                    readExecutor = new ThreadPoolExecutor(readThreads, readThreads, 0L, TimeUnit.MILLISECONDS,
+                            new ArrayBlockingQueue<Runnable>(readQueueSize),
+                            new JSONStorePersister.DaemonThreadFactory("jsonstore-read-"));
+                }
+            }
+        }
+        return readExecutor;
+    }
+    
+    /**
+     * Checks if the queue of parallel reads is full, in which case new multi-gets should be turned away.
+     */
+    public boolean isReadQueueFull() {
+        ThreadPoolExecutor executor = readExecutor;
+        return executor != null && executor.getQueue().remainingCapacity() == 0;
+    }
+    
+    /**
+     * Gets the JSON store directory.
+     * 
+     * @param source - the source (i.e., store name)
+     * @param create - whether create the store directory
+     * @return the JSON store directory
+     * @throws IOException
+     */
+    protected File getStoreDir(String source, boolean create) throws IOException {
+        File storeDir = new File(getHomeDir(), source);
+        if(create && !storeDir.exists()) {
             storeDir.mkdirs();
         }
         
@@ -336,16 +875,57 @@ public final class JSONRepository {
     }
     
     /**
-     * Gets the JSON object from a file associated with the specified <code>source</code>.
+     * Gets the metadata of the specified <code>source</code>, which is read from its files once
+     * and then served from memory without locking.
      * 
      * @param source - the source (i.e., store name)
-     * @param jsonName - the JSON file associated with the specified source
-     * @return the JSON object or <code>null</code> if the specified JSON file is not present.
-     * @throws JSONException
+     * @return the metadata, which is empty if the specified <code>source</code> is not present.
+     * @throws JSONException if the configuration or schema file is not valid JSON.
      */
-    protected JSONObject getJSONObject(String source, String jsonName) throws JSONException {
-        String jsonStr = getJSONFile(source, jsonName);
-        return jsonStr == null ? null : new JSONObject(jsonStr);
+    public JSONStoreMetadata getMetadata(String source) throws JSONException {
+        JSONStoreMetadata meta = metadata.get(source);
+        if(meta != null) {
+            return meta;
+        }
+        
+        synchronized(metadataLock(source)) {
+            meta = metadata.get(source);
+            if(meta == null) {
+                meta = JSONStoreMetadata.create(getJSONFile(source, "config.json"), getJSONFile(source, "schema.json"));
+                try {
+                    if(getStoreDir(source, false).exists()) {
+                        metadata.put(source, meta);
+                    }
+                } catch(IOException e) {}
+            }
+            return meta;
+        }
+    }
+    
+    /**
+     * Gets the lock that orders the metadata updates of the specified <code>source</code>.
+     */
+    private Object metadataLock(String source) {
+        Object lock = metadataLocks.get(source);
+        if(lock == null) {
+            lock = new Object();
+            Object prevLock = metadataLocks.putIfAbsent(source, lock);
+            if(prevLock != null) {
+                lock = prevLock;
+            }
+        }
+        return lock;
+    }
+    
+    /**
+     * Saves the configuration of the specified <code>source</code> and updates its metadata.
+     */
+    private void saveConfig(String source, String configStr) throws IOException, JSONException {
+        synchronized(metadataLock(source)) {
+            JSONStoreMetadata meta = getMetadata(source).withConfig(configStr);
+            writeJSONFile(source, "config.json", configStr);
+            metadata.put(source, meta);
+        }
     }
     
     /**
@@ -379,6 +959,12 @@ public final class JSONRepository {
             if(!config.has("segmentFileSizeMB")) {
                 config.put("segmentFileSizeMB", 128);
             }
+            if(!config.has("numPartitions")) {
+                config.put("numPartitions", 1);
+            }
+            if(!config.has("storeType")) {
+                config.put("storeType", STORE_TYPE_HASH);
+            }
             if(!config.has("segmentFactoryClass")) {
                 config.put("segmentFactoryClass", WriteBufferSegmentFactory.class.getCanonicalName());
             }
@@ -396,44 +982,162 @@ public final class JSONRepository {
     }
     
     /**
-     * Create a new JSON store for the specified <code>source</code>.
+     * Create a new JSON store for the specified <code>source</code>. Only the slot of the store
+     * is reserved under the repository lock. The store is opened outside it by the first caller,
+     * while concurrent callers for the same source wait for that open and callers for other
+     * sources are not held up.
      * 
      * @param source - the source (i.e., store name)
      * @return the created JSON store
      * @throws Exception if the JSON store cannot be created for any reasons.
      */
-    @SuppressWarnings("unchecked")
-    public synchronized JSONObjectStore<String> create(String source) throws Exception {
-        if(has(source)) {
-            return get(source);
+    public JSONObjectStore<String> create(final String source) throws Exception {
+        FutureTask<JSONObjectStore<String>> task;
+        boolean opener = false;
+        synchronized(this) {
+            while(closing.contains(source)) {
+                wait();
+            }
+            
+            JSONObjectStore<String> openStore = repository.get(source);
+            if(openStore != null) {
+                return openStore;
+            }
+            
+            task = opening.get(source);
+            if(task == null) {
+                task = new FutureTask<JSONObjectStore<String>>(new Callable<JSONObjectStore<String>>() {
+                    @Override
+                    public JSONObjectStore<String> call() throws Exception {
+                        return openAndRegister(source);
+                    }
+                });
+                opening.put(source, task);
+                opener = true;
+            }
+        }
+        
+        if(opener) {
+            task.run();
+            closeExcessStores();
         }
         
+        try {
+            return task.get();
+        } catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof Exception) {
+                throw (Exception)cause;
+            }
+            throw (Error)cause;
+        }
+    }
+    
+    /**
+     * Opens the store of the specified <code>source</code> and registers it in this repository,
+     * releasing its slot in {@link #opening} whether or not it is opened.
+     */
+    private JSONObjectStore<String> openAndRegister(String source) throws Exception {
+        JSONObjectStore<String> jsonStore = null;
+        try {
+            jsonStore = openStore(source);
+        } finally {
+            synchronized(this) {
+                if(jsonStore != null) {
+                    put(source, jsonStore);
+                }
+                opening.remove(source);
+            }
+        }
+        return jsonStore;
+    }
+    
+    /**
+     * Opens the store of the specified <code>source</code> from its configuration, completing
+     * and saving the configuration first, and schedules its persists.
+     */
+    private JSONObjectStore<String> openStore(String source) throws Exception {
         // Create the JSON store directory
         File storeDir = getStoreDir(source, true);
         
         // Get the JSON configuration
-        JSONObject jsonConfig = getJSONObject(source, "config.json");
-        if(jsonConfig == null) {
+        JSONStoreMetadata meta = getMetadata(source);
+        JSONObject jsonConfig;
+        if(meta.getConfig() == null) {
             jsonConfig = createDefaultConfig();
         } else {
-            jsonConfig = completeConfig(jsonConfig);
+            jsonConfig = completeConfig(new JSONObject(meta.getConfig()));
         }
-        putJSONFile(source, "config.json", jsonConfig.toString(2));
         
+        // Stores rebuilt online keep their data in a generation directory
+        boolean knownGeneration = jsonConfig.has(GENERATION);
+        if(!knownGeneration) {
+            int generation = recoverGeneration(source, storeDir);
+            if(generation > 0) {
+                jsonConfig.put(GENERATION, generation);
+                knownGeneration = true;
+            }
+        }
+        
+        String configStr = jsonConfig.toString(2);
+        if(!configStr.equals(meta.getConfig() == null ? null : meta.getConfig().trim())) {
+            saveConfig(source, configStr);
+        }
+        
+        File dataDir = getDataDir(storeDir, jsonConfig.optInt(GENERATION, 0));
+        if(knownGeneration) {
+            deleteStaleData(storeDir, dataDir);
+        }
+        
+        JSONObjectStore<String> jsonStore = openStore(source, dataDir, jsonConfig, meta.getSchemaJSON());
+        registerPersist(source, jsonStore, jsonConfig);
+        return jsonStore;
+    }
+    
+    /**
+     * Opens the data of a store in the specified directory, which is either the store directory
+     * or one of its generation directories. The store is not registered in this repository.
+     * 
+     * @param source - the source (i.e., store name)
+     * @param dataDir - the data directory
+     * @param jsonConfig - the completed configuration
+     * @param schema - the JSON schema declaring secondary indexes, or <code>null</code>
+     * @return the opened JSON store
+     * @throws Exception if the JSON store cannot be opened for any reasons.
+     */
+    @SuppressWarnings("unchecked")
+    private JSONObjectStore<String> openStore(String source, File dataDir, JSONObject jsonConfig, JSONObject schema) throws Exception {
         // Get configuration parameters
         int initialCapacity = jsonConfig.getInt("initialCapacity");
         int batchSize = jsonConfig.getInt("batchSize");
         int numSyncBatches = jsonConfig.getInt("numSyncBatches");
         int segmentFileSizeMB = jsonConfig.getInt("segmentFileSizeMB");
         String segmentFactoryClass = jsonConfig.getString("segmentFactoryClass");
-        SegmentFactory segmentFactory = (SegmentFactory)Class.forName(segmentFactoryClass).newInstance();
+        int numPartitions = jsonConfig.getInt("numPartitions");
+        String storeType = jsonConfig.getString("storeType");
+        double compactLoadFactor = jsonConfig.has("compactLoadFactor") ?
+                JSONStoreCompaction.checkLoadFactor(jsonConfig.getDouble("compactLoadFactor")) : -1;
+        checkPartitions(dataDir, numPartitions);
+        checkStoreType(dataDir, storeType, numPartitions);
         
-        // StoreConfig
-        StoreConfig config = new StoreConfig(storeDir, initialCapacity);
-        config.setBatchSize(batchSize);
-        config.setNumSyncBatches(numSyncBatches);
-        config.setSegmentFileSizeMB(segmentFileSizeMB);
-        config.setSegmentFactory(segmentFactory);
+        // StoreConfig of each partition
+        List<StoreConfig> configs = new ArrayList<StoreConfig>(numPartitions);
+        for(int i = 0; i < numPartitions; i++) {
+            File partitionDir = numPartitions == 1 ? dataDir : new File(dataDir, PARTITION_DIR_PREFIX + i);
+            if(STORE_TYPE_ARRAY.equals(storeType)) {
+                partitionDir = new File(dataDir, ARRAY_DIR);
+            }
+            StoreConfig config = new StoreConfig(partitionDir, (initialCapacity + numPartitions - 1) / numPartitions);
+            config.setBatchSize(batchSize);
+            config.setNumSyncBatches(numSyncBatches);
+            config.setSegmentFileSizeMB(segmentFileSizeMB);
+            config.setSegmentFactory((SegmentFactory)Class.forName(segmentFactoryClass).newInstance());
+            if(compactLoadFactor >= 0) {
+                config.setSegmentCompactFactor(compactLoadFactor);
+                config.setDouble(StoreParams.PARAM_INDEX_SEGMENT_COMPACT_FACTOR, compactLoadFactor);
+            }
+            configs.add(config);
+        }
         
         // keySerializer
         String keySerializerClass = jsonConfig.getString("keySerializerClass");
@@ -445,10 +1149,611 @@ public final class JSONRepository {
         Serializer<JSONObject> valueSerializer =
             (Serializer<JSONObject>)Class.forName(valueSerializerClass).newInstance();
         
-        DataStore<byte[], byte[]> store = StoreFactory.createIndexedDataStore(config);
+        // Serializers depending on the store directory or configuration
+        if(keySerializer instanceof StoreConfigurable) {
+            ((StoreConfigurable)keySerializer).configure(dataDir, jsonConfig);
+        }
+        if(valueSerializer instanceof StoreConfigurable) {
+            ((StoreConfigurable)valueSerializer).configure(dataDir, jsonConfig);
+        }
+        
+        DataStore<byte[], byte[]> store;
+        if(STORE_TYPE_ARRAY.equals(storeType)) {
+            int keyLength = getArrayKeyLength(keySerializer);
+            int maxCapacity = jsonConfig.optInt("arrayMaxCapacity", ArrayDataStore.DEFAULT_MAX_CAPACITY);
+            store = new ArrayDataStore(new DynamicDataArray(configs.get(0)), keyLength, maxCapacity);
+        } else if(numPartitions == 1) {
+            store = StoreFactory.createIndexedDataStore(configs.get(0));
+        } else {
+            List<DataStore<byte[], byte[]>> partitions = new ArrayList<DataStore<byte[], byte[]>>(numPartitions);
+            try {
+                for(StoreConfig config : configs) {
+                    partitions.add(StoreFactory.createIndexedDataStore(config));
+                }
+            } catch(Exception e) {
+                for(DataStore<byte[], byte[]> p : partitions) {
+                    p.close();
+                }
+                throw e;
+            }
+            store = new PartitionedDataStore(partitions);
+        }
         JSONObjectStore<String> jsonStore = new JSONObjectStore<String>(store, keySerializer, valueSerializer);
-        repository.put(source, jsonStore);
-        return jsonStore; 
+        jsonStore.setCache(JSONObjectCache.<String>create(jsonConfig));
+        
+        // Secondary indexes declared in the schema and the optional ordered key index
+        JSONIndexes indexes = new JSONIndexes(dataDir);
+        if(jsonConfig.optBoolean("keyIndex", false)) {
+            indexes.setKeyIndex(new JSONKeyIndex(keySerializer instanceof PathKeyLongSerializer || keySerializer instanceof PathKeyIntSerializer));
+        }
+        indexes.configure(schema, jsonStore);
+        jsonStore.setIndexes(indexes);
+        
+        // Durable writes are synced by group commit before they are acknowledged
+        jsonStore.setDurableWrites(jsonConfig.optBoolean("durableWrites", false));
+        jsonStore.getGroupCommit().setWindowMillis(jsonConfig.optLong("groupCommitWindowMillis", 0));
+        
+        // Writes queued and applied in batches by a writer thread
+        int writeBehindQueueSize = jsonConfig.optInt("writeBehindQueueSize", 0);
+        if(writeBehindQueueSize > 0) {
+            jsonStore.setWriteBehind(new JSONWriteBehind<String>("jsonstore-write-behind-" + source,
+                    jsonStore, writeBehindQueueSize, batchSize));
+        }
+        
+        // Compaction limited to the peak load factor outside the maintenance window
+        String compactionWindow = jsonConfig.optString("compactionWindow", null);
+        if(compactionWindow != null) {
+            if(jsonStore.getCompaction().isControllable()) {
+                jsonStore.getCompaction().setWindow(compactionWindow, jsonConfig.optDouble("compactionPeakLoadFactor", 0));
+                startCompactionScheduler();
+            } else {
+                logger.warn("compaction window of " + source + " ignored: compaction cannot be controlled");
+            }
+        }
+        
+        return jsonStore;
+    }
+    
+    /**
+     * Starts checking the compaction windows of the open stores every minute, once a store
+     * with a compaction window is opened.
+     */
+    private void startCompactionScheduler() {
+        if(compactionScheduler == null) {
+            synchronized(this) {
+                if(compactionScheduler == null) {
+                    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+                            new JSONStorePersister.DaemonThreadFactory("jsonstore-compaction-"));
+                    scheduler.scheduleWithFixedDelay(new Runnable() {
+                        @Override
+                        public void run() {
+                            Calendar now = Calendar.getInstance();
+                            for(JSONObjectStore<String> jsonStore : repository.values()) {
+                                try {
+                                    jsonStore.getCompaction().checkWindow(now);
+                                } catch(Throwable t) {
+                                    logger.warn("failed to check compaction window", t);
+                                }
+                            }
+                        }
+                    }, 60, 60, TimeUnit.SECONDS);
+                    compactionScheduler = scheduler;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Persists a store by time (default the sync cycle) and/or by the number of writes.
+     */
+    private void registerPersist(String source, JSONObjectStore<String> jsonStore, JSONObject jsonConfig) {
+        int persistIntervalSeconds = jsonConfig.optInt("persistIntervalSeconds", getSyncCycle());
+        long persistWriteCount = jsonConfig.optLong("persistWriteCount", 0);
+        persister.register(source, jsonStore, persistIntervalSeconds, persistWriteCount);
+    }
+    
+    /**
+     * Checks that the partitions of an existing store match <code>numPartitions</code>,
+     * since keys cannot be spread over a different number of partitions in place.
+     */
+    private static void checkPartitions(File storeDir, int numPartitions) {
+        if(numPartitions < 1) {
+            throw new IllegalArgumentException("numPartitions must be positive: " + numPartitions);
+        }
+        
+        int found = 0;
+        while(new File(storeDir, PARTITION_DIR_PREFIX + found).exists()) {
+            found++;
+        }
+        boolean unpartitioned = new File(storeDir, "store").exists();
+        
+        if((numPartitions == 1 && found > 0) || (numPartitions > 1 && (unpartitioned || (found > 0 && found != numPartitions)))) {
+            throw new IllegalStateException("numPartitions " + numPartitions + " does not match the existing store at " + storeDir);
+        }
+    }
+    
+    /**
+     * Checks that <code>storeType</code> is known and matches the existing store, since
+     * the data of a store cannot be moved between a hash index and an array in place.
+     */
+    private static void checkStoreType(File storeDir, String storeType, int numPartitions) {
+        if(STORE_TYPE_ARRAY.equals(storeType)) {
+            if(numPartitions != 1) {
+                throw new IllegalArgumentException("storeType " + storeType + " cannot have numPartitions " + numPartitions);
+            }
+            if(new File(storeDir, "store").exists() || new File(storeDir, PARTITION_DIR_PREFIX + 0).exists()) {
+                throw new IllegalStateException("storeType " + storeType + " does not match the existing store at " + storeDir);
+            }
+        } else if(STORE_TYPE_HASH.equals(storeType)) {
+            if(new File(storeDir, ARRAY_DIR).exists()) {
+                throw new IllegalStateException("storeType " + storeType + " does not match the existing store at " + storeDir);
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown storeType: " + storeType);
+        }
+    }
+    
+    /**
+     * Gets the directory holding the data of the specified generation of a store, which is the store
+     * directory itself until the store is first rebuilt.
+     */
+    static File getDataDir(File storeDir, int generation) {
+        return generation == 0 ? storeDir : new File(storeDir, GENERATION_DIR_PREFIX + generation);
+    }
+    
+    /**
+     * Recovers the generation of a store whose configuration has none, e.g., after the configuration was
+     * replaced by hand. It is generation 0 if the store directory holds data of its own. Otherwise, it is
+     * the generation of the only generation directory present, and generation directories are never
+     * deleted as stale while the generation is unknown.
+     * 
+     * @throws IOException if the store directory holds several generation directories and no data of its own.
+     */
+    private static int recoverGeneration(String source, File storeDir) throws IOException {
+        File[] files = storeDir.listFiles();
+        if(files == null) {
+            return 0;
+        }
+        
+        List<String> generationDirs = new ArrayList<String>();
+        boolean generation0 = false;
+        for(File f : files) {
+            if(f.getName().startsWith(GENERATION_DIR_PREFIX)) {
+                generationDirs.add(f.getName());
+            } else if(!f.getName().endsWith(".json")) {
+                generation0 = true;
+            }
+        }
+        if(generation0 || generationDirs.isEmpty()) {
+            return 0;
+        }
+        
+        if(generationDirs.size() > 1) {
+            throw new IOException(source + " has no " + GENERATION + " in config.json and several generation directories " +
+                    generationDirs + ": set " + GENERATION + " to the generation of its data");
+        }
+        
+        String name = generationDirs.get(0);
+        try {
+            int generation = Integer.parseInt(name.substring(GENERATION_DIR_PREFIX.length()));
+            logger.warn(source + " has no " + GENERATION + " in config.json: recovered generation " + generation);
+            return generation;
+        } catch(NumberFormatException e) {
+            throw new IOException(source + " has no " + GENERATION + " in config.json and an invalid generation directory " + name);
+        }
+    }
+    
+    /**
+     * Deletes the data left in a store directory by other generations than the one in <code>dataDir</code>,
+     * i.e., the data replaced by a rebuild or copied by a rebuild which did not complete. The JSON files
+     * of the store are kept.
+     */
+    private static void deleteStaleData(File storeDir, File dataDir) {
+        File[] files = storeDir.listFiles();
+        if(files == null) {
+            return;
+        }
+        
+        boolean generation0 = storeDir.equals(dataDir);
+        for(File f : files) {
+            boolean stale = f.getName().startsWith(GENERATION_DIR_PREFIX) ?
+                    !f.equals(dataDir) : !generation0 && !f.getName().endsWith(".json");
+            if(!stale) {
+                continue;
+            }
+            try {
+                if(f.isDirectory()) {
+                    deleteDirectory(f);
+                } else if(!f.delete()) {
+                    throw new IOException(f.getAbsolutePath() + " not deleted");
+                }
+                logger.info("deleted stale store data " + f.getAbsolutePath());
+            } catch(IOException e) {
+                logger.warn("failed to delete stale store data " + f.getAbsolutePath(), e);
+            }
+        }
+    }
+    
+    /**
+     * Gets the length of the key bytes of an <code>array</code> store, whose keys must be numeric.
+     */
+    private static int getArrayKeyLength(Serializer<String> keySerializer) {
+        if(keySerializer instanceof PathKeyLongSerializer) {
+            return 8;
+        }
+        if(keySerializer instanceof PathKeyIntSerializer) {
+            return 4;
+        }
+        throw new IllegalArgumentException("storeType " + STORE_TYPE_ARRAY + " requires numeric keys: " + keySerializer.getClass().getName());
+    }
+    
+    /**
+     * Loads a stream of NDJSON put/delete records into the specified <code>source</code>
+     * in chunks of the store's <code>batchSize</code>.
+     * 
+     * @param source - the source (i.e., store name)
+     * @param in - the UTF-8 NDJSON stream
+     * @param persist - whether to persist the store once all the records are applied
+     * @return the load result including the per-record failures
+     * @throws Exception if the stream cannot be read or the store cannot be persisted.
+     * @see JSONBulkLoader
+     */
+    public JSONObject bulkLoad(String source, InputStream in, boolean persist) throws Exception {
+        // Keep the store open until the load completes
+        JSONObjectStore<String> jsonStore = pin(source);
+        if(jsonStore == null) {
+            throw new IllegalArgumentException(source + " not found");
+        }
+        
+        JSONObject result;
+        try {
+            JSONObject jsonConfig = getMetadata(source).getConfigJSON();
+            int batchSize = jsonConfig == null ? 1000 : jsonConfig.optInt("batchSize", 1000);
+            
+            JSONBulkLoader loader = new JSONBulkLoader(jsonStore, batchSize);
+            result = loader.load(in);
+            if(persist) {
+                jsonStore.persist();
+            }
+        } finally {
+            touch(source);
+            jsonStore.unpin();
+        }
+        
+        logger.info(source + " bulk load: " + result.optInt("puts") + " puts, " + result.optInt("deletes") + " deletes, " + result.optInt("failed") + " failed");
+        return result;
+    }
+    
+    /**
+     * Rebuilds the specified <code>source</code> online with a new configuration, which can change the settings
+     * fixed at creation such as <code>numPartitions</code>, <code>storeType</code> or the serializers.
+     * The live store is copied into a new generation directory while it keeps serving reads and writes,
+     * and the writes made during the copy are caught up. Writes are then paused briefly for a last catch-up,
+     * and the new store replaces the live one. Writes reaching the replaced store afterwards fail with
+     * {@link JSONStoreRetiredException} and can be retried. The replaced store is closed and its data
+     * deleted once the readers pinning it are done.
+     * 
+     * @param source - the source (i.e., store name)
+     * @param configChanges - the configuration parameters to change, empty to rebuild with the same configuration
+     * @return the rebuild result including the numbers of values copied and caught up
+     * @throws IllegalArgumentException if the source is not found or the new configuration is invalid.
+     * @throws IllegalStateException if the source is being rebuilt already or is closed during the rebuild.
+     * @throws Exception if the store cannot be rebuilt for any other reasons.
+     */
+    public JSONObject rebuild(String source, JSONObject configChanges) throws Exception {
+        return beginRebuild(source, configChanges).call();
+    }
+    
+    /**
+     * Starts rebuilding the specified <code>source</code> online in the background as {@link #rebuild(String, JSONObject)}
+     * does. Its progress and result are reported by {@link #getRebuildState(String)}.
+     * 
+     * @param source - the source (i.e., store name)
+     * @param configChanges - the configuration parameters to change, empty to rebuild with the same configuration
+     * @throws IllegalArgumentException if the source is not found.
+     * @throws IllegalStateException if the source is being rebuilt already.
+     */
+    public void startRebuild(final String source, JSONObject configChanges) {
+        final Rebuild task = beginRebuild(source, configChanges);
+        task.background = true;
+        rebuildStates.put(source, rebuildState("copying", null));
+        rebuildThreads.newThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    rebuildStates.put(source, rebuildState("done", task.call()));
+                } catch(Exception e) {
+                    logger.warn("failed to rebuild " + source, e);
+                    JSONObject state = rebuildState("failed", null);
+                    try {
+                        state.put("message", String.valueOf(e.getMessage()));
+                    } catch(JSONException ex) {}
+                    rebuildStates.put(source, state);
+                }
+            }
+        }).start();
+    }
+    
+    /**
+     * Gets the state of the last rebuild of the specified <code>source</code>, which is <code>copying</code>
+     * while the store is copied, <code>draining</code> while the replaced store waits for its readers,
+     * and then either <code>done</code> with the rebuild result or <code>failed</code> with a message.
+     * 
+     * @param source - the source (i.e., store name)
+     * @return the rebuild state in JSON, or <code>null</code> if the source has not been rebuilt since the repository was instantiated.
+     */
+    public JSONObject getRebuildState(String source) {
+        JSONObject state = rebuildStates.get(source);
+        if(state == null || !"copying".equals(state.optString("state"))) {
+            return state;
+        }
+        
+        // Report the progress of the copy
+        JSONObject progress = null;
+        JSONObjectStore<String> jsonStore = repository.get(source);
+        if(jsonStore != null) {
+            progress = jsonStore.getStats().optJSONObject("rebuild");
+        }
+        return progress == null ? state : rebuildState("copying", progress);
+    }
+    
+    private static JSONObject rebuildState(String state, JSONObject details) {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("state", state);
+            if(details != null) {
+                json.put("copying".equals(state) ? "progress" : "result", details);
+            }
+        } catch(JSONException e) {}
+        return json;
+    }
+    
+    /**
+     * Reserves the rebuild of the specified <code>source</code> and pins its store until the copy is swapped in.
+     */
+    private Rebuild beginRebuild(String source, JSONObject configChanges) {
+        JSONObjectStore<String> oldStore = pin(source);
+        if(oldStore == null) {
+            throw new IllegalArgumentException(source + " not found");
+        }
+        if(!rebuilding.add(source)) {
+            oldStore.unpin();
+            throw new IllegalStateException(source + " is being rebuilt");
+        }
+        return new Rebuild(source, oldStore, configChanges);
+    }
+    
+    /**
+     * Rebuild runs a rebuild reserved by {@link JSONRepository#beginRebuild(String, JSONObject)}.
+     */
+    private final class Rebuild implements Callable<JSONObject> {
+        final String source;
+        final JSONObjectStore<String> oldStore;
+        final JSONObject configChanges;
+        volatile boolean background = false;
+        private boolean pinned = true;
+        
+        Rebuild(String source, JSONObjectStore<String> oldStore, JSONObject configChanges) {
+            this.source = source;
+            this.oldStore = oldStore;
+            this.configChanges = configChanges;
+        }
+        
+        @Override
+        public JSONObject call() throws Exception {
+            try {
+                return rebuild(this);
+            } finally {
+                unpin();
+                rebuilding.remove(source);
+            }
+        }
+        
+        /**
+         * Releases the store being rebuilt, which is then closed once its other readers are done.
+         */
+        synchronized void unpin() {
+            if(pinned) {
+                pinned = false;
+                touch(source);
+                oldStore.unpin();
+            }
+        }
+    }
+    
+    private JSONObject rebuild(Rebuild task) throws Exception {
+        String source = task.source;
+        JSONObjectStore<String> oldStore = task.oldStore;
+        JSONObject configChanges = task.configChanges;
+        long startTime = System.currentTimeMillis();
+        File storeDir = getStoreDir(source, false);
+        
+        // The configuration cannot change until the rebuild completes
+        JSONStoreMetadata meta;
+        synchronized(metadataLock(source)) {
+            meta = getMetadata(source);
+        }
+        JSONObject jsonConfig = completeConfig(new JSONObject(meta.getConfig()));
+        int generation = jsonConfig.optInt(GENERATION, 0);
+        File oldDataDir = getDataDir(storeDir, generation);
+        
+        Iterator<?> iter = configChanges.keys();
+        while(iter.hasNext()) {
+            String key = (String)iter.next();
+            if(!key.equals(GENERATION)) {
+                jsonConfig.put(key, configChanges.get(key));
+            }
+        }
+        jsonConfig.put(GENERATION, ++generation);
+        
+        // Start from an empty generation directory holding the trained value dictionaries
+        File dataDir = getDataDir(storeDir, generation);
+        if(dataDir.exists()) {
+            deleteDirectory(dataDir);
+        }
+        dataDir.mkdirs();
+        for(ValueDictionary dict : ValueDictionary.loadAll(oldDataDir)) {
+            dict.save(dataDir);
+        }
+        
+        JSONObjectStore<String> newStore = null;
+        JSONStoreRebuild<String> rebuild = null;
+        boolean swapped = false;
+        long pauseMillis = 0;
+        try {
+            newStore = openStore(source, dataDir, jsonConfig, meta.getSchemaJSON());
+            rebuild = new JSONStoreRebuild<String>(oldStore, newStore);
+            oldStore.setRebuild(rebuild);
+            rebuild.copy();
+            
+            // Catch up on the writes made meanwhile until few are left
+            for(int round = 0; round < REBUILD_MAX_ROUNDS && rebuild.getPending() > REBUILD_SWAP_PENDING; round++) {
+                rebuild.catchUp();
+            }
+            
+            // Pause writes for the last catch-up and the swap
+            long pauseStartTime = System.currentTimeMillis();
+            oldStore.closeWriteGate();
+            try {
+                // No more writes are queued, so the queue drains
+                oldStore.awaitWriteBehind();
+                rebuild.catchUp();
+                newStore.sync();
+                swap(source, oldStore, newStore, jsonConfig, meta.getSchema());
+                swapped = true;
+                oldStore.retire();
+            } finally {
+                oldStore.openWriteGate();
+                pauseMillis = System.currentTimeMillis() - pauseStartTime;
+            }
+        } finally {
+            oldStore.setRebuild(null);
+            if(!swapped) {
+                try {
+                    if(newStore != null) {
+                        newStore.close();
+                    }
+                    deleteDirectory(dataDir);
+                } catch(Exception e) {
+                    logger.warn("failed to delete " + dataDir.getAbsolutePath(), e);
+                }
+            }
+        }
+        
+        // Close the replaced store and delete its data once the readers pinning it are done
+        task.unpin();
+        if(task.background) {
+            rebuildStates.put(source, rebuildState("draining", null));
+        }
+        drainReaders(source, oldStore);
+        try {
+            oldStore.close();
+        } catch(Exception e) {
+            logger.warn("failed to close the replaced " + source, e);
+        }
+        deleteStaleData(storeDir, dataDir);
+        
+        JSONObject result = new JSONObject();
+        result.put(GENERATION, generation);
+        result.put("copied", rebuild.getCopied());
+        result.put("caughtUp", rebuild.getCaughtUp());
+        result.put("pauseMillis", pauseMillis);
+        result.put("millis", System.currentTimeMillis() - startTime);
+        
+        logger.info(source + " rebuilt: generation " + generation + ", " + rebuild.getCopied() + " copied, " +
+                    rebuild.getCaughtUp() + " caught up, writes paused " + pauseMillis + " ms");
+        return result;
+    }
+    
+    /**
+     * Replaces the store of the specified <code>source</code> by its rebuilt store, and saves the configuration
+     * which points to the new generation. Secondary indexes declared since the rebuild started are built.
+     */
+    private synchronized void swap(String source, JSONObjectStore<String> oldStore, JSONObjectStore<String> newStore,
+                                   JSONObject jsonConfig, String schema) throws Exception {
+        if(repository.get(source) != oldStore) {
+            throw new IllegalStateException(source + " was closed during the rebuild");
+        }
+        
+        synchronized(metadataLock(source)) {
+            JSONStoreMetadata meta = getMetadata(source);
+            if(meta.getSchema() == null ? schema != null : !meta.getSchema().equals(schema)) {
+                configureIndexes(newStore, meta.getSchemaJSON());
+            }
+            saveConfig(source, jsonConfig.toString(2));
+        }
+        
+        persister.unregister(source);
+        repository.put(source, newStore);
+        registerPersist(source, newStore, jsonConfig);
+    }
+    
+    /**
+     * Checks that the configuration of the specified <code>source</code> can be changed, which is called
+     * while holding its metadata lock.
+     */
+    private void checkNotRebuilding(String source) {
+        if(rebuilding.contains(source)) {
+            throw new IllegalStateException(source + " is being rebuilt");
+        }
+    }
+    
+    /**
+     * Trains a new value dictionary for the specified <code>source</code> from a sample of its values.
+     * The store must use {@link JSONObjectSerializer} or its subclass as the value serializer.
+     * The dictionary is used once the store switches to the <code>dictionary</code> value codec.
+     * 
+     * @param source - the source (i.e., store name)
+     * @return the new dictionary or <code>null</code> if the sampled values have nothing in common.
+     * @throws Exception if the dictionary cannot be trained for any reasons.
+     */
+    public ValueDictionary trainDictionary(String source) throws Exception {
+        JSONObjectStore<String> jsonStore = get(source);
+        if(jsonStore == null) {
+            throw new IllegalArgumentException(source + " not found");
+        }
+        
+        JSONObjectSerializer serializer = getCodecSerializer(source, jsonStore);
+        return serializer.train(jsonStore.sample(serializer.getDictionarySampleSize()));
+    }
+    
+    /**
+     * Switches the value codec of the specified <code>source</code> online and saves it in the store configuration.
+     * New and rewritten values are encoded by the new codec, while existing values remain readable.
+     * 
+     * @param source - the source (i.e., store name)
+     * @param codecName - the value codec name
+     * @return the previous value codec name
+     * @throws Exception if the value codec cannot be switched for any reasons.
+     */
+    public String setValueCodec(String source, String codecName) throws Exception {
+        JSONObjectStore<String> jsonStore = get(source);
+        if(jsonStore == null) {
+            throw new IllegalArgumentException(source + " not found");
+        }
+        
+        String oldName;
+        synchronized(metadataLock(source)) {
+            checkNotRebuilding(source);
+            JSONObjectSerializer serializer = getCodecSerializer(source, jsonStore);
+            oldName = serializer.getValueCodec().getName();
+            serializer.setValueCodec(codecName);
+            
+            JSONObject jsonConfig = new JSONObject(getMetadata(source).getConfig());
+            jsonConfig.put("valueCodec", codecName);
+            saveConfig(source, jsonConfig.toString(2));
+        }
+        
+        logger.info(source + " value codec: " + oldName + " -> " + codecName);
+        return oldName;
+    }
+    
+    private JSONObjectSerializer getCodecSerializer(String source, JSONObjectStore<String> jsonStore) {
+        Serializer<JSONObject> valueSerializer = jsonStore.getValueSerializer();
+        if(!(valueSerializer instanceof JSONObjectSerializer)) {
+            throw new UnsupportedOperationException(source + " does not use " + JSONObjectSerializer.class.getCanonicalName());
+        }
+        return (JSONObjectSerializer)valueSerializer;
     }
     
     /**
@@ -458,7 +1763,7 @@ public final class JSONRepository {
      * @param jsonName - the JSON file associated with the specified source
      * @return the JSON string
      */
-    public synchronized String getJSONFile(String source, String jsonName) {
+    public String getJSONFile(String source, String jsonName) {
         try {
             File storeDir = getStoreDir(source, false);
             File jsonFile = new File(storeDir, jsonName);
@@ -490,12 +1795,26 @@ public final class JSONRepository {
      * @param jsonStr - the JSON string
      * @throws IOException
      */
-    public synchronized void putJSONFile(String source, String jsonName, String jsonStr) throws IOException {
+    public void putJSONFile(String source, String jsonName, String jsonStr) throws IOException {
+        synchronized(metadataLock(source)) {
+            writeJSONFile(source, jsonName, jsonStr);
+            metadata.remove(source);
+        }
+    }
+    
+    /**
+     * Writes a JSON file via a temporary file, so that readers never see a partial file.
+     */
+    private void writeJSONFile(String source, String jsonName, String jsonStr) throws IOException {
         File storeDir = getStoreDir(source, true);
-        File schemaFile = new File(storeDir, jsonName);
-        PrintWriter writer = new PrintWriter(schemaFile, "UTF-8");
+        File jsonFile = new File(storeDir, jsonName);
+        File tmpFile = new File(storeDir, jsonName + ".tmp");
+        PrintWriter writer = new PrintWriter(tmpFile, "UTF-8");
         writer.println(jsonStr);
         writer.close();
+        if(!tmpFile.renameTo(jsonFile)) {
+            throw new IOException(jsonFile.getAbsolutePath() + " not written");
+        }
     }
     
     /**
@@ -505,20 +1824,23 @@ public final class JSONRepository {
      * @param jsonName - the JSON file associated with the specified source
      * @return the JSON string if the JSON file is present
      */
-    public synchronized String removeJSONFile(String source, String jsonName) {
-        String schemaStr = null;
-        try {
-            File storeDir = getStoreDir(source, false);
-            File schemaFile = new File(storeDir, jsonName);
-            if(schemaFile.exists()) {
-                schemaStr = getSchema(source);
-                schemaFile.delete();
+    public String removeJSONFile(String source, String jsonName) {
+        String jsonStr = null;
+        synchronized(metadataLock(source)) {
+            try {
+                File storeDir = getStoreDir(source, false);
+                File jsonFile = new File(storeDir, jsonName);
+                if(jsonFile.exists()) {
+                    jsonStr = getJSONFile(source, jsonName);
+                    jsonFile.delete();
+                }
+            } catch(Exception e) {
+                e.printStackTrace();
             }
-        } catch(Exception e) {
-            e.printStackTrace();
+            metadata.remove(source);
         }
         
-        return schemaStr;
+        return jsonStr;
     }
     
     /**
@@ -527,19 +1849,33 @@ public final class JSONRepository {
      * @param source - the source (i.e., store name)
      * @return the JSON schema string
      */
-    public synchronized String getSchema(String source) {
-        return getJSONFile(source, "schema.json");
+    public String getSchema(String source) {
+        try {
+            return getMetadata(source).getSchema();
+        } catch(JSONException e) {
+            e.printStackTrace();
+            return getJSONFile(source, "schema.json");
+        }
     }
     
     /**
      * Associates the specified JSON schema with the specified <code>source</code>.
+     * Secondary indexes newly declared in the schema are built before this method returns.
      * 
      * @param source - the source (i.e., store name)
      * @param schemaStr - the JSON schema string
      * @throws IOException
+     * @throws JSONException 
      */
-    public synchronized void putSchema(String source, String schemaStr) throws IOException {
-        putJSONFile(source, "schema.json", schemaStr);
+    public void putSchema(String source, String schemaStr) throws IOException, JSONException {
+        // Open the store before locking its metadata, which opening the store may update
+        JSONObjectStore<String> jsonStore = get(source);
+        synchronized(metadataLock(source)) {
+            JSONStoreMetadata meta = getMetadata(source).withSchema(schemaStr);
+            writeJSONFile(source, "schema.json", schemaStr);
+            metadata.put(source, meta);
+            configureIndexes(jsonStore, meta.getSchemaJSON());
+        }
     }
     
     /**
@@ -548,8 +1884,23 @@ public final class JSONRepository {
      * @param source - the source (i.e., store name)
      * @return the JSON schema string if the JSON schema is present
      */
-    public synchronized String removeSchema(String source) {
-        return removeJSONFile(source, "schema.json");
+    public String removeSchema(String source) {
+        JSONObjectStore<String> jsonStore = get(source);
+        synchronized(metadataLock(source)) {
+            String schemaStr = removeJSONFile(source, "schema.json");
+            try {
+                configureIndexes(jsonStore, null);
+            } catch(Exception e) {
+                e.printStackTrace();
+            }
+            return schemaStr;
+        }
+    }
+    
+    private void configureIndexes(JSONObjectStore<String> jsonStore, JSONObject schema) throws IOException {
+        if(jsonStore != null && jsonStore.getIndexes() != null) {
+            jsonStore.getIndexes().configure(schema, jsonStore);
+        }
     }
     
     /**
@@ -558,32 +1909,65 @@ public final class JSONRepository {
      * @param source - the source (i.e., store name)
      * @return the configuration JSON string
      */
-    public synchronized String getConfig(String source) {
-        return getJSONFile(source, "config.json");
+    public String getConfig(String source) {
+        try {
+            return getMetadata(source).getConfig();
+        } catch(JSONException e) {
+            e.printStackTrace();
+            return getJSONFile(source, "config.json");
+        }
     }
     
     /**
      * Associates the specified configuration in JSON with the specified <code>source</code>.
+     * The generation of the store is kept, since only {@link #rebuild(String, JSONObject)} changes it.
      * 
      * @param source - the source (i.e., store name)
      * @param configStr - the configuration JSON string
      * @throws IOException
      * @throws JSONException 
+     * @throws IllegalStateException if the source is being rebuilt.
      */
-    public synchronized void putConfig(String source, String configStr) throws IOException, JSONException {
+    public void putConfig(String source, String configStr) throws IOException, JSONException {
         JSONObject config = new JSONObject(configStr);
-        configStr = completeConfig(config).toString(2);
-        putJSONFile(source, "config.json", configStr);
+        synchronized(metadataLock(source)) {
+            checkNotRebuilding(source);
+            JSONObject current = getMetadata(source).getConfigJSON();
+            config.remove(GENERATION);
+            if(current != null && current.has(GENERATION)) {
+                config.put(GENERATION, current.getInt(GENERATION));
+            }
+            configStr = completeConfig(config).toString(2);
+            saveConfig(source, configStr);
+        }
     }
     
     /**
      * Removes the configuration in JSON associated with the specified <code>source</code>.
+     * The generation of a rebuilt store is kept in a default configuration, since its data
+     * cannot be found without it.
      * 
      * @param source - the source (i.e., store name)
      * @return the configuration JSON string if the configuration file is present
+     * @throws IllegalStateException if the source is being rebuilt.
      */
-    public synchronized String removeConfig(String source) {
-        return removeJSONFile(source, "config.json");
+    public String removeConfig(String source) {
+        synchronized(metadataLock(source)) {
+            checkNotRebuilding(source);
+            try {
+                JSONStoreMetadata meta = getMetadata(source);
+                JSONObject current = meta.getConfigJSON();
+                if(current != null && current.optInt(GENERATION, 0) > 0) {
+                    JSONObject config = createDefaultConfig();
+                    config.put(GENERATION, current.getInt(GENERATION));
+                    saveConfig(source, config.toString(2));
+                    return meta.getConfig();
+                }
+            } catch(Exception e) {
+                e.printStackTrace();
+            }
+            return removeJSONFile(source, "config.json");
+        }
     }
     
     /**
@@ -611,4 +1995,11 @@ public final class JSONRepository {
             throw new IOException(dir.getAbsolutePath() + " not deleted");
         }
     }
+    
+    /**
+     * The last access time of an open store.
+     */
+    private static final class StoreAccess {
+        volatile long time = System.currentTimeMillis();
+    }
 }
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * JSONSortedIndex indexes a <code>number</code> property for range queries. Integral values
+ * are kept as longs and others as doubles, so that timestamps and ids compare exactly.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public class JSONSortedIndex extends JSONIndex {
+    
+    private static final Comparator<Object> NUMBER_ORDER = new Comparator<Object>() {
+        @Override
+        public int compare(Object o1, Object o2) {
+            if(o1 instanceof Long && o2 instanceof Long) {
+                long l1 = (Long)o1, l2 = (Long)o2;
+                return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+            }
+            return Double.compare(((Number)o1).doubleValue(), ((Number)o2).doubleValue());
+        }
+    };
+    
+    public JSONSortedIndex(String property) {
+        super(property, new ConcurrentSkipListMap<Object, Object>(NUMBER_ORDER));
+    }
+    
+    @Override
+    public String getType() {
+        return "number";
+    }
+    
+    @Override
+    protected Object normalize(Object value) {
+        if(value instanceof Long) {
+            return value;
+        }
+        if(value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number)value).longValue();
+        }
+        if(value instanceof Number) {
+            double d = ((Number)value).doubleValue();
+            if(Double.isNaN(d)) {
+                return null;
+            }
+            return (d == Math.rint(d) && Math.abs(d) < 9.0E18) ? (Object)(long)d : (Object)d;
+        }
+        if(value instanceof String) {
+            try {
+                return normalize(Long.parseLong((String)value));
+            } catch(NumberFormatException e) {}
+            try {
+                return normalize(Double.parseDouble((String)value));
+            } catch(NumberFormatException e) {}
+        }
+        return null;
+    }
+    
+    /**
+     * Gets the keys with property values in the specified range, ordered by the value.
+     * 
+     * @param min   - the minimum value (inclusive), or <code>null</code> for no lower bound
+     * @param max   - the maximum value (inclusive), or <code>null</code> for no upper bound
+     * @param limit - the maximum number of keys
+     * @return the keys
+     * @throws IllegalArgumentException if a bound is not a number.
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> range(Object min, Object max, int limit) {
+        Object lo = bound(min);
+        Object hi = bound(max);
+        
+        NavigableMap<Object, Object> map = (NavigableMap<Object, Object>)postings;
+        if(lo != null && hi != null) {
+            if(NUMBER_ORDER.compare(lo, hi) > 0) {
+                return new ArrayList<String>();
+            }
+            map = map.subMap(lo, true, hi, true);
+        } else if(lo != null) {
+            map = map.tailMap(lo, true);
+        } else if(hi != null) {
+            map = map.headMap(hi, true);
+        }
+        
+        List<String> keys = new ArrayList<String>();
+        for(Object posting : map.values()) {
+            if(keys.size() >= limit) {
+                break;
+            }
+            addKeys(posting, keys, limit);
+        }
+        return keys;
+    }
+    
+    private Object bound(Object value) {
+        if(value == null) {
+            return null;
+        }
+        Object v = normalize(value);
+        if(v == null) {
+            throw new IllegalArgumentException("Not a number: " + value);
+        }
+        return v;
+    }
+    
+    @Override
+    protected void writeValue(DataOutputStream out, Object value) throws IOException {
+        if(value instanceof Long) {
+            out.writeByte(0);
+            out.writeLong((Long)value);
+        } else {
+            out.writeByte(1);
+            out.writeDouble((Double)value);
+        }
+    }
+    
+    @Override
+    protected Object readValue(DataInputStream in) throws IOException {
+        return in.readByte() == 0 ? (Object)in.readLong() : (Object)in.readDouble();
+    }
+}
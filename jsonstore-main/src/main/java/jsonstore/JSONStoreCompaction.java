@@ -0,0 +1,422 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+import krati.core.StoreParams;
+import krati.core.segment.Segment;
+import krati.core.segment.SegmentManager;
+import krati.store.DataStore;
+import krati.store.IndexedDataStore;
+
+/**
+ * JSONStoreCompaction reports the segments of the Krati data arrays under a {@link JSONObjectStore}
+ * and controls their compaction. Krati compacts a segment in the background once its load factor,
+ * the share of its bytes still holding live values, falls below the compact load factor, and it
+ * looks for such segments whenever a data array starts a new segment or a cycle is started here.
+ * 
+ * <p>
+ * Compaction is throttled by lowering the compact load factor, so that only the segments with the
+ * most reclaimable bytes are copied, and paused by setting it to 0. With a maintenance window,
+ * the compact load factor is lowered to the peak load factor outside the window, and cycles are
+ * started every time the window is checked within it. Krati keeps no public handle on its compactors, which are reached
+ * by reflection into the private fields of Krati 0.4.9. If they cannot be reached, no segments are reported, the store
+ * is reported as not controllable and the controls fail with an {@link IllegalStateException}.
+ * </p>
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class JSONStoreCompaction {
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(JSONStoreCompaction.class);
+    
+    private final List<DataArray> arrays = new ArrayList<DataArray>();
+    
+    /**
+     * The compact load factor, paused state and maintenance window set on this store.
+     */
+    private volatile double loadFactor = StoreParams.SEGMENT_COMPACT_FACTOR_DEFAULT;
+    private volatile boolean paused = false;
+    private volatile String window = null;
+    private volatile int windowStart = -1;
+    private volatile int windowEnd = -1;
+    private volatile double peakLoadFactor = 0;
+    private volatile boolean inWindow = true;
+    
+    /**
+     * Constructs a new instance of JSONStoreCompaction.
+     * 
+     * @param store - the underlying store, either a Krati store, an {@link ArrayDataStore} or a {@link PartitionedDataStore} of them
+     */
+    public JSONStoreCompaction(DataStore<byte[], byte[]> store) {
+        try {
+            addArrays(store);
+            if(!arrays.isEmpty()) {
+                loadFactor = arrays.get(0).getLoadFactor();
+            }
+        } catch(Exception e) {
+            arrays.clear();
+            logger.warn("compaction of " + store.getClass().getName() + " cannot be reported or controlled", e);
+        }
+    }
+    
+    private void addArrays(DataStore<byte[], byte[]> store) throws Exception {
+        if(store instanceof PartitionedDataStore) {
+            PartitionedDataStore p = (PartitionedDataStore)store;
+            for(int i = 0; i < p.getPartitionCount(); i++) {
+                addArrays(p.getPartition(i));
+            }
+        } else if(store instanceof ArrayDataStore) {
+            arrays.add(new DataArray(field(((ArrayDataStore)store).getArray(), "_dataArray")));
+        } else if(store instanceof IndexedDataStore) {
+            // The values and the hash index of keys are kept in separate data arrays
+            arrays.add(new DataArray(field(field(store, "_bytesDB"), "_dataArray")));
+            arrays.add(new DataArray(field(field(field(store, "_index"), "_store"), "_dataArray")));
+        }
+    }
+    
+    private static Object field(Object obj, String name) throws Exception {
+        for(Class<?> c = obj.getClass(); c != null; c = c.getSuperclass()) {
+            try {
+                Field f = c.getDeclaredField(name);
+                f.setAccessible(true);
+                return f.get(obj);
+            } catch(NoSuchFieldException e) {}
+        }
+        throw new NoSuchFieldException(obj.getClass().getName() + "." + name);
+    }
+    
+    /**
+     * @return <code>true</code> if the compactors of the data arrays were reached, so that compaction can be controlled.
+     */
+    public boolean isControllable() {
+        return !arrays.isEmpty();
+    }
+    
+    /**
+     * @return the number of data arrays whose compaction is controlled.
+     */
+    int getArrayCount() {
+        return arrays.size();
+    }
+    
+    private void checkControllable() {
+        if(arrays.isEmpty()) {
+            throw new IllegalStateException("Compaction of this store cannot be controlled");
+        }
+    }
+    
+    /**
+     * @return the compact load factor below which segments are compacted, when not paused and within the window.
+     */
+    public double getLoadFactor() {
+        return loadFactor;
+    }
+    
+    /**
+     * Throttles compaction by setting the compact load factor below which segments are compacted.
+     * A lower load factor copies fewer live bytes for each reclaimed byte.
+     * 
+     * @param loadFactor - the compact load factor from 0 to 0.75
+     * @throws IllegalArgumentException if the load factor is out of range.
+     * @throws IllegalStateException if compaction cannot be controlled or the load factor cannot be set.
+     */
+    public void setLoadFactor(double loadFactor) {
+        checkLoadFactor(loadFactor);
+        checkControllable();
+        this.loadFactor = loadFactor;
+        apply();
+    }
+    
+    /**
+     * Checks that a compact load factor is within the range accepted by Krati.
+     */
+    static double checkLoadFactor(double loadFactor) {
+        if(!(loadFactor >= StoreParams.SEGMENT_COMPACT_FACTOR_MIN && loadFactor <= StoreParams.SEGMENT_COMPACT_FACTOR_MAX)) {
+            throw new IllegalArgumentException("Compact load factor must be from " + StoreParams.SEGMENT_COMPACT_FACTOR_MIN +
+                                               " to " + StoreParams.SEGMENT_COMPACT_FACTOR_MAX + ": " + loadFactor);
+        }
+        return loadFactor;
+    }
+    
+    /**
+     * @return <code>true</code> if compaction is paused.
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+    
+    /**
+     * Pauses compaction once the running cycle, if any, completes.
+     * 
+     * @throws IllegalStateException if compaction cannot be controlled or paused.
+     */
+    public void pause() {
+        checkControllable();
+        paused = true;
+        apply();
+    }
+    
+    /**
+     * Resumes compaction and starts a cycle for the segments left while paused.
+     * 
+     * @throws IllegalStateException if compaction cannot be controlled or resumed.
+     */
+    public void resume() {
+        checkControllable();
+        paused = false;
+        apply();
+        startCycle();
+    }
+    
+    /**
+     * Starts a compaction cycle now at the current compact load factor, which also frees
+     * the segments compacted by the previous cycle once the store has been persisted.
+     * 
+     * @throws IllegalStateException if compaction is paused, cannot be controlled or cannot be started.
+     */
+    public void start() {
+        checkControllable();
+        if(paused) {
+            throw new IllegalStateException("Compaction is paused");
+        }
+        startCycle();
+    }
+    
+    /**
+     * Sets the daily maintenance window in local time, within which segments are compacted
+     * at the compact load factor, and outside which at the peak load factor.
+     * 
+     * @param window - the window <code>HH:mm-HH:mm</code>, which may span midnight, or <code>null</code> for no window
+     * @param peakLoadFactor - the compact load factor outside the window, 0 to compact nothing
+     * @throws IllegalArgumentException if the window or the load factor is not valid.
+     * @throws IllegalStateException if compaction cannot be controlled or the load factor cannot be set.
+     */
+    public void setWindow(String window, double peakLoadFactor) {
+        checkLoadFactor(peakLoadFactor);
+        checkControllable();
+        if(window == null) {
+            this.windowStart = this.windowEnd = -1;
+        } else {
+            String[] times = window.split("-");
+            if(times.length != 2) {
+                throw new IllegalArgumentException("Compaction window must be HH:mm-HH:mm: " + window);
+            }
+            this.windowStart = minuteOfDay(times[0]);
+            this.windowEnd = minuteOfDay(times[1]);
+        }
+        this.window = window;
+        this.peakLoadFactor = peakLoadFactor;
+        this.inWindow = isInWindow(Calendar.getInstance());
+        apply();
+    }
+    
+    private static int minuteOfDay(String time) {
+        String[] hm = time.trim().split(":");
+        try {
+            int h = Integer.parseInt(hm[0]);
+            int m = hm.length == 2 ? Integer.parseInt(hm[1]) : -1;
+            if(h >= 0 && h < 24 && m >= 0 && m < 60) {
+                return h * 60 + m;
+            }
+        } catch(NumberFormatException e) {}
+        throw new IllegalArgumentException("Not a time HH:mm: " + time);
+    }
+    
+    /**
+     * @return the maintenance window, or <code>null</code> if segments are compacted at any time.
+     */
+    public String getWindow() {
+        return window;
+    }
+    
+    private boolean isInWindow(Calendar now) {
+        if(windowStart < 0) {
+            return true;
+        }
+        int m = now.get(Calendar.HOUR_OF_DAY) * 60 + now.get(Calendar.MINUTE);
+        return windowStart <= windowEnd ? (m >= windowStart && m < windowEnd) : (m >= windowStart || m < windowEnd);
+    }
+    
+    /**
+     * Applies the compact load factor of the maintenance window at the specified time, and starts
+     * a cycle within the window. Krati starts cycles only as writes fill segments, and a cycle also
+     * frees the segments compacted by the previous one, so off-peak compaction would stall otherwise.
+     */
+    void checkWindow(Calendar now) {
+        if(windowStart < 0) {
+            return;
+        }
+        
+        boolean opened = isInWindow(now);
+        if(opened != inWindow) {
+            logger.info("compaction window " + window + (opened ? " opened" : " closed"));
+        }
+        inWindow = opened;
+        apply();
+        if(opened && !paused) {
+            startCycle();
+        }
+    }
+    
+    /**
+     * @return the compact load factor in effect.
+     */
+    public double getEffectiveLoadFactor() {
+        if(paused) {
+            return 0;
+        }
+        return inWindow ? loadFactor : Math.min(peakLoadFactor, loadFactor);
+    }
+    
+    /**
+     * Sets the compact load factor in effect on every data array.
+     * 
+     * @throws IllegalStateException if it cannot be set on some data array.
+     */
+    private void apply() {
+        double f = getEffectiveLoadFactor();
+        Exception failure = null;
+        for(DataArray a : arrays) {
+            try {
+                a.setLoadFactor(f);
+            } catch(Exception e) {
+                failure = e;
+            }
+        }
+        if(failure != null) {
+            throw new IllegalStateException("Failed to set compact load factor", failure);
+        }
+    }
+    
+    /**
+     * Starts a compaction cycle on every data array.
+     * 
+     * @throws IllegalStateException if it cannot be started on some data array.
+     */
+    private void startCycle() {
+        Exception failure = null;
+        for(DataArray a : arrays) {
+            try {
+                a.startCycle();
+            } catch(Exception e) {
+                failure = e;
+            }
+        }
+        if(failure != null) {
+            throw new IllegalStateException("Failed to start compaction", failure);
+        }
+    }
+    
+    /**
+     * @return the segment statistics and compaction settings in JSON.
+     */
+    public JSONObject getStats() {
+        int segments = 0;
+        long diskBytes = 0;
+        long liveBytes = 0;
+        long reclaimableBytes = 0;
+        for(DataArray a : arrays) {
+            SegmentManager manager = a.getSegmentManager();
+            for(int i = 0, n = manager.getSegmentCount(); i < n; i++) {
+                Segment seg = manager.getSegment(i);
+                if(seg == null) {
+                    continue;
+                }
+                
+                // Segments freed meanwhile are skipped
+                long appended;
+                try {
+                    appended = seg.getAppendPosition() - Segment.dataStartPosition;
+                } catch(Exception e) {
+                    continue;
+                }
+                segments++;
+                diskBytes += seg.getInitialSize();
+                liveBytes += seg.getLoadSize();
+                reclaimableBytes += Math.max(0, appended - seg.getLoadSize());
+            }
+        }
+        
+        JSONObject json = new JSONObject();
+        try {
+            json.put("controllable", isControllable());
+            json.put("segments", segments);
+            json.put("diskBytes", diskBytes);
+            json.put("liveBytes", liveBytes);
+            json.put("reclaimableBytes", reclaimableBytes);
+            json.put("loadFactor", diskBytes == 0 ? 0 : (double)liveBytes / diskBytes);
+            json.put("compactLoadFactor", loadFactor);
+            json.put("effectiveCompactLoadFactor", getEffectiveLoadFactor());
+            json.put("paused", paused);
+            if(window != null) {
+                json.put("window", window);
+                json.put("inWindow", inWindow);
+                json.put("peakCompactLoadFactor", peakLoadFactor);
+            }
+        } catch(JSONException e) {}
+        
+        return json;
+    }
+    
+    /**
+     * DataArray holds the segment manager and the compactor of a Krati data array.
+     */
+    private static final class DataArray {
+        private final SegmentManager segmentManager;
+        private final Object compactor;
+        private final Field loadFactorField;
+        private final Method startsCycle;
+        
+        DataArray(Object dataArray) throws Exception {
+            this.segmentManager = (SegmentManager)field(dataArray, "_segmentManager");
+            this.compactor = field(dataArray, "_compactor");
+            this.loadFactorField = compactor.getClass().getDeclaredField("_compactLoadFactor");
+            this.loadFactorField.setAccessible(true);
+            this.startsCycle = compactor.getClass().getDeclaredMethod("startsCycle");
+            this.startsCycle.setAccessible(true);
+        }
+        
+        SegmentManager getSegmentManager() {
+            return segmentManager;
+        }
+        
+        double getLoadFactor() throws Exception {
+            return loadFactorField.getDouble(compactor);
+        }
+        
+        void setLoadFactor(double loadFactor) throws Exception {
+            loadFactorField.setDouble(compactor, loadFactor);
+        }
+        
+        void startCycle() throws Exception {
+            startsCycle.invoke(compactor);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * JSONStoreMetadata is an immutable snapshot of the configuration and schema of a store,
+ * as stored in <code>config.json</code> and <code>schema.json</code>. A metadata update
+ * creates a new snapshot, so readers never lock and never see a partial update.
+ * 
+ * <p>
+ * The parsed JSON objects are shared by all readers and must not be modified.
+ * </p>
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class JSONStoreMetadata {
+    private final String config;
+    private final JSONObject configJSON;
+    private final String schema;
+    private final JSONObject schemaJSON;
+    
+    private JSONStoreMetadata(String config, JSONObject configJSON, String schema, JSONObject schemaJSON) {
+        this.config = config;
+        this.configJSON = configJSON;
+        this.schema = schema;
+        this.schemaJSON = schemaJSON;
+    }
+    
+    /**
+     * Creates the metadata from the contents of the configuration and schema files.
+     * 
+     * @param config - the configuration JSON string or <code>null</code>
+     * @param schema - the JSON schema string or <code>null</code>
+     * @throws JSONException if a JSON string is invalid.
+     */
+    public static JSONStoreMetadata create(String config, String schema) throws JSONException {
+        return new JSONStoreMetadata(config, parse(config), schema, parse(schema));
+    }
+    
+    private static JSONObject parse(String jsonStr) throws JSONException {
+        return jsonStr == null ? null : new JSONObject(jsonStr);
+    }
+    
+    /**
+     * @return the configuration JSON string or <code>null</code>.
+     */
+    public String getConfig() {
+        return config;
+    }
+    
+    /**
+     * @return the configuration JSON object (not to be modified) or <code>null</code>.
+     */
+    public JSONObject getConfigJSON() {
+        return configJSON;
+    }
+    
+    /**
+     * @return the JSON schema string or <code>null</code>.
+     */
+    public String getSchema() {
+        return schema;
+    }
+    
+    /**
+     * @return the JSON schema object (not to be modified) or <code>null</code>.
+     */
+    public JSONObject getSchemaJSON() {
+        return schemaJSON;
+    }
+    
+    /**
+     * @return a copy of this metadata with the specified configuration.
+     * @throws JSONException if the configuration is invalid.
+     */
+    public JSONStoreMetadata withConfig(String config) throws JSONException {
+        return new JSONStoreMetadata(config, parse(config), schema, schemaJSON);
+    }
+    
+    /**
+     * @return a copy of this metadata with the specified schema.
+     * @throws JSONException if the schema is invalid.
+     */
+    public JSONStoreMetadata withSchema(String schema) throws JSONException {
+        return new JSONStoreMetadata(config, configJSON, schema, parse(schema));
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * JSONStoreMetrics records the operation latencies and value sizes of a {@link JSONObjectStore}.
+ * The stored (serialized) size of every value written is counted, while the raw JSON text size
+ * is measured for one in {@link #RAW_SAMPLE_RATE} values to estimate the compression ratio.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class JSONStoreMetrics {
+    /**
+     * The raw JSON text size is measured for one in this many values written.
+     */
+    public static final int RAW_SAMPLE_RATE = 64;
+    
+    private static final int NUM_STRIPES = 8;
+    private static final int STRIPE_WIDTH = 8;
+    private static final int STORED_BYTES = 0;
+    private static final int READ_BYTES = 1;
+    private static final int SAMPLED_STORED_BYTES = 2;
+    private static final int SAMPLED_RAW_BYTES = 3;
+    private static final int SAMPLE_TICKS = 4;
+    
+    private final LatencyHistogram getLatency = new LatencyHistogram();
+    private final LatencyHistogram putLatency = new LatencyHistogram();
+    private final LatencyHistogram deleteLatency = new LatencyHistogram();
+    private final LatencyHistogram persistLatency = new LatencyHistogram();
+    private final LatencyHistogram syncLatency = new LatencyHistogram();
+    
+    /**
+     * The counters striped by thread, each stripe padded to its own cache line.
+     */
+    private final AtomicLongArray counters = new AtomicLongArray(NUM_STRIPES * STRIPE_WIDTH);
+    
+    public LatencyHistogram getGetLatency() {
+        return getLatency;
+    }
+    
+    public LatencyHistogram getPutLatency() {
+        return putLatency;
+    }
+    
+    public LatencyHistogram getDeleteLatency() {
+        return deleteLatency;
+    }
+    
+    public LatencyHistogram getPersistLatency() {
+        return persistLatency;
+    }
+    
+    public LatencyHistogram getSyncLatency() {
+        return syncLatency;
+    }
+    
+    private static int stripe() {
+        return ((int)Thread.currentThread().getId() & (NUM_STRIPES - 1)) * STRIPE_WIDTH;
+    }
+    
+    private long sum(int counter) {
+        long sum = 0;
+        for(int i = 0; i < NUM_STRIPES; i++) {
+            sum += counters.get(i * STRIPE_WIDTH + counter);
+        }
+        return sum;
+    }
+    
+    /**
+     * Records the size of a value read.
+     * 
+     * @param storedLength - the stored value length
+     */
+    public void recordRead(int storedLength) {
+        counters.addAndGet(stripe() + READ_BYTES, storedLength);
+    }
+    
+    /**
+     * Records the size of a value written, measuring its raw size if it is sampled.
+     * 
+     * @param storedLength - the stored value length
+     * @param value        - the value
+     */
+    public void recordWrite(int storedLength, JSONObject value) {
+        int stripe = stripe();
+        counters.addAndGet(stripe + STORED_BYTES, storedLength);
+        if(counters.incrementAndGet(stripe + SAMPLE_TICKS) % RAW_SAMPLE_RATE == 1) {
+            counters.addAndGet(stripe + SAMPLED_STORED_BYTES, storedLength);
+            counters.addAndGet(stripe + SAMPLED_RAW_BYTES, value.toString().length());
+        }
+    }
+    
+    /**
+     * @return the total stored length of the values written.
+     */
+    public long getStoredBytes() {
+        return sum(STORED_BYTES);
+    }
+    
+    /**
+     * @return the total stored length of the values read.
+     */
+    public long getReadBytes() {
+        return sum(READ_BYTES);
+    }
+    
+    /**
+     * @return the estimated ratio of raw JSON text size to stored size, or 0 if no value has been sampled.
+     */
+    public double getCompressionRatio() {
+        long stored = sum(SAMPLED_STORED_BYTES);
+        return stored == 0 ? 0 : (double)sum(SAMPLED_RAW_BYTES) / stored;
+    }
+    
+    /**
+     * @return the metrics in JSON.
+     */
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("get", getLatency.snapshot().toJSON());
+            json.put("put", putLatency.snapshot().toJSON());
+            json.put("delete", deleteLatency.snapshot().toJSON());
+            json.put("persist", persistLatency.snapshot().toJSON());
+            json.put("sync", syncLatency.snapshot().toJSON());
+            
+            JSONObject values = new JSONObject();
+            values.put("storedBytesWritten", getStoredBytes());
+            values.put("storedBytesRead", getReadBytes());
+            values.put("compressionRatio", getCompressionRatio());
+            json.put("values", values);
+        } catch(JSONException e) {}
+        
+        return json;
+    }
+}
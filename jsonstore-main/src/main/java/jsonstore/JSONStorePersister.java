@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * JSONStorePersister persists the stores with unpersisted writes on a bounded thread pool.
+ * Every second it checks each registered store, and a store is persisted once it has been
+ * written and either its persist interval has elapsed since the last persist or the number
+ * of unpersisted writes has reached its write count. A store is never persisted by two
+ * threads at a time, so a slow store delays neither itself nor the others.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class JSONStorePersister {
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(JSONStorePersister.class);
+    
+    private static final long TICK_MILLIS = 1000;
+    
+    private final int numThreads;
+    private final Map<String, Schedule> schedules = new ConcurrentHashMap<String, Schedule>();
+    private ScheduledExecutorService scheduler;
+    private ExecutorService executor;
+    
+    /**
+     * Constructs a new instance of JSONStorePersister.
+     * 
+     * @param numThreads - the number of threads persisting stores in parallel
+     */
+    public JSONStorePersister(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+    
+    /**
+     * Registers a store to persist, replacing its previous schedule if any.
+     * 
+     * @param source          - the source (i.e., store name)
+     * @param jsonStore       - the JSON store
+     * @param intervalSeconds - the minimum number of seconds between time-triggered persists
+     * @param writeCount      - the number of unpersisted writes that triggers a persist, or 0 to persist by time only
+     */
+    public void register(String source, JSONObjectStore<String> jsonStore, int intervalSeconds, long writeCount) {
+        schedules.put(source, new Schedule(source, jsonStore, Math.max(1, intervalSeconds) * 1000L, writeCount));
+    }
+    
+    /**
+     * Unregisters a store. A persist in progress is not interrupted, and closing the store
+     * waits for it to complete (see {@link JSONObjectStore#close()}).
+     * 
+     * @param source - the source (i.e., store name)
+     */
+    public void unregister(String source) {
+        schedules.remove(source);
+    }
+    
+    /**
+     * Starts checking the registered stores.
+     */
+    public synchronized void start() {
+        if(scheduler != null) {
+            return;
+        }
+        
+        executor = Executors.newFixedThreadPool(numThreads, new DaemonThreadFactory("jsonstore-persist-"));
+        scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("jsonstore-persist-scheduler-"));
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    check(System.currentTimeMillis());
+                } catch(Throwable t) {
+                    logger.warn("failed to check stores to persist", t);
+                }
+            }
+        }, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Stops checking the registered stores and waits for the persists in progress.
+     */
+    public synchronized void shutdown() {
+        if(scheduler == null) {
+            return;
+        }
+        
+        scheduler.shutdownNow();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(60, TimeUnit.SECONDS);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler = null;
+        executor = null;
+    }
+    
+    /**
+     * Submits the stores due to persist.
+     */
+    void check(long now) {
+        for(final Schedule s : schedules.values()) {
+            if(s.isDue(now) && s.running.compareAndSet(false, true)) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            persist(s);
+                        } finally {
+                            s.running.set(false);
+                        }
+                    }
+                });
+            }
+        }
+    }
+    
+    private void persist(Schedule s) {
+        try {
+            if(!s.jsonStore.isOpen() || !s.jsonStore.isDirty()) {
+                return;
+            }
+            
+            long writes = s.jsonStore.getUnpersistedWrites();
+            s.jsonStore.persist();
+            logger.info(s.source + " persisted " + writes + " writes in " + s.jsonStore.getLastPersistMillis() + " ms");
+        } catch(Exception e) {
+            logger.warn("failed to persist " + s.source, e);
+        }
+    }
+    
+    private static final class Schedule {
+        final String source;
+        final JSONObjectStore<String> jsonStore;
+        final long intervalMillis;
+        final long writeCount;
+        final AtomicBoolean running = new AtomicBoolean(false);
+        
+        Schedule(String source, JSONObjectStore<String> jsonStore, long intervalMillis, long writeCount) {
+            this.source = source;
+            this.jsonStore = jsonStore;
+            this.intervalMillis = intervalMillis;
+            this.writeCount = writeCount;
+        }
+        
+        boolean isDue(long now) {
+            long writes = jsonStore.getUnpersistedWrites();
+            if(writes <= 0) {
+                return false;
+            }
+            return (now - jsonStore.getLastPersistTime() >= intervalMillis) || (writeCount > 0 && writes >= writeCount);
+        }
+    }
+    
+    static final class DaemonThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger threadCount = new AtomicInteger();
+        
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+        
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, prefix + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
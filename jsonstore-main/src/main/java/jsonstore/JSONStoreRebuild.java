@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+import krati.util.IndexedIterator;
+
+/**
+ * JSONStoreRebuild copies a live {@link JSONObjectStore} into a target store opened with
+ * a new configuration. The source store reports the keys it writes while the copy runs,
+ * and each catch-up round rewrites those keys from their current source values, so the
+ * target converges on the source. Once writes to the source are paused, a last catch-up
+ * leaves the target identical to the source.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ * @see JSONRepository#rebuild(String, JSONObject)
+ */
+public final class JSONStoreRebuild<K> {
+    private final JSONObjectStore<K> source;
+    private final JSONObjectStore<K> target;
+    
+    /**
+     * The keys written to the source since they were last copied, and whether it has been cleared.
+     */
+    private final Set<K> changed = Collections.newSetFromMap(new ConcurrentHashMap<K, Boolean>());
+    private final AtomicBoolean cleared = new AtomicBoolean();
+    
+    private final AtomicLong copied = new AtomicLong();
+    private final AtomicLong caughtUp = new AtomicLong();
+    
+    /**
+     * Constructs a new instance of JSONStoreRebuild.
+     * 
+     * @param source - the store to copy
+     * @param target - the store to copy into
+     */
+    public JSONStoreRebuild(JSONObjectStore<K> source, JSONObjectStore<K> target) {
+        this.source = source;
+        this.target = target;
+    }
+    
+    /**
+     * Records a key written to the source, called after the write is applied.
+     */
+    void changed(K key) {
+        changed.add(key);
+    }
+    
+    /**
+     * Records that the source has been cleared, called after the clear is applied.
+     */
+    void cleared() {
+        cleared.set(true);
+    }
+    
+    /**
+     * @return the number of keys written to the source and not caught up yet.
+     */
+    public int getPending() {
+        return changed.size();
+    }
+    
+    /**
+     * @return the number of values copied.
+     */
+    public long getCopied() {
+        return copied.get();
+    }
+    
+    /**
+     * @return the number of keys caught up.
+     */
+    public long getCaughtUp() {
+        return caughtUp.get();
+    }
+    
+    /**
+     * Copies all the values of the source into the target. Values written during the copy
+     * may be copied stale, and are rewritten by the following catch-up.
+     * 
+     * @return the number of values copied.
+     * @throws Exception if a value cannot be written to the target.
+     */
+    public long copy() throws Exception {
+        long count = 0;
+        IndexedIterator<Entry<K, JSONObject>> iter = source.iterator();
+        while(iter.hasNext()) {
+            Entry<K, JSONObject> e = iter.next();
+            if(e != null && e.getKey() != null && e.getValue() != null) {
+                target.put(e.getKey(), e.getValue());
+                copied.incrementAndGet();
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Rewrites the keys written to the source since they were last copied with their current values,
+     * clearing the target first if the source has been cleared.
+     * 
+     * @return the number of keys caught up.
+     * @throws Exception if the target cannot be written.
+     */
+    public long catchUp() throws Exception {
+        if(cleared.getAndSet(false)) {
+            target.clear();
+        }
+        
+        long count = 0;
+        Iterator<K> iter = changed.iterator();
+        while(iter.hasNext()) {
+            // Remove before reading, so that a write after the read marks the key again
+            K key = iter.next();
+            iter.remove();
+            
+            JSONObject value = source.get(key);
+            if(value == null) {
+                target.delete(key);
+            } else {
+                target.put(key, value);
+            }
+            caughtUp.incrementAndGet();
+            count++;
+        }
+        return count;
+    }
+    
+    /**
+     * @return the rebuild statistics in JSON.
+     */
+    public JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("copied", copied.get());
+            json.put("caughtUp", caughtUp.get());
+            json.put("pending", changed.size());
+        } catch(JSONException e) {}
+        
+        return json;
+    }
+}
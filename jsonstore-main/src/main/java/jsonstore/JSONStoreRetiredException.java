@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+/**
+ * JSONStoreRetiredException is thrown by a write to a {@link JSONObjectStore} which has been
+ * replaced by a rebuilt store, or whose write-behind queue has been closed along with the store.
+ * The write is not applied and can be retried against the store currently held by the
+ * {@link JSONRepository}.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public class JSONStoreRetiredException extends IllegalStateException {
+    private static final long serialVersionUID = 1L;
+    
+    public JSONStoreRetiredException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map.Entry;
+
+import org.codehaus.jettison.json.JSONObject;
+
+import krati.io.Serializer;
+import krati.store.DataStore;
+import krati.util.IndexedIterator;
+
+/**
+ * JSONStoreScanner streams the keys, optionally with values, of a {@link JSONObjectStore}
+ * page by page. A page stops at the first hash bucket boundary after <code>limit</code> records
+ * and ends with the cursor of the next page, which is the index of the next bucket to scan.
+ * In a {@link PartitionedDataStore}, the cursors of partitions after the first are prefixed with
+ * the partition, as in <code>2.1ekf</code>, so that they remain valid when a partition grows.
+ * A scan can be split into independent ranges of buckets via {@link #split(JSONObjectStore, int)}.
+ * 
+ * <p>
+ * In the <code>ndjson</code> format, each record is a line <code>{"key":...,"value":...}</code>
+ * where the value is left out for key-only scans, and the last line is <code>{"cursor":...}</code>
+ * with a <code>null</code> cursor once the scan is complete.
+ * </p>
+ * 
+ * <p>
+ * In the <code>binary</code> format, records hold the stored bytes, not deserialized at all:
+ * a 4-byte key length, the key bytes, a 4-byte value length (-1 for key-only scans) and the
+ * value bytes. The last record has the key length -1 followed by the cursor in modified UTF-8
+ * (empty once the scan is complete).
+ * </p>
+ * 
+ * <p>
+ * Records written or deleted during a scan may or may not be seen. Records are seen exactly once
+ * unless the store grows its index while being scanned.
+ * </p>
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class JSONStoreScanner {
+    public static final String FORMAT_NDJSON = "ndjson";
+    public static final String FORMAT_BINARY = "binary";
+    
+    private final JSONObjectStore<String> jsonStore;
+    private final long from;
+    private final long to;
+    private final int limit;
+    private final boolean values;
+    private final boolean binary;
+    
+    private int count = 0;
+    
+    /**
+     * Constructs a new instance of JSONStoreScanner.
+     * 
+     * @param jsonStore - the JSON store
+     * @param cursor    - the cursor to start from, or <code>null</code> to start from the beginning
+     * @param endCursor - the cursor to stop at, or <code>null</code> to scan to the end
+     * @param limit     - the number of records per page
+     * @param values    - whether to include values
+     * @param format    - the output format: <code>ndjson</code> or <code>binary</code>
+     * @throws IllegalArgumentException if a cursor or the format is invalid.
+     */
+    public JSONStoreScanner(JSONObjectStore<String> jsonStore, String cursor, String endCursor, int limit, boolean values, String format) {
+        if(!FORMAT_NDJSON.equals(format) && !FORMAT_BINARY.equals(format)) {
+            throw new IllegalArgumentException("Unknown scan format: " + format);
+        }
+        
+        this.jsonStore = jsonStore;
+        this.from = cursor == null ? 0 : checkPartition(parseCursor(cursor), cursor);
+        this.to = endCursor == null ? Long.MAX_VALUE : checkPartition(parseCursor(endCursor), endCursor);
+        this.limit = Math.max(1, limit);
+        this.values = values;
+        this.binary = FORMAT_BINARY.equals(format);
+    }
+    
+    private long checkPartition(long position, String cursor) {
+        int partition = PartitionedDataStore.partitionOf(position);
+        DataStore<byte[], byte[]> store = jsonStore.getDataStore();
+        if(partition > 0 && (!(store instanceof PartitionedDataStore) || partition >= ((PartitionedDataStore)store).getPartitionCount())) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        return position;
+    }
+    
+    /**
+     * Splits a full scan of the specified store into ranges of about the same number of buckets.
+     * 
+     * @param jsonStore - the JSON store
+     * @param count     - the number of ranges
+     * @return the start cursors of all the ranges, followed by <code>null</code> as the end of the last range.
+     */
+    public static String[] split(JSONObjectStore<String> jsonStore, int count) {
+        DataStore<byte[], byte[]> store = jsonStore.getDataStore();
+        if(store instanceof PartitionedDataStore) {
+            PartitionedDataStore partitioned = (PartitionedDataStore)store;
+            int[] capacities = new int[partitioned.getPartitionCount()];
+            for(int i = 0; i < capacities.length; i++) {
+                capacities[i] = partitioned.getPartition(i).capacity();
+            }
+            return split(capacities, count);
+        }
+        return split(new int[] { store.capacity() }, count);
+    }
+    
+    /**
+     * Splits the buckets of the specified partitions, taken one after another, into ranges.
+     * 
+     * @param capacities - the partition capacities (i.e., the numbers of hash buckets)
+     * @param count      - the number of ranges
+     */
+    static String[] split(int[] capacities, int count) {
+        long total = 0;
+        for(int capacity : capacities) {
+            total += capacity;
+        }
+        
+        count = (int)Math.max(1, Math.min(count, total));
+        String[] cursors = new String[count + 1];
+        for(int i = 0; i < count; i++) {
+            long offset = total * i / count;
+            int p = 0;
+            while(p < capacities.length - 1 && offset >= capacities[p]) {
+                offset -= capacities[p];
+                p++;
+            }
+            cursors[i] = formatCursor(PartitionedDataStore.position(p, (int)offset));
+        }
+        cursors[count] = null;
+        return cursors;
+    }
+    
+    /**
+     * @return the number of records written.
+     */
+    public int getCount() {
+        return count;
+    }
+    
+    /**
+     * Writes a page of records to the specified stream.
+     * 
+     * @param out - the output stream
+     * @return the cursor of the next page, or <code>null</code> if the scan is complete.
+     * @throws IOException if the output stream cannot be written.
+     */
+    public String write(OutputStream out) throws IOException {
+        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        Serializer<String> keySerializer = jsonStore.getKeySerializer();
+        Serializer<JSONObject> valueSerializer = jsonStore.getValueSerializer();
+        
+        IndexedIterator<?> iter = values ? jsonStore.rawIterator() : jsonStore.rawKeyIterator();
+        seek(iter, from);
+        
+        String cursor = null;
+        while(true) {
+            // The position moves on only when the next bucket is loaded
+            long position = position(iter);
+            if(!iter.hasNext()) {
+                break;
+            }
+            long loaded = position(iter);
+            if(loaded != position) {
+                if(loaded - 1 >= to) {
+                    break;
+                }
+                if(count >= limit) {
+                    cursor = formatCursor(position);
+                    break;
+                }
+            } else if(loaded - 1 >= to) {
+                // The first bucket loaded by reset is out of the range
+                break;
+            }
+            
+            byte[] keyBytes;
+            byte[] valueBytes = null;
+            Object next = iter.next();
+            if(next == null) {
+                continue;
+            }
+            if(values) {
+                @SuppressWarnings("unchecked")
+                Entry<byte[], byte[]> e = (Entry<byte[], byte[]>)next;
+                keyBytes = e.getKey();
+                valueBytes = e.getValue();
+                if(valueBytes == null) {
+                    continue;
+                }
+            } else {
+                keyBytes = (byte[])next;
+            }
+            
+            if(binary) {
+                dout.writeInt(keyBytes.length);
+                dout.write(keyBytes);
+                if(valueBytes == null) {
+                    dout.writeInt(-1);
+                } else {
+                    dout.writeInt(valueBytes.length);
+                    dout.write(valueBytes);
+                }
+            } else {
+                dout.write("{\"key\":".getBytes("UTF-8"));
+                dout.write(JSONObject.quote(keySerializer.deserialize(keyBytes)).getBytes("UTF-8"));
+                if(valueBytes != null) {
+                    dout.write(",\"value\":".getBytes("UTF-8"));
+                    toText(valueSerializer, valueBytes).writeTo(dout);
+                }
+                dout.write('}');
+                dout.write('\n');
+            }
+            count++;
+        }
+        
+        if(binary) {
+            dout.writeInt(-1);
+            dout.writeUTF(cursor == null ? "" : cursor);
+        } else {
+            dout.write(("{\"cursor\":" + (cursor == null ? "null" : JSONObject.quote(cursor)) + "}\n").getBytes("UTF-8"));
+        }
+        dout.flush();
+        
+        return cursor;
+    }
+    
+    private static JSONRawValue toText(Serializer<JSONObject> valueSerializer, byte[] bytes) throws IOException {
+        if(valueSerializer instanceof RawValueDecoder) {
+            return ((RawValueDecoder)valueSerializer).toRawValue(bytes).toText();
+        }
+        
+        byte[] text = valueSerializer.deserialize(bytes).toString().getBytes("UTF-8");
+        return new JSONRawValue(text, 0, text.length, false);
+    }
+    
+    /**
+     * @return the position of an iterator, which is its index unless the store is partitioned.
+     */
+    private static long position(IndexedIterator<?> iter) {
+        if(iter instanceof PartitionedDataStore.PartitionedIterator) {
+            return ((PartitionedDataStore.PartitionedIterator<?>)iter).position();
+        }
+        return iter.index();
+    }
+    
+    private static void seek(IndexedIterator<?> iter, long position) {
+        if(iter instanceof PartitionedDataStore.PartitionedIterator) {
+            ((PartitionedDataStore.PartitionedIterator<?>)iter).seek(position);
+        } else {
+            iter.reset(PartitionedDataStore.indexOf(position));
+        }
+    }
+    
+    static String formatCursor(long position) {
+        int partition = PartitionedDataStore.partitionOf(position);
+        String index = Integer.toString(PartitionedDataStore.indexOf(position), 36);
+        return partition == 0 ? index : Integer.toString(partition, 36) + "." + index;
+    }
+    
+    static long parseCursor(String cursor) {
+        int dot = cursor.indexOf('.');
+        try {
+            int partition = dot < 0 ? 0 : Integer.parseInt(cursor.substring(0, dot), 36);
+            int index = Integer.parseInt(cursor.substring(dot + 1), 36);
+            if(partition >= 0 && index >= 0) {
+                return PartitionedDataStore.position(partition, index);
+            }
+        } catch(NumberFormatException e) {}
+        
+        throw new IllegalArgumentException("Invalid cursor: " + cursor);
+    }
+}
@@ -74,6 +74,18 @@ public enum JSONStoreStatus {
             return "flushed";
         }
     },
+    REBUILDING {
+        @Override
+        public String value() {
+            return "rebuilding";
+        }
+    },
+    REBUILT {
+        @Override
+        public String value() {
+            return "rebuilt";
+        }
+    },
     FAILED {
         @Override
         public String value() {
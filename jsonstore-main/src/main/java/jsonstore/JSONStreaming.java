@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Iterator;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * JSONStreaming converts between Jettison JSON trees and Jackson token streams,
+ * so that any Jackson format (text, Smile) can be used without an intermediate string.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class JSONStreaming {
+    
+    private JSONStreaming() {}
+    
+    /**
+     * Writes the specified JSON object to a Jackson generator.
+     * 
+     * @param gen  - the generator
+     * @param json - the JSON object
+     * @throws IOException
+     */
+    public static void writeObject(JsonGenerator gen, JSONObject json) throws IOException {
+        gen.writeStartObject();
+        Iterator<?> iter = json.keys();
+        while(iter.hasNext()) {
+            String name = (String)iter.next();
+            gen.writeFieldName(name);
+            writeValue(gen, json.opt(name));
+        }
+        gen.writeEndObject();
+    }
+    
+    /**
+     * Writes the specified JSON array to a Jackson generator.
+     * 
+     * @param gen   - the generator
+     * @param array - the JSON array
+     * @throws IOException
+     */
+    public static void writeArray(JsonGenerator gen, JSONArray array) throws IOException {
+        gen.writeStartArray();
+        for(int i = 0, cnt = array.length(); i < cnt; i++) {
+            writeValue(gen, array.opt(i));
+        }
+        gen.writeEndArray();
+    }
+    
+    /**
+     * Writes a JSON value (object, array, string, number, boolean or null) to a Jackson generator.
+     * 
+     * @param gen   - the generator
+     * @param value - the JSON value
+     * @throws IOException
+     */
+    public static void writeValue(JsonGenerator gen, Object value) throws IOException {
+        if(value == null || value == JSONObject.NULL) {
+            gen.writeNull();
+        } else if(value instanceof String) {
+            gen.writeString((String)value);
+        } else if(value instanceof JSONObject) {
+            writeObject(gen, (JSONObject)value);
+        } else if(value instanceof JSONArray) {
+            writeArray(gen, (JSONArray)value);
+        } else if(value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            gen.writeNumber(((Number)value).intValue());
+        } else if(value instanceof Long) {
+            gen.writeNumber(((Long)value).longValue());
+        } else if(value instanceof Double || value instanceof Float) {
+            gen.writeNumber(((Number)value).doubleValue());
+        } else if(value instanceof BigInteger) {
+            gen.writeNumber((BigInteger)value);
+        } else if(value instanceof BigDecimal) {
+            gen.writeNumber((BigDecimal)value);
+        } else if(value instanceof Boolean) {
+            gen.writeBoolean(((Boolean)value).booleanValue());
+        } else {
+            gen.writeString(value.toString());
+        }
+    }
+    
+    /**
+     * Reads a JSON object from a Jackson parser positioned at {@link JsonToken#START_OBJECT}.
+     * 
+     * @param parser - the parser
+     * @return the JSON object
+     * @throws IOException
+     */
+    public static JSONObject readObject(JsonParser parser) throws IOException {
+        JSONObject json = new JSONObject();
+        try {
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                json.put(name, readValue(parser));
+            }
+        } catch(JSONException e) {
+            throw new JsonParseException(e.getMessage(), parser.getCurrentLocation(), e);
+        }
+        return json;
+    }
+    
+    /**
+     * Reads a JSON array from a Jackson parser positioned at {@link JsonToken#START_ARRAY}.
+     * 
+     * @param parser - the parser
+     * @return the JSON array
+     * @throws IOException
+     */
+    public static JSONArray readArray(JsonParser parser) throws IOException {
+        JSONArray array = new JSONArray();
+        while(parser.nextToken() != JsonToken.END_ARRAY) {
+            array.put(readValue(parser));
+        }
+        return array;
+    }
+    
+    /**
+     * Reads the JSON value at the current token of a Jackson parser.
+     * 
+     * @param parser - the parser
+     * @return the JSON value, which is {@link JSONObject#NULL} for a JSON <code>null</code>.
+     * @throws IOException
+     */
+    public static Object readValue(JsonParser parser) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if(token == null) {
+            throw new JsonParseException("Unexpected end of input", parser.getCurrentLocation());
+        }
+        
+        switch(token) {
+        case START_OBJECT:
+            return readObject(parser);
+        case START_ARRAY:
+            return readArray(parser);
+        case VALUE_STRING:
+            return parser.getText();
+        case VALUE_NUMBER_INT:
+            switch(parser.getNumberType()) {
+            case INT:
+                return Integer.valueOf(parser.getIntValue());
+            case LONG:
+                return Long.valueOf(parser.getLongValue());
+            default:
+                return parser.getBigIntegerValue();
+            }
+        case VALUE_NUMBER_FLOAT:
+            if(parser.getNumberType() == JsonParser.NumberType.BIG_DECIMAL) {
+                return parser.getDecimalValue();
+            }
+            return Double.valueOf(parser.getDoubleValue());
+        case VALUE_TRUE:
+            return Boolean.TRUE;
+        case VALUE_FALSE:
+            return Boolean.FALSE;
+        case VALUE_NULL:
+            return JSONObject.NULL;
+        default:
+            throw new JsonParseException("Unexpected token " + token, parser.getCurrentLocation());
+        }
+    }
+}
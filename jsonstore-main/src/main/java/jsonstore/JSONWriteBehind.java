@@ -0,0 +1,391 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * JSONWriteBehind queues the writes of a {@link JSONObjectStore} and applies them in batches
+ * on a dedicated writer thread, so that request threads do not block while the store flushes.
+ * Writes are serialized before they are queued, and the latest pending write of each key is
+ * served to reads until it is applied. A write is rejected with {@link RejectedExecutionException}
+ * when the queue is full, and with {@link JSONStoreRetiredException} once the queue is closed.
+ * 
+ * <p>
+ * A write that fails is retried a few times. If it still fails, it is dropped, and the failure
+ * is kept for its key until a later write of the key is applied. The last failures of up to
+ * 100 keys are reported in the statistics.
+ * </p>
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class JSONWriteBehind<K> {
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(JSONWriteBehind.class);
+    
+    /**
+     * The milliseconds the writer waits for writes before checking whether it is closed.
+     */
+    private static final long POLL_MILLIS = 100;
+    
+    /**
+     * The number of times a write is applied before it is dropped, and the milliseconds between attempts.
+     */
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_MILLIS = 50;
+    
+    /**
+     * The maximum number of keys whose last failure is kept.
+     */
+    private static final int MAX_FAILURES = 100;
+    
+    private final JSONObjectStore<K> jsonStore;
+    private final ArrayBlockingQueue<Write<K>> queue;
+    private final ConcurrentHashMap<K, Write<K>> pending = new ConcurrentHashMap<K, Write<K>>();
+    private final int batchSize;
+    private final Thread writer;
+    private volatile boolean closed = false;
+    
+    /**
+     * The sequence numbers of the last write queued and the last write applied, guarded by this.
+     */
+    private long lastQueued = 0;
+    private long lastApplied = 0;
+    
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    
+    /**
+     * The last failure by key, in the order of failure and guarded by itself.
+     */
+    private final Map<K, Failure> failures = new LinkedHashMap<K, Failure>() {
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Failure> eldest) {
+            return size() > MAX_FAILURES;
+        }
+    };
+    
+    /**
+     * Constructs a new instance of JSONWriteBehind and starts its writer thread.
+     * 
+     * @param name      - the name of the writer thread
+     * @param jsonStore - the JSON store to write
+     * @param queueSize - the maximum number of queued writes
+     * @param batchSize - the maximum number of writes applied at a time
+     */
+    public JSONWriteBehind(String name, JSONObjectStore<K> jsonStore, int queueSize, int batchSize) {
+        this.jsonStore = jsonStore;
+        this.queue = new ArrayBlockingQueue<Write<K>>(queueSize);
+        this.batchSize = Math.max(1, batchSize);
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainQueue();
+            }
+        }, name);
+        writer.setDaemon(true);
+        writer.start();
+    }
+    
+    /**
+     * Queues a write.
+     * 
+     * @param key   - the key
+     * @param value - the value, or <code>null</code> to delete the key
+     * @param bytes - the serialized value, or <code>null</code> to delete the key
+     * @throws RejectedExecutionException if the queue is full.
+     * @throws JSONStoreRetiredException if this JSONWriteBehind is closed along with its store.
+     */
+    public void offer(K key, JSONObject value, byte[] bytes) {
+        Write<K> w = new Write<K>(key, value, bytes);
+        synchronized(this) {
+            if(closed) {
+                throw new JSONStoreRetiredException("Write-behind queue closed");
+            }
+            if(queue.remainingCapacity() == 0) {
+                rejected.incrementAndGet();
+                throw new RejectedExecutionException("Write-behind queue full");
+            }
+            
+            // Writes are only added under this lock, so the write always fits
+            w.seq = ++lastQueued;
+            pending.put(key, w);
+            queue.add(w);
+        }
+        accepted.incrementAndGet();
+    }
+    
+    /**
+     * @return the pending write of the specified key, or <code>null</code> if there is none.
+     */
+    public Write<K> getPending(K key) {
+        return pending.get(key);
+    }
+    
+    /**
+     * @return <code>true</code> if there are writes not yet applied.
+     */
+    public boolean hasPending() {
+        return !pending.isEmpty();
+    }
+    
+    /**
+     * @return the failure of the last write of the specified key in JSON, or <code>null</code>
+     * if it did not fail or its failure is no longer kept.
+     */
+    public JSONObject getFailure(K key) {
+        synchronized(failures) {
+            Failure f = failures.get(key);
+            return f == null ? null : f.toJSON();
+        }
+    }
+    
+    /**
+     * @return the number of queued writes.
+     */
+    public int size() {
+        return queue.size();
+    }
+    
+    /**
+     * Waits until the pending write of the specified key, if any, is applied.
+     * 
+     * @throws InterruptedIOException if interrupted while waiting.
+     */
+    public void awaitApplied(K key) throws InterruptedIOException {
+        if(!pending.containsKey(key) || Thread.currentThread() == writer) {
+            return;
+        }
+        
+        synchronized(this) {
+            while(pending.containsKey(key)) {
+                waitInterruptibly();
+            }
+        }
+    }
+    
+    /**
+     * Waits until all the writes queued so far are applied. Writes queued while waiting
+     * are not waited for, so that a steady stream of writes does not hold the caller.
+     * 
+     * @throws InterruptedIOException if interrupted while waiting.
+     */
+    public void awaitAll() throws InterruptedIOException {
+        if(Thread.currentThread() == writer) {
+            return;
+        }
+        
+        synchronized(this) {
+            long last = lastQueued;
+            while(lastApplied < last) {
+                waitInterruptibly();
+            }
+        }
+    }
+    
+    /**
+     * Stops accepting writes, applies the queued ones and stops the writer thread.
+     * 
+     * @throws InterruptedIOException if interrupted while waiting.
+     */
+    public void close() throws InterruptedIOException {
+        synchronized(this) {
+            closed = true;
+        }
+        try {
+            writer.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing write-behind queue");
+        }
+    }
+    
+    private void waitInterruptibly() throws InterruptedIOException {
+        try {
+            wait();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for write-behind queue");
+        }
+    }
+    
+    private void drainQueue() {
+        List<Write<K>> batch = new ArrayList<Write<K>>(batchSize);
+        while(true) {
+            // Never interrupted, which would close the file channels of the store
+            Write<K> first;
+            try {
+                first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch(InterruptedException e) {
+                continue;
+            }
+            if(first == null) {
+                if(closed && queue.isEmpty()) {
+                    break;
+                }
+                continue;
+            }
+            batch.add(first);
+            queue.drainTo(batch, batchSize - 1);
+            
+            for(Write<K> w : batch) {
+                apply(w);
+                pending.remove(w.key, w);
+            }
+            long last = batch.get(batch.size() - 1).seq;
+            batch.clear();
+            
+            synchronized(this) {
+                lastApplied = last;
+                notifyAll();
+            }
+        }
+    }
+    
+    /**
+     * Applies a write, retrying it if it fails, and records the outcome for its key.
+     */
+    private void apply(Write<K> w) {
+        for(int attempt = 1; ; attempt++) {
+            try {
+                jsonStore.applyWrite(w.key, w.value, w.bytes);
+                synchronized(failures) {
+                    failures.remove(w.key);
+                }
+                return;
+            } catch(Exception e) {
+                if(attempt >= MAX_ATTEMPTS) {
+                    failed.incrementAndGet();
+                    logger.error("failed to write " + w.key + " after " + attempt + " attempts", e);
+                    synchronized(failures) {
+                        // Moved to the end as the latest failure
+                        failures.remove(w.key);
+                        failures.put(w.key, new Failure(w, e, attempt));
+                    }
+                    return;
+                }
+                
+                retried.incrementAndGet();
+                logger.warn("failed to write " + w.key + ", retrying: " + e.getMessage());
+                try {
+                    Thread.sleep(RETRY_MILLIS * attempt);
+                } catch(InterruptedException ie) {}
+            }
+        }
+    }
+    
+    /**
+     * @return the write-behind statistics in JSON.
+     */
+    public JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("queued", queue.size());
+            json.put("capacity", queue.size() + queue.remainingCapacity());
+            json.put("accepted", accepted.get());
+            json.put("rejected", rejected.get());
+            json.put("failed", failed.get());
+            json.put("retried", retried.get());
+            
+            JSONArray lastFailures = new JSONArray();
+            synchronized(failures) {
+                for(Failure f : failures.values()) {
+                    lastFailures.put(f.toJSON());
+                }
+            }
+            json.put("lastFailures", lastFailures);
+        } catch(JSONException e) {}
+        
+        return json;
+    }
+    
+    /**
+     * The last failed write of a key.
+     */
+    private static final class Failure {
+        final String key;
+        final boolean delete;
+        final String error;
+        final long time;
+        final int attempts;
+        
+        Failure(Write<?> w, Exception e, int attempts) {
+            this.key = String.valueOf(w.key);
+            this.delete = w.value == null;
+            this.error = e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+            this.time = System.currentTimeMillis();
+            this.attempts = attempts;
+        }
+        
+        JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            try {
+                json.put("key", key);
+                json.put("op", delete ? "delete" : "put");
+                json.put("error", error);
+                json.put("time", time);
+                json.put("attempts", attempts);
+            } catch(JSONException e) {}
+            return json;
+        }
+    }
+    
+    /**
+     * A queued write, whose value and bytes are <code>null</code> for a delete.
+     */
+    public static final class Write<K> {
+        final K key;
+        final JSONObject value;
+        final byte[] bytes;
+        long seq;
+        
+        Write(K key, JSONObject value, byte[] bytes) {
+            this.key = key;
+            this.value = value;
+            this.bytes = bytes;
+        }
+        
+        public JSONObject getValue() {
+            return value;
+        }
+        
+        public byte[] getBytes() {
+            return bytes;
+        }
+    }
+}
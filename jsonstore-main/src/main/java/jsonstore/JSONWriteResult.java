@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * JSONWriteResult is the outcome of a conditional write to a {@link JSONObjectStore}.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class JSONWriteResult {
+    private final boolean applied;
+    private final JSONObject previous;
+    private final JSONObject value;
+    private final String etag;
+    
+    JSONWriteResult(boolean applied, JSONObject previous, JSONObject value, String etag) {
+        this.applied = applied;
+        this.previous = previous;
+        this.value = value;
+        this.etag = etag;
+    }
+    
+    /**
+     * @return <code>true</code> if the precondition held and the write was applied.
+     */
+    public boolean isApplied() {
+        return applied;
+    }
+    
+    /**
+     * @return the value before the write, or <code>null</code> if there was none or the write was not applied.
+     */
+    public JSONObject getPrevious() {
+        return previous;
+    }
+    
+    /**
+     * @return the value after the write, or <code>null</code> if it was a delete or the write was not applied.
+     */
+    public JSONObject getValue() {
+        return value;
+    }
+    
+    /**
+     * @return the entity tag of the value after the write, or of the current value if the write was
+     * not applied, or <code>null</code> if there is no such value.
+     */
+    public String getETag() {
+        return etag;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * LZValueCodec is a fast LZ77 codec using the LZ4 block format: a sequence is a token
+ * (literal length and match length in 4 bits each), the literals, a 2-byte little-endian
+ * match offset and the extra length bytes. It trades compression ratio for speed and
+ * needs no native library.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class LZValueCodec implements ValueCodec {
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_OFFSET = 0xFFFF;
+    private static final int MAX_HASH_LOG = 12;
+    
+    private static final ThreadLocal<int[]> tablePool = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1 << MAX_HASH_LOG];
+        }
+    };
+    
+    @Override
+    public byte getId() {
+        return ValueCodecs.LZ_ID;
+    }
+    
+    @Override
+    public String getName() {
+        return "lz";
+    }
+    
+    @Override
+    public byte[] encode(byte[] raw, int off, int len) {
+        byte[] buf = ValueCodecs.buffer(len + (len / 255) + 16 + 6);
+        buf[0] = ValueCodecs.LZ_ID;
+        int pos = ValueCodecs.writeVarInt(len, buf, 1);
+        pos = compress(raw, off, len, buf, pos);
+        return Arrays.copyOf(buf, pos);
+    }
+    
+    @Override
+    public byte[] decode(byte[] value) throws IOException {
+        int[] pos = new int[] { 1 };
+        byte[] raw = new byte[ValueCodecs.readVarInt(value, pos)];
+        decompress(value, pos[0], value.length, raw);
+        return raw;
+    }
+    
+    static int compress(byte[] src, int off, int len, byte[] dst, int pos) {
+        int end = off + len;
+        int anchor = off;
+        
+        if(len > MF_LIMIT) {
+            // Small values only clear a small part of the hash table
+            int hashLog = Math.min(MAX_HASH_LOG, Math.max(6, 32 - Integer.numberOfLeadingZeros(len)));
+            int[] table = tablePool.get();
+            Arrays.fill(table, 0, 1 << hashLog, 0);
+            
+            int limit = end - MF_LIMIT;
+            int matchLimit = end - LAST_LITERALS;
+            int i = off;
+            while(i < limit) {
+                int seq = readInt(src, i);
+                int h = (seq * -1640531535) >>> (32 - hashLog);
+                int ref = table[h] - 1 + off;
+                table[h] = i - off + 1;
+                
+                if(ref < off || i - ref > MAX_OFFSET || readInt(src, ref) != seq) {
+                    // Skip faster through incompressible data
+                    i += 1 + ((i - anchor) >>> 6);
+                    continue;
+                }
+                
+                while(i > anchor && ref > off && src[i - 1] == src[ref - 1]) {
+                    i--;
+                    ref--;
+                }
+                
+                int matchLen = MIN_MATCH;
+                while(i + matchLen < matchLimit && src[i + matchLen] == src[ref + matchLen]) {
+                    matchLen++;
+                }
+                
+                pos = writeSequence(src, anchor, i - anchor, i - ref, matchLen, dst, pos);
+                i += matchLen;
+                anchor = i;
+            }
+        }
+        
+        // The last literals
+        int litLen = end - anchor;
+        dst[pos++] = (byte)(Math.min(litLen, 15) << 4);
+        pos = writeLength(litLen, dst, pos);
+        System.arraycopy(src, anchor, dst, pos, litLen);
+        return pos + litLen;
+    }
+    
+    static void decompress(byte[] src, int pos, int end, byte[] dst) throws IOException {
+        int d = 0;
+        while(true) {
+            if(pos >= end) {
+                throw new IOException("Truncated value");
+            }
+            int token = src[pos++] & 0xFF;
+            
+            int litLen = token >>> 4;
+            if(litLen == 15) {
+                int b;
+                do {
+                    if(pos >= end) {
+                        throw new IOException("Truncated value");
+                    }
+                    b = src[pos++] & 0xFF;
+                    litLen += b;
+                } while(b == 255);
+            }
+            if(litLen > end - pos || litLen > dst.length - d) {
+                throw new IOException("Corrupt value");
+            }
+            System.arraycopy(src, pos, dst, d, litLen);
+            pos += litLen;
+            d += litLen;
+            
+            if(pos == end) {
+                break;
+            }
+            
+            if(end - pos < 2) {
+                throw new IOException("Truncated value");
+            }
+            int offset = (src[pos] & 0xFF) | (src[pos + 1] & 0xFF) << 8;
+            pos += 2;
+            if(offset == 0 || offset > d) {
+                throw new IOException("Corrupt value");
+            }
+            
+            int matchLen = token & 0x0F;
+            if(matchLen == 15) {
+                int b;
+                do {
+                    if(pos >= end) {
+                        throw new IOException("Truncated value");
+                    }
+                    b = src[pos++] & 0xFF;
+                    matchLen += b;
+                } while(b == 255);
+            }
+            matchLen += MIN_MATCH;
+            if(matchLen > dst.length - d) {
+                throw new IOException("Corrupt value");
+            }
+            
+            int ref = d - offset;
+            if(offset >= matchLen) {
+                System.arraycopy(dst, ref, dst, d, matchLen);
+                d += matchLen;
+            } else {
+                // Overlapping copy repeats the last offset bytes
+                for(int i = 0; i < matchLen; i++) {
+                    dst[d++] = dst[ref++];
+                }
+            }
+        }
+        
+        if(d != dst.length) {
+            throw new IOException("Corrupt value");
+        }
+    }
+    
+    private static int writeSequence(byte[] src, int litOff, int litLen, int offset, int matchLen, byte[] dst, int pos) {
+        int ml = matchLen - MIN_MATCH;
+        dst[pos++] = (byte)((Math.min(litLen, 15) << 4) | Math.min(ml, 15));
+        pos = writeLength(litLen, dst, pos);
+        System.arraycopy(src, litOff, dst, pos, litLen);
+        pos += litLen;
+        dst[pos++] = (byte)offset;
+        dst[pos++] = (byte)(offset >>> 8);
+        return writeLength(ml, dst, pos);
+    }
+    
+    private static int writeLength(int len, byte[] dst, int pos) {
+        if(len >= 15) {
+            len -= 15;
+            while(len >= 255) {
+                dst[pos++] = (byte)255;
+                len -= 255;
+            }
+            dst[pos++] = (byte)len;
+        }
+        return pos;
+    }
+    
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * LatencyHistogram records durations in nanoseconds into log-linear buckets, each power of two
+ * being split into 8 buckets, so that percentiles are accurate to within 12.5%. Recording takes
+ * no lock: the buckets are striped by thread over a few atomic arrays, which are only summed up
+ * when a {@link Snapshot} is taken.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int NUM_BUCKETS = 64 << SUB_BITS;
+    private static final int SUM_INDEX = NUM_BUCKETS;
+    private static final int MAX_INDEX = NUM_BUCKETS + 1;
+    private static final int NUM_STRIPES = 8;
+    
+    private final AtomicLongArray[] stripes = new AtomicLongArray[NUM_STRIPES];
+    
+    public LatencyHistogram() {
+        for(int i = 0; i < NUM_STRIPES; i++) {
+            stripes[i] = new AtomicLongArray(NUM_BUCKETS + 2);
+        }
+    }
+    
+    /**
+     * Records a duration.
+     * 
+     * @param nanos - the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        if(nanos < 0) {
+            nanos = 0;
+        }
+        
+        AtomicLongArray stripe = stripes[(int)Thread.currentThread().getId() & (NUM_STRIPES - 1)];
+        stripe.incrementAndGet(bucket(nanos));
+        stripe.addAndGet(SUM_INDEX, nanos);
+        
+        long max = stripe.get(MAX_INDEX);
+        while(nanos > max && !stripe.compareAndSet(MAX_INDEX, max, nanos)) {
+            max = stripe.get(MAX_INDEX);
+        }
+    }
+    
+    /**
+     * Records the duration since the specified start time.
+     * 
+     * @param startNanos - the start time from {@link System#nanoTime()}
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+    
+    static int bucket(long value) {
+        if(value < SUB_COUNT) {
+            return (int)value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int)((value >>> shift) & (SUB_COUNT - 1));
+    }
+    
+    static long lowerBound(int bucket) {
+        if(bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int shift = (bucket >> SUB_BITS) - 1;
+        return (long)(SUB_COUNT + (bucket & (SUB_COUNT - 1))) << shift;
+    }
+    
+    /**
+     * @return the sum of all the stripes at about this time.
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[NUM_BUCKETS];
+        long count = 0;
+        long sum = 0;
+        long max = 0;
+        for(AtomicLongArray stripe : stripes) {
+            for(int i = 0; i < NUM_BUCKETS; i++) {
+                long c = stripe.get(i);
+                counts[i] += c;
+                count += c;
+            }
+            sum += stripe.get(SUM_INDEX);
+            max = Math.max(max, stripe.get(MAX_INDEX));
+        }
+        return new Snapshot(counts, count, sum, max);
+    }
+    
+    /**
+     * Snapshot of a LatencyHistogram.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+        
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+        
+        public long getCount() {
+            return count;
+        }
+        
+        /**
+         * @return the sum of the recorded durations in nanoseconds.
+         */
+        public long getSum() {
+            return sum;
+        }
+        
+        /**
+         * @return the maximum recorded duration in nanoseconds.
+         */
+        public long getMax() {
+            return max;
+        }
+        
+        /**
+         * @return the mean duration in nanoseconds.
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double)sum / count;
+        }
+        
+        /**
+         * Gets the duration at the specified quantile, which is the middle of its bucket.
+         * 
+         * @param quantile - the quantile between 0 and 1
+         * @return the duration in nanoseconds, or 0 if nothing is recorded.
+         */
+        public long getQuantile(double quantile) {
+            if(count == 0) {
+                return 0;
+            }
+            
+            long rank = (long)Math.ceil(quantile * count);
+            long seen = 0;
+            for(int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if(seen >= Math.max(1, rank)) {
+                    long lower = lowerBound(i);
+                    long upper = lowerBound(i + 1);
+                    return Math.min(max, lower + (upper - lower) / 2);
+                }
+            }
+            return max;
+        }
+        
+        /**
+         * @return the count, mean, p50, p99, p999 and max in microseconds in JSON.
+         */
+        public JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            try {
+                json.put("count", count);
+                json.put("meanMicros", getMean() / 1000.0);
+                json.put("p50Micros", getQuantile(0.5) / 1000.0);
+                json.put("p99Micros", getQuantile(0.99) / 1000.0);
+                json.put("p999Micros", getQuantile(0.999) / 1000.0);
+                json.put("maxMicros", max / 1000.0);
+            } catch(JSONException e) {}
+            
+            return json;
+        }
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import krati.store.DataStore;
+import krati.util.IndexedIterator;
+
+/**
+ * PartitionedDataStore spreads keys by hash over a number of independent data stores,
+ * so that writes to different partitions proceed in parallel rather than queueing
+ * on the single writer of one store. Persist, sync, clear, open and close run on
+ * all the partitions in parallel.
+ * 
+ * <p>
+ * Iterators visit the partitions one after another. The index of an iterator is the
+ * index within the current partition offset by the capacities of the partitions before
+ * it, which moves when an earlier partition grows. Scans use the position of an iterator
+ * instead, which holds the partition and the index within it separately.
+ * </p>
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public class PartitionedDataStore implements DataStore<byte[], byte[]> {
+    /**
+     * The shared executor running partition tasks, whose idle threads are reclaimed.
+     */
+    private static final ExecutorService executor =
+        Executors.newCachedThreadPool(new JSONStorePersister.DaemonThreadFactory("jsonstore-partition-"));
+    
+    private final DataStore<byte[], byte[]>[] partitions;
+    
+    /**
+     * Constructs a new instance of PartitionedDataStore.
+     * 
+     * @param partitions - the partitions, whose number and order must not change once they hold data
+     */
+    public PartitionedDataStore(List<DataStore<byte[], byte[]>> partitions) {
+        if(partitions.isEmpty()) {
+            throw new IllegalArgumentException("No partitions");
+        }
+        this.partitions = partitions.toArray(newPartitions(partitions.size()));
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static DataStore<byte[], byte[]>[] newPartitions(int count) {
+        return (DataStore<byte[], byte[]>[])new DataStore<?, ?>[count];
+    }
+    
+    /**
+     * @return the number of partitions.
+     */
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+    
+    /**
+     * @return the partition at the specified position.
+     */
+    public DataStore<byte[], byte[]> getPartition(int i) {
+        return partitions[i];
+    }
+    
+    /**
+     * @return the scan position of the specified index within the specified partition.
+     */
+    static long position(int partition, int index) {
+        return ((long)partition << 32) | index;
+    }
+    
+    /**
+     * @return the partition of the specified scan position.
+     */
+    static int partitionOf(long position) {
+        return (int)(position >>> 32);
+    }
+    
+    /**
+     * @return the index within its partition of the specified scan position.
+     */
+    static int indexOf(long position) {
+        return (int)position;
+    }
+    
+    /**
+     * Gets the partition of the specified key bytes.
+     * 
+     * @param key - the key bytes
+     * @param numPartitions - the number of partitions
+     * @return the partition index from <code>0</code> to <code>numPartitions - 1</code>.
+     */
+    public static int partitionOf(byte[] key, int numPartitions) {
+        int h = Arrays.hashCode(key);
+        
+        // Mix the bits so that partitions do not correlate with the buckets within a partition
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return (h & Integer.MAX_VALUE) % numPartitions;
+    }
+    
+    private DataStore<byte[], byte[]> partition(byte[] key) {
+        return key == null ? partitions[0] : partitions[partitionOf(key, partitions.length)];
+    }
+    
+    @Override
+    public int capacity() {
+        int capacity = 0;
+        for(DataStore<byte[], byte[]> p : partitions) {
+            capacity += p.capacity();
+        }
+        return capacity;
+    }
+    
+    @Override
+    public int getLength(byte[] key) {
+        return partition(key).getLength(key);
+    }
+    
+    @Override
+    public byte[] get(byte[] key) {
+        return partition(key).get(key);
+    }
+    
+    @Override
+    public boolean put(byte[] key, byte[] value) throws Exception {
+        return partition(key).put(key, value);
+    }
+    
+    @Override
+    public boolean delete(byte[] key) throws Exception {
+        return partition(key).delete(key);
+    }
+    
+    @Override
+    public void sync() throws IOException {
+        forEachPartition(new PartitionTask() {
+            @Override
+            public void run(DataStore<byte[], byte[]> p) throws IOException {
+                p.sync();
+            }
+        });
+    }
+    
+    @Override
+    public void persist() throws IOException {
+        forEachPartition(new PartitionTask() {
+            @Override
+            public void run(DataStore<byte[], byte[]> p) throws IOException {
+                p.persist();
+            }
+        });
+    }
+    
+    @Override
+    public void clear() throws IOException {
+        forEachPartition(new PartitionTask() {
+            @Override
+            public void run(DataStore<byte[], byte[]> p) throws IOException {
+                p.clear();
+            }
+        });
+    }
+    
+    @Override
+    public boolean isOpen() {
+        for(DataStore<byte[], byte[]> p : partitions) {
+            if(!p.isOpen()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public void open() throws IOException {
+        forEachPartition(new PartitionTask() {
+            @Override
+            public void run(DataStore<byte[], byte[]> p) throws IOException {
+                p.open();
+            }
+        });
+    }
+    
+    @Override
+    public void close() throws IOException {
+        forEachPartition(new PartitionTask() {
+            @Override
+            public void run(DataStore<byte[], byte[]> p) throws IOException {
+                p.close();
+            }
+        });
+    }
+    
+    @Override
+    public IndexedIterator<byte[]> keyIterator() {
+        return new PartitionedIterator<byte[]>() {
+            @Override
+            IndexedIterator<byte[]> iterator(DataStore<byte[], byte[]> p) {
+                return p.keyIterator();
+            }
+        };
+    }
+    
+    @Override
+    public IndexedIterator<Entry<byte[], byte[]>> iterator() {
+        return new PartitionedIterator<Entry<byte[], byte[]>>() {
+            @Override
+            IndexedIterator<Entry<byte[], byte[]>> iterator(DataStore<byte[], byte[]> p) {
+                return p.iterator();
+            }
+        };
+    }
+    
+    /**
+     * Runs a task on all the partitions in parallel, the first one in the calling thread,
+     * and waits for all of them to complete.
+     * 
+     * @throws IOException the first failure of the task.
+     */
+    private void forEachPartition(final PartitionTask task) throws IOException {
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(partitions.length - 1);
+        for(int i = 1; i < partitions.length; i++) {
+            final DataStore<byte[], byte[]> p = partitions[i];
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    task.run(p);
+                    return null;
+                }
+            }));
+        }
+        
+        IOException failure = null;
+        try {
+            task.run(partitions[0]);
+        } catch(IOException e) {
+            failure = e;
+        }
+        
+        for(Future<Void> f : futures) {
+            try {
+                f.get();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for partitions");
+            } catch(ExecutionException e) {
+                if(failure == null) {
+                    failure = e.getCause() instanceof IOException ?
+                            (IOException)e.getCause() : new IOException(e.getCause());
+                }
+            }
+        }
+        
+        if(failure != null) {
+            throw failure;
+        }
+    }
+    
+    private static interface PartitionTask {
+        public void run(DataStore<byte[], byte[]> p) throws IOException;
+    }
+    
+    /**
+     * PartitionedIterator chains the iterators of all the partitions.
+     */
+    abstract class PartitionedIterator<E> implements IndexedIterator<E> {
+        private final int[] offsets = new int[partitions.length];
+        private final List<IndexedIterator<E>> iters = new ArrayList<IndexedIterator<E>>(partitions.length);
+        private int current = 0;
+        
+        PartitionedIterator() {
+            int offset = 0;
+            for(int i = 0; i < partitions.length; i++) {
+                offsets[i] = offset;
+                offset += partitions[i].capacity();
+                iters.add(iterator(partitions[i]));
+            }
+        }
+        
+        abstract IndexedIterator<E> iterator(DataStore<byte[], byte[]> p);
+        
+        @Override
+        public boolean hasNext() {
+            while(!iters.get(current).hasNext()) {
+                if(current == partitions.length - 1) {
+                    return false;
+                }
+                current++;
+                iters.get(current).reset(0);
+            }
+            return true;
+        }
+        
+        @Override
+        public E next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return iters.get(current).next();
+        }
+        
+        @Override
+        public void remove() {
+            iters.get(current).remove();
+        }
+        
+        @Override
+        public int index() {
+            return offsets[current] + iters.get(current).index();
+        }
+        
+        @Override
+        public void reset(int index) {
+            int p = 0;
+            while(p < partitions.length - 1 && index >= offsets[p + 1]) {
+                p++;
+            }
+            current = p;
+            iters.get(p).reset(Math.max(0, index - offsets[p]));
+        }
+        
+        /**
+         * @return the partition and the index within it, which do not move when other partitions grow.
+         * @see PartitionedDataStore#position(int, int)
+         */
+        long position() {
+            return PartitionedDataStore.position(current, iters.get(current).index());
+        }
+        
+        /**
+         * Moves to the specified position, past the end if its partition is out of range.
+         */
+        void seek(long position) {
+            int p = partitionOf(position);
+            if(p < partitions.length) {
+                current = p;
+                iters.get(p).reset(indexOf(position));
+            } else {
+                current = partitions.length - 1;
+                iters.get(current).reset(partitions[current].capacity());
+            }
+        }
+    }
+}
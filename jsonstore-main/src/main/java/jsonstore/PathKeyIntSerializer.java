@@ -11,7 +11,7 @@ import krati.io.serializer.IntSerializer;
  * @since 04/23, 2012
  */
 public class PathKeyIntSerializer implements Serializer<String> {
-    private final Serializer<Integer> serializer;
+    private final IntSerializer serializer;
     
     /**
      * Constructs a new instance of PathKeyIntSerializer.
@@ -22,14 +22,13 @@ public class PathKeyIntSerializer implements Serializer<String> {
     
     @Override
     public String deserialize(byte[] keyBytes) throws SerializationException {
-        return serializer.deserialize(keyBytes).toString();
+        return String.valueOf(serializer.intValue(keyBytes));
     }
     
     @Override
     public byte[] serialize(String key) throws SerializationException {
         try {
-            Integer obj = new Integer(key);
-            return serializer.serialize(obj);
+            return serializer.intBytes(Integer.parseInt(key));
         } catch(Exception e) {
             throw new SerializationException("Failed to serialize: " + key, e);
         }
@@ -11,7 +11,7 @@ import krati.io.serializer.LongSerializer;
  * @since 04/23, 2012
  */
 public class PathKeyLongSerializer implements Serializer<String> {
-    private final Serializer<Long> serializer;
+    private final LongSerializer serializer;
     
     /**
      * Constructs a new instance of PathKeyLongSerializer.
@@ -22,14 +22,13 @@ public class PathKeyLongSerializer implements Serializer<String> {
     
     @Override
     public String deserialize(byte[] keyBytes) throws SerializationException {
-        return serializer.deserialize(keyBytes).toString();
+        return String.valueOf(serializer.longValue(keyBytes));
     }
     
     @Override
     public byte[] serialize(String key) throws SerializationException {
         try {
-            Long obj = new Long(key);
-            return serializer.serialize(obj);
+            return serializer.longBytes(Long.parseLong(key));
         } catch(Exception e) {
             throw new SerializationException("Failed to serialize: " + key, e);
         }
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * PrometheusFormat renders the metrics of a {@link JSONRepository} in the Prometheus text
+ * exposition format. Latencies are exported as summaries in seconds with the quantiles
+ * 0.5, 0.99 and 0.999.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class PrometheusFormat {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4";
+    
+    private static final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+    
+    private PrometheusFormat() {}
+    
+    /**
+     * Renders the metrics of the specified repository and its open stores.
+     * 
+     * @param repository - the repository
+     * @return the metrics in the Prometheus text format.
+     */
+    public static String format(JSONRepository repository) {
+        Map<String, JSONObjectStore<String>> stores = repository.getOpenStores();
+        StringBuilder sb = new StringBuilder(1024 + stores.size() * 4096);
+        
+        header(sb, "jsonstore_open_stores", "gauge", "Number of open stores.");
+        sb.append("jsonstore_open_stores ").append(repository.getOpenCount()).append('\n');
+        header(sb, "jsonstore_stores", "gauge", "Number of stores, open or not.");
+        sb.append("jsonstore_stores ").append(repository.getStoreCount()).append('\n');
+        
+        header(sb, "jsonstore_op_latency_seconds", "summary", "Latency of store operations.");
+        for(Map.Entry<String, JSONObjectStore<String>> e : stores.entrySet()) {
+            JSONStoreMetrics m = e.getValue().getMetrics();
+            summary(sb, "jsonstore_op_latency_seconds", e.getKey(), "get", m.getGetLatency());
+            summary(sb, "jsonstore_op_latency_seconds", e.getKey(), "put", m.getPutLatency());
+            summary(sb, "jsonstore_op_latency_seconds", e.getKey(), "delete", m.getDeleteLatency());
+        }
+        
+        header(sb, "jsonstore_persist_seconds", "summary", "Duration of store persists and syncs.");
+        for(Map.Entry<String, JSONObjectStore<String>> e : stores.entrySet()) {
+            JSONStoreMetrics m = e.getValue().getMetrics();
+            summary(sb, "jsonstore_persist_seconds", e.getKey(), "persist", m.getPersistLatency());
+            summary(sb, "jsonstore_persist_seconds", e.getKey(), "sync", m.getSyncLatency());
+        }
+        
+        header(sb, "jsonstore_unpersisted_writes", "gauge", "Number of writes since the last persist.");
+        for(Map.Entry<String, JSONObjectStore<String>> e : stores.entrySet()) {
+            sample(sb, "jsonstore_unpersisted_writes", e.getKey(), e.getValue().getUnpersistedWrites());
+        }
+        
+        header(sb, "jsonstore_stored_bytes_written_total", "counter", "Serialized bytes of the values written.");
+        for(Map.Entry<String, JSONObjectStore<String>> e : stores.entrySet()) {
+            sample(sb, "jsonstore_stored_bytes_written_total", e.getKey(), e.getValue().getMetrics().getStoredBytes());
+        }
+        
+        header(sb, "jsonstore_stored_bytes_read_total", "counter", "Serialized bytes of the values read from the store.");
+        for(Map.Entry<String, JSONObjectStore<String>> e : stores.entrySet()) {
+            sample(sb, "jsonstore_stored_bytes_read_total", e.getKey(), e.getValue().getMetrics().getReadBytes());
+        }
+        
+        header(sb, "jsonstore_compression_ratio", "gauge", "Sampled ratio of raw JSON size to serialized size.");
+        for(Map.Entry<String, JSONObjectStore<String>> e : stores.entrySet()) {
+            sample(sb, "jsonstore_compression_ratio", e.getKey(), e.getValue().getMetrics().getCompressionRatio());
+        }
+        
+        header(sb, "jsonstore_cache_hits_total", "counter", "Number of value cache hits.");
+        for(Map.Entry<String, JSONObjectStore<String>> e : stores.entrySet()) {
+            JSONObjectCache<String> c = e.getValue().getCache();
+            if(c != null) {
+                sample(sb, "jsonstore_cache_hits_total", e.getKey(), c.getHitCount());
+            }
+        }
+        
+        header(sb, "jsonstore_cache_misses_total", "counter", "Number of value cache misses.");
+        for(Map.Entry<String, JSONObjectStore<String>> e : stores.entrySet()) {
+            JSONObjectCache<String> c = e.getValue().getCache();
+            if(c != null) {
+                sample(sb, "jsonstore_cache_misses_total", e.getKey(), c.getMissCount());
+            }
+        }
+        
+        // Segment statistics are gathered once per store
+        Map<String, JSONObject> compactions = new HashMap<String, JSONObject>();
+        for(Map.Entry<String, JSONObjectStore<String>> e : stores.entrySet()) {
+            compactions.put(e.getKey(), e.getValue().getCompaction().getStats());
+        }
+        
+        header(sb, "jsonstore_segments", "gauge", "Number of live segments.");
+        for(Map.Entry<String, JSONObject> e : compactions.entrySet()) {
+            sample(sb, "jsonstore_segments", e.getKey(), e.getValue().optDouble("segments", 0));
+        }
+        
+        header(sb, "jsonstore_segment_load_factor", "gauge", "Ratio of live bytes to segment bytes.");
+        for(Map.Entry<String, JSONObject> e : compactions.entrySet()) {
+            sample(sb, "jsonstore_segment_load_factor", e.getKey(), e.getValue().optDouble("loadFactor", 0));
+        }
+        
+        header(sb, "jsonstore_reclaimable_bytes", "gauge", "Bytes of overwritten and deleted values reclaimable by compaction.");
+        for(Map.Entry<String, JSONObject> e : compactions.entrySet()) {
+            sample(sb, "jsonstore_reclaimable_bytes", e.getKey(), e.getValue().optDouble("reclaimableBytes", 0));
+        }
+        
+        return sb.toString();
+    }
+    
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+    
+    private static void sample(StringBuilder sb, String name, String store, double value) {
+        sb.append(name).append("{store=\"");
+        escape(sb, store);
+        sb.append("\"} ").append(value).append('\n');
+    }
+    
+    private static void summary(StringBuilder sb, String name, String store, String op, LatencyHistogram histogram) {
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        for(double q : QUANTILES) {
+            labels(sb.append(name), store, op).append(",quantile=\"").append(q).append("\"} ");
+            sb.append(snapshot.getQuantile(q) / 1e9).append('\n');
+        }
+        labels(sb.append(name).append("_sum"), store, op).append("} ").append(snapshot.getSum() / 1e9).append('\n');
+        labels(sb.append(name).append("_count"), store, op).append("} ").append(snapshot.getCount()).append('\n');
+    }
+    
+    private static StringBuilder labels(StringBuilder sb, String store, String op) {
+        sb.append("{store=\"");
+        escape(sb, store);
+        return sb.append("\",op=\"").append(op).append('"');
+    }
+    
+    /**
+     * Escapes a label value, in which backslash, double-quote and line feed must be escaped.
+     */
+    static void escape(StringBuilder sb, String value) {
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == '\\' || c == '"') {
+                sb.append('\\').append(c);
+            } else if(c == '\n') {
+                sb.append("\\n");
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+}
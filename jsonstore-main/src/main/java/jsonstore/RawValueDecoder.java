@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.IOException;
+
+/**
+ * RawValueDecoder is implemented by value serializers that can turn stored bytes into
+ * JSON text (or gzip'd JSON text) without building a JSON object. {@link JSONObjectStore}
+ * falls back to deserializing and rendering the value for other serializers.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public interface RawValueDecoder {
+    
+    /**
+     * Converts stored bytes to the wire form of the JSON value.
+     * 
+     * @param bytes - the stored bytes
+     * @return the raw JSON value
+     * @throws IOException if the stored bytes are corrupted.
+     */
+    public JSONRawValue toRawValue(byte[] bytes) throws IOException;
+    
+    /**
+     * Converts stored bytes to the JSON text of the projected value, streaming over
+     * the decoded value without building a JSON object.
+     * 
+     * @param bytes      - the stored bytes
+     * @param projection - the projection
+     * @return the raw JSON text of the projected value
+     * @throws IOException if the stored bytes are corrupted.
+     */
+    public JSONRawValue toRawValue(byte[] bytes, JSONProjection projection) throws IOException;
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.File;
+
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * StoreConfigurable is implemented by key and value serializers that need the
+ * store directory or the store configuration. {@link JSONRepository} calls
+ * {@link #configure(File, JSONObject)} right after instantiating the serializer
+ * and before the JSON store is opened.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public interface StoreConfigurable {
+    
+    /**
+     * Configures this object for a JSON store.
+     * 
+     * @param storeDir - the JSON store directory
+     * @param config   - the completed JSON store configuration
+     * @throws Exception if this object cannot be configured.
+     */
+    public void configure(File storeDir, JSONObject config) throws Exception;
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.IOException;
+
+/**
+ * ValueCodec compresses stored values. Every encoded value starts with the one-byte
+ * codec id, followed by a codec-specific header that records the raw length, so that
+ * decoding allocates the exact output size up front.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ * @see ValueCodecs
+ */
+public interface ValueCodec {
+    
+    /**
+     * @return the one-byte id leading every value encoded by this codec.
+     */
+    public byte getId();
+    
+    /**
+     * @return the codec name used in the store configuration.
+     */
+    public String getName();
+    
+    /**
+     * Encodes raw bytes into a value starting with the codec id.
+     * 
+     * @param raw - the raw bytes
+     * @param off - the offset of raw bytes
+     * @param len - the number of raw bytes
+     * @return the encoded value
+     * @throws IOException
+     */
+    public byte[] encode(byte[] raw, int off, int len) throws IOException;
+    
+    /**
+     * Decodes a value encoded by this codec.
+     * 
+     * @param value - the encoded value starting with the codec id
+     * @return the raw bytes
+     * @throws IOException if the value is corrupted.
+     */
+    public byte[] decode(byte[] value) throws IOException;
+}
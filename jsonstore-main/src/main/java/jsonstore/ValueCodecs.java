@@ -0,0 +1,512 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * ValueCodecs is the registry of the built-in {@link ValueCodec}s and holds the pools of
+ * deflaters, inflaters and buffers shared by them. Values are laid out as below.
+ * 
+ * <pre>
+ *   'N' | raw bytes
+ *   '1'..'9' | raw length (varint) | raw deflate data at that level
+ *   'G' | gzip member
+ *   'L' | raw length (varint) | LZ block
+ *   'D' | dictionary id (varint) | raw length (varint) | raw deflate data
+ * </pre>
+ * 
+ * <p>
+ * Legacy values written as plain gzip start with the gzip magic <code>0x1f 0x8b</code>,
+ * which does not collide with any codec id.
+ * </p>
+ * 
+ * <p>
+ * Releases before the codec ids were introduced read every value as a plain gzip member,
+ * and cannot read the values written by any codec, <code>gzip</code> included. A store
+ * written by this release cannot be opened by an earlier one, so downgrades need a backup
+ * of the data taken before the upgrade.
+ * </p>
+ * 
+ * <p>
+ * Deflaters and inflaters hold native memory until they are ended. They are borrowed
+ * from bounded pools shared by all threads, and those released to a full pool are ended.
+ * </p>
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class ValueCodecs {
+    public static final byte NONE_ID = 'N';
+    public static final byte GZIP_ID = 'G';
+    public static final byte LZ_ID = 'L';
+    public static final byte DICTIONARY_ID = 'D';
+    
+    /**
+     * The values stored as is.
+     */
+    public static final ValueCodec NONE = new NoneCodec();
+    
+    /**
+     * The values stored as gzip members, which can be served to HTTP clients as is.
+     */
+    public static final ValueCodec GZIP = new GzipCodec();
+    
+    /**
+     * The values compressed by the fast LZ codec.
+     */
+    public static final ValueCodec LZ = new LZValueCodec();
+    
+    /**
+     * The deflate codecs by level (1 to 9).
+     */
+    private static final ValueCodec[] DEFLATE = new ValueCodec[10];
+    
+    static {
+        for(int level = 1; level < DEFLATE.length; level++) {
+            DEFLATE[level] = new DeflateCodec(level);
+        }
+    }
+    
+    /**
+     * Pooled buffers larger than this are not kept by threads.
+     */
+    private static final int MAX_POOLED_BUFFER = 1 << 20;
+    
+    private static final ThreadLocal<byte[]> bufferPool = new ThreadLocal<byte[]>();
+    
+    /**
+     * The maximum number of idle deflaters kept for each level, and of idle inflaters.
+     */
+    private static final int MAX_POOLED_CODERS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    
+    private static final List<BlockingQueue<Deflater>> deflaterPools = new ArrayList<BlockingQueue<Deflater>>(10);
+    
+    private static final BlockingQueue<Inflater> inflaterPool = new ArrayBlockingQueue<Inflater>(MAX_POOLED_CODERS);
+    
+    static {
+        for(int level = 0; level < 10; level++) {
+            deflaterPools.add(new ArrayBlockingQueue<Deflater>(MAX_POOLED_CODERS));
+        }
+    }
+    
+    private static final ThreadLocal<CRC32> crcPool = new ThreadLocal<CRC32>() {
+        @Override
+        protected CRC32 initialValue() {
+            return new CRC32();
+        }
+    };
+    
+    private static final byte[] GZIP_HEADER = {
+        0x1f, (byte)0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0
+    };
+    
+    private ValueCodecs() {}
+    
+    /**
+     * Gets the built-in codec with the specified name: <code>none</code>, <code>gzip</code>,
+     * <code>lz</code>, <code>deflate</code> (level 6) or <code>deflate-1</code> to <code>deflate-9</code>.
+     * 
+     * @param name - the codec name
+     * @return the codec or <code>null</code> if the name is unknown.
+     */
+    public static ValueCodec forName(String name) {
+        if(name.equals("deflate")) {
+            return DEFLATE[6];
+        }
+        if(name.equals(NONE.getName())) {
+            return NONE;
+        }
+        if(name.equals(GZIP.getName())) {
+            return GZIP;
+        }
+        if(name.equals(LZ.getName())) {
+            return LZ;
+        }
+        for(int level = 1; level < DEFLATE.length; level++) {
+            if(name.equals(DEFLATE[level].getName())) {
+                return DEFLATE[level];
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Gets the built-in codec with the specified id.
+     * 
+     * @param id - the codec id
+     * @return the codec or <code>null</code> if the id is unknown.
+     */
+    public static ValueCodec forId(byte id) {
+        switch(id) {
+        case NONE_ID:
+            return NONE;
+        case GZIP_ID:
+            return GZIP;
+        case LZ_ID:
+            return LZ;
+        default:
+            int level = id - '0';
+            return (level >= 1 && level <= 9) ? DEFLATE[level] : null;
+        }
+    }
+    
+    /**
+     * Checks whether the specified value is a plain gzip member written before codecs were introduced.
+     */
+    public static boolean isGzip(byte[] value) {
+        return value.length >= 18 && value[0] == 0x1f && value[1] == (byte)0x8b;
+    }
+    
+    /**
+     * Compresses the specified bytes into a gzip member.
+     */
+    public static byte[] gzip(byte[] raw, int off, int len) {
+        byte[] buf = buffer(len + (len >> 12) + (len >> 14) + 64);
+        int pos = writeGzip(raw, off, len, buf, 0);
+        return Arrays.copyOf(buf, pos);
+    }
+    
+    /**
+     * Decompresses the gzip member starting at the specified offset of a value.
+     */
+    public static byte[] gunzip(byte[] value, int off) throws IOException {
+        int end = value.length;
+        if(end - off < 18 || value[off] != 0x1f || value[off + 1] != (byte)0x8b || value[off + 2] != Deflater.DEFLATED) {
+            throw new IOException("Not in gzip format");
+        }
+        
+        // Skip the optional header fields
+        int flags = value[off + 3] & 0xFF;
+        int pos = off + 10;
+        if((flags & 4) != 0) {
+            pos += 2 + ((value[pos] & 0xFF) | (value[pos + 1] & 0xFF) << 8);
+        }
+        if((flags & 8) != 0) {
+            while(pos < end && value[pos++] != 0);
+        }
+        if((flags & 16) != 0) {
+            while(pos < end && value[pos++] != 0);
+        }
+        if((flags & 2) != 0) {
+            pos += 2;
+        }
+        if(pos > end - 8) {
+            throw new IOException("Truncated value");
+        }
+        
+        // The trailer records the CRC32 and the size of raw bytes
+        int crc = readIntLE(value, end - 8);
+        int size = readIntLE(value, end - 4);
+        if(size < 0) {
+            throw new IOException("Value too large");
+        }
+        
+        byte[] raw = new byte[size];
+        Inflater inflater = acquireInflater();
+        try {
+            inflate(inflater, value, pos, end - 8 - pos, raw);
+        } finally {
+            release(inflater);
+        }
+        
+        CRC32 crc32 = crcPool.get();
+        crc32.reset();
+        crc32.update(raw, 0, size);
+        if((int)crc32.getValue() != crc) {
+            throw new IOException("Corrupt gzip value");
+        }
+        return raw;
+    }
+    
+    /**
+     * Writes the specified bytes as a gzip member into a buffer large enough.
+     * 
+     * @return the end position in the buffer.
+     */
+    static int writeGzip(byte[] raw, int off, int len, byte[] buf, int pos) {
+        System.arraycopy(GZIP_HEADER, 0, buf, pos, GZIP_HEADER.length);
+        Deflater deflater = acquireDeflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            pos = deflate(deflater, raw, off, len, buf, pos + GZIP_HEADER.length);
+        } finally {
+            release(deflater, Deflater.DEFAULT_COMPRESSION);
+        }
+        
+        CRC32 crc32 = crcPool.get();
+        crc32.reset();
+        crc32.update(raw, off, len);
+        pos = writeIntLE((int)crc32.getValue(), buf, pos);
+        return writeIntLE(len, buf, pos);
+    }
+    
+    /**
+     * Borrows a deflater for the specified level (1 to 9, or {@link Deflater#DEFAULT_COMPRESSION})
+     * producing raw deflate data, which must be released by {@link #release(Deflater, int)}.
+     */
+    static Deflater acquireDeflater(int level) {
+        if(level == Deflater.DEFAULT_COMPRESSION) {
+            level = 6;
+        }
+        
+        Deflater deflater = deflaterPools.get(level).poll();
+        return deflater == null ? new Deflater(level, true) : deflater;
+    }
+    
+    /**
+     * Returns a deflater borrowed for the specified level, which is ended if the pool is full.
+     */
+    static void release(Deflater deflater, int level) {
+        if(level == Deflater.DEFAULT_COMPRESSION) {
+            level = 6;
+        }
+        
+        deflater.reset();
+        if(!deflaterPools.get(level).offer(deflater)) {
+            deflater.end();
+        }
+    }
+    
+    /**
+     * Borrows an inflater for raw deflate data, which must be released by {@link #release(Inflater)}.
+     */
+    static Inflater acquireInflater() {
+        Inflater inflater = inflaterPool.poll();
+        return inflater == null ? new Inflater(true) : inflater;
+    }
+    
+    /**
+     * Returns a borrowed inflater, which is ended if the pool is full.
+     */
+    static void release(Inflater inflater) {
+        inflater.reset();
+        if(!inflaterPool.offer(inflater)) {
+            inflater.end();
+        }
+    }
+    
+    /**
+     * Gets a buffer of the current thread with at least the specified size.
+     * The buffer is only valid until the next call from the same thread.
+     */
+    static byte[] buffer(int size) {
+        byte[] buf = bufferPool.get();
+        if(buf == null || buf.length < size) {
+            buf = new byte[Math.max(size, 4096)];
+            if(size <= MAX_POOLED_BUFFER) {
+                bufferPool.set(buf);
+            }
+        }
+        return buf;
+    }
+    
+    /**
+     * @return the maximum size of raw deflate data for the specified number of raw bytes.
+     */
+    static int deflateBound(int len) {
+        return len + (len >> 12) + (len >> 14) + (len >> 25) + 13;
+    }
+    
+    /**
+     * Deflates raw bytes into a buffer with room for {@link #deflateBound(int)} bytes.
+     * 
+     * @return the end position in the buffer.
+     */
+    static int deflate(Deflater deflater, byte[] raw, int off, int len, byte[] buf, int pos) {
+        deflater.setInput(raw, off, len);
+        deflater.finish();
+        while(!deflater.finished()) {
+            int n = deflater.deflate(buf, pos, buf.length - pos);
+            if(n == 0 && pos == buf.length) {
+                throw new IllegalStateException("Deflate buffer overflow");
+            }
+            pos += n;
+        }
+        return pos;
+    }
+    
+    /**
+     * Inflates raw deflate data into the specified array, which must be filled exactly.
+     */
+    static void inflate(Inflater inflater, byte[] value, int off, int len, byte[] raw) throws IOException {
+        inflater.setInput(value, off, len);
+        try {
+            int pos = 0;
+            while(pos < raw.length) {
+                int n = inflater.inflate(raw, pos, raw.length - pos);
+                if(n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated value");
+                }
+                pos += n;
+            }
+        } catch(DataFormatException e) {
+            throw new IOException("Corrupt value", e);
+        }
+    }
+    
+    static int writeVarInt(int value, byte[] buf, int pos) {
+        while((value & ~0x7F) != 0) {
+            buf[pos++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte)value;
+        return pos;
+    }
+    
+    static int readVarInt(byte[] buf, int[] pos) throws IOException {
+        int value = 0;
+        for(int shift = 0; shift < 32; shift += 7) {
+            if(pos[0] >= buf.length) {
+                throw new IOException("Truncated value");
+            }
+            byte b = buf[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0) {
+                if(value < 0) {
+                    throw new IOException("Malformed varint");
+                }
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+    
+    private static int writeIntLE(int value, byte[] buf, int pos) {
+        buf[pos++] = (byte)value;
+        buf[pos++] = (byte)(value >>> 8);
+        buf[pos++] = (byte)(value >>> 16);
+        buf[pos++] = (byte)(value >>> 24);
+        return pos;
+    }
+    
+    private static int readIntLE(byte[] buf, int pos) {
+        return (buf[pos] & 0xFF) | (buf[pos + 1] & 0xFF) << 8 | (buf[pos + 2] & 0xFF) << 16 | (buf[pos + 3] & 0xFF) << 24;
+    }
+    
+    /**
+     * Stores values as is.
+     */
+    private static final class NoneCodec implements ValueCodec {
+        @Override
+        public byte getId() {
+            return NONE_ID;
+        }
+        
+        @Override
+        public String getName() {
+            return "none";
+        }
+        
+        @Override
+        public byte[] encode(byte[] raw, int off, int len) {
+            byte[] value = new byte[len + 1];
+            value[0] = NONE_ID;
+            System.arraycopy(raw, off, value, 1, len);
+            return value;
+        }
+        
+        @Override
+        public byte[] decode(byte[] value) {
+            return Arrays.copyOfRange(value, 1, value.length);
+        }
+    }
+    
+    /**
+     * Stores values as raw deflate data at a fixed level.
+     */
+    private static final class DeflateCodec implements ValueCodec {
+        private final int level;
+        
+        DeflateCodec(int level) {
+            this.level = level;
+        }
+        
+        @Override
+        public byte getId() {
+            return (byte)('0' + level);
+        }
+        
+        @Override
+        public String getName() {
+            return "deflate-" + level;
+        }
+        
+        @Override
+        public byte[] encode(byte[] raw, int off, int len) {
+            byte[] buf = buffer(deflateBound(len) + 6);
+            buf[0] = getId();
+            int pos = writeVarInt(len, buf, 1);
+            Deflater deflater = acquireDeflater(level);
+            try {
+                pos = deflate(deflater, raw, off, len, buf, pos);
+            } finally {
+                release(deflater, level);
+            }
+            return Arrays.copyOf(buf, pos);
+        }
+        
+        @Override
+        public byte[] decode(byte[] value) throws IOException {
+            int[] pos = new int[] { 1 };
+            byte[] raw = new byte[readVarInt(value, pos)];
+            Inflater inflater = acquireInflater();
+            try {
+                inflate(inflater, value, pos[0], value.length - pos[0], raw);
+            } finally {
+                release(inflater);
+            }
+            return raw;
+        }
+    }
+    
+    /**
+     * Stores values as gzip members behind the codec id.
+     */
+    private static final class GzipCodec implements ValueCodec {
+        @Override
+        public byte getId() {
+            return GZIP_ID;
+        }
+        
+        @Override
+        public String getName() {
+            return "gzip";
+        }
+        
+        @Override
+        public byte[] encode(byte[] raw, int off, int len) {
+            byte[] buf = buffer(deflateBound(len) + 32);
+            buf[0] = GZIP_ID;
+            int pos = writeGzip(raw, off, len, buf, 1);
+            return Arrays.copyOf(buf, pos);
+        }
+        
+        @Override
+        public byte[] decode(byte[] value) throws IOException {
+            return gunzip(value, 1);
+        }
+    }
+}
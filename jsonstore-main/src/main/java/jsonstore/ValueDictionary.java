@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ValueDictionary is a preset deflate dictionary trained from sample values of a JSON store.
+ * Dictionaries are saved as <code>dictionary-&lt;id&gt;.bin</code> in the store directory
+ * and are never modified once saved, so that values compressed against an older dictionary
+ * remain readable after re-training.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public final class ValueDictionary {
+    /**
+     * The maximum dictionary size supported by deflate.
+     */
+    public static final int MAX_SIZE = 32 * 1024;
+    
+    /**
+     * The length of grams for finding shared byte sequences.
+     */
+    private static final int GRAM = 8;
+    
+    /**
+     * The maximum length of a dictionary segment.
+     */
+    private static final int MAX_SEGMENT = 256;
+    
+    private static final Pattern FILE_NAME = Pattern.compile("dictionary-(\\d+)\\.bin");
+    
+    private final int id;
+    private final byte[] bytes;
+    
+    /**
+     * Constructs a new instance of ValueDictionary.
+     * 
+     * @param id    - the dictionary id, which must be positive
+     * @param bytes - the dictionary content
+     */
+    public ValueDictionary(int id, byte[] bytes) {
+        if(id <= 0) {
+            throw new IllegalArgumentException("Invalid dictionary id: " + id);
+        }
+        this.id = id;
+        this.bytes = bytes;
+    }
+    
+    /**
+     * @return the dictionary id.
+     */
+    public int getId() {
+        return id;
+    }
+    
+    /**
+     * @return the dictionary content.
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+    
+    /**
+     * Saves this dictionary in the specified store directory.
+     * 
+     * @param storeDir - the JSON store directory
+     * @throws IOException if the dictionary file already exists or cannot be written.
+     */
+    public void save(File storeDir) throws IOException {
+        File file = new File(storeDir, "dictionary-" + id + ".bin");
+        if(file.exists()) {
+            throw new IOException(file.getAbsolutePath() + " already exists");
+        }
+        
+        File tmpFile = new File(storeDir, file.getName() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmpFile);
+        try {
+            out.write(bytes);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        
+        if(!tmpFile.renameTo(file)) {
+            throw new IOException(file.getAbsolutePath() + " not saved");
+        }
+    }
+    
+    /**
+     * Loads all the dictionaries from the specified store directory.
+     * 
+     * @param storeDir - the JSON store directory
+     * @return the dictionaries sorted by id.
+     * @throws IOException
+     */
+    public static List<ValueDictionary> loadAll(File storeDir) throws IOException {
+        List<ValueDictionary> list = new ArrayList<ValueDictionary>();
+        File[] files = storeDir.listFiles();
+        if(files == null) {
+            return list;
+        }
+        
+        for(File file : files) {
+            Matcher m = FILE_NAME.matcher(file.getName());
+            if(m.matches()) {
+                list.add(new ValueDictionary(Integer.parseInt(m.group(1)), readFile(file)));
+            }
+        }
+        
+        Collections.sort(list, new Comparator<ValueDictionary>() {
+            @Override
+            public int compare(ValueDictionary d1, ValueDictionary d2) {
+                return d1.id < d2.id ? -1 : (d1.id == d2.id ? 0 : 1);
+            }
+        });
+        
+        return list;
+    }
+    
+    /**
+     * Trains a dictionary from sample JSON texts. Byte sequences shared by many samples
+     * (field names with their punctuation, common prefixes of string values, enumerated values)
+     * are collected as segments and ranked by the number of bytes they can save. The best
+     * segments are placed at the end of the dictionary where deflate finds them with the
+     * shortest distances.
+     * 
+     * @param id       - the dictionary id
+     * @param samples  - the UTF-8 JSON texts of sample values
+     * @param maxBytes - the maximum dictionary size
+     * @return the trained dictionary or <code>null</code> if the samples have nothing in common.
+     */
+    public static ValueDictionary train(int id, List<byte[]> samples, int maxBytes) {
+        maxBytes = Math.min(Math.max(maxBytes, 256), MAX_SIZE);
+        int minCount = Math.max(2, samples.size() / 100);
+        
+        // Count the number of samples that each 8-byte gram occurs in
+        Map<Long, int[]> gramCounts = new HashMap<Long, int[]>();
+        Set<Long> grams = new HashSet<Long>();
+        for(byte[] sample : samples) {
+            grams.clear();
+            for(int i = 0; i + GRAM <= sample.length; i++) {
+                grams.add(gram(sample, i));
+            }
+            increment(gramCounts, grams);
+        }
+        
+        // Merge the frequent grams of each sample into segments
+        Set<String> candidates = new HashSet<String>();
+        for(byte[] sample : samples) {
+            int start = -1, end = -1;
+            for(int i = 0; i + GRAM <= sample.length; i++) {
+                if(gramCounts.get(gram(sample, i))[0] >= minCount) {
+                    if(i > end || end - start >= MAX_SEGMENT) {
+                        if(start >= 0) {
+                            candidates.add(segment(sample, start, end));
+                        }
+                        start = i;
+                    }
+                    end = i + GRAM;
+                }
+            }
+            if(start >= 0) {
+                candidates.add(segment(sample, start, end));
+            }
+        }
+        
+        if(candidates.isEmpty()) {
+            return null;
+        }
+        
+        // Greedily pick the segments covering the most frequent grams not covered yet
+        PriorityQueue<Segment> queue = new PriorityQueue<Segment>(candidates.size());
+        Set<Long> covered = new HashSet<Long>();
+        for(String text : candidates) {
+            Segment seg = new Segment(text);
+            seg.score(gramCounts, minCount, covered);
+            queue.add(seg);
+        }
+        
+        List<String> picked = new ArrayList<String>();
+        int total = 0;
+        while(!queue.isEmpty() && total < maxBytes) {
+            Segment seg = queue.poll();
+            long score = seg.score;
+            if(seg.score(gramCounts, minCount, covered) < score) {
+                // Re-rank since other picked segments covered some of its grams
+                if(seg.score > 0) {
+                    queue.add(seg);
+                }
+                continue;
+            }
+            
+            if(score == 0 || total + seg.text.length() > maxBytes) {
+                continue;
+            }
+            
+            picked.add(seg.text);
+            total += seg.text.length();
+            seg.cover(covered);
+        }
+        
+        // Place the best segment last where deflate finds it with the shortest distance
+        byte[] dict = new byte[total];
+        int pos = 0;
+        for(int i = picked.size() - 1; i >= 0; i--) {
+            String text = picked.get(i);
+            for(int j = 0; j < text.length(); j++) {
+                dict[pos++] = (byte)text.charAt(j);
+            }
+        }
+        
+        return new ValueDictionary(id, dict);
+    }
+    
+    /**
+     * A candidate segment of a dictionary in training.
+     */
+    private static final class Segment implements Comparable<Segment> {
+        final String text;
+        long score;
+        
+        Segment(String text) {
+            this.text = text;
+        }
+        
+        long score(Map<Long, int[]> gramCounts, int minCount, Set<Long> covered) {
+            long sum = 0;
+            for(int i = 0; i + GRAM <= text.length(); i++) {
+                Long g = gram(text, i);
+                int cnt = gramCounts.get(g)[0];
+                if(cnt >= minCount && !covered.contains(g)) {
+                    sum += cnt;
+                }
+            }
+            return score = sum;
+        }
+        
+        void cover(Set<Long> covered) {
+            for(int i = 0; i + GRAM <= text.length(); i++) {
+                covered.add(gram(text, i));
+            }
+        }
+        
+        @Override
+        public int compareTo(Segment o) {
+            return score > o.score ? -1 : (score == o.score ? text.compareTo(o.text) : 1);
+        }
+    }
+    
+    private static long gram(byte[] b, int off) {
+        long g = 0;
+        for(int i = 0; i < GRAM; i++) {
+            g = (g << 8) | (b[off + i] & 0xFF);
+        }
+        return g;
+    }
+    
+    private static long gram(String s, int off) {
+        long g = 0;
+        for(int i = 0; i < GRAM; i++) {
+            g = (g << 8) | (s.charAt(off + i) & 0xFF);
+        }
+        return g;
+    }
+    
+    private static String segment(byte[] b, int start, int end) {
+        // One char per byte so that segments map back to the original bytes
+        char[] chars = new char[end - start];
+        for(int i = start; i < end; i++) {
+            chars[i - start] = (char)(b[i] & 0xFF);
+        }
+        return new String(chars);
+    }
+    
+    private static <T> void increment(Map<T, int[]> counts, Set<T> keys) {
+        for(T key : keys) {
+            int[] cnt = counts.get(key);
+            if(cnt == null) {
+                counts.put(key, new int[] { 1 });
+            } else {
+                cnt[0]++;
+            }
+        }
+    }
+    
+    private static byte[] readFile(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            byte[] b = new byte[(int)file.length()];
+            int off = 0;
+            while(off < b.length) {
+                int len = in.read(b, off, b.length - off);
+                if(len < 0) {
+                    throw new IOException(file.getAbsolutePath() + " truncated");
+                }
+                off += len;
+            }
+            return b;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import junit.framework.TestCase;
+
+/**
+ * TestJSONETag
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public class TestJSONETag extends TestCase {
+    private final String etag = JSONETag.of("{\"a\":1}".getBytes());
+    private final String other = JSONETag.of("{\"a\":2}".getBytes());
+    
+    public void testOf() {
+        assertNull(JSONETag.of(null));
+        assertEquals("\"cbf29ce484222325\"", JSONETag.of(new byte[0]));
+        assertEquals(18, etag.length());
+        assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+        assertEquals(etag, JSONETag.of("{\"a\":1}".getBytes()));
+        assertFalse(etag.equals(other));
+    }
+    
+    public void testIfMatch() {
+        assertTrue(JSONETag.ifMatch(null, etag));
+        assertTrue(JSONETag.ifMatch(null, null));
+        assertTrue(JSONETag.ifMatch(etag, etag));
+        assertTrue(JSONETag.ifMatch(other + ", " + etag, etag));
+        assertTrue(JSONETag.ifMatch(" " + etag + " ", etag));
+        assertFalse(JSONETag.ifMatch(other, etag));
+        assertFalse(JSONETag.ifMatch(etag, null));
+    }
+    
+    /**
+     * <code>If-Match</code> uses the strong comparison, so weak tags never match.
+     */
+    public void testIfMatchWeak() {
+        assertFalse(JSONETag.ifMatch("W/" + etag, etag));
+        assertFalse(JSONETag.ifMatch("W/" + other + ", W/" + etag, etag));
+        assertTrue(JSONETag.ifMatch("W/" + etag + ", " + etag, etag));
+    }
+    
+    public void testIfMatchAny() {
+        assertTrue(JSONETag.ifMatch("*", etag));
+        assertFalse(JSONETag.ifMatch("*", null));
+    }
+    
+    public void testIfNoneMatch() {
+        assertTrue(JSONETag.ifNoneMatch(null, etag));
+        assertTrue(JSONETag.ifNoneMatch(null, null));
+        assertFalse(JSONETag.ifNoneMatch(etag, etag));
+        assertFalse(JSONETag.ifNoneMatch(other + "," + etag, etag));
+        assertTrue(JSONETag.ifNoneMatch(other, etag));
+        assertTrue(JSONETag.ifNoneMatch(etag, null));
+    }
+    
+    /**
+     * <code>If-None-Match</code> uses the weak comparison, so weak tags match their strong tags.
+     */
+    public void testIfNoneMatchWeak() {
+        assertFalse(JSONETag.ifNoneMatch("W/" + etag, etag));
+        assertFalse(JSONETag.ifNoneMatch("W/" + other + ", W/" + etag, etag));
+        assertTrue(JSONETag.ifNoneMatch("W/" + other, etag));
+        assertTrue(JSONETag.ifNoneMatch("W/" + etag, null));
+    }
+    
+    public void testIfNoneMatchAny() {
+        assertFalse(JSONETag.ifNoneMatch("*", etag));
+        assertTrue(JSONETag.ifNoneMatch("*", null));
+    }
+}
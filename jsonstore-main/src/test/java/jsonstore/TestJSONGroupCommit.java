@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * TestJSONGroupCommit
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public class TestJSONGroupCommit extends TestCase {
+    private static final String SOURCE = "Durable";
+    private static final int NUM_WRITERS = 8;
+    
+    private File homeDir;
+    private JSONRepository repository;
+    private JSONObjectStore<String> store;
+    
+    @Override
+    protected void setUp() throws Exception {
+        homeDir = File.createTempFile("jsonstore", "commit");
+        homeDir.delete();
+        homeDir.mkdirs();
+        
+        repository = new JSONRepository(homeDir, 60);
+        repository.putConfig(SOURCE, "{\"initialCapacity\":1000,\"segmentFileSizeMB\":8,\"groupCommitWindowMillis\":500}");
+        store = repository.create(SOURCE);
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        repository.close();
+        TestJSONRepository.delete(homeDir);
+    }
+    
+    /**
+     * Writers arriving within the window of the leader share its sync.
+     */
+    public void testConcurrentWritersShareSync() throws Exception {
+        final CyclicBarrier barrier = new CyclicBarrier(NUM_WRITERS);
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        List<Thread> writers = new ArrayList<Thread>();
+        for(int i = 0; i < NUM_WRITERS; i++) {
+            final String key = Integer.toString(i);
+            Thread t = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        barrier.await();
+                        store.put(key, new JSONObject().put("id", key));
+                        store.awaitDurable();
+                    } catch(Exception e) {
+                        failure.set(e);
+                    }
+                }
+            };
+            t.start();
+            writers.add(t);
+        }
+        for(Thread t : writers) {
+            t.join();
+        }
+        assertNull(failure.get());
+        
+        JSONObject stats = store.getGroupCommit().getStats();
+        assertEquals(NUM_WRITERS, stats.getLong("commits"));
+        assertEquals(1, stats.getLong("syncs"));
+    }
+    
+    /**
+     * A writer whose writes were synced by an earlier commit does not sync again.
+     */
+    public void testSyncedWritesNotSyncedAgain() throws Exception {
+        store.put("1", new JSONObject().put("id", 1));
+        store.awaitDurable();
+        store.awaitDurable();
+        
+        JSONObject stats = store.getGroupCommit().getStats();
+        assertEquals(2, stats.getLong("commits"));
+        assertEquals(1, stats.getLong("syncs"));
+        
+        store.put("2", new JSONObject().put("id", 2));
+        store.awaitDurable();
+        assertEquals(2, store.getGroupCommit().getStats().getLong("syncs"));
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * TestJSONIndexes
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public class TestJSONIndexes extends TestCase {
+    private static final String SOURCE = "Indexed";
+    private static final String SCHEMA = "{\"properties\":{\"score\":{\"type\":\"number\",\"index\":true}}}";
+    private static final int NUM_KEYS = 20000;
+    
+    private File homeDir;
+    private JSONRepository repository;
+    
+    /**
+     * The last score written by key, -1 for deleted keys.
+     */
+    private ConcurrentHashMap<String, Integer> scores;
+    
+    @Override
+    protected void setUp() throws Exception {
+        homeDir = File.createTempFile("jsonstore", "indexes");
+        homeDir.delete();
+        homeDir.mkdirs();
+        
+        repository = new JSONRepository(homeDir, 60);
+        repository.putConfig(SOURCE, "{\"initialCapacity\":" + NUM_KEYS + ",\"segmentFileSizeMB\":8}");
+        JSONObjectStore<String> store = repository.create(SOURCE);
+        scores = new ConcurrentHashMap<String, Integer>();
+        for(int i = 0; i < NUM_KEYS; i++) {
+            put(store, i, score(i, 0));
+        }
+        store.persist();
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        repository.close();
+        TestJSONRepository.delete(homeDir);
+    }
+    
+    /**
+     * @return a score unique to a key and version.
+     */
+    private static int score(int i, int version) {
+        return i * 100 + version % 100;
+    }
+    
+    private void put(JSONObjectStore<String> store, int i, int score) throws Exception {
+        store.put(Integer.toString(i), new JSONObject().put("score", score));
+        scores.put(Integer.toString(i), score);
+    }
+    
+    private void assertIndexed(JSONObjectStore<String> store) {
+        JSONIndex index = store.getIndexes().get("score");
+        assertNotNull(index);
+        int live = 0;
+        for(int i = 0; i < NUM_KEYS; i++) {
+            String key = Integer.toString(i);
+            int score = scores.get(key);
+            if(score >= 0) {
+                assertEquals("score of " + key, Arrays.asList(key), index.equalTo(score, 10));
+                live++;
+            }
+        }
+        assertEquals(live, index.size());
+    }
+    
+    private File indexFile() {
+        return new File(new File(new File(homeDir, SOURCE), "secondary"), "score.idx");
+    }
+    
+    /**
+     * An index whose file is missing when the store is opened is rebuilt from the store.
+     */
+    public void testMissingIndexFileRebuilt() throws Exception {
+        repository.putSchema(SOURCE, SCHEMA);
+        JSONObjectStore<String> store = repository.get(SOURCE);
+        assertIndexed(store);
+        store.persist();
+        assertTrue(indexFile().exists());
+        
+        // A write deletes the saved file, which no longer matches the store
+        put(store, 7, score(7, 1));
+        assertFalse(indexFile().exists());
+        store.persist();
+        assertTrue(indexFile().exists());
+        
+        repository.close();
+        assertTrue(indexFile().delete());
+        repository = new JSONRepository(homeDir, 60);
+        store = repository.get(SOURCE);
+        assertIndexed(store);
+        
+        store.persist();
+        assertTrue(indexFile().exists());
+    }
+    
+    /**
+     * An index built while the store is updated and deleted from matches the store afterwards.
+     */
+    public void testBuildRacingUpdates() throws Exception {
+        final JSONObjectStore<String> store = repository.get(SOURCE);
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final AtomicInteger writes = new AtomicInteger();
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                Random random = new Random(5);
+                try {
+                    for(int version = 1; !stopped.get(); version++) {
+                        int i = random.nextInt(NUM_KEYS);
+                        if(random.nextInt(10) == 0) {
+                            store.delete(Integer.toString(i));
+                            scores.put(Integer.toString(i), -1);
+                        } else {
+                            put(store, i, score(i, version));
+                        }
+                        writes.incrementAndGet();
+                    }
+                } catch(Exception e) {
+                    failure.set(e);
+                }
+            }
+        };
+        writer.start();
+        while(writes.get() < 100) {
+            Thread.sleep(1);
+        }
+        
+        repository.putSchema(SOURCE, SCHEMA);
+        int built = writes.get();
+        while(writes.get() < built + 100) {
+            Thread.sleep(1);
+        }
+        stopped.set(true);
+        writer.join();
+        assertNull(failure.get());
+        
+        assertIndexed(store);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * TestJSONKeyIndex
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public class TestJSONKeyIndex extends TestCase {
+    private static JSONKeyIndex index(boolean numeric, String... keys) {
+        JSONKeyIndex index = new JSONKeyIndex(numeric);
+        for(String key : keys) {
+            index.update(key, true);
+        }
+        return index;
+    }
+    
+    private static List<String> list(Iterator<String> iter) {
+        List<String> keys = new ArrayList<String>();
+        while(iter.hasNext()) {
+            keys.add(iter.next());
+        }
+        return keys;
+    }
+    
+    private static void assertRange(JSONKeyIndex index, String from, String to, String prefix, String... expected) {
+        assertEquals(Arrays.asList(expected), list(index.range(from, to, prefix)));
+    }
+    
+    public void testNumericRange() {
+        JSONKeyIndex index = index(true, "10", "9", "100", "2", "-5", "10");
+        assertEquals(5, index.size());
+        
+        // Ordered by value, not as strings
+        assertRange(index, null, null, null, "-5", "2", "9", "10", "100");
+        assertRange(index, "9", "100", null, "9", "10");
+        assertRange(index, "3", null, null, "9", "10", "100");
+        assertRange(index, null, "9", null, "-5", "2");
+        assertRange(index, "10", "10", null);
+        assertRange(index, "100", "9", null);
+        
+        index.update("9", false);
+        assertRange(index, "3", "100", null, "10");
+        assertEquals(4, index.size());
+    }
+    
+    public void testNumericArguments() {
+        JSONKeyIndex index = index(true, "1");
+        try {
+            index.range(null, null, "1");
+            fail("prefix accepted for numeric keys");
+        } catch(IllegalArgumentException e) {}
+        try {
+            index.range("a", null, null);
+            fail("string bound accepted for numeric keys");
+        } catch(IllegalArgumentException e) {}
+        try {
+            index.update("a", true);
+            fail("string key accepted by a numeric index");
+        } catch(IllegalArgumentException e) {}
+    }
+    
+    public void testStringRangeAndPrefix() {
+        JSONKeyIndex index = index(false, "apple", "app", "apricot", "banana", "ap", "b", "10", "9");
+        assertRange(index, null, null, null, "10", "9", "ap", "app", "apple", "apricot", "b", "banana");
+        assertRange(index, null, null, "ap", "ap", "app", "apple", "apricot");
+        assertRange(index, "app", null, "ap", "app", "apple", "apricot");
+        assertRange(index, null, "apq", "ap", "ap", "app", "apple");
+        assertRange(index, "a", "apple", "app", "app");
+        assertRange(index, "aq", null, "ap");
+        assertRange(index, null, null, "c");
+        assertRange(index, "b", null, null, "b", "banana");
+        assertRange(index, "apple", "app", null);
+    }
+    
+    /**
+     * Keys deleted while the index is built are not loaded from the store afterwards.
+     */
+    public void testBuildRacingUpdates() {
+        JSONKeyIndex index = new JSONKeyIndex(true);
+        index.beginBuild();
+        index.load("1");
+        index.update("2", false);
+        index.update("3", true);
+        index.load("2");
+        index.load("3");
+        index.load("4");
+        index.endBuild();
+        assertRange(index, null, null, null, "1", "3", "4");
+        assertEquals(3, index.size());
+    }
+    
+    public void testSaveAndLoad() throws Exception {
+        File file = File.createTempFile("jsonstore", "keys");
+        try {
+            index(false, "b", "a", "c").write(file);
+            JSONKeyIndex loaded = new JSONKeyIndex(false);
+            loaded.load(file);
+            assertRange(loaded, null, null, null, "a", "b", "c");
+            assertEquals(3, loaded.size());
+            
+            try {
+                new JSONKeyIndex(true).load(file);
+                fail("string key index loaded as numeric");
+            } catch(IOException e) {}
+        } finally {
+            file.delete();
+        }
+    }
+}
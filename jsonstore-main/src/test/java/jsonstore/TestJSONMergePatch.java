@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * TestJSONMergePatch
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public class TestJSONMergePatch extends TestCase {
+    
+    private static void assertPatch(String target, String patch, String expected) throws JSONException {
+        JSONObject original = target == null ? null : new JSONObject(target);
+        JSONObject result = JSONMergePatch.apply(original, new JSONObject(patch));
+        assertTrue(target + " + " + patch + " = " + result, equal(new JSONObject(expected), result));
+        
+        // The target is left as is
+        if(target != null) {
+            assertTrue(equal(new JSONObject(target), original));
+        }
+    }
+    
+    private static boolean equal(Object o1, Object o2) throws JSONException {
+        if(o1 instanceof JSONObject && o2 instanceof JSONObject) {
+            JSONObject j1 = (JSONObject)o1;
+            JSONObject j2 = (JSONObject)o2;
+            if(j1.length() != j2.length()) {
+                return false;
+            }
+            Iterator<?> iter = j1.keys();
+            while(iter.hasNext()) {
+                String name = (String)iter.next();
+                if(!j2.has(name) || !equal(j1.get(name), j2.get(name))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if(o1 instanceof JSONArray && o2 instanceof JSONArray) {
+            JSONArray a1 = (JSONArray)o1;
+            JSONArray a2 = (JSONArray)o2;
+            if(a1.length() != a2.length()) {
+                return false;
+            }
+            for(int i = 0; i < a1.length(); i++) {
+                if(!equal(a1.get(i), a2.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return String.valueOf(o1).equals(String.valueOf(o2));
+    }
+    
+    /**
+     * The examples of RFC 7396 Appendix A with object patches.
+     */
+    public void testAppendixExamples() throws Exception {
+        assertPatch("{\"a\":\"b\"}", "{\"a\":\"c\"}", "{\"a\":\"c\"}");
+        assertPatch("{\"a\":\"b\"}", "{\"b\":\"c\"}", "{\"a\":\"b\",\"b\":\"c\"}");
+        assertPatch("{\"a\":\"b\"}", "{\"a\":null}", "{}");
+        assertPatch("{\"a\":\"b\",\"b\":\"c\"}", "{\"a\":null}", "{\"b\":\"c\"}");
+        assertPatch("{\"a\":[\"b\"]}", "{\"a\":\"c\"}", "{\"a\":\"c\"}");
+        assertPatch("{\"a\":\"c\"}", "{\"a\":[\"b\"]}", "{\"a\":[\"b\"]}");
+        assertPatch("{\"a\":{\"b\":\"c\"}}", "{\"a\":{\"b\":\"d\",\"c\":null}}", "{\"a\":{\"b\":\"d\"}}");
+        assertPatch("{\"a\":[{\"b\":\"c\"}]}", "{\"a\":[1]}", "{\"a\":[1]}");
+        assertPatch("{\"e\":null}", "{\"a\":1}", "{\"e\":null,\"a\":1}");
+        assertPatch("{}", "{\"a\":{\"bb\":{\"ccc\":null}}}", "{\"a\":{\"bb\":{}}}");
+    }
+    
+    /**
+     * A non-object target, such as <code>[1,2]</code> in RFC 7396 Appendix A, is replaced by an object.
+     */
+    public void testNoTarget() throws Exception {
+        assertPatch(null, "{\"a\":\"b\",\"c\":null}", "{\"a\":\"b\"}");
+        assertPatch("{\"a\":[1,2]}", "{\"a\":{\"b\":\"c\",\"d\":null}}", "{\"a\":{\"b\":\"c\"}}");
+    }
+    
+    /**
+     * The example of RFC 7396 Section 3.
+     */
+    public void testSectionExample() throws Exception {
+        String target =
+            "{" +
+            "  \"title\": \"Goodbye!\"," +
+            "  \"author\" : {" +
+            "    \"givenName\" : \"John\"," +
+            "    \"familyName\" : \"Doe\"" +
+            "  }," +
+            "  \"tags\":[ \"example\", \"sample\" ]," +
+            "  \"content\": \"This will be unchanged\"" +
+            "}";
+        String patch =
+            "{" +
+            "  \"title\": \"Hello!\"," +
+            "  \"phoneNumber\": \"+01-123-456-7890\"," +
+            "  \"author\": {" +
+            "    \"familyName\": null" +
+            "  }," +
+            "  \"tags\": [ \"example\" ]" +
+            "}";
+        String expected =
+            "{" +
+            "  \"title\": \"Hello!\"," +
+            "  \"author\" : {" +
+            "    \"givenName\" : \"John\"" +
+            "  }," +
+            "  \"tags\": [ \"example\" ]," +
+            "  \"content\": \"This will be unchanged\"," +
+            "  \"phoneNumber\": \"+01-123-456-7890\"" +
+            "}";
+        assertPatch(target, patch, expected);
+    }
+    
+    public void testEmptyPatch() throws Exception {
+        assertPatch("{\"a\":{\"b\":[1,2]},\"c\":3}", "{}", "{\"a\":{\"b\":[1,2]},\"c\":3}");
+        assertPatch(null, "{}", "{}");
+    }
+    
+    public void testRemoveMissingMember() throws Exception {
+        assertPatch("{\"a\":1}", "{\"b\":null,\"c\":{\"d\":null}}", "{\"a\":1,\"c\":{}}");
+    }
+    
+    public void testNestedTargetIsNotModified() throws Exception {
+        JSONObject target = new JSONObject("{\"a\":{\"b\":\"c\",\"d\":\"e\"}}");
+        JSONObject nested = target.getJSONObject("a");
+        JSONObject result = JSONMergePatch.apply(target, new JSONObject("{\"a\":{\"b\":null}}"));
+        
+        assertEquals(2, nested.length());
+        assertEquals("c", nested.getString("b"));
+        assertNotSame(nested, result.getJSONObject("a"));
+        assertFalse(result.getJSONObject("a").has("b"));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * TestJSONObjectCache
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public class TestJSONObjectCache extends TestCase {
+    private static JSONObjectCache.Entry entry(int version) {
+        return new JSONObjectCache.Entry(new byte[] { (byte)version }, null);
+    }
+    
+    /**
+     * A value read before a write and cached after it is dropped.
+     */
+    public void testWriteRacingFill() {
+        JSONObjectCache<String> cache = new JSONObjectCache<String>(1000, 0, JSONObjectCache.POLICY_LRU);
+        long version = cache.version("1");
+        JSONObjectCache.Entry stale = entry(0);
+        
+        // The writer updates the store and invalidates the key before the reader fills the cache
+        cache.invalidate("1");
+        assertFalse(cache.put("1", stale, version));
+        assertNull(cache.get("1"));
+        
+        // A value read after the write is cached
+        version = cache.version("1");
+        assertTrue(cache.put("1", entry(1), version));
+        assertEquals(1, cache.get("1").getBytes()[0]);
+    }
+    
+    public void testInvalidateAllRacingFill() {
+        JSONObjectCache<String> cache = new JSONObjectCache<String>(1000, 0, JSONObjectCache.POLICY_LRU);
+        long version = cache.version("1");
+        cache.invalidateAll();
+        assertFalse(cache.put("1", entry(0), version));
+        assertEquals(0, cache.size());
+    }
+    
+    public void testBoundedByEntries() {
+        JSONObjectCache<String> cache = new JSONObjectCache<String>(64, 0, JSONObjectCache.POLICY_LRU);
+        for(int i = 0; i < 1000; i++) {
+            String key = Integer.toString(i);
+            cache.put(key, entry(i), cache.version(key));
+        }
+        assertTrue(cache.size() <= 64);
+        assertTrue(cache.getEvictionCount() >= 1000 - 64);
+    }
+    
+    /**
+     * Readers filling the cache of a store while a writer updates a key never leave the cache
+     * with a value older than the last one written.
+     */
+    public void testConcurrentReadersAndWriter() throws Exception {
+        File homeDir = File.createTempFile("jsonstore", "cache");
+        homeDir.delete();
+        homeDir.mkdirs();
+        JSONRepository repository = new JSONRepository(homeDir, 60);
+        try {
+            repository.putConfig("Cache", "{\"initialCapacity\":1000,\"segmentFileSizeMB\":8,\"cacheMaxEntries\":100}");
+            final JSONObjectStore<String> store = repository.create("Cache");
+            final AtomicBoolean stopped = new AtomicBoolean();
+            final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+            Thread[] readers = new Thread[4];
+            for(int r = 0; r < readers.length; r++) {
+                readers[r] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            while(!stopped.get()) {
+                                store.get("1");
+                            }
+                        } catch(Exception e) {
+                            failure.set(e);
+                        }
+                    }
+                };
+                readers[r].start();
+            }
+            
+            try {
+                for(int version = 0; version < 2000; version++) {
+                    store.put("1", new JSONObject().put("version", version));
+                    assertEquals(version, store.get("1").getInt("version"));
+                }
+            } finally {
+                stopped.set(true);
+                for(Thread t : readers) {
+                    t.join();
+                }
+            }
+            assertNull(failure.get());
+            assertEquals(1999, store.get("1").getInt("version"));
+        } finally {
+            repository.close();
+            TestJSONRepository.delete(homeDir);
+        }
+    }
+}
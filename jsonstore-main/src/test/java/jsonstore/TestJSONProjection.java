@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import junit.framework.TestCase;
+
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * TestJSONProjection
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public class TestJSONProjection extends TestCase {
+    private static final String VALUE =
+        "{\"id\":7,\"title\":\"News\",\"author\":{\"name\":\"Joe\",\"email\":\"joe@example.com\"," +
+        "\"address\":{\"city\":\"Paris\",\"zip\":\"75001\"}},\"tags\":[\"a\",{\"b\":1}],\"empty\":{},\"none\":null}";
+    
+    private static String project(String fields, String json) throws Exception {
+        byte[] bytes = json.getBytes("UTF-8");
+        JSONRawValue value = JSONProjection.parse(fields).project(new JSONRawValue(bytes, 0, bytes.length, false));
+        return new String(value.getBytes(), value.getOffset(), value.getLength(), "UTF-8");
+    }
+    
+    private static String project(String fields) throws Exception {
+        return project(fields, VALUE);
+    }
+    
+    public void testTopLevelFields() throws Exception {
+        assertEquals("{\"id\":7,\"title\":\"News\"}", project("id,title"));
+        assertEquals("{\"title\":\"News\",\"id\":7}", project("title,id", "{\"title\":\"News\",\"id\":7,\"body\":\"x\"}"));
+        assertEquals("{\"tags\":[\"a\",{\"b\":1}]}", project("tags"));
+        assertEquals("{\"none\":null}", project("none"));
+        assertEquals("{\"empty\":{}}", project("empty"));
+    }
+    
+    public void testMissingFields() throws Exception {
+        assertEquals("{}", project("body"));
+        assertEquals("{\"id\":7}", project("id,body"));
+        assertEquals("{}", project("id", "{}"));
+    }
+    
+    public void testNestedFields() throws Exception {
+        assertEquals("{\"author\":{\"name\":\"Joe\"}}", project("author.name"));
+        assertEquals("{\"author\":{\"name\":\"Joe\",\"address\":{\"city\":\"Paris\"}}}", project("author.address.city,author.name"));
+        assertEquals("{\"title\":\"News\",\"author\":{\"address\":{\"zip\":\"75001\"}}}", project("title,author.address.zip"));
+    }
+    
+    /**
+     * The objects on a selected path are kept even if the selected member is missing.
+     */
+    public void testMissingNestedFields() throws Exception {
+        assertEquals("{\"author\":{}}", project("author.phone"));
+        assertEquals("{\"author\":{\"address\":{}}}", project("author.address.country"));
+        assertEquals("{\"empty\":{}}", project("empty.x"));
+        assertEquals("{}", project("editor.name"));
+    }
+    
+    /**
+     * Paths through values that are not objects are left out.
+     */
+    public void testPathsThroughNonObjects() throws Exception {
+        assertEquals("{}", project("title.length"));
+        assertEquals("{}", project("tags.b"));
+        assertEquals("{}", project("none.x"));
+        assertEquals("{\"id\":7,\"author\":{}}", project("id,author.name.first"));
+    }
+    
+    /**
+     * A member selected as a whole includes its nested selections, whatever their order.
+     */
+    public void testEnclosingSelection() throws Exception {
+        String author = new JSONObject(VALUE).getJSONObject("author").toString();
+        assertEquals(new JSONObject("{\"author\":" + author + "}").toString(), new JSONObject(project("author.name,author")).toString());
+        assertEquals(new JSONObject("{\"author\":" + author + "}").toString(), new JSONObject(project("author,author.address.city")).toString());
+    }
+    
+    public void testNonObjectValues() throws Exception {
+        assertEquals("[1,2]", project("a", "[1,2]"));
+        assertEquals("\"text\"", project("a", "\"text\""));
+    }
+    
+    public void testGzipValue() throws Exception {
+        byte[] gzip = ValueCodecs.gzip(VALUE.getBytes("UTF-8"), 0, VALUE.length());
+        JSONRawValue value = new JSONRawValue(gzip, 0, gzip.length, true).withETag("\"1\"");
+        JSONRawValue projected = JSONProjection.parse("author.name").project(value);
+        assertFalse(projected.isGzip());
+        assertEquals("\"1\"", projected.getETag());
+        assertEquals("{\"author\":{\"name\":\"Joe\"}}", new String(projected.getBytes(), projected.getOffset(), projected.getLength(), "UTF-8"));
+    }
+    
+    public void testSmileValue() throws Exception {
+        JSONObjectSmileSerializer serializer = new JSONObjectSmileSerializer();
+        byte[] bytes = serializer.serialize(new JSONObject(VALUE));
+        JSONRawValue projected = serializer.toRawValue(bytes, JSONProjection.parse("title,author.address.city,author.phone"));
+        assertEquals("{\"title\":\"News\",\"author\":{\"address\":{\"city\":\"Paris\"}}}",
+                new String(projected.getBytes(), projected.getOffset(), projected.getLength(), "UTF-8"));
+    }
+    
+    public void testParse() {
+        assertNull(JSONProjection.parse(null));
+        assertNotNull(JSONProjection.parse(" title , author.name "));
+        
+        String[] invalid = { "", " ", "a,,b", "a.", ".a", "a..b" };
+        for(String fields : invalid) {
+            try {
+                JSONProjection.parse(fields);
+                fail("accepted '" + fields + "'");
+            } catch(IllegalArgumentException e) {}
+        }
+    }
+}
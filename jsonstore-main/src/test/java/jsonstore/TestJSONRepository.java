@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * TestJSONRepository
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public class TestJSONRepository extends TestCase {
+    private static final String SOURCE = "Repo";
+    
+    private File homeDir;
+    private JSONRepository repository;
+    
+    @Override
+    protected void setUp() throws Exception {
+        homeDir = File.createTempFile("jsonstore", "repo");
+        homeDir.delete();
+        homeDir.mkdirs();
+        
+        // Start the idle store closer as well
+        System.setProperty("jsonstore.instance.idle.seconds", "600");
+        repository = new JSONRepository(homeDir, 60);
+        repository.putConfig(SOURCE, "{\"initialCapacity\":1000,\"segmentFileSizeMB\":8}");
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        System.clearProperty("jsonstore.instance.idle.seconds");
+        repository.close();
+        delete(homeDir);
+    }
+    
+    static void delete(File file) {
+        File[] files = file.listFiles();
+        if(files != null) {
+            for(File f : files) {
+                delete(f);
+            }
+        }
+        file.delete();
+    }
+    
+    /**
+     * Gets the repository threads alive, which are all named <code>jsonstore-</code>.
+     */
+    private static List<String> repositoryThreads() {
+        List<String> names = new ArrayList<String>();
+        for(Thread t : Thread.getAllStackTraces().keySet()) {
+            if(t.isAlive() && t.getName().startsWith("jsonstore-") && !t.getName().startsWith("jsonstore-partition-")) {
+                names.add(t.getName());
+            }
+        }
+        return names;
+    }
+    
+    private static List<String> awaitRepositoryThreads() throws InterruptedException {
+        List<String> names = repositoryThreads();
+        for(int i = 0; i < 50 && !names.isEmpty(); i++) {
+            Thread.sleep(100);
+            names = repositoryThreads();
+        }
+        return names;
+    }
+    
+    public void testCloseStopsThreads() throws Exception {
+        JSONObjectStore<String> store = repository.create(SOURCE);
+        store.put("1", new JSONObject("{\"a\":1}"));
+        repository.getReadExecutor().submit(new Callable<Object>() {
+            @Override
+            public Object call() {
+                return null;
+            }
+        }).get();
+        assertFalse(repositoryThreads().isEmpty());
+        
+        repository.close();
+        assertEquals(0, repository.getOpenCount());
+        assertEquals(new ArrayList<String>(), awaitRepositoryThreads());
+        
+        // Closing again does nothing
+        repository.close();
+        assertEquals(new ArrayList<String>(), repositoryThreads());
+        
+        // The stores were synced and closed
+        JSONRepository reopened = new JSONRepository(homeDir, 60);
+        try {
+            assertEquals(1, reopened.get(SOURCE).get("1").getInt("a"));
+        } finally {
+            reopened.close();
+        }
+    }
+    
+    private JSONObjectStore<String> createWithValues(int count) throws Exception {
+        JSONObjectStore<String> store = repository.create(SOURCE);
+        for(int i = 0; i < count; i++) {
+            store.put(Integer.toString(i), new JSONObject().put("id", i));
+        }
+        store.persist();
+        return store;
+    }
+    
+    private static void assertValues(JSONObjectStore<String> store, int count) throws Exception {
+        assertNotNull(store);
+        for(int i = 0; i < count; i++) {
+            assertEquals(i, store.get(Integer.toString(i)).getInt("id"));
+        }
+    }
+    
+    private JSONRepository reopen() throws Exception {
+        repository.close();
+        repository = new JSONRepository(homeDir, 60);
+        return repository;
+    }
+    
+    public void testRemoveConfigKeepsGeneration() throws Exception {
+        createWithValues(100);
+        assertEquals(1, repository.rebuild(SOURCE, new JSONObject()).getInt(JSONRepository.GENERATION));
+        assertEquals(1, new JSONObject(repository.getConfig(SOURCE)).getInt(JSONRepository.GENERATION));
+        
+        assertNotNull(repository.removeConfig(SOURCE));
+        assertEquals(1, new JSONObject(repository.getConfig(SOURCE)).getInt(JSONRepository.GENERATION));
+        
+        assertValues(reopen().get(SOURCE), 100);
+        assertTrue(new File(new File(homeDir, SOURCE), JSONRepository.GENERATION_DIR_PREFIX + 1).isDirectory());
+    }
+    
+    /**
+     * A configuration replaced by hand without the generation does not lose the data of a rebuilt store.
+     */
+    public void testRecoverGeneration() throws Exception {
+        createWithValues(100);
+        repository.rebuild(SOURCE, new JSONObject());
+        repository.rebuild(SOURCE, new JSONObject());
+        repository.close();
+        
+        File storeDir = new File(homeDir, SOURCE);
+        writeConfig(storeDir, "{\"initialCapacity\":1000,\"segmentFileSizeMB\":8}");
+        
+        repository = new JSONRepository(homeDir, 60);
+        assertValues(repository.get(SOURCE), 100);
+        assertEquals(2, new JSONObject(repository.getConfig(SOURCE)).getInt(JSONRepository.GENERATION));
+        assertTrue(new File(storeDir, JSONRepository.GENERATION_DIR_PREFIX + 2).isDirectory());
+    }
+    
+    /**
+     * A store is not opened if its generation cannot be told from its directory, and no generation directory is deleted.
+     */
+    public void testUnknownGeneration() throws Exception {
+        createWithValues(10);
+        repository.rebuild(SOURCE, new JSONObject());
+        repository.close();
+        
+        File storeDir = new File(homeDir, SOURCE);
+        File otherDir = new File(storeDir, JSONRepository.GENERATION_DIR_PREFIX + 7);
+        assertTrue(otherDir.mkdirs());
+        writeConfig(storeDir, "{\"initialCapacity\":1000,\"segmentFileSizeMB\":8}");
+        
+        repository = new JSONRepository(homeDir, 60);
+        assertNull(repository.get(SOURCE));
+        assertTrue(otherDir.isDirectory());
+        assertTrue(new File(storeDir, JSONRepository.GENERATION_DIR_PREFIX + 1).isDirectory());
+    }
+    
+    private static void writeConfig(File storeDir, String configStr) throws Exception {
+        FileWriter writer = new FileWriter(new File(storeDir, "config.json"));
+        try {
+            writer.write(configStr);
+        } finally {
+            writer.close();
+        }
+    }
+    
+    /**
+     * A closed store is not available, nor opened on access, until it is opened again.
+     */
+    public void testCloseUntilOpen() throws Exception {
+        createWithValues(10);
+        assertTrue(repository.has(SOURCE));
+        
+        assertTrue(repository.close(SOURCE));
+        assertFalse(repository.has(SOURCE));
+        assertFalse(repository.isOpen(SOURCE));
+        assertTrue(repository.knows(SOURCE));
+        assertNull(repository.get(SOURCE));
+        assertNull(repository.pin(SOURCE));
+        assertFalse(repository.isOpen(SOURCE));
+        
+        assertTrue(repository.open(SOURCE));
+        assertTrue(repository.has(SOURCE));
+        assertValues(repository.get(SOURCE), 10);
+    }
+    
+    /**
+     * Stores closed for being idle remain available and are opened again on access.
+     */
+    public void testIdleStoreReopened() throws Exception {
+        createWithValues(10);
+        repository.closeIdleStores(System.currentTimeMillis() + 1000);
+        assertFalse(repository.isOpen(SOURCE));
+        assertTrue(repository.has(SOURCE));
+        assertValues(repository.get(SOURCE), 10);
+    }
+    
+    /**
+     * A store pinned by a bulk load is neither closed for being idle nor closed until the load completes.
+     */
+    public void testBulkLoadPinsStore() throws Exception {
+        final JSONObjectStore<String> store = repository.create(SOURCE);
+        PipedOutputStream out = new PipedOutputStream();
+        final PipedInputStream in = new PipedInputStream(out);
+        final AtomicReference<Object> loaded = new AtomicReference<Object>();
+        Thread loader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    loaded.set(repository.bulkLoad(SOURCE, in, true));
+                } catch(Exception e) {
+                    loaded.set(e);
+                }
+            }
+        };
+        loader.start();
+        
+        out.write(records(0, 50));
+        out.flush();
+        while(store.getReaders() == 0) {
+            Thread.sleep(10);
+        }
+        
+        repository.closeIdleStores(System.currentTimeMillis() + 1000);
+        assertTrue(repository.isOpen(SOURCE));
+        
+        final AtomicReference<Object> closed = new AtomicReference<Object>();
+        Thread closer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    closed.set(repository.close(SOURCE));
+                } catch(Exception e) {
+                    closed.set(e);
+                }
+            }
+        };
+        closer.start();
+        closer.join(500);
+        assertTrue(closer.isAlive());
+        assertTrue(store.isOpen());
+        
+        out.write(records(50, 100));
+        out.close();
+        loader.join();
+        closer.join();
+        assertEquals(100, ((JSONObject)loaded.get()).getInt("puts"));
+        assertEquals(Boolean.TRUE, closed.get());
+        assertFalse(store.isOpen());
+        
+        assertTrue(repository.open(SOURCE));
+        assertValues(repository.get(SOURCE), 100);
+    }
+    
+    private static byte[] records(int from, int to) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for(int i = from; i < to; i++) {
+            sb.append(new JSONObject().put("key", Integer.toString(i)).put("value", new JSONObject().put("id", i))).append('\n');
+        }
+        return sb.toString().getBytes("UTF-8");
+    }
+}
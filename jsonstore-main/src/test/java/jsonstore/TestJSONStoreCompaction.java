@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import junit.framework.TestCase;
+
+import krati.store.DataStore;
+
+/**
+ * TestJSONStoreCompaction checks that the private fields of the Krati 0.4.9 compactors,
+ * which JSONStoreCompaction reaches by reflection, resolve for every store type. It fails
+ * when Krati is upgraded to a version whose fields differ.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public class TestJSONStoreCompaction extends TestCase {
+    private File homeDir;
+    private JSONRepository repository;
+    
+    @Override
+    protected void setUp() throws Exception {
+        homeDir = File.createTempFile("jsonstore", "compaction");
+        homeDir.delete();
+        homeDir.mkdirs();
+        repository = new JSONRepository(homeDir, 60);
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        repository.close();
+        TestJSONRepository.delete(homeDir);
+    }
+    
+    private JSONStoreCompaction create(String source, String config, int arrays) throws Exception {
+        repository.putConfig(source, config);
+        JSONStoreCompaction compaction = repository.create(source).getCompaction();
+        assertTrue(compaction.isControllable());
+        assertEquals(arrays, compaction.getArrayCount());
+        assertTrue(compaction.getStats().getBoolean("controllable"));
+        assertTrue(compaction.getStats().getInt("segments") > 0);
+        return compaction;
+    }
+    
+    private static void assertControls(JSONStoreCompaction compaction) {
+        compaction.setLoadFactor(0.25);
+        assertEquals(0.25, compaction.getEffectiveLoadFactor());
+        compaction.pause();
+        assertEquals(0.0, compaction.getEffectiveLoadFactor());
+        compaction.resume();
+        compaction.start();
+        compaction.setWindow("01:00-05:00", 0.1);
+        compaction.setWindow(null, 0);
+    }
+    
+    public void testHashStore() throws Exception {
+        assertControls(create("Hash", "{\"initialCapacity\":1000,\"segmentFileSizeMB\":8}", 2));
+    }
+    
+    public void testPartitionedStore() throws Exception {
+        assertControls(create("Partitioned", "{\"initialCapacity\":1000,\"segmentFileSizeMB\":8,\"numPartitions\":2}", 4));
+    }
+    
+    public void testArrayStore() throws Exception {
+        assertControls(create("Array", "{\"initialCapacity\":1000,\"segmentFileSizeMB\":8,\"storeType\":\"array\"}", 1));
+    }
+    
+    /**
+     * A store whose compactors cannot be reached is reported as not controllable, and its controls fail.
+     */
+    @SuppressWarnings("unchecked")
+    public void testNotControllable() throws Exception {
+        DataStore<byte[], byte[]> store = (DataStore<byte[], byte[]>)Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[] { DataStore.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return null;
+                    }
+                });
+        JSONStoreCompaction compaction = new JSONStoreCompaction(store);
+        assertFalse(compaction.isControllable());
+        assertFalse(compaction.getStats().getBoolean("controllable"));
+        
+        try {
+            compaction.pause();
+            fail("paused");
+        } catch(IllegalStateException e) {}
+        try {
+            compaction.setLoadFactor(0.25);
+            fail("throttled");
+        } catch(IllegalStateException e) {}
+        try {
+            compaction.start();
+            fail("started");
+        } catch(IllegalStateException e) {}
+        try {
+            compaction.setWindow("01:00-05:00", 0.1);
+            fail("window set");
+        } catch(IllegalStateException e) {}
+        assertFalse(compaction.isPaused());
+        assertNull(compaction.getWindow());
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * TestJSONStoreRebuild copies stores while a writer keeps updating and deleting their keys.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public class TestJSONStoreRebuild extends TestCase {
+    private static final String SOURCE = "Rebuild";
+    private static final int NUM_KEYS = 5000;
+    
+    private File homeDir;
+    private JSONRepository repository;
+    
+    /**
+     * The last version written by key, -1 for deleted keys.
+     */
+    private ConcurrentHashMap<String, Integer> written;
+    
+    @Override
+    protected void setUp() throws Exception {
+        homeDir = File.createTempFile("jsonstore", "rebuild");
+        homeDir.delete();
+        homeDir.mkdirs();
+        
+        repository = new JSONRepository(homeDir, 60);
+        repository.putConfig(SOURCE, "{\"initialCapacity\":10000,\"segmentFileSizeMB\":8}");
+        JSONObjectStore<String> store = repository.create(SOURCE);
+        written = new ConcurrentHashMap<String, Integer>();
+        for(int i = 0; i < NUM_KEYS; i++) {
+            store.put(Integer.toString(i), value(i, 0));
+            written.put(Integer.toString(i), 0);
+        }
+        store.persist();
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        repository.close();
+        TestJSONRepository.delete(homeDir);
+    }
+    
+    private static JSONObject value(int i, int version) throws Exception {
+        return new JSONObject().put("id", i).put("version", version);
+    }
+    
+    /**
+     * Writer updates and deletes random keys until stopped, retrying the writes that reach a
+     * replaced store on the store that replaced it.
+     */
+    private final class Writer extends Thread {
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        volatile int writes = 0;
+        
+        @Override
+        public void run() {
+            Random random = new Random(11);
+            try {
+                for(int version = 1; !stopped.get(); version++) {
+                    int i = random.nextInt(NUM_KEYS);
+                    boolean delete = random.nextInt(10) == 0;
+                    while(true) {
+                        JSONObjectStore<String> store = repository.get(SOURCE);
+                        try {
+                            if(delete) {
+                                store.delete(Integer.toString(i));
+                            } else {
+                                store.put(Integer.toString(i), value(i, version));
+                            }
+                            break;
+                        } catch(JSONStoreRetiredException e) {}
+                    }
+                    written.put(Integer.toString(i), delete ? -1 : version);
+                    writes++;
+                }
+            } catch(Exception e) {
+                failure.set(e);
+            }
+        }
+    }
+    
+    private void assertWritten(JSONObjectStore<String> store) throws Exception {
+        for(int i = 0; i < NUM_KEYS; i++) {
+            String key = Integer.toString(i);
+            JSONObject value = store.get(key);
+            int version = written.get(key);
+            if(version < 0) {
+                assertNull("deleted: " + key, value);
+            } else {
+                assertNotNull("missing: " + key, value);
+                assertEquals("version of " + key, version, value.getInt("version"));
+            }
+        }
+    }
+    
+    /**
+     * The catch-up after a copy rewrites every key written during the copy.
+     */
+    public void testCatchUpAfterCopy() throws Exception {
+        JSONObjectStore<String> source = repository.get(SOURCE);
+        repository.putConfig("Target", "{\"initialCapacity\":10000,\"segmentFileSizeMB\":8}");
+        JSONObjectStore<String> target = repository.create("Target");
+        JSONStoreRebuild<String> rebuild = new JSONStoreRebuild<String>(source, target);
+        source.setRebuild(rebuild);
+        
+        Writer writer = new Writer();
+        writer.start();
+        while(writer.writes < 100) {
+            Thread.sleep(1);
+        }
+        assertTrue(rebuild.copy() > NUM_KEYS / 2);
+        writer.stopped.set(true);
+        writer.join();
+        assertNull(writer.failure.get());
+        assertTrue(rebuild.getPending() > 0);
+        
+        rebuild.catchUp();
+        assertEquals(0, rebuild.getPending());
+        assertWritten(source);
+        assertWritten(target);
+    }
+    
+    /**
+     * A rebuild under writes loses none of them, and the writes after the swap reach the new store.
+     */
+    public void testRebuildUnderWrites() throws Exception {
+        JSONObjectStore<String> oldStore = repository.get(SOURCE);
+        Writer writer = new Writer();
+        writer.start();
+        while(writer.writes < 100) {
+            Thread.sleep(1);
+        }
+        
+        JSONObject result = repository.rebuild(SOURCE, new JSONObject().put("initialCapacity", 20000));
+        assertEquals(1, result.getInt(JSONRepository.GENERATION));
+        int writes = writer.writes;
+        while(writer.writes < writes + 100) {
+            Thread.sleep(1);
+        }
+        writer.stopped.set(true);
+        writer.join();
+        assertNull(writer.failure.get());
+        
+        JSONObjectStore<String> newStore = repository.get(SOURCE);
+        assertNotSame(oldStore, newStore);
+        assertWritten(newStore);
+        
+        // The replaced store refuses writes
+        try {
+            oldStore.put("0", value(0, 0));
+            fail("written to the replaced store");
+        } catch(JSONStoreRetiredException e) {}
+    }
+}
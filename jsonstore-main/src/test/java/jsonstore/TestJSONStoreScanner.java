@@ -0,0 +1,361 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * TestJSONStoreScanner scans a store whose values span several Krati segments.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public class TestJSONStoreScanner extends TestCase {
+    private static final String SOURCE = "Scan";
+    private static final int NUM_RECORDS = 6000;
+    private static final int BODY_LENGTH = 2048;
+    private static final int LIMIT = 250;
+    
+    private File homeDir;
+    private JSONRepository repository;
+    private JSONObjectStore<String> store;
+    
+    /**
+     * The records seen by a scan, by key, with the version of the value seen.
+     */
+    private Map<String, Integer> seen;
+    private int pages;
+    
+    @Override
+    protected void setUp() throws Exception {
+        homeDir = File.createTempFile("jsonstore", "scan");
+        homeDir.delete();
+        homeDir.mkdirs();
+        
+        repository = new JSONRepository(homeDir, 60);
+        repository.putConfig(SOURCE, "{\"initialCapacity\":1000,\"segmentFileSizeMB\":8,\"valueCodec\":\"none\"}");
+        store = repository.create(SOURCE);
+        
+        // About 12 MB of values, which do not fit in one 8 MB segment
+        for(int i = 0; i < NUM_RECORDS; i++) {
+            store.put(Integer.toString(i), value(i, 0));
+        }
+        store.persist();
+        
+        seen = new HashMap<String, Integer>();
+        pages = 0;
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        repository.close();
+        delete(homeDir);
+    }
+    
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if(files != null) {
+            for(File f : files) {
+                delete(f);
+            }
+        }
+        file.delete();
+    }
+    
+    private static JSONObject value(int i, int version) throws Exception {
+        Random random = new Random(i * 31 + version);
+        char[] body = new char[BODY_LENGTH];
+        for(int j = 0; j < body.length; j++) {
+            body[j] = (char)('a' + random.nextInt(26));
+        }
+        return new JSONObject().put("id", i).put("version", version).put("body", new String(body));
+    }
+    
+    /**
+     * Scans a page in the ndjson format and records the keys seen.
+     */
+    private String scanPage(String cursor, String endCursor, boolean values) throws Exception {
+        JSONStoreScanner scanner = new JSONStoreScanner(store, cursor, endCursor, LIMIT, values, JSONStoreScanner.FORMAT_NDJSON);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String next = scanner.write(out);
+        pages++;
+        
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(out.toByteArray()), "UTF-8"));
+        int count = 0;
+        String line;
+        String last = null;
+        while((line = reader.readLine()) != null) {
+            JSONObject json = new JSONObject(line);
+            if(json.has("cursor")) {
+                last = line;
+                break;
+            }
+            
+            String key = json.getString("key");
+            int version = -1;
+            if(values) {
+                JSONObject value = json.getJSONObject("value");
+                version = value.getInt("version");
+                assertEquals(key, Integer.toString(value.getInt("id")));
+                assertEquals(value(value.getInt("id"), version).getString("body"), value.getString("body"));
+            }
+            assertNull("seen twice: " + key, seen.put(key, version));
+            count++;
+        }
+        assertNull(reader.readLine());
+        assertNotNull(last);
+        assertEquals(count, scanner.getCount());
+        assertEquals(next == null ? JSONObject.NULL : next, new JSONObject(last).get("cursor"));
+        
+        // A page ends at the first bucket boundary after the limit
+        if(next != null) {
+            assertTrue(count >= LIMIT);
+        }
+        return next;
+    }
+    
+    private void assertAllSeen() {
+        assertEquals(NUM_RECORDS, seen.size());
+        for(int i = 0; i < NUM_RECORDS; i++) {
+            assertTrue("not seen: " + i, seen.containsKey(Integer.toString(i)));
+        }
+    }
+    
+    public void testValuesSpanSegments() throws Exception {
+        assertTrue(store.getCompaction().getStats().getInt("segments") > 2);
+    }
+    
+    public void testResume() throws Exception {
+        String cursor = null;
+        do {
+            cursor = scanPage(cursor, null, true);
+        } while(cursor != null);
+        
+        assertAllSeen();
+        assertTrue(pages >= NUM_RECORDS / LIMIT);
+    }
+    
+    public void testResumeKeysOnly() throws Exception {
+        String cursor = null;
+        do {
+            cursor = scanPage(cursor, null, false);
+        } while(cursor != null);
+        
+        assertAllSeen();
+    }
+    
+    /**
+     * Values rewritten between pages are appended to new segments, and the records yet
+     * to be scanned are seen once with either value.
+     */
+    public void testResumeAfterRewrites() throws Exception {
+        Random random = new Random(7);
+        String cursor = null;
+        do {
+            cursor = scanPage(cursor, null, true);
+            for(int n = 0; n < 500; n++) {
+                int i = random.nextInt(NUM_RECORDS);
+                store.put(Integer.toString(i), value(i, 1));
+            }
+            store.persist();
+        } while(cursor != null);
+        
+        assertAllSeen();
+        for(int version : seen.values()) {
+            assertTrue(version == 0 || version == 1);
+        }
+    }
+    
+    /**
+     * Records deleted between pages are not seen if not scanned yet, and the others are seen once.
+     */
+    public void testResumeAfterDeletes() throws Exception {
+        String cursor = scanPage(null, null, false);
+        int deleted = 0;
+        for(int i = 0; i < NUM_RECORDS; i += 10) {
+            if(!seen.containsKey(Integer.toString(i))) {
+                store.delete(Integer.toString(i));
+                deleted++;
+            }
+        }
+        store.persist();
+        assertTrue(deleted > 0);
+        
+        while(cursor != null) {
+            cursor = scanPage(cursor, null, false);
+        }
+        assertEquals(NUM_RECORDS - deleted, seen.size());
+    }
+    
+    public void testSplit() throws Exception {
+        String[] cursors = JSONStoreScanner.split(store, 4);
+        assertEquals(5, cursors.length);
+        assertEquals("0", cursors[0]);
+        assertNull(cursors[4]);
+        
+        for(int r = 0; r < 4; r++) {
+            String cursor = cursors[r];
+            do {
+                cursor = scanPage(cursor, cursors[r + 1], true);
+            } while(cursor != null);
+        }
+        assertAllSeen();
+    }
+    
+    public void testCursorFormat() throws Exception {
+        String[] cursors = JSONStoreScanner.split(new int[] { 100, 300 }, 4);
+        assertEquals("0,1.0,1.2s,1.5k,null", join(cursors));
+        for(int i = 0; i < 4; i++) {
+            assertEquals(cursors[i], JSONStoreScanner.formatCursor(JSONStoreScanner.parseCursor(cursors[i])));
+        }
+        assertEquals(PartitionedDataStore.position(1, 200), JSONStoreScanner.parseCursor("1.5k"));
+        
+        for(String cursor : new String[] { "-1", "1.", "1.2.3", "x!" }) {
+            try {
+                JSONStoreScanner.parseCursor(cursor);
+                fail("parsed " + cursor);
+            } catch(IllegalArgumentException e) {}
+        }
+        try {
+            new JSONStoreScanner(store, "1.0", null, LIMIT, true, JSONStoreScanner.FORMAT_NDJSON);
+            fail("partition cursor accepted by an unpartitioned store");
+        } catch(IllegalArgumentException e) {}
+    }
+    
+    private static String join(String[] cursors) {
+        StringBuilder sb = new StringBuilder();
+        for(String cursor : cursors) {
+            sb.append(sb.length() == 0 ? "" : ",").append(cursor);
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * A cursor into a later partition keeps pointing into it after an earlier partition grows.
+     */
+    public void testPartitionedCursorAfterGrowth() throws Exception {
+        repository.putConfig("Parts", "{\"initialCapacity\":1000,\"segmentFileSizeMB\":8,\"numPartitions\":2}");
+        JSONObjectStore<String> parts = repository.create("Parts");
+        int numKeys = 1000;
+        for(int i = 0; i < numKeys; i++) {
+            parts.put(Integer.toString(i), new JSONObject().put("id", i));
+        }
+        
+        // Scan into the second partition
+        Map<String, Integer> partsSeen = new HashMap<String, Integer>();
+        String cursor = null;
+        do {
+            cursor = scanKeys(parts, cursor, partsSeen);
+        } while(cursor != null && !cursor.startsWith("1."));
+        assertNotNull(cursor);
+        
+        // Grow the first partition
+        PartitionedDataStore partitioned = (PartitionedDataStore)parts.getDataStore();
+        int capacity = partitioned.getPartition(0).capacity();
+        while(partitioned.getPartition(0).capacity() == capacity && numKeys < 200000) {
+            parts.put(Integer.toString(numKeys), new JSONObject().put("id", numKeys));
+            numKeys++;
+        }
+        assertTrue(partitioned.getPartition(0).capacity() > capacity);
+        
+        Map<String, Integer> rest = new HashMap<String, Integer>();
+        while(cursor != null) {
+            cursor = scanKeys(parts, cursor, rest);
+        }
+        for(String key : rest.keySet()) {
+            assertEquals("partition of " + key, 1, partitionOf(parts, key));
+        }
+        partsSeen.putAll(rest);
+        for(int i = 0; i < 1000; i++) {
+            assertTrue("not seen: " + i, partsSeen.containsKey(Integer.toString(i)));
+        }
+    }
+    
+    private static int partitionOf(JSONObjectStore<String> jsonStore, String key) {
+        return PartitionedDataStore.partitionOf(jsonStore.getKeySerializer().serialize(key), 2);
+    }
+    
+    private static String scanKeys(JSONObjectStore<String> jsonStore, String cursor, Map<String, Integer> keys) throws Exception {
+        JSONStoreScanner scanner = new JSONStoreScanner(jsonStore, cursor, null, 100, false, JSONStoreScanner.FORMAT_NDJSON);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String next = scanner.write(out);
+        
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(out.toByteArray()), "UTF-8"));
+        String line;
+        while((line = reader.readLine()) != null) {
+            JSONObject json = new JSONObject(line);
+            if(json.has("key")) {
+                keys.put(json.getString("key"), 0);
+            }
+        }
+        return next;
+    }
+    
+    public void testBinaryFormat() throws Exception {
+        String cursor = null;
+        do {
+            JSONStoreScanner scanner = new JSONStoreScanner(store, cursor, null, LIMIT, true, JSONStoreScanner.FORMAT_BINARY);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            cursor = scanner.write(out);
+            
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+            int keyLength;
+            while((keyLength = in.readInt()) >= 0) {
+                byte[] keyBytes = new byte[keyLength];
+                in.readFully(keyBytes);
+                byte[] valueBytes = new byte[in.readInt()];
+                in.readFully(valueBytes);
+                
+                String key = store.getKeySerializer().deserialize(keyBytes);
+                JSONObject value = store.getValueSerializer().deserialize(valueBytes);
+                assertEquals(key, Integer.toString(value.getInt("id")));
+                assertNull("seen twice: " + key, seen.put(key, value.getInt("version")));
+            }
+            assertEquals(cursor == null ? "" : cursor, in.readUTF());
+            assertEquals(-1, in.read());
+        } while(cursor != null);
+        
+        assertAllSeen();
+    }
+    
+    public void testInvalidCursor() {
+        String[] invalid = { "", "-1", "not a cursor" };
+        for(String cursor : invalid) {
+            try {
+                new JSONStoreScanner(store, cursor, null, LIMIT, false, JSONStoreScanner.FORMAT_NDJSON);
+                fail("accepted cursor '" + cursor + "'");
+            } catch(IllegalArgumentException e) {}
+        }
+        
+        try {
+            new JSONStoreScanner(store, null, null, LIMIT, false, "xml");
+            fail("accepted format xml");
+        } catch(IllegalArgumentException e) {}
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.codehaus.jettison.json.JSONObject;
+
+import krati.util.IndexedIterator;
+
+/**
+ * TestJSONWriteBehind holds the writer thread of a write-behind queue on a key lock,
+ * so that the writes queued behind it stay pending.
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public class TestJSONWriteBehind extends TestCase {
+    private static final String SOURCE = "Behind";
+    private static final int QUEUE_SIZE = 4;
+    
+    private File homeDir;
+    private JSONRepository repository;
+    private JSONObjectStore<String> store;
+    
+    @Override
+    protected void setUp() throws Exception {
+        homeDir = File.createTempFile("jsonstore", "behind");
+        homeDir.delete();
+        homeDir.mkdirs();
+        
+        repository = new JSONRepository(homeDir, 60);
+        repository.putConfig(SOURCE, "{\"initialCapacity\":1000,\"segmentFileSizeMB\":8,\"batchSize\":1,\"writeBehindQueueSize\":" + QUEUE_SIZE + "}");
+        store = repository.create(SOURCE);
+        store.put("1", value(0));
+        store.put("2", value(0));
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        repository.close();
+        TestJSONRepository.delete(homeDir);
+    }
+    
+    private static JSONObject value(int version) throws Exception {
+        return new JSONObject().put("version", version);
+    }
+    
+    private Set<String> keys() {
+        Set<String> keys = new HashSet<String>();
+        IndexedIterator<Entry<String, JSONObject>> iter = store.iterator();
+        while(iter.hasNext()) {
+            Entry<String, JSONObject> e = iter.next();
+            if(e != null && e.getValue() != null) {
+                keys.add(e.getKey());
+            }
+        }
+        return keys;
+    }
+    
+    /**
+     * Every read of a key sees its queued write, while iterators see it once it is applied.
+     */
+    public void testReadOwnQueuedWrites() throws Exception {
+        byte[] keyBytes = store.getKeySerializer().serialize("1");
+        synchronized(store.lockFor("1")) {
+            store.putBehind("1", value(1));
+            store.deleteBehind("2");
+            store.putBehind("3", value(1));
+            
+            assertEquals(1, store.get("1").getInt("version"));
+            byte[] bytes = store.getBytes("1");
+            assertTrue(Arrays.equals(bytes, store.getBytes(keyBytes)));
+            assertEquals(bytes.length, store.getLength("1"));
+            JSONRawValue raw = store.getRawValue("1").toText();
+            assertEquals(1, new JSONObject(new String(raw.getBytes(), raw.getOffset(), raw.getLength(), "UTF-8")).getInt("version"));
+            assertEquals(JSONETag.of(bytes), raw.getETag());
+            
+            assertNull(store.get("2"));
+            assertNull(store.getBytes(store.getKeySerializer().serialize("2")));
+            assertEquals(-1, store.getLength("2"));
+            assertEquals(1, store.get("3").getInt("version"));
+            
+            assertEquals(new HashSet<String>(Arrays.asList("1", "2")), keys());
+        }
+        
+        store.awaitWriteBehind();
+        assertEquals(new HashSet<String>(Arrays.asList("1", "3")), keys());
+        assertEquals(1, store.get("1").getInt("version"));
+        assertEquals(-1, store.getLength("2"));
+    }
+    
+    /**
+     * A full queue rejects writes, which the REST layer answers with 429.
+     */
+    public void testFullQueueRejects() throws Exception {
+        synchronized(store.lockFor("1")) {
+            // The writer holds at most one write taken off the queue
+            int queued = 0;
+            try {
+                for(; queued <= QUEUE_SIZE + 1; queued++) {
+                    store.putBehind("1", value(queued));
+                }
+                fail("queue not full");
+            } catch(RejectedExecutionException e) {}
+            assertTrue(queued >= QUEUE_SIZE);
+            assertEquals(1, store.getWriteBehind().getStats().getLong("rejected"));
+            assertEquals(queued - 1, store.get("1").getInt("version"));
+        }
+        
+        store.awaitWriteBehind();
+        store.putBehind("1", value(100));
+        store.awaitWriteBehind();
+        assertEquals(100, store.get("1").getInt("version"));
+    }
+    
+    /**
+     * Waiting for the queue waits for the writes queued before, which scans then see.
+     */
+    public void testAwaitWriteBehind() throws Exception {
+        final AtomicReference<Set<String>> scanned = new AtomicReference<Set<String>>();
+        Thread scanner = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    store.awaitWriteBehind();
+                    scanned.set(keys());
+                } catch(Exception e) {
+                    scanned.set(null);
+                }
+            }
+        };
+        
+        synchronized(store.lockFor("1")) {
+            store.putBehind("1", value(1));
+            store.putBehind("3", value(1));
+            scanner.start();
+            scanner.join(500);
+            assertTrue(scanner.isAlive());
+        }
+        
+        scanner.join();
+        assertEquals(new HashSet<String>(Arrays.asList("1", "2", "3")), scanned.get());
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2012 Jingwei Wu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package jsonstore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * TestValueCodecs
+ * 
+ * @author jwu
+ * @since 10/18, 2026
+ */
+public class TestValueCodecs extends TestCase {
+    private File storeDir;
+    
+    @Override
+    protected void setUp() throws Exception {
+        storeDir = File.createTempFile("jsonstore", "codecs");
+        storeDir.delete();
+        storeDir.mkdirs();
+    }
+    
+    @Override
+    protected void tearDown() {
+        File[] files = storeDir.listFiles();
+        if(files != null) {
+            for(File f : files) {
+                f.delete();
+            }
+        }
+        storeDir.delete();
+    }
+    
+    private static List<ValueCodec> builtInCodecs() {
+        List<ValueCodec> codecs = new ArrayList<ValueCodec>();
+        codecs.add(ValueCodecs.forName("none"));
+        codecs.add(ValueCodecs.forName("gzip"));
+        codecs.add(ValueCodecs.forName("lz"));
+        for(int level = 1; level <= 9; level++) {
+            codecs.add(ValueCodecs.forName("deflate-" + level));
+        }
+        return codecs;
+    }
+    
+    private static List<byte[]> payloads() throws Exception {
+        List<byte[]> payloads = new ArrayList<byte[]>();
+        payloads.add(new byte[0]);
+        payloads.add("{}".getBytes("UTF-8"));
+        payloads.add(value(7).toString().getBytes("UTF-8"));
+        
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; sb.length() < 200000; i++) {
+            sb.append(value(i).toString());
+        }
+        payloads.add(sb.toString().getBytes("UTF-8"));
+        
+        byte[] random = new byte[70000];
+        new Random(11).nextBytes(random);
+        payloads.add(random);
+        return payloads;
+    }
+    
+    private static JSONObject value(int i) throws Exception {
+        return new JSONObject().put("id", i).put("title", "News item " + i).put("body", "café 新闻 " + i).put("tags", Arrays.asList("a", "b"));
+    }
+    
+    /**
+     * A value in ASCII, which releases before codecs wrote in the platform charset.
+     */
+    private static JSONObject legacyValue(int i) throws Exception {
+        return value(i).put("body", "news " + i);
+    }
+    
+    /**
+     * Writes a value as releases before codecs did.
+     */
+    private static byte[] legacyGzip(byte[] raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(raw);
+        gzip.close();
+        return out.toByteArray();
+    }
+    
+    public void testRoundTrip() throws Exception {
+        for(ValueCodec codec : builtInCodecs()) {
+            assertSame(codec, ValueCodecs.forId(codec.getId()));
+            for(byte[] raw : payloads()) {
+                byte[] value = codec.encode(raw, 0, raw.length);
+                assertEquals(codec.getName(), codec.getId(), value[0]);
+                assertFalse(codec.getName(), ValueCodecs.isGzip(value));
+                assertTrue(codec.getName(), Arrays.equals(raw, codec.decode(value)));
+            }
+        }
+    }
+    
+    public void testRoundTripSlice() throws Exception {
+        byte[] raw = value(3).toString().getBytes("UTF-8");
+        byte[] padded = new byte[raw.length + 20];
+        System.arraycopy(raw, 0, padded, 10, raw.length);
+        for(ValueCodec codec : builtInCodecs()) {
+            assertTrue(codec.getName(), Arrays.equals(raw, codec.decode(codec.encode(padded, 10, raw.length))));
+        }
+    }
+    
+    public void testLegacyGzip() throws Exception {
+        JSONObjectSerializer serializer = new JSONObjectSerializer();
+        for(int i = 0; i < 3; i++) {
+            byte[] raw = legacyValue(i).toString().getBytes();
+            byte[] legacy = legacyGzip(raw);
+            assertTrue(ValueCodecs.isGzip(legacy));
+            assertTrue(Arrays.equals(raw, JSONObjectSerializer.decompress(legacy)));
+            assertEquals(legacyValue(i).toString(), serializer.deserialize(legacy).toString());
+            
+            JSONRawValue rawValue = serializer.toRawValue(legacy);
+            assertTrue(rawValue.isGzip());
+            assertEquals(legacy.length, rawValue.getLength());
+            assertTrue(Arrays.equals(raw, Arrays.copyOf(rawValue.toText().getBytes(), rawValue.toText().getLength())));
+        }
+    }
+    
+    public void testGzipCodecIsSlicedAsIs() throws Exception {
+        JSONObjectSerializer serializer = new JSONObjectSerializer();
+        byte[] value = serializer.serialize(value(5));
+        assertEquals(ValueCodecs.GZIP_ID, value[0]);
+        
+        JSONRawValue rawValue = serializer.toRawValue(value);
+        assertTrue(rawValue.isGzip());
+        assertEquals(1, rawValue.getOffset());
+        JSONRawValue text = rawValue.toText();
+        assertEquals(value(5).toString(), new String(text.getBytes(), text.getOffset(), text.getLength(), "UTF-8"));
+    }
+    
+    public void testSerializerReadsValuesOfEveryCodec() throws Exception {
+        JSONObjectSerializer serializer = new JSONObjectSerializer();
+        serializer.configure(storeDir, new JSONObject());
+        
+        List<byte[]> values = new ArrayList<byte[]>();
+        values.add(legacyGzip(legacyValue(0).toString().getBytes()));
+        String[] names = { "none", "gzip", "lz", "deflate", "deflate-1", "deflate-9", "dictionary" };
+        for(String name : names) {
+            serializer.setValueCodec(name);
+            values.add(serializer.serialize(value(values.size())));
+        }
+        
+        assertEquals(legacyValue(0).toString(), serializer.deserialize(values.get(0)).toString());
+        for(int i = 1; i < values.size(); i++) {
+            assertEquals(value(i).toString(), serializer.deserialize(values.get(i)).toString());
+        }
+    }
+    
+    public void testDictionarySerializer() throws Exception {
+        JSONObjectDictionarySerializer serializer = new JSONObjectDictionarySerializer();
+        serializer.configure(storeDir, new JSONObject());
+        assertEquals("dictionary", serializer.getValueCodec().getName());
+        assertNull(serializer.getCurrentDictionary());
+        
+        // Values written before a dictionary is trained
+        byte[] untrained = serializer.serialize(value(1));
+        assertEquals(ValueCodecs.DICTIONARY_ID, untrained[0]);
+        
+        List<JSONObject> samples = new ArrayList<JSONObject>();
+        for(int i = 0; i < 200; i++) {
+            samples.add(value(i));
+        }
+        ValueDictionary dict = serializer.train(samples);
+        assertNotNull(dict);
+        assertSame(dict, serializer.getCurrentDictionary());
+        
+        byte[] trained = serializer.serialize(value(2));
+        assertTrue(trained.length < untrained.length);
+        assertEquals(value(1).toString(), serializer.deserialize(untrained).toString());
+        assertEquals(value(2).toString(), serializer.deserialize(trained).toString());
+        
+        // Values written with older dictionaries remain readable after retraining and reopening
+        assertNotNull(serializer.train(samples));
+        byte[] retrained = serializer.serialize(value(3));
+        
+        JSONObjectDictionarySerializer reopened = new JSONObjectDictionarySerializer();
+        reopened.configure(storeDir, new JSONObject());
+        assertEquals(dict.getId() + 1, reopened.getCurrentDictionary().getId());
+        assertEquals(value(1).toString(), reopened.deserialize(untrained).toString());
+        assertEquals(value(2).toString(), reopened.deserialize(trained).toString());
+        assertEquals(value(3).toString(), reopened.deserialize(retrained).toString());
+    }
+    
+    public void testMissingDictionary() throws Exception {
+        JSONObjectDictionarySerializer serializer = new JSONObjectDictionarySerializer();
+        serializer.configure(storeDir, new JSONObject());
+        List<JSONObject> samples = new ArrayList<JSONObject>();
+        for(int i = 0; i < 200; i++) {
+            samples.add(value(i));
+        }
+        serializer.train(samples);
+        byte[] trained = serializer.serialize(value(2));
+        
+        File other = new File(storeDir, "other");
+        other.mkdirs();
+        JSONObjectDictionarySerializer fresh = new JSONObjectDictionarySerializer();
+        fresh.configure(other, new JSONObject());
+        try {
+            fresh.decode(trained);
+            fail("dictionary should be missing");
+        } catch(IOException e) {
+        } finally {
+            other.delete();
+        }
+    }
+    
+    public void testCorruptValues() throws Exception {
+        for(ValueCodec codec : builtInCodecs()) {
+            if(codec.getId() == ValueCodecs.NONE_ID) {
+                continue;
+            }
+            byte[] raw = value(9).toString().getBytes("UTF-8");
+            byte[] value = codec.encode(raw, 0, raw.length);
+            try {
+                codec.decode(Arrays.copyOf(value, value.length / 2));
+                fail(codec.getName() + " decoded a truncated value");
+            } catch(IOException e) {
+            } catch(RuntimeException e) {
+                fail(codec.getName() + " threw " + e);
+            }
+        }
+        
+        try {
+            new JSONObjectSerializer().decode(new byte[] { 'X', 1, 2 });
+            fail("unknown codec");
+        } catch(IOException e) {}
+    }
+    
+    /**
+     * Pooled deflaters and inflaters are shared by all threads and must be
+     * released without their dictionaries or leftover input.
+     */
+    public void testConcurrentPooledCoders() throws Exception {
+        final JSONObjectDictionarySerializer serializer = new JSONObjectDictionarySerializer();
+        serializer.configure(storeDir, new JSONObject());
+        List<JSONObject> samples = new ArrayList<JSONObject>();
+        for(int i = 0; i < 200; i++) {
+            samples.add(value(i));
+        }
+        serializer.train(samples);
+        
+        final List<ValueCodec> codecs = builtInCodecs();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[8];
+        for(int t = 0; t < threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Random random = new Random(seed);
+                        for(int i = 0; i < 500; i++) {
+                            JSONObject json = value(random.nextInt(1000));
+                            assertEquals(json.toString(), serializer.deserialize(serializer.serialize(json)).toString());
+                            
+                            ValueCodec codec = codecs.get(random.nextInt(codecs.size()));
+                            byte[] raw = json.toString().getBytes("UTF-8");
+                            assertTrue(Arrays.equals(raw, codec.decode(codec.encode(raw, 0, raw.length))));
+                        }
+                    } catch(Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for(Thread t : threads) {
+            t.join();
+        }
+        
+        if(failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+}
@@ -16,34 +16,56 @@
 
 package jsonstore.rest.resources;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.core.Response.Status;
 
 import org.apache.log4j.Logger;
-import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONArray;
 import org.codehaus.jettison.json.JSONObject;
 
 import com.sun.jersey.api.core.InjectParam;
 import com.sun.jersey.api.spring.Autowire;
 
+import jsonstore.JSONETag;
+import jsonstore.JSONIndex;
+import jsonstore.JSONMultiGet;
 import jsonstore.JSONObjectStore;
+import jsonstore.JSONProjection;
+import jsonstore.JSONRangeScanner;
+import jsonstore.JSONRawValue;
 import jsonstore.JSONRepository;
+import jsonstore.JSONSortedIndex;
+import jsonstore.JSONStoreCompaction;
+import jsonstore.JSONStoreRetiredException;
+import jsonstore.JSONStoreScanner;
 import jsonstore.JSONStoreStatus;
+import jsonstore.JSONWriteResult;
+import jsonstore.PrometheusFormat;
+import jsonstore.ValueDictionary;
 
 /**
  * JSONStoreResource
@@ -56,6 +78,12 @@ import jsonstore.JSONStoreStatus;
 public class JSONStoreResource {
     final static Logger logger = Logger.getLogger(JSONStoreResource.class);
     
+    /**
+     * The status of writes rejected for a full write-behind queue, which JAX-RS 1.1 does not define.
+     */
+    final static int TOO_MANY_REQUESTS = 429;
+    final static String RETRY_AFTER_SECONDS = "1";
+    
     @InjectParam
     JSONRepository repository;
     
@@ -64,11 +92,15 @@ public class JSONStoreResource {
     
     @GET
     @Path("/{source}")
-    @Produces({MediaType.APPLICATION_JSON})
+    @Produces({MediaType.APPLICATION_JSON, "application/x-ndjson"})
     public Response getStore(@PathParam("source")String source) {
-        List<String> list = uriInfo.getQueryParameters().get("keys");
+        MultivaluedMap<String, String> params = uriInfo.getQueryParameters();
+        List<String> list = params.get("keys");
         
-        if(list == null || list.size() == 0) {
+        if(params.containsKey("from") || params.containsKey("to") || params.containsKey("prefix") ||
+           (params.containsKey("limit") && (list == null || list.size() == 0) && hasKeyIndex(source))) {
+            return listRange(source, params);
+        } else if(list == null || list.size() == 0) {
             try {
                 if(repository.has(source)) {
                     String schemaStr = repository.getSchema(source);
@@ -88,35 +120,146 @@ public class JSONStoreResource {
                 return Response.status(Status.INTERNAL_SERVER_ERROR).entity(status).build();
             }
         } else {
-            JSONObjectStore<String> jsonStore = repository.get(source);
-            Map<String, JSONObject> kvMap = new HashMap<String, JSONObject>(); 
-            
+            List<String> keys = new ArrayList<String>();
             for(String param : list) {
-                String[] keys = param.split(",");
-                for(String key : keys) {
+                for(String key : param.split(",")) {
                     key = key.trim();
                     if(key.length() > 0) {
-                        try {
-                            JSONObject value = jsonStore.get(key);
-                            kvMap.put(key, value);
-                        } catch(Exception e) {
-                            e.printStackTrace();
-                        }
+                        keys.add(key);
                     }
                 }
             }
             
             try {
-                JSONObject json = new JSONObject().put(source, kvMap);
-                return Response.status(Status.OK).entity(json).build();
-            } catch (JSONException e) {
-                e.printStackTrace();
+                JSONProjection projection = JSONProjection.parse(uriInfo.getQueryParameters().getFirst("fields"));
+                return multiGet(source, keys, projection);
+            } catch (IllegalArgumentException e) {
                 JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
-                return Response.status(Status.INTERNAL_SERVER_ERROR).entity(status).build();
+                return Response.status(Status.BAD_REQUEST).entity(status).build();
+            }
+        }
+    }
+    
+    @POST
+    @Path("/{source}/_mget")
+    @Consumes({MediaType.APPLICATION_JSON})
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response postMultiGet(@PathParam("source")String source, JSONObject request) {
+        try {
+            JSONArray array = request.optJSONArray("keys");
+            if(array == null) {
+                JSONObject status = JSONStoreStatus.FAILED.build(source, "keys not found");
+                return Response.status(Status.BAD_REQUEST).entity(status).build();
+            }
+            
+            List<String> keys = new ArrayList<String>(array.length());
+            for(int i = 0; i < array.length(); i++) {
+                keys.add(array.getString(i));
+            }
+            
+            JSONProjection projection = JSONProjection.parse(request.optString("fields", null));
+            return multiGet(source, keys, projection);
+        } catch (IllegalArgumentException e) {
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.BAD_REQUEST).entity(status).build();
+        } catch (Exception e) {
+            e.printStackTrace();
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(status).build();
+        }
+    }
+    
+    /**
+     * @return <code>true</code> if the store is configured with an ordered key index, which lists
+     * its keys when only <code>limit</code> is given.
+     */
+    private boolean hasKeyIndex(String source) {
+        try {
+            String configStr = repository.has(source) ? repository.getConfig(source) : null;
+            return configStr != null && new JSONObject(configStr).optBoolean("keyIndex", false);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Streams the keys in the range given by <code>from</code>, <code>to</code> and <code>prefix</code>
+     * in key order, <code>limit</code> keys per page, with their values if <code>values</code> is true.
+     */
+    private Response listRange(String source, MultivaluedMap<String, String> params) {
+        JSONObjectStore<String> pinned = null;
+        try {
+            final JSONObjectStore<String> jsonStore = pinned = repository.pin(source);
+            if(jsonStore == null) {
+                JSONObject status = JSONStoreStatus.NOT_FOUND.build(source);
+                return Response.status(Status.OK).type(MediaType.APPLICATION_JSON).entity(status).build();
+            }
+            
+            // List the writes acknowledged before the request, which may still be queued
+            jsonStore.awaitWriteBehind();
+            String limit = params.getFirst("limit");
+            final JSONRangeScanner scanner = new JSONRangeScanner(jsonStore,
+                    params.getFirst("from"), params.getFirst("to"), params.getFirst("prefix"),
+                    limit == null ? 1000 : Integer.parseInt(limit),
+                    Boolean.parseBoolean(params.getFirst("values")),
+                    JSONProjection.parse(params.getFirst("fields")));
+            StreamingOutput output = new StreamingOutput() {
+                @Override
+                public void write(OutputStream out) throws IOException, WebApplicationException {
+                    try {
+                        scanner.write(out);
+                    } finally {
+                        jsonStore.unpin();
+                    }
+                }
+            };
+            
+            pinned = null;
+            return Response.status(Status.OK).type("application/x-ndjson").entity(output).build();
+        } catch (IllegalArgumentException e) {
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.BAD_REQUEST).type(MediaType.APPLICATION_JSON).entity(status).build();
+        } catch (Exception e) {
+            e.printStackTrace();
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.INTERNAL_SERVER_ERROR).type(MediaType.APPLICATION_JSON).entity(status).build();
+        } finally {
+            if(pinned != null) {
+                pinned.unpin();
             }
         }
     }
     
+    /**
+     * Streams the values of the specified keys, which are read in parallel by the repository read executor.
+     */
+    private Response multiGet(String source, List<String> keys, JSONProjection projection) {
+        if(repository.isReadQueueFull()) {
+            return serviceUnavailable(source, "Read queue full");
+        }
+        
+        final JSONObjectStore<String> jsonStore = repository.pin(source);
+        if(jsonStore == null) {
+            JSONObject status = JSONStoreStatus.NOT_FOUND.build(source);
+            return Response.status(Status.OK).entity(status).build();
+        }
+        
+        final JSONMultiGet multiGet = new JSONMultiGet(source, jsonStore, keys, projection,
+                repository.getReadExecutor(), repository.getReadThreads());
+        StreamingOutput output = new StreamingOutput() {
+            @Override
+            public void write(OutputStream out) throws IOException, WebApplicationException {
+                try {
+                    multiGet.write(out);
+                } finally {
+                    jsonStore.unpin();
+                }
+            }
+        };
+        
+        return Response.status(Status.OK).entity(output).build();
+    }
+    
     @PUT
     @Path("/{source}")
     @Produces({MediaType.APPLICATION_JSON})
@@ -193,11 +336,47 @@ public class JSONStoreResource {
     @GET
     @Path("/{source}/{key}")
     @Produces({MediaType.APPLICATION_JSON})
-    public Response doStoreGet(@PathParam("source")String source, @PathParam("key")String key) {
+    public Response doStoreGet(@PathParam("source")String source, @PathParam("key")String key,
+                               @HeaderParam("Accept-Encoding")String acceptEncoding,
+                               @HeaderParam("If-None-Match")String ifNoneMatch,
+                               @QueryParam("fields")String fields) {
         try {
-            JSONObjectStore<String> jsonStore = repository.get(source);
-            JSONObject value = jsonStore.get(key);
-            return Response.status(Status.OK).entity(value).build();
+            JSONProjection projection = JSONProjection.parse(fields);
+            JSONObjectStore<String> jsonStore = repository.pin(source);
+            JSONRawValue value;
+            try {
+                value = jsonStore.getRawValue(key, projection);
+            } finally {
+                jsonStore.unpin();
+            }
+            if(value == null) {
+                return Response.status(Status.OK).build();
+            }
+            
+            // Projections are weakly validated by the entity tag of the whole value
+            String etag = projection == null ? value.getETag() : "W/" + value.getETag();
+            if(!JSONETag.ifNoneMatch(ifNoneMatch, value.getETag())) {
+                return Response.notModified().header("ETag", etag)
+                        .header("Vary", "Accept-Encoding").build();
+            }
+            
+            // Send gzip'd values as stored unless the client cannot decode them
+            if(value.isGzip()) {
+                if(acceptsGzip(acceptEncoding)) {
+                    return Response.status(Status.OK).entity(stream(value))
+                            .header("Content-Encoding", "gzip")
+                            .header("ETag", etag)
+                            .header("Vary", "Accept-Encoding").build();
+                }
+                value = value.toText();
+            }
+            
+            return Response.status(Status.OK).entity(stream(value))
+                    .header("ETag", etag)
+                    .header("Vary", "Accept-Encoding").build();
+        } catch (IllegalArgumentException e) {
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.BAD_REQUEST).entity(status).build();
         } catch (Exception e) {
             JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
             return Response.status(Status.INTERNAL_SERVER_ERROR).entity(status).build();
@@ -208,12 +387,30 @@ public class JSONStoreResource {
     @Path("/{source}/{key}")
     @Consumes({MediaType.APPLICATION_JSON})
     @Produces({MediaType.APPLICATION_JSON})
-    public Response doStorePut(@PathParam("source")String source, @PathParam("key")String key, JSONObject value) {
+    public Response doStorePut(@PathParam("source")String source, @PathParam("key")String key,
+                               @HeaderParam("If-Match")String ifMatch,
+                               @QueryParam("durable")Boolean durable, JSONObject value) {
         try {
             JSONObjectStore<String> jsonStore = repository.get(source);
-            JSONObject old = jsonStore.get(key);
-            jsonStore.put(key, value);
-            return Response.status(Status.OK).entity(old).build();
+            if(isWriteBehind(jsonStore, ifMatch, durable)) {
+                String etag = jsonStore.putBehind(key, value);
+                JSONObject status = JSONStoreStatus.UPDATED.build(source, "queued");
+                return Response.status(Status.ACCEPTED).entity(status).header("ETag", etag).build();
+            }
+            
+            JSONWriteResult result = jsonStore.putIfMatch(key, value, ifMatch);
+            if(!result.isApplied()) {
+                return preconditionFailed(source, result);
+            }
+            awaitDurable(jsonStore, durable);
+            return Response.status(Status.OK).entity(result.getPrevious()).header("ETag", result.getETag()).build();
+        } catch (RejectedExecutionException e) {
+            return tooManyRequests(source, e);
+        } catch (IllegalArgumentException e) {
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.BAD_REQUEST).entity(status).build();
+        } catch (JSONStoreRetiredException e) {
+            return serviceUnavailable(source, e.getMessage());
         } catch (Exception e) {
         	e.printStackTrace();
             JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
@@ -225,13 +422,32 @@ public class JSONStoreResource {
     @Path("/{source}/{key}")
     @Consumes({MediaType.APPLICATION_JSON})
     @Produces({MediaType.APPLICATION_JSON})
-    public Response doStorePost(@PathParam("source")String source, @PathParam("key")String key, JSONObject value) {
+    public Response doStorePost(@PathParam("source")String source, @PathParam("key")String key,
+                                @HeaderParam("If-Match")String ifMatch,
+                                @QueryParam("durable")Boolean durable, JSONObject value) {
         try {
             JSONObjectStore<String> jsonStore = repository.get(source);
-            jsonStore.put(key, value);
+            if(isWriteBehind(jsonStore, ifMatch, durable)) {
+                String etag = jsonStore.putBehind(key, value);
+                JSONObject status = JSONStoreStatus.UPDATED.build(source, "queued");
+                return Response.status(Status.ACCEPTED).entity(status).header("ETag", etag).build();
+            }
+            
+            JSONWriteResult result = jsonStore.putIfMatch(key, value, ifMatch);
+            if(!result.isApplied()) {
+                return preconditionFailed(source, result);
+            }
+            awaitDurable(jsonStore, durable);
             
             JSONObject status = JSONStoreStatus.UPDATED.build(source);
-            return Response.status(Status.OK).entity(status).build();
+            return Response.status(Status.OK).entity(status).header("ETag", result.getETag()).build();
+        } catch (RejectedExecutionException e) {
+            return tooManyRequests(source, e);
+        } catch (IllegalArgumentException e) {
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.BAD_REQUEST).entity(status).build();
+        } catch (JSONStoreRetiredException e) {
+            return serviceUnavailable(source, e.getMessage());
         } catch (Exception e) {
         	e.printStackTrace();
             JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
@@ -239,15 +455,57 @@ public class JSONStoreResource {
         }
     }
     
+    @PATCH
+    @Path("/{source}/{key}")
+    @Consumes({"application/merge-patch+json", MediaType.APPLICATION_JSON})
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response doStorePatch(@PathParam("source")String source, @PathParam("key")String key,
+                                 @HeaderParam("If-Match")String ifMatch,
+                                 @QueryParam("durable")Boolean durable, JSONObject patch) {
+        try {
+            JSONObjectStore<String> jsonStore = repository.get(source);
+            JSONWriteResult result = jsonStore.patchIfMatch(key, patch, ifMatch);
+            if(!result.isApplied()) {
+                return preconditionFailed(source, result);
+            }
+            awaitDurable(jsonStore, durable);
+            return Response.status(Status.OK).entity(result.getValue()).header("ETag", result.getETag()).build();
+        } catch (IllegalArgumentException e) {
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.BAD_REQUEST).entity(status).build();
+        } catch (JSONStoreRetiredException e) {
+            return serviceUnavailable(source, e.getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(status).build();
+        }
+    }
+    
     @DELETE
     @Path("/{source}/{key}")
     @Produces({MediaType.APPLICATION_JSON})
-    public Response doStoreDelete(@PathParam("source")String source, @PathParam("key")String key) {
+    public Response doStoreDelete(@PathParam("source")String source, @PathParam("key")String key,
+                                  @HeaderParam("If-Match")String ifMatch,
+                                  @QueryParam("durable")Boolean durable) {
         try {
             JSONObjectStore<String> jsonStore = repository.get(source);
-            JSONObject deleted = jsonStore.get(key);
-            jsonStore.delete(key);
-            return Response.status(Status.OK).entity(deleted).build();
+            if(isWriteBehind(jsonStore, ifMatch, durable)) {
+                jsonStore.deleteBehind(key);
+                JSONObject status = JSONStoreStatus.DELETED.build(source, "queued");
+                return Response.status(Status.ACCEPTED).entity(status).build();
+            }
+            
+            JSONWriteResult result = jsonStore.deleteIfMatch(key, ifMatch);
+            if(!result.isApplied()) {
+                return preconditionFailed(source, result);
+            }
+            awaitDurable(jsonStore, durable);
+            return Response.status(Status.OK).entity(result.getPrevious()).build();
+        } catch (RejectedExecutionException e) {
+            return tooManyRequests(source, e);
+        } catch (JSONStoreRetiredException e) {
+            return serviceUnavailable(source, e.getMessage());
         } catch (Exception e) {
             e.printStackTrace();
             JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
@@ -262,6 +520,7 @@ public class JSONStoreResource {
         try {
             JSONObjectStore<String> jsonStore = repository.get(source);
             if(jsonStore != null) {
+                jsonStore.awaitWriteBehind();
                 jsonStore.persist();
                 
                 JSONObject status = JSONStoreStatus.FLUSHED.build(source, "persist");
@@ -283,6 +542,7 @@ public class JSONStoreResource {
         try {
             JSONObjectStore<String> jsonStore = repository.get(source);
             if(jsonStore != null) {
+                jsonStore.awaitWriteBehind();
                 jsonStore.sync();
                 
                 JSONObject status = JSONStoreStatus.FLUSHED.build(source, "sync");
@@ -296,4 +556,472 @@ public class JSONStoreResource {
             return Response.status(Status.INTERNAL_SERVER_ERROR).entity(status).build();
         }
     }
+    
+    @POST
+    @Path("/{source}/_bulk")
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response bulkLoad(@PathParam("source")String source,
+                             @QueryParam("persist") @DefaultValue("false") boolean persist,
+                             InputStream body) {
+        try {
+            if(repository.has(source)) {
+                JSONObject result = repository.bulkLoad(source, body, persist);
+                JSONObject status = JSONStoreStatus.UPDATED.build(source);
+                status.put("result", result);
+                return Response.status(Status.OK).entity(status).build();
+            } else {
+                JSONObject status = JSONStoreStatus.NOT_FOUND.build(source);
+                return Response.status(Status.OK).entity(status).build();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(status).build();
+        }
+    }
+    
+    @GET
+    @Path("/{source}/_scan")
+    @Produces({"application/x-ndjson", MediaType.APPLICATION_OCTET_STREAM, MediaType.APPLICATION_JSON})
+    public Response scan(@PathParam("source")String source,
+                         @QueryParam("cursor")String cursor,
+                         @QueryParam("end")String endCursor,
+                         @QueryParam("limit") @DefaultValue("1000") int limit,
+                         @QueryParam("values") @DefaultValue("true") boolean values,
+                         @QueryParam("format") @DefaultValue("ndjson") String format) {
+        JSONObjectStore<String> pinned = null;
+        try {
+            final JSONObjectStore<String> jsonStore = pinned = repository.pin(source);
+            if(jsonStore == null) {
+                JSONObject status = JSONStoreStatus.NOT_FOUND.build(source);
+                return Response.status(Status.OK).type(MediaType.APPLICATION_JSON).entity(status).build();
+            }
+            
+            // Scan the writes acknowledged before the request, which may still be queued
+            jsonStore.awaitWriteBehind();
+            final JSONStoreScanner scanner = new JSONStoreScanner(jsonStore, cursor, endCursor, limit, values, format);
+            StreamingOutput output = new StreamingOutput() {
+                @Override
+                public void write(OutputStream out) throws IOException, WebApplicationException {
+                    try {
+                        scanner.write(out);
+                    } finally {
+                        jsonStore.unpin();
+                    }
+                }
+            };
+            
+            pinned = null;
+            String type = JSONStoreScanner.FORMAT_BINARY.equals(format) ? MediaType.APPLICATION_OCTET_STREAM : "application/x-ndjson";
+            return Response.status(Status.OK).type(type).entity(output).build();
+        } catch (IllegalArgumentException e) {
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.BAD_REQUEST).type(MediaType.APPLICATION_JSON).entity(status).build();
+        } catch (Exception e) {
+            e.printStackTrace();
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.INTERNAL_SERVER_ERROR).type(MediaType.APPLICATION_JSON).entity(status).build();
+        } finally {
+            if(pinned != null) {
+                pinned.unpin();
+            }
+        }
+    }
+    
+    @GET
+    @Path("/{source}/_query")
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response query(@PathParam("source")String source,
+                          @QueryParam("property")String property,
+                          @QueryParam("eq")String eq,
+                          @QueryParam("min")String min,
+                          @QueryParam("max")String max,
+                          @QueryParam("limit") @DefaultValue("1000") int limit,
+                          @QueryParam("values") @DefaultValue("false") boolean values,
+                          @QueryParam("fields")String fields) {
+        try {
+            JSONObjectStore<String> jsonStore = repository.get(source);
+            if(jsonStore == null) {
+                JSONObject status = JSONStoreStatus.NOT_FOUND.build(source);
+                return Response.status(Status.OK).entity(status).build();
+            }
+            
+            JSONIndex index = jsonStore.getIndexes() == null ? null : jsonStore.getIndexes().get(property);
+            if(index == null) {
+                throw new IllegalArgumentException("property " + property + " is not indexed");
+            }
+            
+            // Indexes are updated as queued writes are applied
+            jsonStore.awaitWriteBehind();
+            List<String> keys;
+            limit = Math.max(0, limit);
+            if(eq != null) {
+                keys = index.equalTo(eq, limit);
+            } else if(index instanceof JSONSortedIndex) {
+                keys = ((JSONSortedIndex)index).range(min, max, limit);
+            } else {
+                throw new IllegalArgumentException("property " + property + " supports eq queries only");
+            }
+            
+            if(values) {
+                return multiGet(source, keys, JSONProjection.parse(fields));
+            }
+            
+            JSONObject status = JSONStoreStatus.FOUND.build(source);
+            status.put("keys", new JSONArray(keys));
+            return Response.status(Status.OK).entity(status).build();
+        } catch (IllegalArgumentException e) {
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.BAD_REQUEST).entity(status).build();
+        } catch (Exception e) {
+            e.printStackTrace();
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(status).build();
+        }
+    }
+    
+    @GET
+    @Path("/{source}/_splits")
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response getSplits(@PathParam("source")String source, @QueryParam("n") @DefaultValue("1") int count) {
+        try {
+            JSONObjectStore<String> jsonStore = repository.get(source);
+            if(jsonStore != null) {
+                jsonStore.awaitWriteBehind();
+                String[] cursors = JSONStoreScanner.split(jsonStore, count);
+                JSONArray splits = new JSONArray();
+                for(int i = 0; i < cursors.length - 1; i++) {
+                    JSONObject split = new JSONObject();
+                    split.put("cursor", cursors[i]);
+                    split.put("end", cursors[i + 1] == null ? JSONObject.NULL : cursors[i + 1]);
+                    splits.put(split);
+                }
+                
+                JSONObject status = JSONStoreStatus.FOUND.build(source);
+                status.put("splits", splits);
+                return Response.status(Status.OK).entity(status).build();
+            } else {
+                JSONObject status = JSONStoreStatus.NOT_FOUND.build(source);
+                return Response.status(Status.OK).entity(status).build();
+            }
+        } catch (Exception e) {
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(status).build();
+        }
+    }
+    
+    @GET
+    @Path("/_metrics")
+    @Produces({MediaType.APPLICATION_JSON, MediaType.TEXT_PLAIN})
+    public Response getMetrics(@QueryParam("format") @DefaultValue("json") String format) {
+        try {
+            if("prometheus".equalsIgnoreCase(format)) {
+                return Response.status(Status.OK).type(PrometheusFormat.CONTENT_TYPE)
+                        .entity(PrometheusFormat.format(repository)).build();
+            }
+            if(!"json".equalsIgnoreCase(format)) {
+                throw new IllegalArgumentException("unsupported format " + format);
+            }
+            
+            JSONObject status = JSONStoreStatus.FOUND.build("_metrics");
+            status.put("metrics", repository.getMetrics());
+            return Response.status(Status.OK).entity(status).build();
+        } catch (IllegalArgumentException e) {
+            JSONObject status = JSONStoreStatus.FAILED.build("_metrics", e.getMessage());
+            return Response.status(Status.BAD_REQUEST).entity(status).type(MediaType.APPLICATION_JSON).build();
+        } catch (Exception e) {
+            JSONObject status = JSONStoreStatus.FAILED.build("_metrics", String.valueOf(e.getMessage()));
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(status).type(MediaType.APPLICATION_JSON).build();
+        }
+    }
+    
+    @GET
+    @Path("/{source}/_stats")
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response getStats(@PathParam("source")String source) {
+        try {
+            JSONObjectStore<String> jsonStore = repository.get(source);
+            if(jsonStore != null) {
+                JSONObject status = JSONStoreStatus.FOUND.build(source);
+                status.put("stats", jsonStore.getStats());
+                return Response.status(Status.OK).entity(status).build();
+            } else {
+                JSONObject status = JSONStoreStatus.NOT_FOUND.build(source);
+                return Response.status(Status.OK).entity(status).build();
+            }
+        } catch (Exception e) {
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(status).build();
+        }
+    }
+    
+    @GET
+    @Path("/{source}/_compaction")
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response getCompaction(@PathParam("source")String source) {
+        try {
+            JSONObjectStore<String> jsonStore = repository.get(source);
+            if(jsonStore != null) {
+                JSONObject status = JSONStoreStatus.FOUND.build(source);
+                status.put("compaction", jsonStore.getCompaction().getStats());
+                return Response.status(Status.OK).entity(status).build();
+            } else {
+                JSONObject status = JSONStoreStatus.NOT_FOUND.build(source);
+                return Response.status(Status.OK).entity(status).build();
+            }
+        } catch (Exception e) {
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(status).build();
+        }
+    }
+    
+    @POST
+    @Path("/{source}/_compaction/{action}")
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response controlCompaction(@PathParam("source")String source, @PathParam("action")String action,
+                                      @QueryParam("loadFactor")Double loadFactor) {
+        try {
+            JSONObjectStore<String> jsonStore = repository.get(source);
+            if(jsonStore != null) {
+                JSONStoreCompaction compaction = jsonStore.getCompaction();
+                String message;
+                if("start".equals(action)) {
+                    compaction.start();
+                    message = "compaction started";
+                } else if("pause".equals(action)) {
+                    compaction.pause();
+                    message = "compaction paused";
+                } else if("resume".equals(action)) {
+                    compaction.resume();
+                    message = "compaction resumed";
+                } else if("throttle".equals(action)) {
+                    if(loadFactor == null) {
+                        throw new IllegalArgumentException("loadFactor is required");
+                    }
+                    compaction.setLoadFactor(loadFactor);
+                    message = "compaction load factor " + loadFactor;
+                } else {
+                    throw new IllegalArgumentException("Unknown compaction action: " + action);
+                }
+                JSONObject status = JSONStoreStatus.UPDATED.build(source, message);
+                status.put("compaction", compaction.getStats());
+                return Response.status(Status.OK).entity(status).build();
+            } else {
+                JSONObject status = JSONStoreStatus.NOT_FOUND.build(source);
+                return Response.status(Status.OK).entity(status).build();
+            }
+        } catch (IllegalArgumentException e) {
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.BAD_REQUEST).entity(status).build();
+        } catch (IllegalStateException e) {
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.CONFLICT).entity(status).build();
+        } catch (Exception e) {
+            e.printStackTrace();
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(status).build();
+        }
+    }
+    
+    @POST
+    @Path("/{source}/_dictionary")
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response trainDictionary(@PathParam("source")String source) {
+        try {
+            if(repository.has(source)) {
+                ValueDictionary dict = repository.trainDictionary(source);
+                if(dict != null) {
+                    String message = "dictionary " + dict.getId() + " trained (" + dict.getBytes().length + " bytes)";
+                    JSONObject status = JSONStoreStatus.UPDATED.build(source, message);
+                    return Response.status(Status.OK).entity(status).build();
+                } else {
+                    JSONObject status = JSONStoreStatus.FAILED.build(source, "not enough common content to train a dictionary");
+                    return Response.status(Status.OK).entity(status).build();
+                }
+            } else {
+                JSONObject status = JSONStoreStatus.NOT_FOUND.build(source);
+                return Response.status(Status.OK).entity(status).build();
+            }
+        } catch (UnsupportedOperationException e) {
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.BAD_REQUEST).entity(status).build();
+        } catch (Exception e) {
+            e.printStackTrace();
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(status).build();
+        }
+    }
+    
+    @POST
+    @Path("/{source}/_codec/{codec}")
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response setValueCodec(@PathParam("source")String source, @PathParam("codec")String codec) {
+        try {
+            if(repository.has(source)) {
+                String oldCodec = repository.setValueCodec(source, codec);
+                JSONObject status = JSONStoreStatus.UPDATED.build(source, "value codec " + oldCodec + " -> " + codec);
+                return Response.status(Status.OK).entity(status).build();
+            } else {
+                JSONObject status = JSONStoreStatus.NOT_FOUND.build(source);
+                return Response.status(Status.OK).entity(status).build();
+            }
+        } catch (UnsupportedOperationException e) {
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.BAD_REQUEST).entity(status).build();
+        } catch (IllegalArgumentException e) {
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.BAD_REQUEST).entity(status).build();
+        } catch (IllegalStateException e) {
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.CONFLICT).entity(status).build();
+        } catch (Exception e) {
+            e.printStackTrace();
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(status).build();
+        }
+    }
+    
+    @POST
+    @Path("/{source}/_rebuild")
+    @Consumes({MediaType.APPLICATION_JSON})
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response rebuild(@PathParam("source")String source, JSONObject configChanges) {
+        try {
+            if(repository.has(source)) {
+                repository.startRebuild(source, configChanges == null ? new JSONObject() : configChanges);
+                JSONObject status = JSONStoreStatus.REBUILDING.build(source);
+                return Response.status(Status.ACCEPTED).entity(status)
+                        .header("Location", uriInfo.getRequestUri()).build();
+            } else {
+                JSONObject status = JSONStoreStatus.NOT_FOUND.build(source);
+                return Response.status(Status.OK).entity(status).build();
+            }
+        } catch (IllegalArgumentException e) {
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.BAD_REQUEST).entity(status).build();
+        } catch (IllegalStateException e) {
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.CONFLICT).entity(status).build();
+        } catch (Exception e) {
+            e.printStackTrace();
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(status).build();
+        }
+    }
+    
+    @GET
+    @Path("/{source}/_rebuild")
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response getRebuild(@PathParam("source")String source) {
+        try {
+            JSONObject state = repository.getRebuildState(source);
+            if(state == null) {
+                JSONObject status = JSONStoreStatus.NOT_FOUND.build(source);
+                return Response.status(Status.OK).entity(status).build();
+            }
+            
+            String value = state.getString("state");
+            JSONObject status;
+            if("done".equals(value)) {
+                status = JSONStoreStatus.REBUILT.build(source);
+                status.put("result", state.get("result"));
+            } else if("failed".equals(value)) {
+                status = JSONStoreStatus.FAILED.build(source, state.getString("message"));
+            } else {
+                status = JSONStoreStatus.REBUILDING.build(source);
+                status.put("rebuild", state);
+            }
+            return Response.status(Status.OK).entity(status).build();
+        } catch (Exception e) {
+            e.printStackTrace();
+            JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(status).build();
+        }
+    }
+    
+    static StreamingOutput stream(final JSONRawValue value) {
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream out) throws IOException, WebApplicationException {
+                value.writeTo(out);
+            }
+        };
+    }
+    
+    /**
+     * Waits for a write to be synced if <code>durable</code> is requested, or by default if the store has durable writes.
+     */
+    private static void awaitDurable(JSONObjectStore<String> jsonStore, Boolean durable) throws IOException {
+        if(isDurable(jsonStore, durable)) {
+            jsonStore.awaitDurable();
+        }
+    }
+    
+    private static boolean isDurable(JSONObjectStore<String> jsonStore, Boolean durable) {
+        return durable == null ? jsonStore.isDurableWrites() : durable.booleanValue();
+    }
+    
+    /**
+     * Checks whether a write is queued on the write-behind queue of the store. Conditional
+     * and durable writes are applied in the request thread.
+     */
+    private static boolean isWriteBehind(JSONObjectStore<String> jsonStore, String ifMatch, Boolean durable) {
+        return jsonStore.getWriteBehind() != null && ifMatch == null && !isDurable(jsonStore, durable);
+    }
+    
+    /**
+     * Rejects a write while the write-behind queue is full, asking the client to retry later.
+     */
+    private static Response tooManyRequests(String source, RejectedExecutionException e) {
+        JSONObject status = JSONStoreStatus.FAILED.build(source, e.getMessage());
+        return Response.status(TOO_MANY_REQUESTS).entity(status).header("Retry-After", RETRY_AFTER_SECONDS).build();
+    }
+    
+    /**
+     * Rejects a request the store cannot serve right now, such as a write reaching a store just
+     * replaced by a rebuild or a multi-get while the read queue is full, asking the client to retry.
+     */
+    private static Response serviceUnavailable(String source, String message) {
+        JSONObject status = JSONStoreStatus.FAILED.build(source, message);
+        return Response.status(Status.SERVICE_UNAVAILABLE).entity(status).header("Retry-After", RETRY_AFTER_SECONDS).build();
+    }
+    
+    /**
+     * Builds the <code>412 Precondition Failed</code> response of a conditional write,
+     * with the entity tag of the current value if any.
+     */
+    private static Response preconditionFailed(String source, JSONWriteResult result) {
+        JSONObject status = JSONStoreStatus.FAILED.build(source, "precondition failed");
+        Response.ResponseBuilder builder = Response.status(Status.PRECONDITION_FAILED).entity(status);
+        if(result.getETag() != null) {
+            builder.header("ETag", result.getETag());
+        }
+        return builder.build();
+    }
+    
+    /**
+     * Checks whether an <code>Accept-Encoding</code> header allows gzip, i.e., it lists
+     * <code>gzip</code> or <code>*</code> without <code>q=0</code>.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if(acceptEncoding == null) {
+            return false;
+        }
+        
+        for(String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim();
+            if(name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip") || name.equals("*")) {
+                for(int i = 1; i < parts.length; i++) {
+                    String param = parts[i].trim();
+                    if(param.startsWith("q=") && param.substring(2).trim().matches("0(\\.0*)?")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        
+        return false;
+    }
 }